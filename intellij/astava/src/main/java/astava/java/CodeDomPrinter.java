@@ -0,0 +1,715 @@
+package astava.java;
+
+import astava.tree.*;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+// Prints doms as Java-like source directly to an Appendable, such that large trees are never materialized as a
+// single string. Subtrees nested deeper than maxDepth are printed as "...".
+public class CodeDomPrinter {
+    private static final String[] ARITHMETIC_OPERATORS = new String[]{"+", "-", "*", "/", "%"};
+    private static final String[] SHIFT_OPERATORS = new String[]{"<<", ">>", ">>>"};
+    private static final String[] BITWISE_OPERATORS = new String[]{"&", "|", "^"};
+    private static final String[] LOGICAL_OPERATORS = new String[]{"&&", "||"};
+    private static final String[] RELATIONAL_OPERATORS = new String[]{"<", "<=", ">", ">=", "==", "!="};
+
+    private final Appendable out;
+    private final int maxDepth;
+    private final String indentation;
+    private final Map<Object, Integer> labelIds = new IdentityHashMap<>();
+    private int depth;
+    private int indentationLevel;
+
+    public CodeDomPrinter(Appendable out) {
+        this(out, Integer.MAX_VALUE);
+    }
+
+    public CodeDomPrinter(Appendable out, int maxDepth) {
+        this(out, maxDepth, "    ");
+    }
+
+    public CodeDomPrinter(Appendable out, int maxDepth, String indentation) {
+        this.out = out;
+        this.maxDepth = maxDepth;
+        this.indentation = indentation;
+    }
+
+    public static void print(CodeDom dom, Appendable out) throws IOException {
+        new CodeDomPrinter(out).print(dom);
+    }
+
+    public static void print(CodeDom dom, Appendable out, int maxDepth) throws IOException {
+        new CodeDomPrinter(out, maxDepth).print(dom);
+    }
+
+    public void print(CodeDom dom) throws IOException {
+        try {
+            dom.accept(new CodeDomVisitor() {
+                @Override
+                public void visitStatement(StatementDom statementDom) {
+                    printStatement(statementDom);
+                }
+
+                @Override
+                public void visitExpression(ExpressionDom expressionDom) {
+                    printExpression(expressionDom);
+                }
+
+                @Override
+                public void visitCatch(String type, String name, StatementDom statementDom) {
+                    printCatch(type, name, statementDom);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public void print(MethodDom method) throws IOException {
+        try {
+            indent();
+            append(Descriptor.getName(method.getReturnTypeName()));
+            append(" ");
+            append(method.getName());
+            append("(");
+            List<ParameterInfo> parameters = method.getParameterTypes();
+            for(int i = 0; i < parameters.size(); i++) {
+                if(i > 0)
+                    append(", ");
+                append(parameters.get(i).getTypeName());
+                append(" ");
+                append(parameters.get(i).getName());
+            }
+            append(") ");
+            printBlockStatement(method.getBody());
+            newLine();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void append(CharSequence str) {
+        try {
+            out.append(str);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void append(char c) {
+        try {
+            out.append(c);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void newLine() {
+        append('\n');
+    }
+
+    private void indent() {
+        for(int i = 0; i < indentationLevel; i++)
+            append(indentation);
+    }
+
+    private String label(Object label) {
+        Integer id = labelIds.get(label);
+
+        if(id == null) {
+            id = labelIds.size();
+            labelIds.put(label, id);
+        }
+
+        return "L" + id;
+    }
+
+    private boolean enter() {
+        depth++;
+
+        if(depth > maxDepth) {
+            depth--;
+            append("...");
+            return false;
+        }
+
+        return true;
+    }
+
+    private void exit() {
+        depth--;
+    }
+
+    // Prints a statement on its own lines, including indentation
+    private void printStatement(StatementDom statement) {
+        indent();
+        printStatementInline(statement);
+        newLine();
+    }
+
+    // Prints a block with braces, or any other statement wrapped in braces, starting at the current position
+    private void printBlockStatement(StatementDom statement) {
+        boolean isBlock = new StatementDomVisitor.Return<Boolean>() {
+            @Override
+            public void visitBlock(List<StatementDom> statements) {
+                setResult(true);
+            }
+        }.returnFrom(statement) != null;
+
+        if(isBlock) {
+            printStatementInline(statement);
+        } else {
+            append("{");
+            newLine();
+            indentationLevel++;
+            printStatement(statement);
+            indentationLevel--;
+            indent();
+            append("}");
+        }
+    }
+
+    private void printStatementInline(StatementDom statement) {
+        if(!enter())
+            return;
+
+        statement.accept(new StatementDomVisitor() {
+            @Override
+            public void visitVariableDeclaration(String type, String name) {
+                append(Descriptor.getName(type));
+                append(" ");
+                append(name);
+                append(";");
+            }
+
+            @Override
+            public void visitVariableAssignment(String name, ExpressionDom value) {
+                append(name);
+                append(" = ");
+                printExpression(value);
+                append(";");
+            }
+
+            @Override
+            public void visitFieldAssignment(ExpressionDom target, String name, String type, ExpressionDom value) {
+                printExpression(target);
+                append(".");
+                append(name);
+                append(" = ");
+                printExpression(value);
+                append(";");
+            }
+
+            @Override
+            public void visitStaticFieldAssignment(String typeName, String name, String type, ExpressionDom value) {
+                append(Descriptor.getName(typeName));
+                append(".");
+                append(name);
+                append(" = ");
+                printExpression(value);
+                append(";");
+            }
+
+            @Override
+            public void visitIncrement(String name, int amount) {
+                append(name);
+                if(amount == 1)
+                    append("++");
+                else if(amount == -1)
+                    append("--");
+                else if(amount > 0)
+                    append(" += " + amount);
+                else
+                    append(" -= " + -amount);
+                append(";");
+            }
+
+            @Override
+            public void visitReturnValue(ExpressionDom expression) {
+                append("return ");
+                printExpression(expression);
+                append(";");
+            }
+
+            @Override
+            public void visitBlock(List<StatementDom> statements) {
+                append("{");
+                newLine();
+                indentationLevel++;
+                statements.forEach(x -> printStatement(x));
+                indentationLevel--;
+                indent();
+                append("}");
+            }
+
+            @Override
+            public void visitIfElse(ExpressionDom condition, StatementDom ifTrue, StatementDom ifFalse) {
+                append("if(");
+                printExpression(condition);
+                append(") ");
+                printBlockStatement(ifTrue);
+                append(" else ");
+                printBlockStatement(ifFalse);
+            }
+
+            @Override
+            public void visitBreakCase() {
+                append("break;");
+            }
+
+            @Override
+            public void visitReturn() {
+                append("return;");
+            }
+
+            @Override
+            public void visitInvocation(int invocation, ExpressionDom target, String type, String name, String descriptor, List<ExpressionDom> arguments) {
+                printInvocation(invocation, target, type, name, arguments);
+                append(";");
+            }
+
+            @Override
+            public void visitNewInstance(String type, List<String> parameterTypes, List<ExpressionDom> arguments) {
+                printNewInstance(type, arguments);
+                append(";");
+            }
+
+            @Override
+            public void visitLabel(String name) {
+                append(name);
+                append(":");
+            }
+
+            @Override
+            public void visitGoTo(String name) {
+                append("goto ");
+                append(name);
+                append(";");
+            }
+
+            @Override
+            public void visitSwitch(ExpressionDom expression, Map<Integer, StatementDom> cases, StatementDom defaultBody) {
+                append("switch(");
+                printExpression(expression);
+                append(") {");
+                newLine();
+                indentationLevel++;
+                cases.forEach((key, body) -> {
+                    indent();
+                    append("case " + key + ": ");
+                    printBlockStatement(body);
+                    newLine();
+                });
+                indent();
+                append("default: ");
+                printBlockStatement(defaultBody);
+                newLine();
+                indentationLevel--;
+                indent();
+                append("}");
+            }
+
+            @Override
+            public void visitASM(MethodNode methodNode) {
+                append("/* bytecode of " + methodNode.name + methodNode.desc + " */");
+            }
+
+            @Override
+            public void visitMethodBody() {
+                append("...;");
+            }
+
+            @Override
+            public void visitThrow(ExpressionDom expression) {
+                append("throw ");
+                printExpression(expression);
+                append(";");
+            }
+
+            @Override
+            public void visitTryCatch(StatementDom tryBlock, List<CodeDom> catchBlocks) {
+                append("try ");
+                printBlockStatement(tryBlock);
+                catchBlocks.forEach(x -> x.accept(new DefaultCodeDomVisitor() {
+                    @Override
+                    public void visitCatch(String type, String name, StatementDom statementDom) {
+                        append(" ");
+                        printCatch(type, name, statementDom);
+                    }
+                }));
+            }
+
+            @Override
+            public void visitMark(Object label) {
+                append(label(label));
+                append(":");
+            }
+
+            @Override
+            public void visitGoTo(Object label) {
+                append("goto ");
+                append(label(label));
+                append(";");
+            }
+
+            @Override
+            public void visitArrayStore(ExpressionDom expression, ExpressionDom index, ExpressionDom value) {
+                printExpression(expression);
+                append("[");
+                printExpression(index);
+                append("] = ");
+                printExpression(value);
+                append(";");
+            }
+
+            @Override
+            public void visitSwitch(ExpressionDom expression, Object dflt, int[] keys, Object[] labels) {
+                append("switch(");
+                printExpression(expression);
+                append(") {");
+                newLine();
+                indentationLevel++;
+                for(int i = 0; i < keys.length; i++) {
+                    indent();
+                    append("case " + keys[i] + ": goto " + label(labels[i]) + ";");
+                    newLine();
+                }
+                indent();
+                append("default: goto " + label(dflt) + ";");
+                newLine();
+                indentationLevel--;
+                indent();
+                append("}");
+            }
+
+            @Override
+            public void visitIfJump(ExpressionDom condition, Object label) {
+                append("if(");
+                printExpression(condition);
+                append(") goto ");
+                append(label(label));
+                append(";");
+            }
+
+            @Override
+            public void visitLineNumber(int line) {
+                append("// line " + line);
+            }
+        });
+
+        exit();
+    }
+
+    private void printCatch(String type, String name, StatementDom statementDom) {
+        if(type == null) {
+            append("finally ");
+            printBlockStatement(statementDom);
+            return;
+        }
+
+        append("catch(");
+        append(Descriptor.getName(type));
+        append(" ");
+        append(name);
+        append(") ");
+        printBlockStatement(statementDom);
+    }
+
+    private void printInvocation(int invocation, ExpressionDom target, String type, String name, List<ExpressionDom> arguments) {
+        if(invocation == Invocation.STATIC)
+            append(Descriptor.getName(type));
+        else
+            printExpression(target);
+        append(".");
+        append(name);
+        printArguments(arguments);
+    }
+
+    private void printNewInstance(String type, List<ExpressionDom> arguments) {
+        append("new ");
+        append(Descriptor.getName(type));
+        printArguments(arguments);
+    }
+
+    private void printArguments(List<ExpressionDom> arguments) {
+        append("(");
+        for(int i = 0; i < arguments.size(); i++) {
+            if(i > 0)
+                append(", ");
+            printExpression(arguments.get(i));
+        }
+        append(")");
+    }
+
+    private void printBinary(ExpressionDom lhs, String operator, ExpressionDom rhs) {
+        append("(");
+        printExpression(lhs);
+        append(" ");
+        append(operator);
+        append(" ");
+        printExpression(rhs);
+        append(")");
+    }
+
+    private void printExpression(ExpressionDom expression) {
+        if(!enter())
+            return;
+
+        expression.accept(new ExpressionDomVisitor() {
+            @Override
+            public void visitBooleanLiteral(boolean value) {
+                append(Boolean.toString(value));
+            }
+
+            @Override
+            public void visitByteLiteral(byte value) {
+                append("(byte)" + value);
+            }
+
+            @Override
+            public void visitShortLiteral(short value) {
+                append("(short)" + value);
+            }
+
+            @Override
+            public void visitIntLiteral(int value) {
+                append(Integer.toString(value));
+            }
+
+            @Override
+            public void visitLongLiteral(long value) {
+                append(value + "L");
+            }
+
+            @Override
+            public void visitFloatLiteral(float value) {
+                append(value + "F");
+            }
+
+            @Override
+            public void visitDoubleLiteral(double value) {
+                append(value + "D");
+            }
+
+            @Override
+            public void visitCharLiteral(char value) {
+                append("'");
+                appendEscaped(value, '\'');
+                append("'");
+            }
+
+            @Override
+            public void visitStringLiteral(String value) {
+                append("\"");
+                for(int i = 0; i < value.length(); i++)
+                    appendEscaped(value.charAt(i), '"');
+                append("\"");
+            }
+
+            @Override
+            public void visitArithmetic(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                printBinary(lhs, ARITHMETIC_OPERATORS[operator], rhs);
+            }
+
+            @Override
+            public void visitShift(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                printBinary(lhs, SHIFT_OPERATORS[operator], rhs);
+            }
+
+            @Override
+            public void visitBitwise(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                printBinary(lhs, BITWISE_OPERATORS[operator], rhs);
+            }
+
+            @Override
+            public void visitCompare(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                printBinary(lhs, RELATIONAL_OPERATORS[operator], rhs);
+            }
+
+            @Override
+            public void visitLogical(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                printBinary(lhs, LOGICAL_OPERATORS[operator], rhs);
+            }
+
+            @Override
+            public void visitVariableAccess(String name) {
+                append(name);
+            }
+
+            @Override
+            public void visitFieldAccess(ExpressionDom target, String name, String fieldTypeName) {
+                printExpression(target);
+                append(".");
+                append(name);
+            }
+
+            @Override
+            public void visitStaticFieldAccess(String typeName, String name, String fieldTypeName) {
+                append(Descriptor.getName(typeName));
+                append(".");
+                append(name);
+            }
+
+            @Override
+            public void visitNot(ExpressionDom expression) {
+                append("!");
+                printExpression(expression);
+            }
+
+            @Override
+            public void visitInstanceOf(ExpressionDom expression, String type) {
+                append("(");
+                printExpression(expression);
+                append(" instanceof ");
+                append(Descriptor.getName(type));
+                append(")");
+            }
+
+            @Override
+            public void visitBlock(List<CodeDom> codeList) {
+                append("{");
+                newLine();
+                indentationLevel++;
+                codeList.forEach(x -> x.accept(new DefaultCodeDomVisitor() {
+                    @Override
+                    public void visitStatement(StatementDom statementDom) {
+                        printStatement(statementDom);
+                    }
+
+                    @Override
+                    public void visitExpression(ExpressionDom expressionDom) {
+                        indent();
+                        printExpression(expressionDom);
+                        newLine();
+                    }
+                }));
+                indentationLevel--;
+                indent();
+                append("}");
+            }
+
+            @Override
+            public void visitIfElse(ExpressionDom condition, ExpressionDom ifTrue, ExpressionDom ifFalse) {
+                append("(");
+                printExpression(condition);
+                append(" ? ");
+                printExpression(ifTrue);
+                append(" : ");
+                printExpression(ifFalse);
+                append(")");
+            }
+
+            @Override
+            public void visitInvocation(int invocation, ExpressionDom target, String type, String name, String descriptor, List<ExpressionDom> arguments) {
+                printInvocation(invocation, target, type, name, arguments);
+            }
+
+            @Override
+            public void visitNewInstance(String type, List<String> parameterTypes, List<ExpressionDom> arguments) {
+                printNewInstance(type, arguments);
+            }
+
+            @Override
+            public void visitThis() {
+                append("this");
+            }
+
+            @Override
+            public void visitNull() {
+                append("null");
+            }
+
+            @Override
+            public void visitTop(ExpressionDom expression, BiFunction<ExpressionDom, ExpressionDom, ExpressionDom> usage) {
+                append("top(");
+                printExpression(expression);
+                append(")");
+            }
+
+            @Override
+            public void visitDup(String type) {
+                append("dup");
+            }
+
+            @Override
+            public void visitLetBe(String type) {
+                append("letBe");
+            }
+
+            @Override
+            public void visitTypeCast(ExpressionDom expression, String targetType) {
+                append("((");
+                append(Descriptor.getName(targetType));
+                append(")");
+                printExpression(expression);
+                append(")");
+            }
+
+            @Override
+            public void visitMethodBody() {
+                append("...");
+            }
+
+            @Override
+            public void visitClassLiteral(String type) {
+                append(Descriptor.getName(type));
+                append(".class");
+            }
+
+            @Override
+            public void visitArrayLength(ExpressionDom expression) {
+                printExpression(expression);
+                append(".length");
+            }
+
+            @Override
+            public void visitArrayLoad(ExpressionDom expression, ExpressionDom index) {
+                printExpression(expression);
+                append("[");
+                printExpression(index);
+                append("]");
+            }
+
+            @Override
+            public void visitNewArray(String type, ExpressionDom length) {
+                append("new ");
+                append(Descriptor.getName(type));
+                append("[");
+                printExpression(length);
+                append("]");
+            }
+
+            @Override
+            public void visitNeg(ExpressionDom expression) {
+                append("-");
+                printExpression(expression);
+            }
+
+            @Override
+            public void visitObjectEquality(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                printBinary(lhs, RELATIONAL_OPERATORS[operator], rhs);
+            }
+        });
+
+        exit();
+    }
+
+    private void appendEscaped(char c, char quote) {
+        switch(c) {
+            case '\n': append("\\n"); break;
+            case '\r': append("\\r"); break;
+            case '\t': append("\\t"); break;
+            case '\\': append("\\\\"); break;
+            default:
+                if(c == quote)
+                    append('\\');
+                append(c);
+        }
+    }
+}
@@ -49,8 +49,9 @@ public class Descriptor {
             case "void": return Descriptor.VOID;
         }
 
+        // Such as "[I" for int[] and "[[Ljava/lang/String;" for java.lang.String[][]
         if(typeName.endsWith("[]"))
-            return "[L" + typeName.substring(0, typeName.length() - 2).replace(".", "/") + ";";
+            return "[" + getTypeDescriptor(get(typeName.substring(0, typeName.length() - 2)));
 
         /*if(typeName.startsWith("[L"))
             return typeName;*/
@@ -106,7 +107,7 @@ public class Descriptor {
                 return typeName;
         }
 
-        if(typeName.startsWith("[L"))
+        if(typeName.startsWith("["))
             return typeName;
 
         return "L" + typeName + ";";
@@ -155,6 +156,11 @@ public class Descriptor {
         return null;
     }
 
+    // Such as "I" for "[I" and "java/lang/String" for "[Ljava/lang/String;"
+    public static String getElementType(String arrayDescriptor) {
+        return getFieldDescriptorTypeDescriptor(arrayDescriptor.substring(1));
+    }
+
     public static String getReturnType(String methodDescriptor) {
         String typeName = Type.getReturnType(methodDescriptor).getClassName();
         return get(typeName);
@@ -173,6 +179,9 @@ public class Descriptor {
                 return descriptor;
         }
 
+        if(descriptor.startsWith("["))
+            return descriptor;
+
         return descriptor.substring(1, descriptor.length() - 1);
     }
 }
@@ -1,11 +1,13 @@
 package astava.java;
 
 import astava.tree.*;
+import org.objectweb.asm.tree.MethodNode;
 
 import java.util.*;
 import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -92,6 +94,50 @@ public class DomFactory {
         };
     }
 
+    // The body is built on first request and cached, such that signature-only consumers never build it. Errors in
+    // building the body, such as names which cannot be resolved, are thus thrown by the first getBody rather than when
+    // the method is declared; a body which failed to build is attempted again on the next request.
+    public static MethodDom lazyMethodDeclaration(int modifiers, String name, List<ParameterInfo> parameters, String returnType, Supplier<StatementDom> bodySupplier) {
+        return new MethodDom() {
+            private volatile StatementDom body;
+
+            @Override
+            public int getModifier() {
+                return modifiers;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public List<ParameterInfo> getParameterTypes() {
+                return parameters;
+            }
+
+            @Override
+            public String getReturnTypeName() {
+                return returnType;
+            }
+
+            @Override
+            public StatementDom getBody() {
+                StatementDom result = body;
+
+                if(result == null) {
+                    synchronized (this) {
+                        result = body;
+                        if(result == null)
+                            body = result = bodySupplier.get();
+                    }
+                }
+
+                return result;
+            }
+        };
+    }
+
     public static StatementDom ret() {
         return new AbstractStatementDom() {
             @Override
@@ -1220,6 +1266,31 @@ public class DomFactory {
             v.visitMethodBody();
     }
 
+    // The raw bytecode of a method, e.g. for the methods which cannot be decompiled
+    public static StatementDom asm(MethodNode methodNode) {
+        return new AbstractStatementDom() {
+            @Override
+            protected StatementDomVisitor compare(CodeDomComparison context, Consumer<Boolean> r) {
+                return new DefaultStatementDomVisitor() {
+                    @Override
+                    public void visitASM(MethodNode otherMethodNode) {
+                        r.accept(methodNode == otherMethodNode);
+                    }
+                };
+            }
+
+            @Override
+            public void accept(StatementDomVisitor visitor) {
+                visitor.visitASM(methodNode);
+            }
+
+            @Override
+            public String toString() {
+                return "bytecode of " + methodNode.name + methodNode.desc;
+            }
+        };
+    }
+
     public static String arithmeticResultType(String lhsType, String rhsType) {
         switch(lhsType) {
             case Descriptor.BYTE:
@@ -1432,6 +1503,31 @@ public class DomFactory {
         };
     }
 
+    // The following code originates from the given line of the source file
+    public static StatementDom lineNumber(int line) {
+        return new AbstractStatementDom() {
+            @Override
+            protected StatementDomVisitor compare(CodeDomComparison context, Consumer<Boolean> r) {
+                return new DefaultStatementDomVisitor() {
+                    @Override
+                    public void visitLineNumber(int otherLine) {
+                        r.accept(line == otherLine);
+                    }
+                };
+            }
+
+            @Override
+            public void accept(StatementDomVisitor visitor) {
+                visitor.visitLineNumber(line);
+            }
+
+            @Override
+            public String toString() {
+                return "line " + line;
+            }
+        };
+    }
+
     public static ExpressionDom arrayLength(ExpressionDom expression) {
         return new AbstractExpressionDom() {
             @Override
@@ -1484,6 +1580,61 @@ public class DomFactory {
         };
     }
 
+    public static ExpressionDom arrayLoad(ExpressionDom expression, ExpressionDom index) {
+        return new AbstractExpressionDom() {
+            @Override
+            protected ExpressionDomVisitor compare(CodeDomComparison context, Consumer<Boolean> r) {
+                return new DefaultExpressionDomVisitor() {
+                    @Override
+                    public void visitArrayLoad(ExpressionDom otherExpression, ExpressionDom otherIndex) {
+                        r.accept(
+                            expression.equals(otherExpression, context) &&
+                            index.equals(otherIndex, context)
+                        );
+                    }
+                };
+            }
+
+            @Override
+            public void accept(ExpressionDomVisitor visitor) {
+                visitor.visitArrayLoad(expression, index);
+            }
+
+            @Override
+            public String toString() {
+                return expression + "[" + index + "]";
+            }
+        };
+    }
+
+    // The type is that of the elements
+    public static ExpressionDom newArray(String type, ExpressionDom length) {
+        return new AbstractExpressionDom() {
+            @Override
+            protected ExpressionDomVisitor compare(CodeDomComparison context, Consumer<Boolean> r) {
+                return new DefaultExpressionDomVisitor() {
+                    @Override
+                    public void visitNewArray(String otherType, ExpressionDom otherLength) {
+                        r.accept(
+                            type.equals(otherType) &&
+                            length.equals(otherLength, context)
+                        );
+                    }
+                };
+            }
+
+            @Override
+            public void accept(ExpressionDomVisitor visitor) {
+                visitor.visitNewArray(type, length);
+            }
+
+            @Override
+            public String toString() {
+                return "new " + Descriptor.getName(type) + "[" + length + "]";
+            }
+        };
+    }
+
     public static ExpressionDom neg(ExpressionDom expression) {
         return new AbstractExpressionDom() {
             @Override
@@ -7,4 +7,17 @@ public class RelationalOperator {
     public static final int GE = 3;
     public static final int EQ = 4;
     public static final int NE = 5;
+
+    public static int negate(int operator) {
+        switch (operator) {
+            case LT: return GE;
+            case LE: return GT;
+            case GT: return LE;
+            case GE: return LT;
+            case EQ: return NE;
+            case NE: return EQ;
+        }
+
+        throw new IllegalArgumentException("Unknown operator: " + operator);
+    }
 }
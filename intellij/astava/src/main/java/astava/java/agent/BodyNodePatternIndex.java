@@ -0,0 +1,137 @@
+package astava.java.agent;
+
+import astava.java.gen.DecompileCache;
+import astava.java.gen.MethodGenerator;
+import astava.java.parser.ClassInspector;
+import astava.java.parser.ClassResolver;
+import astava.java.parser.MutableClassDeclaration;
+import astava.tree.CodeDom;
+import astava.tree.CodeDomPatternKey;
+import astava.tree.ParameterInfo;
+import astava.tree.StatementDom;
+import astava.tree.Util;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.ParameterNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Discrimination net over body patterns: patterns are bucketed by the (kind, value) key of the nodes they can match,
+// such that a single traversal of a method body only tests the patterns that may apply at each node. Body patterns
+// chained with andThen share one index, so the body of each method is decompiled and traversed once for all of them.
+// At each node, the first pattern added which matches is applied.
+public class BodyNodePatternIndex implements DeclaringMethodNodeExtenderElement {
+    private static class Entry {
+        private final int index;
+        private final DeclaringClassNodeExtenderElementBodyNodePredicate predicate;
+        private final DeclaringBodyNodeExtenderElement element;
+
+        private Entry(int index, DeclaringClassNodeExtenderElementBodyNodePredicate predicate, DeclaringBodyNodeExtenderElement element) {
+            this.index = index;
+            this.predicate = predicate;
+            this.element = element;
+        }
+    }
+
+    private final ArrayList<Entry> entries = new ArrayList<>();
+    private final Hashtable<List<Object>, List<Entry>> keyedEntries = new Hashtable<>();
+    private final ArrayList<Entry> unkeyedEntries = new ArrayList<>();
+    private final Hashtable<List<Object>, List<Entry>> candidateCache = new Hashtable<>();
+
+    @Override
+    public DeclaringMethodNodeExtenderElement andThen(DeclaringMethodNodeExtenderElement next) {
+        if(!(next instanceof BodyNodePatternIndex))
+            return DeclaringMethodNodeExtenderElement.super.andThen(next);
+
+        BodyNodePatternIndex combined = new BodyNodePatternIndex();
+        entries.forEach(x -> combined.add(x.predicate, x.element));
+        ((BodyNodePatternIndex)next).entries.forEach(x -> combined.add(x.predicate, x.element));
+        return combined;
+    }
+
+    public BodyNodePatternIndex add(DeclaringClassNodeExtenderElementBodyNodePredicate predicate, DeclaringBodyNodeExtenderElement element) {
+        Entry entry = new Entry(entries.size(), predicate, element);
+        entries.add(entry);
+
+        List<Object> key = predicate.getKey();
+        if(key != null)
+            keyedEntries.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+        else
+            unkeyedEntries.add(entry);
+
+        candidateCache.clear();
+
+        return this;
+    }
+
+    private List<Entry> getCandidates(CodeDom dom) {
+        List<Object> key = CodeDomPatternKey.of(dom);
+
+        if(key == null)
+            return unkeyedEntries;
+
+        // Values no pattern is keyed by share the candidates of their kind, so the cache is bounded by the patterns
+        // and kinds rather than growing with each literal and name seen
+        if(!keyedEntries.containsKey(key))
+            key = CodeDomPatternKey.of((String)key.get(0), null);
+
+        return candidateCache.computeIfAbsent(key, k -> {
+            List<Entry> exact = keyedEntries.getOrDefault(k, Collections.emptyList());
+            List<Entry> anyValue = k.get(1) != null
+                ? keyedEntries.getOrDefault(CodeDomPatternKey.of((String)k.get(0), null), Collections.emptyList())
+                : Collections.emptyList();
+
+            // Patterns are tried in the order they were added
+            return Stream.of(exact, anyValue, unkeyedEntries)
+                .flatMap(x -> x.stream())
+                .sorted(Comparator.comparingInt(x -> x.index))
+                .collect(Collectors.toList());
+        });
+    }
+
+    public CodeDom map(ClassNode classNode, MutableClassDeclaration thisClass, ClassResolver classResolver, MethodNode methodNode, CodeDom body) {
+        // Captures are per call, as the same transformer may run for several classes at once, and are cleared before
+        // each test, as a failed test may leave captures behind. Each match gets captures of its own to keep.
+        Hashtable<String, Object> captures = new Hashtable<>();
+
+        return Util.<CodeDom>map(body, (traverser, dom) -> {
+            for (Entry entry : getCandidates(dom)) {
+                captures.clear();
+                if (entry.predicate.test(classNode, thisClass, classResolver, methodNode, dom, captures))
+                    return entry.element.map(classNode, thisClass, classResolver, methodNode, dom, new Hashtable<>(captures));
+            }
+
+            return traverser.apply(dom);
+        });
+    }
+
+    @Override
+    public DeclaringMethodNodeExtenderTransformer declare(ClassNode classNode, MutableClassDeclaration thisClass, ClassResolver classResolver, MethodNode methodNode) {
+        StatementDom body = DecompileCache.getDefault().decompile(methodNode);
+
+        return new DeclaringMethodNodeExtenderTransformer() {
+            @Override
+            public void transform(ClassNode classNode, MutableClassDeclaration thisClass, ClassResolver classResolver, ClassInspector classInspector, MethodNode methodNode, GeneratorAdapter generator, InsnList originalInstructions) {
+                CodeDom replacement = map(classNode, thisClass, classResolver, methodNode, body);
+
+                Type[] argumentTypes = Type.getArgumentTypes(methodNode.desc);
+                List<ParameterInfo> parameters = IntStream.range(0, argumentTypes.length).mapToObj(i -> new ParameterInfo(
+                    argumentTypes[i].getDescriptor(),
+                    methodNode.parameters != null ? ((ParameterNode)methodNode.parameters.get(i)).name : "arg" + i
+                )).collect(Collectors.toList());
+                MethodGenerator methodGenerator = new MethodGenerator(classNode.name, parameters, (StatementDom)replacement);
+                methodGenerator.populateMethodBody(methodNode, originalInstructions, generator);
+            }
+        };
+    }
+}
@@ -37,15 +37,7 @@ public interface DeclaringClassNodeExtenderElement extends ClassNodeExtender {
         DeclaringClassNodeExtenderTransformer transformer = this.declare(classNode, thisClass, classResolver);
 
         if(transformer.willTransform()) {
-            ClassInspector classInspectorForThis = new ClassInspector() {
-                @Override
-                public ClassDeclaration getClassDeclaration(String name) {
-                    //if(Descriptor.get(name).equals(thisClass.getName()))
-                    if (name.equals(thisClass.getName()))
-                        return thisClass;
-                    return classInspector.getClassDeclaration(name);
-                }
-            };
+            ClassInspector classInspectorForThis = new ThisClassInspector(thisClass, classInspector);
 
             transformer.transform(classNode, thisClass, classResolver, classInspectorForThis);
 
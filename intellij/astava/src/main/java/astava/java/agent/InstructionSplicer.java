@@ -0,0 +1,181 @@
+package astava.java.agent;
+
+import astava.java.gen.MethodGenerator;
+import astava.java.parser.ClassInspector;
+import astava.java.parser.ClassResolver;
+import astava.java.parser.MutableClassDeclaration;
+import astava.tree.ParameterInfo;
+import astava.tree.StatementDom;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AnalyzerAdapter;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.tree.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Splices snippets of instructions into methods at their entry, before their returns and around call sites, leaving
+// all other instructions, including the frames, as they are. Unlike the transformers of MethodNodeExtenderFactory,
+// neither the method is decompiled nor are its frames recomputed, so the cost does not grow with the size of the method.
+// Snippets must be straight-line code leaving the stack as they found it, i.e. without jumps, switches, returns,
+// throws or exception handlers; at the entry of a constructor, they run before the super constructor is called. Local
+// variables of a snippet beyond the parameters are moved above those of the method.
+public class InstructionSplicer {
+    public static DeclaringMethodNodeExtenderTransformer atEntry(BiFunction<ClassNode, MethodNode, InsnList> snippetFunc) {
+        return splicer((classNode, methodNode, instructions) -> {
+            Snippet snippet = new Snippet(classNode, methodNode, snippetFunc.apply(classNode, methodNode), true);
+            instructions.insert(snippet.copy());
+            methodNode.maxStack = Math.max(methodNode.maxStack, snippet.maxStack);
+        });
+    }
+
+    public static DeclaringMethodNodeExtenderTransformer beforeReturns(BiFunction<ClassNode, MethodNode, InsnList> snippetFunc) {
+        return splicer((classNode, methodNode, instructions) -> {
+            Snippet snippet = new Snippet(classNode, methodNode, snippetFunc.apply(classNode, methodNode), false);
+            boolean spliced = false;
+            for(AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                if(insn.getOpcode() >= Opcodes.IRETURN && insn.getOpcode() <= Opcodes.RETURN) {
+                    instructions.insertBefore(insn, snippet.copy());
+                    spliced = true;
+                }
+            }
+            // The returned value may be on the stack
+            if(spliced)
+                methodNode.maxStack += snippet.maxStack;
+        });
+    }
+
+    // Either snippet may be null
+    public static DeclaringMethodNodeExtenderTransformer aroundCalls(Predicate<MethodInsnNode> callSite, BiFunction<ClassNode, MethodNode, InsnList> beforeFunc, BiFunction<ClassNode, MethodNode, InsnList> afterFunc) {
+        return splicer((classNode, methodNode, instructions) -> {
+            Snippet before = beforeFunc != null ? new Snippet(classNode, methodNode, beforeFunc.apply(classNode, methodNode), false) : null;
+            Snippet after = afterFunc != null ? new Snippet(classNode, methodNode, afterFunc.apply(classNode, methodNode), false) : null;
+            // The call sites are collected first, such that calls within the spliced snippets are not spliced around
+            ArrayList<MethodInsnNode> calls = new ArrayList<>();
+            for(AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                if(insn instanceof MethodInsnNode && callSite.test((MethodInsnNode)insn))
+                    calls.add((MethodInsnNode)insn);
+            }
+            for (MethodInsnNode call : calls) {
+                if(before != null)
+                    instructions.insertBefore(call, before.copy());
+                if(after != null)
+                    instructions.insert(call, after.copy());
+            }
+            // The arguments or the result of the call may be on the stack
+            if(!calls.isEmpty())
+                methodNode.maxStack += Math.max(before != null ? before.maxStack : 0, after != null ? after.maxStack : 0);
+        });
+    }
+
+    // The statement generated as a snippet for the method; the parameters are accessible by their names
+    public static InsnList generate(ClassNode classNode, MethodNode methodNode, StatementDom statement) {
+        Type[] argumentTypes = Type.getArgumentTypes(methodNode.desc);
+        List<ParameterInfo> parameters = IntStream.range(0, argumentTypes.length).mapToObj(i -> new ParameterInfo(
+            argumentTypes[i].getDescriptor(),
+            methodNode.parameters != null ? ((ParameterNode)methodNode.parameters.get(i)).name : "arg" + i
+        )).collect(Collectors.toList());
+
+        MethodNode snippetNode = new MethodNode(Opcodes.ASM5, methodNode.access, methodNode.name, methodNode.desc, null, null);
+        MethodGenerator.generate(snippetNode, (mn, generator) -> {
+            MethodGenerator methodGenerator = new MethodGenerator(classNode.name, parameters, statement);
+            methodGenerator.populateMethodBody(snippetNode, methodNode.instructions, generator);
+        });
+
+        if(!snippetNode.tryCatchBlocks.isEmpty())
+            throw new IllegalArgumentException("Snippets cannot handle exceptions.");
+
+        return snippetNode.instructions;
+    }
+
+    private interface Splice {
+        void splice(ClassNode classNode, MethodNode methodNode, InsnList instructions);
+    }
+
+    private static DeclaringMethodNodeExtenderTransformer splicer(Splice splice) {
+        return new DeclaringMethodNodeExtenderTransformer() {
+            @Override
+            public void transform(ClassNode classNode, MutableClassDeclaration thisClass, ClassResolver classResolver, ClassInspector classInspector, MethodNode methodNode) {
+                splice.splice(classNode, methodNode, methodNode.instructions);
+            }
+
+            // Within a sequence of transformers regenerating the method, the snippets are spliced into the
+            // instructions passed on to the others
+            @Override
+            public void transform(ClassNode classNode, MutableClassDeclaration thisClass, ClassResolver classResolver, ClassInspector classInspector, MethodNode methodNode, GeneratorAdapter generator, InsnList originalInstructions) {
+                splice.splice(classNode, methodNode, originalInstructions);
+            }
+        };
+    }
+
+    private static class Snippet {
+        private final InsnList instructions = new InsnList();
+        private final int maxStack;
+
+        private Snippet(ClassNode classNode, MethodNode methodNode, InsnList snippet, boolean keepLineNumbers) {
+            int firstLocal = (Type.getArgumentsAndReturnSizes(methodNode.desc) >> 2) - ((methodNode.access & Opcodes.ACC_STATIC) != 0 ? 1 : 0);
+            int shift = Math.max(0, methodNode.maxLocals - firstLocal);
+            int maxLocals = methodNode.maxLocals;
+
+            HashMap<LabelNode, LabelNode> labels = getLabels(snippet);
+            for(AbstractInsnNode insn = snippet.getFirst(); insn != null; insn = insn.getNext()) {
+                int opcode = insn.getOpcode();
+                if(insn instanceof JumpInsnNode || insn instanceof TableSwitchInsnNode || insn instanceof LookupSwitchInsnNode ||
+                    insn instanceof FrameNode || opcode == Opcodes.ATHROW || opcode == Opcodes.RET || (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN))
+                    throw new IllegalArgumentException("Snippets must be straight-line code, but found instruction with opcode " + opcode + ".");
+                if(insn instanceof LineNumberNode && !keepLineNumbers)
+                    continue;
+
+                AbstractInsnNode copy = insn.clone(labels);
+                if(copy instanceof VarInsnNode && ((VarInsnNode)copy).var >= firstLocal) {
+                    VarInsnNode varInsn = (VarInsnNode)copy;
+                    varInsn.var += shift;
+                    boolean isWide = opcode == Opcodes.LLOAD || opcode == Opcodes.DLOAD || opcode == Opcodes.LSTORE || opcode == Opcodes.DSTORE;
+                    maxLocals = Math.max(maxLocals, varInsn.var + (isWide ? 2 : 1));
+                } else if(copy instanceof IincInsnNode && ((IincInsnNode)copy).var >= firstLocal) {
+                    IincInsnNode iincInsn = (IincInsnNode)copy;
+                    iincInsn.var += shift;
+                    maxLocals = Math.max(maxLocals, iincInsn.var + 1);
+                }
+                instructions.add(copy);
+            }
+
+            methodNode.maxLocals = maxLocals;
+
+            // Straight-line code is simulated in a single pass
+            MethodNode simulated = new MethodNode(Opcodes.ASM5, methodNode.access, methodNode.name, methodNode.desc, null, null);
+            AnalyzerAdapter analyzer = new AnalyzerAdapter(classNode.name, methodNode.access, methodNode.name, methodNode.desc, simulated);
+            analyzer.visitCode();
+            instructions.accept(analyzer);
+            // The frames of the method are kept, so they must still hold after the snippet
+            if(!analyzer.stack.isEmpty())
+                throw new IllegalArgumentException("Snippets must leave the stack as they found it, but left " + analyzer.stack + ".");
+            analyzer.visitMaxs(0, 0);
+            this.maxStack = simulated.maxStack;
+        }
+
+        private static HashMap<LabelNode, LabelNode> getLabels(InsnList instructions) {
+            HashMap<LabelNode, LabelNode> labels = new HashMap<>();
+            for(AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                if(insn instanceof LabelNode)
+                    labels.put((LabelNode)insn, new LabelNode());
+            }
+            return labels;
+        }
+
+        // A copy for a place of its own
+        private InsnList copy() {
+            InsnList copy = new InsnList();
+            HashMap<LabelNode, LabelNode> labels = getLabels(instructions);
+            for(AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext())
+                copy.add(insn.clone(labels));
+            return copy;
+        }
+    }
+}
@@ -43,6 +43,16 @@ public class MethodNodeExtenderFactory {
         };
     }
 
+    // Like prepend and append, but spliced into the instructions rather than regenerating the method; the statement
+    // must not branch (see InstructionSplicer)
+    public static DeclaringMethodNodeExtenderTransformer spliceAtEntry(StatementDom statement) {
+        return InstructionSplicer.atEntry((classNode, methodNode) -> InstructionSplicer.generate(classNode, methodNode, statement));
+    }
+
+    public static DeclaringMethodNodeExtenderTransformer spliceBeforeReturns(StatementDom statement) {
+        return InstructionSplicer.beforeReturns((classNode, methodNode) -> InstructionSplicer.generate(classNode, methodNode, statement));
+    }
+
     public static DeclaringMethodNodeExtenderTransformer append(Function<MethodNode, StatementDom> statementFunc) {
         return (classNode, thisClass, classResolver, classInspector, methodNode, g, originalInstructions) -> {
             /*InsnList originalInstructions = new InsnList();
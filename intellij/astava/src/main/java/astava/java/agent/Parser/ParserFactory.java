@@ -18,16 +18,50 @@ import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class ParserFactory {
+    private static final int MAX_CACHED_PARSES = 1024;
+
     private ClassResolver classResolver;
     private ClassInspector classInspector;
+    // Parse results of each kind of snippet by source, such that snippets produced anew for each transformed class are
+    // parsed once. The results only depend on the source and on the resolver and inspector of the factory; the least
+    // recently used are evicted first.
+    private final ParseCache<List<DomBuilder>> classModifications = new ParseCache<>();
+    private final ParseCache<List<ClassNodePredicate>> classPredicates = new ParseCache<>();
+    private final ParseCache<List<DeclaringClassNodeExtenderElementMethodNodePredicate>> methodPredicates = new ParseCache<>();
+    private final ParseCache<List<DeclaringMethodNodeExtenderElement>> methodModifications = new ParseCache<>();
+    private final ParseCache<DeclaringClassNodeExtenderElementBodyNodePredicate> bodyPredicates = new ParseCache<>();
+    private final ParseCache<DeclaringBodyNodeExtenderElement> bodyModifications = new ParseCache<>();
+
+    private static class ParseCache<T> {
+        private final Map<String, T> parses = Collections.synchronizedMap(new LinkedHashMap<String, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > MAX_CACHED_PARSES;
+            }
+        });
+
+        private T parse(String sourceCode, Function<Parser, T> parse) throws IOException {
+            T result = parses.get(sourceCode);
+            if(result == null) {
+                // Parsed outside the lock; a source parsed concurrently is merely parsed twice
+                result = parse.apply(new Parser(sourceCode));
+                if(result != null)
+                    parses.put(sourceCode, result);
+            }
+            return result;
+        }
+    }
 
     public ParserFactory(ClassResolver classResolver, ClassInspector classInspector) {
         this.classResolver = classResolver;
         this.classInspector = classInspector;
+        // Snippets are usually parsed right after
+        Parser.warmUp();
     }
 
     public DeclaringClassNodeExtenderElement modClass(String sourceCode) throws IOException {
-        List<DeclaringClassNodeExtenderElement> elements = new Parser(sourceCode).parse(classResolver).stream().map(d -> new DeclaringClassNodeExtenderElement() {
+        List<DomBuilder> builders = classModifications.parse(sourceCode, p -> p.parse(classResolver));
+        List<DeclaringClassNodeExtenderElement> elements = builders.stream().map(d -> new DeclaringClassNodeExtenderElement() {
             @Override
             public DeclaringClassNodeExtenderTransformer declare(ClassNode classNode, MutableClassDeclaration thisClass, ClassResolver classResolver) {
                 d.accept(new DefaultDomBuilderVisitor() {
@@ -88,7 +122,7 @@ public class ParserFactory {
     }
 
     public DeclaringClassNodeExtenderElementPredicate whenClass(String sourceCode) throws IOException {
-        List<ClassNodePredicate> predicates = new Parser(sourceCode).parseClassPredicates(classInspector);
+        List<ClassNodePredicate> predicates = classPredicates.parse(sourceCode, p -> p.parseClassPredicates(classInspector));
 
         return (classNode, thisClass, classResolver1) ->
             predicates.stream().allMatch(p -> p.test(classNode, classResolver1));
@@ -107,7 +141,7 @@ public class ParserFactory {
     }
 
     public DeclaringClassNodeExtenderElementMethodNodePredicate whenMethod(String sourceCode) throws IOException {
-        List<DeclaringClassNodeExtenderElementMethodNodePredicate> predicates = new Parser(sourceCode).parseMethodPredicates();
+        List<DeclaringClassNodeExtenderElementMethodNodePredicate> predicates = methodPredicates.parse(sourceCode, p -> p.parseMethodPredicates());
 
         return (classNode, thisClass, classResolver1, methodNode) ->
             predicates.stream().allMatch(p -> p.test(classNode, thisClass, classResolver1, methodNode));
@@ -120,7 +154,7 @@ public class ParserFactory {
 
 
     public DeclaringMethodNodeExtenderElement modMethod(String sourceCode) throws IOException {
-        List<DeclaringMethodNodeExtenderElement> predicates = new Parser(sourceCode).parseMethodModifications(classResolver, classInspector);
+        List<DeclaringMethodNodeExtenderElement> predicates = methodModifications.parse(sourceCode, p -> p.parseMethodModifications(classResolver, classInspector));
 
         return predicates.stream().reduce((x, y) -> x.andThen(y)).get();
     }
@@ -150,7 +184,7 @@ public class ParserFactory {
     }
 
     public DeclaringClassNodeExtenderElementBodyNodePredicate whenBody(String sourceCode) throws IOException {
-        return new Parser(sourceCode).parseBodyPredicates();
+        return bodyPredicates.parse(sourceCode, p -> p.parseBodyPredicates());
     }
 
     public DeclaringBodyNodeExtenderElement modBody(String sourceCode) throws IOException {
@@ -158,9 +192,9 @@ public class ParserFactory {
             @Override
             public CodeDom map(ClassNode classNode, MutableClassDeclaration thisClass, ClassResolver classResolver, MethodNode methodNode, CodeDom dom, Map<String, Object> captures) {
                 try {
-                    return new Parser(sourceCode)
-                        .parseBodyModifications(classInspector, captures)
-                        .map(classNode, thisClass, classResolver, methodNode, dom, captures);
+                    // The captures are only used when mapping
+                    DeclaringBodyNodeExtenderElement modification = bodyModifications.parse(sourceCode, p -> p.parseBodyModifications(classInspector, captures));
+                    return modification.map(classNode, thisClass, classResolver, methodNode, dom, captures);
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
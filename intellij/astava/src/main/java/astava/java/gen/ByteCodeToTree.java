@@ -8,17 +8,56 @@ import astava.tree.*;
 import org.objectweb.asm.*;
 import org.objectweb.asm.commons.InstructionAdapter;
 import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.ParameterNode;
+import org.objectweb.asm.util.Printer;
 
 import java.lang.reflect.Modifier;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 // Inspired by: http://www.javacodegeeks.com/2013/12/anatomy-of-a-java-decompiler.html
+// Instructions which cannot be represented as doms, such as monitors, invokedynamic, multi-dimensional array creation
+// and the dups of array initializers, make the whole method fall back to its raw bytecode (see DomFactory.asm), since
+// the stack cannot be modelled past them. Exception
+// tables are turned into try-catch statements by ControlFlowStructurer, which is why even the flat block has them
+// recovered when there are handlers.
 public class ByteCodeToTree extends InstructionAdapter {
-    private MethodNode methodNode;
+    private final int access;
+    private final String descriptor;
+    private final int parameterCount;
+    // Null when visited directly from a ClassReader, in which case there is no raw bytecode to fall back to
+    private final MethodNode methodNode;
+    // Local variable slot to argument index
+    private final Hashtable<Integer, Integer> argumentSlots = new Hashtable<>();
+    private final int firstLocalSlot;
+    private String unsupportedInstruction;
     private Type returnType;
+    private ArrayList<String> parameterNames = new ArrayList<>();
     private Hashtable<Integer, String> varToName = new Hashtable<>();
+    // Entries of the local variable table by slot, which tell the variables sharing a slot apart by their ranges
+    private Hashtable<Integer, List<LocalVariable>> localVariables = new Hashtable<>();
+    // The name of the variable in the tree of each distinct name and descriptor in the local variable table
+    private Hashtable<String, String> localVariableTreeNames = new Hashtable<>();
+    // Ranges are compared by the number of variable accesses visited before their labels
+    private Hashtable<Label, Integer> labelPositions = new Hashtable<>();
+    private int variableAccessCount;
+    private HashSet<String> declaredVars = new HashSet<>();
+
+    private static class LocalVariable {
+        private final String name;
+        private final String desc;
+        private final Label start;
+        private final Label end;
+
+        private LocalVariable(String name, String desc, Label start, Label end) {
+            this.name = name;
+            this.desc = desc;
+            this.start = start;
+            this.end = end;
+        }
+    }
 
     private interface ExpressionBuilder {
         default boolean isConstant() {
@@ -30,12 +69,79 @@ public class ByteCodeToTree extends InstructionAdapter {
     }
 
     public StatementDom getBlock() {
+        if(!isSupported())
+            return getRawBody();
+        if(exceptionHandlers.isEmpty())
+            return DomFactory.block(getStatements());
+        return structure(getStatements(), false);
+    }
+
+    // Like getBlock, but with if, if-else and switch regions recovered from the jumps
+    public StatementDom getStructuredBlock() {
+        return isSupported() ? structure(getStatements(), true) : getRawBody();
+    }
+
+    // Like getStructuredBlock, but with constants and copies propagated and dead stores eliminated
+    public StatementDom getOptimizedBlock() {
+        if(!isSupported())
+            return getRawBody();
+
+        List<StatementDom> statements = getStatements();
+        try {
+            return new ControlFlowStructurer(SSAOptimizer.optimize(statements, exceptionHandlers), exceptionHandlers).structure();
+        } catch (UnsupportedOperationException e) {
+            // Optimization may make the copies of a finally block differ, which are then left unoptimized
+            return structure(statements, true);
+        }
+    }
+
+    private StatementDom structure(List<StatementDom> statements, boolean structureBranches) {
+        try {
+            ControlFlowStructurer structurer = new ControlFlowStructurer(statements, exceptionHandlers);
+            return structureBranches ? structurer.structure() : structurer.structureTryCatch();
+        } catch (UnsupportedOperationException e) {
+            // Exception tables, which do not correspond to try-catch statements, are kept as bytecode
+            unsupported(e.getMessage());
+            return getRawBody();
+        }
+    }
+
+    public List<ExceptionHandler> getExceptionHandlers() {
+        return exceptionHandlers;
+    }
+
+    private StatementDom getRawBody() {
+        if(methodNode == null)
+            throw new UnsupportedOperationException("Unsupported instruction: " + unsupportedInstruction + ".");
+        return DomFactory.asm(methodNode);
+    }
+
+    // Whether all visited instructions could be represented as doms
+    public boolean isSupported() {
+        return unsupportedInstruction == null;
+    }
+
+    // The first instruction which could not be represented, or null
+    public String getUnsupportedInstruction() {
+        return unsupportedInstruction;
+    }
+
+    private void unsupported(int opcode) {
+        unsupported(Printer.OPCODES[opcode].toLowerCase());
+    }
+
+    private void unsupported(String instruction) {
+        if(unsupportedInstruction == null)
+            unsupportedInstruction = instruction;
+    }
+
+    private List<StatementDom> getStatements() {
         ArrayList<StatementDom> statements = new ArrayList<>();
 
         statementBuilders.forEach(x ->
             x.accept(statements));
 
-        return DomFactory.block(statements);
+        return statements;
     }
 
     private static class LocalFrame {
@@ -54,11 +160,51 @@ public class ByteCodeToTree extends InstructionAdapter {
 
     private Stack<LocalFrame> localFrames = new Stack<>();
 
+    public static StatementDom decompile(MethodNode methodNode) {
+        return decompile(methodNode, false);
+    }
+
+    // With optimize, the body is that of getOptimizedBlock
+    public static StatementDom decompile(MethodNode methodNode, boolean optimize) {
+        ByteCodeToTree byteCodeToTree = new ByteCodeToTree(methodNode);
+        try {
+            methodNode.accept(byteCodeToTree);
+            return optimize ? byteCodeToTree.getOptimizedBlock() : byteCodeToTree.getStructuredBlock();
+        } catch (RuntimeException e) {
+            // Rather keep the method as is than fail the transformation of the class
+            return DomFactory.asm(methodNode);
+        }
+    }
+
     public ByteCodeToTree(MethodNode methodNode) {
+        this(methodNode.access, methodNode.desc, methodNode);
+        if(methodNode.parameters != null) {
+            for (Object parameter : methodNode.parameters)
+                parameterNames.add(((ParameterNode)parameter).name);
+        }
+    }
+
+    // For use as the method visitor of a ClassReader; see ClassDecompiler
+    public ByteCodeToTree(int access, String descriptor) {
+        this(access, descriptor, null);
+    }
+
+    private ByteCodeToTree(int access, String descriptor, MethodNode methodNode) {
         super(Opcodes.ASM5, new MethodVisitor(Opcodes.ASM5, null) {
         });
+        this.access = access;
+        this.descriptor = descriptor;
         this.methodNode = methodNode;
-        this.returnType = Type.getReturnType(methodNode.desc);
+        this.returnType = Type.getReturnType(descriptor);
+
+        Type[] argumentTypes = Type.getArgumentTypes(descriptor);
+        int slot = Modifier.isStatic(access) ? 0 : 1;
+        for(int i = 0; i < argumentTypes.length; i++) {
+            argumentSlots.put(slot, i);
+            slot += argumentTypes[i].getSize();
+        }
+        this.parameterCount = argumentTypes.length;
+        this.firstLocalSlot = slot;
     }
 
     private int stackIndex = 0;
@@ -66,7 +212,15 @@ public class ByteCodeToTree extends InstructionAdapter {
     private int stackVariableNo = 0;
     private Hashtable<String, Integer> varAssignCount = new Hashtable<>();
     private Hashtable<String, ExpressionBuilder> stackVarValues = new Hashtable<>();
+    // The number of jump targets visited when each stack variable was pushed
+    private Hashtable<String, Integer> stackVarJoinCounts = new Hashtable<>();
+    private int joinCount;
     private HashSet<Object> labelUsages = new HashSet<>();
+    private ArrayList<ExceptionHandler> exceptionHandlers = new ArrayList<>();
+    // The variable holding the caught exception of each handler
+    private Hashtable<Label, String> handlerVariableNames = new Hashtable<>();
+    // Bounds and handlers of exception table entries, which are marked whether or not they are jumped to
+    private HashSet<Label> exceptionLabels = new HashSet<>();
     private ArrayList<Consumer<List<StatementDom>>> statementBuilders = new ArrayList<>();
     private Hashtable<String, String> relabels = new Hashtable<>();
     private Hashtable<Label, Object> asmLabelToAstLabelMap = new Hashtable<>();
@@ -75,15 +229,38 @@ public class ByteCodeToTree extends InstructionAdapter {
         return asmLabelToAstLabelMap.computeIfAbsent(asmLabel, l -> "L" + asmLabelToAstLabelMap.size());
     }
 
+    private boolean isSelf(int index) {
+        return index == 0 && !Modifier.isStatic(access);
+    }
+
     private boolean isArgument(int index) {
-        return index > 0 && index <= Type.getArgumentTypes(methodNode.desc).length;
+        return argumentSlots.containsKey(index);
+    }
+
+    @Override
+    public void visitParameter(String name, int access) {
+        if(parameterNames.size() < parameterCount)
+            parameterNames.add(name);
+    }
+
+    // The local variable table is visited after the instructions, so the variable names are resolved when the
+    // statements are built. Arguments keep their generated names, which callers regenerating the method rely on.
+    // Entries of the same name and descriptor, such as those of two loops over i, become the same variable, and
+    // entries of the same name but another descriptor are told apart by a suffix.
+    @Override
+    public void visitLocalVariable(String name, String desc, String signature, Label start, Label end, int index) {
+        if(index >= firstLocalSlot && !varToName.containsKey(index)) {
+            String treeName = localVariableTreeNames.computeIfAbsent(name + " " + desc, k ->
+                localVariableTreeNames.containsValue(name) ? name + "$" + localVariableTreeNames.size() : name);
+            localVariables.computeIfAbsent(index, i -> new ArrayList<>()).add(new LocalVariable(treeName, desc, start, end));
+        }
     }
 
     public void prepareVariables(Consumer<MethodVisitor> accepter) {
         accepter.accept(new MethodVisitor(Opcodes.ASM5) {
             @Override
             public void visitLocalVariable(String name, String desc, String signature, Label start, Label end, int index) {
-                if (index > 0) {
+                if (!isSelf(index)) {
                     if (!varToName.containsKey(index)) {
                         varToName.put(index, name);
                     }
@@ -103,20 +280,18 @@ public class ByteCodeToTree extends InstructionAdapter {
 
     @Override
     public void invokespecial(String owner, String name, String desc, boolean itf) {
-        switch (state) {
-            case STATE_NEW_INSTANCE:
-                Type[] argumentTypes = Type.getArgumentTypes(desc);
-                List<String> parameterTypes = Arrays.asList(argumentTypes).stream().map(x -> x.getDescriptor()).collect(Collectors.toList());
-                List<ExpressionBuilder> arguments =
-                    Arrays.asList(argumentTypes).stream().map(x -> stackPop()).collect(Collectors.toList());
-                Collections.reverse(arguments);
-                stackPush(() -> DomFactory.newInstanceExpr(owner, parameterTypes, arguments.stream().map(x -> x.build()).collect(Collectors.toList())));
-                state = STATE_DEFAULT;
-
-                break;
-            default:
-                invoke(owner, name, desc, Invocation.SPECIAL);
-        }
+        // The constructor call of the innermost pending new instance
+        if(name.equals("<init>") && !newInstanceTypes.isEmpty() && newInstanceTypes.peek().equals(owner)) {
+            newInstanceTypes.pop();
+            Type[] argumentTypes = Type.getArgumentTypes(desc);
+            List<String> parameterTypes = Arrays.asList(argumentTypes).stream()
+                .map(x -> x.getSort() == Type.OBJECT ? x.getInternalName() : x.getDescriptor()).collect(Collectors.toList());
+            List<ExpressionBuilder> arguments =
+                Arrays.asList(argumentTypes).stream().map(x -> stackPop()).collect(Collectors.toList());
+            Collections.reverse(arguments);
+            stackPush(() -> DomFactory.newInstanceExpr(owner, parameterTypes, arguments.stream().map(x -> x.build()).collect(Collectors.toList())));
+        } else
+            invoke(owner, name, desc, Invocation.SPECIAL);
     }
 
     @Override
@@ -134,7 +309,7 @@ public class ByteCodeToTree extends InstructionAdapter {
         List<ExpressionBuilder> arguments =
             Arrays.asList(argumentTypes).stream().map(x -> stackPop()).collect(Collectors.toList());
         Collections.reverse(arguments);
-        ExpressionBuilder target = stackPop();
+        ExpressionBuilder target = invocation != Invocation.STATIC ? stackPop() : () -> null;
         if(Type.getReturnType(desc).equals(Type.VOID_TYPE))
             statementBuilders.add(statements ->
                 statements.add(DomFactory.invoke(invocation, owner, name, desc, target.build(), arguments.stream().map(x -> x.build()).collect(Collectors.toList()))));
@@ -142,16 +317,21 @@ public class ByteCodeToTree extends InstructionAdapter {
             stackPush(() -> DomFactory.invokeExpr(invocation, owner, name, desc, target.build(), arguments.stream().map(x -> x.build()).collect(Collectors.toList())));
     }
 
-    private final int STATE_DEFAULT = 0;
-    private final int STATE_NEW_INSTANCE = 1;
-    private int state = STATE_DEFAULT;
+    @Override
+    public void invokedynamic(String name, String desc, Handle bsm, Object[] bsmArgs) {
+        unsupported(Opcodes.INVOKEDYNAMIC);
+    }
+
+    // The types of the instances created but not yet initialized
+    private Stack<String> newInstanceTypes = new Stack<>();
+    private boolean expectsNewInstanceDup;
 
     @Override
     public void iinc(int var, int increment) {
-        String name = getVarName(var, Descriptor.get(int.class));
+        int position = useVar(var, Descriptor.get(int.class), false);
 
         statementBuilders.add(statements ->
-            statements.add(DomFactory.intIncVar(name, increment)));
+            statements.add(DomFactory.intIncVar(getVarName(var, position, false), increment)));
     }
 
     @Override
@@ -180,8 +360,59 @@ public class ByteCodeToTree extends InstructionAdapter {
 
     @Override
     public void aload(Type type) {
-        String typeStr = type.getDescriptor();
-        stackPush(() -> DomFactory.classLiteral(typeStr));
+        // Array loads
+        ExpressionBuilder index = stackPop();
+        ExpressionBuilder expression = stackPop();
+
+        stackPush(() -> DomFactory.arrayLoad(expression.build(), index.build()));
+    }
+
+    @Override
+    public void newarray(Type type) {
+        // The type is that of the elements, for both NEWARRAY and ANEWARRAY
+        ExpressionBuilder length = stackPop();
+        String elementType = Descriptor.getFieldDescriptorTypeDescriptor(type.getDescriptor());
+
+        stackPush(() -> DomFactory.newArray(elementType, length.build()));
+    }
+
+    @Override
+    public void multianewarray(String desc, int dims) {
+        unsupported(Opcodes.MULTIANEWARRAY);
+    }
+
+    @Override
+    public void monitorenter() {
+        unsupported(Opcodes.MONITORENTER);
+    }
+
+    @Override
+    public void monitorexit() {
+        unsupported(Opcodes.MONITOREXIT);
+    }
+
+    @Override
+    public void jsr(Label label) {
+        unsupported(Opcodes.JSR);
+    }
+
+    @Override
+    public void ret(int var) {
+        unsupported(Opcodes.RET);
+    }
+
+    @Override
+    public void nop() {
+    }
+
+    // Visited before the instructions
+    @Override
+    public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+        String variableName = handlerVariableNames.computeIfAbsent(handler, h -> "{e" + handlerVariableNames.size() + "}");
+        exceptionHandlers.add(new ExceptionHandler(start, end, handler, type, variableName));
+        exceptionLabels.add(start);
+        exceptionLabels.add(end);
+        exceptionLabels.add(handler);
     }
 
     @Override
@@ -199,19 +430,53 @@ public class ByteCodeToTree extends InstructionAdapter {
         This could be implemented by having a state machine
         */
 
-        switch (state) {
-            case STATE_DEFAULT:
-                state = STATE_NEW_INSTANCE;
-                break;
-        }
+        newInstanceTypes.push(type.getInternalName());
+        expectsNewInstanceDup = true;
     }
 
     @Override
     public void dup() {
-        switch (state) {
-            case STATE_NEW_INSTANCE:
-                break;
-        }
+        // Only the dup of the NEW, DUP, INVOKESPECIAL pattern is supported
+        if(expectsNewInstanceDup)
+            expectsNewInstanceDup = false;
+        else
+            unsupported(Opcodes.DUP);
+    }
+
+    @Override
+    public void dupX1() {
+        unsupported(Opcodes.DUP_X1);
+    }
+
+    @Override
+    public void dupX2() {
+        unsupported(Opcodes.DUP_X2);
+    }
+
+    @Override
+    public void dup2() {
+        unsupported(Opcodes.DUP2);
+    }
+
+    @Override
+    public void dup2X1() {
+        unsupported(Opcodes.DUP2_X1);
+    }
+
+    @Override
+    public void dup2X2() {
+        unsupported(Opcodes.DUP2_X2);
+    }
+
+    @Override
+    public void swap() {
+        unsupported(Opcodes.SWAP);
+    }
+
+    @Override
+    public void pop2() {
+        // Whether one or two values are popped depends on their types, which are not known
+        unsupported(Opcodes.POP2);
     }
 
     @Override
@@ -255,10 +520,15 @@ public class ByteCodeToTree extends InstructionAdapter {
         } else if(o == null) {
             stackPush(() -> DomFactory.nil());
         } else {
-
+            unsupported(Opcodes.LDC);
         }
     }
 
+    @Override
+    public void hconst(Handle handle) {
+        unsupported(Opcodes.LDC);
+    }
+
     @Override
     public void dconst(double v) {
         stackPush(() -> DomFactory.literal(v));
@@ -271,6 +541,11 @@ public class ByteCodeToTree extends InstructionAdapter {
 
     @Override
     public void tconst(Type type) {
+        if(type.getSort() == Type.METHOD) {
+            unsupported(Opcodes.LDC);
+            return;
+        }
+
         String descriptor = Descriptor.getFieldDescriptorTypeDescriptor(type.getDescriptor());
         stackPush(() -> DomFactory.classLiteral(descriptor));
     }
@@ -381,6 +656,15 @@ public class ByteCodeToTree extends InstructionAdapter {
         stackPush(() -> DomFactory.ushr(lhs.build(), rhs.build()));
     }
 
+    @Override
+    public void tableswitch(int min, int max, Label dflt, Label... labels) {
+        // Keys jumping to the default are left out
+        int[] keys = IntStream.rangeClosed(min, max).filter(k -> labels[k - min] != dflt).toArray();
+        Label[] keyLabels = Arrays.stream(keys).mapToObj(k -> labels[k - min]).toArray(Label[]::new);
+
+        lookupswitch(dflt, keys, keyLabels);
+    }
+
     @Override
     public void lookupswitch(Label dflt, int[] keys, Label[] labels) {
         ExpressionBuilder expression = stackPop();
@@ -393,121 +677,196 @@ public class ByteCodeToTree extends InstructionAdapter {
         LocalFrame lookupswitchFrame = new LocalFrame();
         lookupswitchFrame.type = LocalFrame.TYPE_SWITCH;
         lookupswitchFrame.dflt = dflt;
-        lookupswitchFrame.labels = labels;
+        // Cases sharing their body are entered once
+        lookupswitchFrame.labels = Arrays.stream(labels).distinct().filter(x -> x != dflt).toArray(Label[]::new);
         localFrames.push(lookupswitchFrame);
     }
 
+    // The result of LCMP, FCMPL, FCMPG, DCMPL or DCMPG, which is merged into the comparison of the following jump
+    private static class ComparisonBuilder implements ExpressionBuilder {
+        private final int opcode;
+        private final ExpressionBuilder lhs;
+        private final ExpressionBuilder rhs;
+
+        private ComparisonBuilder(int opcode, ExpressionBuilder lhs, ExpressionBuilder rhs) {
+            this.opcode = opcode;
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        public ExpressionDom build() {
+            // The comparison used as a value
+            switch (opcode) {
+                case Opcodes.LCMP:
+                    return DomFactory.invokeStaticExpr("java/lang/Long", "compare", "(JJ)I", Arrays.asList(lhs.build(), rhs.build()));
+                case Opcodes.FCMPG:
+                case Opcodes.DCMPG:
+                    // NaN compares greater
+                    return DomFactory.ifElseExpr(DomFactory.lt(lhs.build(), rhs.build()), DomFactory.literal(-1),
+                        DomFactory.ifElseExpr(DomFactory.eq(lhs.build(), rhs.build()), DomFactory.literal(0), DomFactory.literal(1)));
+                default:
+                    // NaN compares less
+                    return DomFactory.ifElseExpr(DomFactory.gt(lhs.build(), rhs.build()), DomFactory.literal(1),
+                        DomFactory.ifElseExpr(DomFactory.eq(lhs.build(), rhs.build()), DomFactory.literal(0), DomFactory.literal(-1)));
+            }
+        }
+    }
+
     @Override
-    public void ifne(Label label) {
+    public void lcmp() {
+        compare(Opcodes.LCMP);
+    }
+
+    @Override
+    public void cmpl(Type type) {
+        compare(type.equals(Type.FLOAT_TYPE) ? Opcodes.FCMPL : Opcodes.DCMPL);
+    }
+
+    @Override
+    public void cmpg(Type type) {
+        compare(type.equals(Type.FLOAT_TYPE) ? Opcodes.FCMPG : Opcodes.DCMPG);
+    }
+
+    private void compare(int opcode) {
+        ExpressionBuilder rhs = stackPop();
+        ExpressionBuilder lhs = stackPop();
+        stackPush(new ComparisonBuilder(opcode, lhs, rhs));
+    }
+
+    private List<String> peekStackVarNames() {
+        return stackIndex == stack.size() ? stack.peek() : stack.get(stackIndex);
+    }
+
+    private boolean isComparisonOnTop() {
+        List<String> stackVarNames = peekStackVarNames();
+        return stackVarNames.size() == 1 && stackVarValues.get(stackVarNames.get(0)) instanceof ComparisonBuilder;
+    }
+
+    // The comparison on top of the stack, if any, is popped
+    private ComparisonBuilder popComparison() {
+        if(!isComparisonOnTop())
+            return null;
+
+        ComparisonBuilder comparison = (ComparisonBuilder)stackVarValues.get(peekStackVarNames().get(0));
+        stackPop();
+        return comparison;
+    }
+
+    // Jumps if the value on top of the stack relates to zero as given by the operator
+    private void zeroBranch(int operator, Label label) {
+        ComparisonBuilder comparison = popComparison();
+        ExpressionBuilder lhs = comparison != null ? comparison.lhs : stackPop();
+        ExpressionBuilder rhs = comparison != null ? comparison.rhs : () -> DomFactory.literal(0);
+        // The jump is taken when the condition is false
+        int negatedOperator = RelationalOperator.negate(operator);
+        branch(() -> DomFactory.compare(lhs.build(), rhs.build(), negatedOperator), label);
+    }
+
+    // Jumps if the two values on top of the stack relate as given by the operator
+    private void compareBranch(int operator, Label label) {
+        ExpressionBuilder rhs = stackPop();
         ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.not(lhs.build()), label);
+        int negatedOperator = RelationalOperator.negate(operator);
+        branch(() -> DomFactory.compare(lhs.build(), rhs.build(), negatedOperator), label);
+    }
+
+    @Override
+    public void ifne(Label label) {
+        if(isComparisonOnTop()) {
+            zeroBranch(RelationalOperator.NE, label);
+        } else {
+            ExpressionBuilder lhs = stackPop();
+            branch(() -> DomFactory.not(lhs.build()), label);
+        }
     }
 
     @Override
     public void ifeq(Label label) {
-        //ExpressionBuilder rhs = () -> DomFactory.literal(false);
-        ExpressionBuilder lhs = stackPop();
-        //branch(() -> DomFactory.eq(lhs.build(), rhs.build()), label);
-        branch(() -> lhs.build(), label);
+        if(isComparisonOnTop()) {
+            zeroBranch(RelationalOperator.EQ, label);
+        } else {
+            ExpressionBuilder lhs = stackPop();
+            branch(() -> lhs.build(), label);
+        }
     }
 
     @Override
     public void iflt(Label label) {
-        ExpressionBuilder rhs = () -> DomFactory.literal(0);
-        ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.lt(lhs.build(), rhs.build()), label);
+        zeroBranch(RelationalOperator.LT, label);
     }
 
     @Override
     public void ifle(Label label) {
-        ExpressionBuilder rhs = () -> DomFactory.literal(0);
-        ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.le(lhs.build(), rhs.build()), label);
+        zeroBranch(RelationalOperator.LE, label);
     }
 
     @Override
     public void ifgt(Label label) {
-        ExpressionBuilder rhs = () -> DomFactory.literal(0);
-        ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.gt(lhs.build(), rhs.build()), label);
+        zeroBranch(RelationalOperator.GT, label);
     }
 
     @Override
     public void ifge(Label label) {
-        ExpressionBuilder rhs = () -> DomFactory.literal(0);
-        ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.ge(lhs.build(), rhs.build()), label);
+        zeroBranch(RelationalOperator.GE, label);
     }
 
     @Override
     public void ificmpeq(Label label) {
-        ExpressionBuilder rhs = stackPop();
-        ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.eq(lhs.build(), rhs.build()), label);
+        compareBranch(RelationalOperator.EQ, label);
     }
 
     @Override
     public void ificmpne(Label label) {
-        ExpressionBuilder rhs = stackPop();
-        ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.ne(lhs.build(), rhs.build()), label);
+        compareBranch(RelationalOperator.NE, label);
     }
 
     @Override
     public void ificmple(Label label) {
-        ExpressionBuilder rhs = stackPop();
-        ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.lt(lhs.build(), rhs.build()), label);
+        compareBranch(RelationalOperator.LE, label);
     }
 
     @Override
     public void ificmpgt(Label label) {
-        ExpressionBuilder rhs = stackPop();
-        ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.gt(lhs.build(), rhs.build()), label);
+        compareBranch(RelationalOperator.GT, label);
     }
 
     @Override
     public void ificmpge(Label label) {
-        ExpressionBuilder rhs = stackPop();
-        ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.ge(lhs.build(), rhs.build()), label);
+        compareBranch(RelationalOperator.GE, label);
     }
 
     @Override
     public void ificmplt(Label label) {
-        ExpressionBuilder rhs = stackPop();
-        ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.gt(lhs.build(), rhs.build()), label);
+        compareBranch(RelationalOperator.LT, label);
     }
 
     @Override
     public void ifnull(Label label) {
-        // Are labels getting messed up somehow? When later comparing during generation?
         ExpressionBuilder rhs = () -> DomFactory.nil();
         ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.objectEquality(lhs.build(), rhs.build(), RelationalOperator.EQ), label);
+        branch(() -> DomFactory.objectEquality(lhs.build(), rhs.build(), RelationalOperator.NE), label);
     }
 
     @Override
     public void ifnonnull(Label label) {
         ExpressionBuilder rhs = () -> DomFactory.nil();
         ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.objectEquality(lhs.build(), rhs.build(), RelationalOperator.NE), label);
+        branch(() -> DomFactory.objectEquality(lhs.build(), rhs.build(), RelationalOperator.EQ), label);
     }
 
     @Override
     public void ifacmpeq(Label label) {
         ExpressionBuilder rhs = stackPop();
         ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.objectEquality(lhs.build(), rhs.build(), RelationalOperator.EQ), label);
+        branch(() -> DomFactory.objectEquality(lhs.build(), rhs.build(), RelationalOperator.NE), label);
     }
 
     @Override
     public void ifacmpne(Label label) {
         ExpressionBuilder rhs = stackPop();
         ExpressionBuilder lhs = stackPop();
-        branch(() -> DomFactory.objectEquality(lhs.build(), rhs.build(), RelationalOperator.NE), label);
+        branch(() -> DomFactory.objectEquality(lhs.build(), rhs.build(), RelationalOperator.EQ), label);
     }
 
     private void branch(ExpressionBuilder condition, Label jumpLabel) {
@@ -540,6 +899,20 @@ public class ByteCodeToTree extends InstructionAdapter {
             statementBuilders.add(statements ->
                 statements.add(DomFactory.ret()));
 
+        exitFrame();
+    }
+
+    @Override
+    public void athrow() {
+        ExpressionBuilder exception = stackPop();
+
+        statementBuilders.add(statements ->
+            statements.add(DomFactory.throwStatement(exception.build())));
+
+        exitFrame();
+    }
+
+    private void exitFrame() {
         if (localFrames.size() > 0) {
             LocalFrame localFrame = localFrames.peek();
 
@@ -583,8 +956,93 @@ public class ByteCodeToTree extends InstructionAdapter {
         return expression;
     }
 
+    // Once an instruction is unsupported, the stack is no longer known, so the remaining instructions are ignored
+
+    @Override
+    public void visitInsn(int opcode) {
+        if(isSupported())
+            super.visitInsn(opcode);
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+        if(isSupported())
+            super.visitIntInsn(opcode, operand);
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int var) {
+        if(isSupported())
+            super.visitVarInsn(opcode, var);
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+        if(isSupported())
+            super.visitTypeInsn(opcode, type);
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+        if(isSupported())
+            super.visitFieldInsn(opcode, owner, name, desc);
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+        if(isSupported())
+            super.visitMethodInsn(opcode, owner, name, desc, itf);
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+        if(isSupported())
+            super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+        if(isSupported())
+            super.visitJumpInsn(opcode, label);
+    }
+
+    @Override
+    public void visitLdcInsn(Object cst) {
+        if(isSupported())
+            super.visitLdcInsn(cst);
+    }
+
+    @Override
+    public void visitIincInsn(int var, int increment) {
+        if(isSupported())
+            super.visitIincInsn(var, increment);
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        if(isSupported())
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        if(isSupported())
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String desc, int dims) {
+        if(isSupported())
+            super.visitMultiANewArrayInsn(desc, dims);
+    }
+
     @Override
     public void visitLabel(Label label) {
+        labelPositions.put(label, variableAccessCount);
+
+        if(!isSupported())
+            return;
+
         if(localFrames.size() > 0) {
             LocalFrame localFrame = localFrames.peek();
 
@@ -608,10 +1066,61 @@ public class ByteCodeToTree extends InstructionAdapter {
             }
         }
 
+        // Forward jumps have been visited by now, so this tells whether branches may join here
+        if(labelUsages.contains(label))
+            joinCount++;
+
+        if(exceptionLabels.contains(label))
+            spillStack();
+
         statementBuilders.add(statements -> {
-            if(labelUsages.contains(label))
+            if(labelUsages.contains(label) || exceptionLabels.contains(label))
                 statements.add(DomFactory.mark(label));
         });
+
+        String caughtVariableName = handlerVariableNames.get(label);
+        if(caughtVariableName != null) {
+            // The stack holds nothing but the caught exception on entry of a handler
+            if(stackIndex != 0 || !stack.isEmpty()) {
+                unsupported("try-catch block");
+                return;
+            }
+
+            stackPush(() -> DomFactory.accessVar(caughtVariableName));
+        }
+    }
+
+    // Statements built from here on originate from the line, such that MethodGenerator can carry it over. The start
+    // label is visited just before.
+    @Override
+    public void visitLineNumber(int line, Label start) {
+        if(!isSupported())
+            return;
+
+        statementBuilders.add(statements ->
+            statements.add(DomFactory.lineNumber(line)));
+    }
+
+    // Values are pushed where they are used, unless assigned to their stack variable. At the bounds of protected
+    // ranges, they are assigned where pushed, such that what they evaluate is caught by the same handlers as in the
+    // bytecode.
+    private void spillStack() {
+        for(int i = 0; i < stackIndex; i++) {
+            for (String varName : stack.get(i)) {
+                ExpressionBuilder value = stackVarValues.get(varName);
+                stackVarValues.put(varName, new ExpressionBuilder() {
+                    @Override
+                    public boolean isConstant() {
+                        return false;
+                    }
+
+                    @Override
+                    public ExpressionDom build() {
+                        return value.build();
+                    }
+                });
+            }
+        }
     }
 
     @Override
@@ -621,6 +1130,9 @@ public class ByteCodeToTree extends InstructionAdapter {
 
         labelUsages.add(label);
 
+        if(localFrames.isEmpty())
+            return;
+
         LocalFrame localFrame = localFrames.peek();
 
         switch (localFrame.type) {
@@ -634,65 +1146,91 @@ public class ByteCodeToTree extends InstructionAdapter {
         }
     }
 
-    private String getVarName(int var, String type) {
-        return varToName.computeIfAbsent(var, v -> {
-            // Use consistent strategies to derive argument- and variable names
-            int parameterCount = Type.getArgumentTypes(methodNode.desc).length;
-            if((var - 1) < parameterCount)
-                return methodNode.parameters != null ? (String)methodNode.parameters.get(var - 1) : "arg" + (var - 1);
-            else {
-                String name = "v" + (var - parameterCount - 1);
-                statementBuilders.add(statements ->
-                    statements.add(DomFactory.declareVar(type, name)));
-                return name;
-            }
-        });
+    // Variables, which were not prepared, are declared where first used. Returns the position of the access, by which
+    // the variable is looked up in the local variable table.
+    private int useVar(int var, String type, boolean store) {
+        int position = ++variableAccessCount;
+
+        if(!varToName.containsKey(var) && !isArgument(var)) {
+            statementBuilders.add(statements -> {
+                String name = getVarName(var, position, store);
+                if(declaredVars.add(name)) {
+                    LocalVariable localVariable = getLocalVariable(var, position, store);
+                    statements.add(DomFactory.declareVar(localVariable != null ? localVariable.desc : type, name));
+                }
+            });
+        }
+
+        return position;
+    }
+
+    private String getVarName(int var, int position, boolean store) {
+        // Use consistent strategies to derive argument- and variable names
+        if(varToName.containsKey(var))
+            return varToName.get(var);
+        if(isArgument(var)) {
+            int index = argumentSlots.get(var);
+            return index < parameterNames.size() ? parameterNames.get(index) : "arg" + index;
+        }
+
+        LocalVariable localVariable = getLocalVariable(var, position, store);
+        return localVariable != null ? localVariable.name : "v" + (var - firstLocalSlot);
+    }
+
+    // The entry of the local variable table of the slot in range at the access, if any. The range of a variable starts
+    // right after its initializing store, so a store is preferably attributed to the variable starting after it.
+    private LocalVariable getLocalVariable(int var, int position, boolean store) {
+        List<LocalVariable> candidates = localVariables.get(var);
+        if(candidates == null)
+            return null;
+
+        LocalVariable inRange = null;
+        for (LocalVariable candidate : candidates) {
+            Integer start = labelPositions.get(candidate.start);
+            Integer end = labelPositions.get(candidate.end);
+            if(start == null || end == null)
+                continue;
+            if(store && start == position)
+                return candidate;
+            if(start < position && position <= end)
+                inRange = candidate;
+        }
+
+        return inRange;
     }
 
     @Override
     public void load(int var, Type type) {
-        if(Modifier.isStatic(methodNode.access)) {
-
+        if(isSelf(var)) {
+            stackPush(() -> DomFactory.self());
         } else {
-            if(var == 0) {
-                stackPush(() -> DomFactory.self());
-            } else {
-                String name = getVarName(var, type.getDescriptor());
+            int position = useVar(var, type.getDescriptor(), false);
 
-                stackPush(new ExpressionBuilder() {
-                    @Override
-                    public boolean isConstant() {
-                        //return varAssignCount.get(name) == 1;
-                        return true;
-                    }
+            stackPush(new ExpressionBuilder() {
+                @Override
+                public boolean isConstant() {
+                    //return varAssignCount.get(name) == 1;
+                    return true;
+                }
 
-                    @Override
-                    public ExpressionDom build() {
-                        return DomFactory.accessVar(name);
-                    }
-                });
-            }
+                @Override
+                public ExpressionDom build() {
+                    return DomFactory.accessVar(getVarName(var, position, false));
+                }
+            });
         }
     }
 
     @Override
     public void store(int var, Type type) {
-        if(Modifier.isStatic(methodNode.access)) {
-
+        if(isSelf(var)) {
+            unsupported(Opcodes.ASTORE);
         } else {
-            if(var != 0) {
-                String name = getVarName(var, type.getDescriptor());
-
-                ExpressionBuilder value = stackPop();
-                statementBuilders.add(statements ->
-                    statements.add(DomFactory.assignVar(name, value.build())));
-
-                Integer varAssign = varAssignCount.get(name);
-                if(varAssign != null)
-                    varAssignCount.put(name, varAssign + 1);
-                else
-                    varAssignCount.put(name, 1);
-            }
+            int position = useVar(var, type.getDescriptor(), true);
+
+            ExpressionBuilder value = stackPop();
+            statementBuilders.add(statements ->
+                statements.add(DomFactory.assignVar(getVarName(var, position, true), value.build())));
         }
     }
 
@@ -740,6 +1278,7 @@ public class ByteCodeToTree extends InstructionAdapter {
         }
         stackIndex++;
         stackVarValues.put(varName, value);
+        stackVarJoinCounts.put(varName, joinCount);
 
         statementBuilders.add(statements -> {
             String relabeledName = relabels.get(varName);
@@ -754,7 +1293,15 @@ public class ByteCodeToTree extends InstructionAdapter {
         List<String> stackVarNames;
 
         if(stackIndex == stack.size()) {
-            stackVarNames = stack.pop();
+            List<String> top = stack.peek();
+            String last = top.get(top.size() - 1);
+            if(top.size() > 1 && stackVarJoinCounts.get(last) == joinCount) {
+                // Pushed within the current branch and consumed before the branches join, so the value is not one
+                // of the values to be merged
+                top.remove(top.size() - 1);
+                stackVarNames = Arrays.asList(last);
+            } else
+                stackVarNames = stack.pop();
         } else {
             stackVarNames = stack.get(stackIndex);
         }
@@ -0,0 +1,206 @@
+package astava.java.gen;
+
+import astava.java.DomFactory;
+import astava.tree.StatementDom;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Hashtable;
+
+// Decompiles the methods of a class while the class is being read, such that neither a ClassNode nor MethodNodes are
+// materialized and each method is visited only once. Frames are skipped, since decompilation does not use them.
+// Methods which cannot be decompiled are read once more, as MethodNodes, and passed on as their raw bytecode.
+public class ClassDecompiler extends ClassVisitor {
+    public interface MethodConsumer {
+        // If error is not null, it tells why body is the raw bytecode of the method (see DomFactory.asm)
+        void accept(String className, int access, String name, String descriptor, StatementDom body, Throwable error);
+    }
+
+    private final ClassReader classReader;
+    private final MethodConsumer consumer;
+    private String className;
+    // Name and descriptor to method node; read when the first method falls back to raw bytecode
+    private Hashtable<String, MethodNode> methodNodes;
+
+    public ClassDecompiler(ClassReader classReader, MethodConsumer consumer) {
+        super(Opcodes.ASM5);
+        this.classReader = classReader;
+        this.consumer = consumer;
+    }
+
+    public static void decompile(ClassReader classReader, MethodConsumer consumer) {
+        classReader.accept(new ClassDecompiler(classReader, consumer), ClassReader.SKIP_FRAMES);
+    }
+
+    private MethodNode getMethodNode(String name, String desc) {
+        if(methodNodes == null) {
+            methodNodes = new Hashtable<>();
+            classReader.accept(new ClassVisitor(Opcodes.ASM5) {
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                    MethodNode methodNode = new MethodNode(access, name, desc, signature, exceptions);
+                    methodNodes.put(name + desc, methodNode);
+                    return methodNode;
+                }
+            }, ClassReader.SKIP_FRAMES);
+        }
+
+        return methodNodes.get(name + desc);
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        className = name.replace('/', '.');
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        if((access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0)
+            return null;
+
+        return new GuardedMethodVisitor(new ByteCodeToTree(access, desc)) {
+            @Override
+            public void visitEnd() {
+                ByteCodeToTree byteCodeToTree = (ByteCodeToTree)mv;
+                StatementDom body = null;
+
+                if(error == null && !byteCodeToTree.isSupported())
+                    error = new UnsupportedOperationException("Unsupported instruction: " + byteCodeToTree.getUnsupportedInstruction() + ".");
+
+                if(error == null) {
+                    try {
+                        body = byteCodeToTree.getStructuredBlock();
+                    } catch (RuntimeException e) {
+                        error = e;
+                    }
+                }
+
+                if(error != null)
+                    body = DomFactory.asm(getMethodNode(name, desc));
+
+                consumer.accept(className, access, name, desc, body, error);
+            }
+        };
+    }
+
+    // Stops passing on visits once one has failed, such that a method which cannot be decompiled does not prevent
+    // the remaining methods of the class from being decompiled
+    private static class GuardedMethodVisitor extends MethodVisitor {
+        protected Throwable error;
+
+        private GuardedMethodVisitor(MethodVisitor mv) {
+            super(Opcodes.ASM5, mv);
+        }
+
+        private void guard(Runnable visit) {
+            if(error != null)
+                return;
+
+            try {
+                visit.run();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+
+        @Override
+        public void visitParameter(String name, int access) {
+            guard(() -> super.visitParameter(name, access));
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            guard(() -> super.visitInsn(opcode));
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            guard(() -> super.visitIntInsn(opcode, operand));
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            guard(() -> super.visitVarInsn(opcode, var));
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            guard(() -> super.visitTypeInsn(opcode, type));
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+            guard(() -> super.visitFieldInsn(opcode, owner, name, desc));
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+            guard(() -> super.visitMethodInsn(opcode, owner, name, desc, itf));
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+            guard(() -> super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs));
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            guard(() -> super.visitJumpInsn(opcode, label));
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            guard(() -> super.visitLabel(label));
+        }
+
+        @Override
+        public void visitLdcInsn(Object cst) {
+            guard(() -> super.visitLdcInsn(cst));
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            guard(() -> super.visitIincInsn(var, increment));
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            guard(() -> super.visitTableSwitchInsn(min, max, dflt, labels));
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            guard(() -> super.visitLookupSwitchInsn(dflt, keys, labels));
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String desc, int dims) {
+            guard(() -> super.visitMultiANewArrayInsn(desc, dims));
+        }
+
+        @Override
+        public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+            guard(() -> super.visitTryCatchBlock(start, end, handler, type));
+        }
+
+        @Override
+        public void visitLocalVariable(String name, String desc, String signature, Label start, Label end, int index) {
+            guard(() -> super.visitLocalVariable(name, desc, signature, start, end, index));
+        }
+
+        @Override
+        public void visitLineNumber(int line, Label start) {
+            guard(() -> super.visitLineNumber(line, start));
+        }
+
+        @Override
+        public void visitMaxs(int maxStack, int maxLocals) {
+            guard(() -> super.visitMaxs(maxStack, maxLocals));
+        }
+    }
+}
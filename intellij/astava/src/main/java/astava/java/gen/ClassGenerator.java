@@ -27,6 +27,11 @@ public class ClassGenerator {
     }
 
     public void populate(ClassNode classNode) {
+        populate(classNode, null, null);
+    }
+
+    // Reuses the method nodes of a previous generation for the methods whose bodies are unchanged
+    public void populate(ClassNode classNode, ClassDom previousClassDom, ClassNode previousClassNode) {
         int modifiers = classDom.getModifiers();
         String className = Descriptor.get(classDom.getName());
         String superName = Descriptor.get(classDom.getSuperName());
@@ -40,7 +45,55 @@ public class ClassGenerator {
         classDom.getInterfaces().forEach(x -> classNode.interfaces.add(x));
 
         classDom.getFields().forEach(f -> populateField(classNode, f));
-        classDom.getMethods().forEach(m -> populateMethod(classNode, m));
+
+        if(previousClassDom != null && previousClassNode != null && hasSameShape(previousClassDom)) {
+            List<MethodDom> changedMethods = CodeDomDiff.changedMethods(previousClassDom, classDom);
+
+            classDom.getMethods().forEach(m -> {
+                MethodNode previousMethodNode = changedMethods.stream().anyMatch(x -> CodeDomDiff.hasSameSignature(x, m)) ? null : findMethodNode(previousClassNode, m);
+
+                if(previousMethodNode != null)
+                    previousMethodNode.accept(classNode);
+                else
+                    populateMethod(classNode, m);
+            });
+        } else
+            classDom.getMethods().forEach(m -> populateMethod(classNode, m));
+    }
+
+    private boolean hasSameShape(ClassDom previousClassDom) {
+        return previousClassDom.getModifiers() == classDom.getModifiers() &&
+            previousClassDom.getName().equals(classDom.getName()) &&
+            previousClassDom.getSuperName().equals(classDom.getSuperName()) &&
+            previousClassDom.getInterfaces().equals(classDom.getInterfaces()) &&
+            getFieldSignatures(previousClassDom).equals(getFieldSignatures(classDom));
+    }
+
+    private static List<String> getFieldSignatures(ClassDom classDom) {
+        return classDom.getFields().stream().map(f -> f.accept(new FieldDomVisitor<String>() {
+            @Override
+            public String visitCustomField(CustomFieldDom fieldDom) {
+                return fieldDom.getModifiers() + " " + fieldDom.getTypeName() + " " + fieldDom.getName();
+            }
+
+            @Override
+            public String visitASMField(FieldNode fieldNode) {
+                return fieldNode.access + " " + fieldNode.desc + " " + fieldNode.name;
+            }
+        })).collect(Collectors.toList());
+    }
+
+    private static MethodNode findMethodNode(ClassNode classNode, MethodDom methodDom) {
+        List<String> parameterTypeNames = methodDom.getParameterTypes().stream().map(x -> x.descriptor).collect(Collectors.toList());
+        String methodDescriptor = Descriptor.getMethodDescriptor(parameterTypeNames, methodDom.getReturnTypeName());
+
+        for (Object method : classNode.methods) {
+            MethodNode methodNode = (MethodNode)method;
+            if(methodNode.name.equals(methodDom.getName()) && methodNode.desc.equals(methodDescriptor))
+                return methodNode;
+        }
+
+        return null;
     }
 
     public void populate2(ClassNode classNode) {
@@ -126,10 +179,18 @@ public class ClassGenerator {
     }
 
     public byte[] toBytes() {
+        return toBytes(toClassNode(null, null));
+    }
+
+    public ClassNode toClassNode(ClassDom previousClassDom, ClassNode previousClassNode) {
         ClassNode classNode = new ClassNode(Opcodes.ASM5);
 
-        populate(classNode);
+        populate(classNode, previousClassDom, previousClassNode);
+
+        return classNode;
+    }
 
+    public byte[] toBytes(ClassNode classNode) {
         classNode.accept(new TraceClassVisitor(new PrintWriter(Debug.getPrintStream(Debug.LEVEL_HIGH))));
 
         ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
@@ -0,0 +1,439 @@
+package astava.java.gen;
+
+import astava.tree.ExpressionDom;
+import astava.tree.StatementDom;
+import astava.tree.StatementDomVisitor;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultDirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+// Control flow graph over a flat list of statements as produced by ByteCodeToTree, where control flow is expressed
+// through mark, goTo, ifJump and label based select statements. Each statement protected by an exception handler is a
+// block of its own with an edge to the handler. Since protected ranges begin with a mark, whose block has no effect,
+// and are otherwise only entered at marks, the states the handler may be entered with, before as well as after the
+// effect of each statement, are all states at the ends of these blocks.
+public class ControlFlowGraph {
+    public static class BasicBlock {
+        private final int index;
+        private final int start;
+        private final int end;
+
+        private BasicBlock(int index, int start, int end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        // Index of the first statement
+        public int getStart() {
+            return start;
+        }
+
+        // Index after the last statement
+        public int getEnd() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return "B" + index + "[" + start + ", " + end + ")";
+        }
+    }
+
+    public static class Loop {
+        private final BasicBlock header;
+        private final Set<BasicBlock> body;
+
+        private Loop(BasicBlock header, Set<BasicBlock> body) {
+            this.header = header;
+            this.body = body;
+        }
+
+        public BasicBlock getHeader() {
+            return header;
+        }
+
+        // Includes the header
+        public Set<BasicBlock> getBody() {
+            return body;
+        }
+
+        @Override
+        public String toString() {
+            return "loop " + header + " " + body;
+        }
+    }
+
+    public static final int KIND_OTHER = 0;
+    public static final int KIND_MARK = 1;
+    public static final int KIND_GO_TO = 2;
+    public static final int KIND_IF_JUMP = 3;
+    public static final int KIND_SELECT = 4;
+    public static final int KIND_EXIT = 5;
+
+    private final List<StatementDom> statements;
+    private final List<ExceptionHandler> exceptionHandlers;
+    private final int[] kinds;
+    private final Object[][] targets;
+    private final Hashtable<Object, Integer> labelToMarkIndex = new Hashtable<>();
+    private final Hashtable<Object, List<Integer>> labelToReferences = new Hashtable<>();
+    private final ArrayList<BasicBlock> blocks = new ArrayList<>();
+    private final BasicBlock[] statementToBlock;
+    private final boolean[] isProtected;
+    private final DirectedGraph<BasicBlock, DefaultEdge> graph = new DefaultDirectedGraph<>(DefaultEdge.class);
+    private int[] immediateDominators;
+    private List<Loop> loops;
+
+    public ControlFlowGraph(List<StatementDom> statements) {
+        this(statements, Collections.emptyList());
+    }
+
+    public ControlFlowGraph(List<StatementDom> statements, List<ExceptionHandler> exceptionHandlers) {
+        this.statements = statements;
+        this.exceptionHandlers = exceptionHandlers;
+        kinds = new int[statements.size()];
+        targets = new Object[statements.size()][];
+        statementToBlock = new BasicBlock[statements.size()];
+        isProtected = new boolean[statements.size()];
+
+        for(int i = 0; i < statements.size(); i++)
+            classify(i);
+
+        for (ExceptionHandler exceptionHandler : exceptionHandlers)
+            Arrays.fill(isProtected, getMarkIndexChecked(exceptionHandler.getStart()), getMarkIndexChecked(exceptionHandler.getEnd()), true);
+
+        createBlocks();
+        createEdges();
+        createExceptionEdges();
+    }
+
+    private int getMarkIndexChecked(Object label) {
+        int index = getMarkIndex(label);
+        if(index == -1)
+            throw new IllegalArgumentException("Exception handler label " + label + " is not marked.");
+        return index;
+    }
+
+    private void classify(int index) {
+        statements.get(index).accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitMark(Object label) {
+                kinds[index] = KIND_MARK;
+                labelToMarkIndex.put(label, index);
+            }
+
+            @Override
+            public void visitGoTo(Object label) {
+                kinds[index] = KIND_GO_TO;
+                targets[index] = new Object[]{label};
+            }
+
+            @Override
+            public void visitIfJump(ExpressionDom condition, Object label) {
+                kinds[index] = KIND_IF_JUMP;
+                targets[index] = new Object[]{label};
+            }
+
+            @Override
+            public void visitSwitch(ExpressionDom expression, Object dflt, int[] keys, Object[] labels) {
+                kinds[index] = KIND_SELECT;
+                targets[index] = new Object[labels.length + 1];
+                System.arraycopy(labels, 0, targets[index], 0, labels.length);
+                targets[index][labels.length] = dflt;
+            }
+
+            @Override
+            public void visitReturnValue(ExpressionDom expression) {
+                kinds[index] = KIND_EXIT;
+            }
+
+            @Override
+            public void visitReturn() {
+                kinds[index] = KIND_EXIT;
+            }
+
+            @Override
+            public void visitThrow(ExpressionDom expression) {
+                kinds[index] = KIND_EXIT;
+            }
+        });
+
+        if(targets[index] != null) {
+            for (Object label : targets[index])
+                labelToReferences.computeIfAbsent(label, l -> new ArrayList<>()).add(index);
+        }
+    }
+
+    private boolean endsBlock(int index) {
+        return kinds[index] == KIND_GO_TO || kinds[index] == KIND_IF_JUMP || kinds[index] == KIND_SELECT || kinds[index] == KIND_EXIT;
+    }
+
+    private void createBlocks() {
+        int start = 0;
+
+        for(int i = 0; i < statements.size(); i++) {
+            boolean isLeader = (kinds[i] == KIND_MARK || isProtected[i]) && i > start;
+
+            if(isLeader) {
+                addBlock(start, i);
+                start = i;
+            }
+
+            if(endsBlock(i) || isProtected[i]) {
+                addBlock(start, i + 1);
+                start = i + 1;
+            }
+        }
+
+        if(start < statements.size() || blocks.isEmpty())
+            addBlock(start, statements.size());
+    }
+
+    private void addBlock(int start, int end) {
+        BasicBlock block = new BasicBlock(blocks.size(), start, end);
+        blocks.add(block);
+        graph.addVertex(block);
+        for(int i = start; i < end; i++)
+            statementToBlock[i] = block;
+    }
+
+    private void createEdges() {
+        for (BasicBlock block : blocks) {
+            int last = block.end - 1;
+            boolean fallsThrough = true;
+
+            if(last >= block.start) {
+                if(targets[last] != null) {
+                    for (Object label : targets[last]) {
+                        BasicBlock target = getBlockOfLabel(label);
+                        if(target != null)
+                            graph.addEdge(block, target);
+                    }
+                }
+
+                fallsThrough = kinds[last] != KIND_GO_TO && kinds[last] != KIND_SELECT && kinds[last] != KIND_EXIT;
+            }
+
+            if(fallsThrough && block.index + 1 < blocks.size())
+                graph.addEdge(block, blocks.get(block.index + 1));
+        }
+    }
+
+    private void createExceptionEdges() {
+        for (ExceptionHandler exceptionHandler : exceptionHandlers) {
+            BasicBlock handler = getBlockOfLabel(exceptionHandler.getHandler());
+            int start = getMarkIndex(exceptionHandler.getStart());
+            int end = getMarkIndex(exceptionHandler.getEnd());
+
+            for(int i = start; i < end; i++)
+                graph.addEdge(statementToBlock[i], handler);
+        }
+    }
+
+    public List<StatementDom> getStatements() {
+        return statements;
+    }
+
+    public List<ExceptionHandler> getExceptionHandlers() {
+        return exceptionHandlers;
+    }
+
+    // Whether the statement is within the range of an exception handler
+    public boolean isProtected(int statementIndex) {
+        return isProtected[statementIndex];
+    }
+
+    public int getKind(int statementIndex) {
+        return kinds[statementIndex];
+    }
+
+    // The labels jumped to by a goTo, ifJump or select statement; null for other statements
+    public Object[] getTargets(int statementIndex) {
+        return targets[statementIndex];
+    }
+
+    // Index of the mark statement of the label, or -1
+    public int getMarkIndex(Object label) {
+        return labelToMarkIndex.getOrDefault(label, -1);
+    }
+
+    // Indexes of the statements jumping to the label
+    public List<Integer> getReferences(Object label) {
+        return labelToReferences.getOrDefault(label, Collections.emptyList());
+    }
+
+    public List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    public BasicBlock getEntry() {
+        return blocks.get(0);
+    }
+
+    public BasicBlock getBlockAt(int statementIndex) {
+        return statementToBlock[statementIndex];
+    }
+
+    public BasicBlock getBlockOfLabel(Object label) {
+        int markIndex = getMarkIndex(label);
+        return markIndex != -1 ? statementToBlock[markIndex] : null;
+    }
+
+    public List<BasicBlock> getSuccessors(BasicBlock block) {
+        return graph.outgoingEdgesOf(block).stream().map(e -> graph.getEdgeTarget(e)).collect(Collectors.toList());
+    }
+
+    public List<BasicBlock> getPredecessors(BasicBlock block) {
+        return graph.incomingEdgesOf(block).stream().map(e -> graph.getEdgeSource(e)).collect(Collectors.toList());
+    }
+
+    public DirectedGraph<BasicBlock, DefaultEdge> getGraph() {
+        return graph;
+    }
+
+    public boolean isReachable(BasicBlock block) {
+        return getImmediateDominators()[block.index] != -1;
+    }
+
+    // Null for the entry block and unreachable blocks
+    public BasicBlock getImmediateDominator(BasicBlock block) {
+        int idom = getImmediateDominators()[block.index];
+        return idom != -1 && block.index != 0 ? blocks.get(idom) : null;
+    }
+
+    public boolean dominates(BasicBlock dominator, BasicBlock block) {
+        int[] idoms = getImmediateDominators();
+
+        if(idoms[block.index] == -1)
+            return false;
+
+        int current = block.index;
+        while(true) {
+            if(current == dominator.index)
+                return true;
+            if(current == 0)
+                return false;
+            current = idoms[current];
+        }
+    }
+
+    private int[] getImmediateDominators() {
+        if(immediateDominators == null)
+            immediateDominators = computeImmediateDominators();
+        return immediateDominators;
+    }
+
+    // Cooper, Harvey and Kennedy: A Simple, Fast Dominance Algorithm
+    private int[] computeImmediateDominators() {
+        List<BasicBlock> postOrder = new ArrayList<>();
+        boolean[] visited = new boolean[blocks.size()];
+        Deque<Iterator<BasicBlock>> iterators = new ArrayDeque<>();
+        Deque<BasicBlock> path = new ArrayDeque<>();
+
+        visited[0] = true;
+        path.push(getEntry());
+        iterators.push(getSuccessors(getEntry()).iterator());
+        while(!path.isEmpty()) {
+            Iterator<BasicBlock> successors = iterators.peek();
+            if(successors.hasNext()) {
+                BasicBlock successor = successors.next();
+                if(!visited[successor.index]) {
+                    visited[successor.index] = true;
+                    path.push(successor);
+                    iterators.push(getSuccessors(successor).iterator());
+                }
+            } else {
+                iterators.pop();
+                postOrder.add(path.pop());
+            }
+        }
+
+        int[] postOrderNumber = new int[blocks.size()];
+        for(int i = 0; i < postOrder.size(); i++)
+            postOrderNumber[postOrder.get(i).index] = i;
+
+        int[] idoms = new int[blocks.size()];
+        Arrays.fill(idoms, -1);
+        idoms[0] = 0;
+
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+
+            for(int i = postOrder.size() - 1; i >= 0; i--) {
+                BasicBlock block = postOrder.get(i);
+                if(block.index == 0)
+                    continue;
+
+                int newIdom = -1;
+                for (BasicBlock predecessor : getPredecessors(block)) {
+                    if(idoms[predecessor.index] == -1)
+                        continue;
+
+                    if(newIdom == -1) {
+                        newIdom = predecessor.index;
+                    } else {
+                        int finger1 = predecessor.index;
+                        int finger2 = newIdom;
+                        while(finger1 != finger2) {
+                            while(postOrderNumber[finger1] < postOrderNumber[finger2])
+                                finger1 = idoms[finger1];
+                            while(postOrderNumber[finger2] < postOrderNumber[finger1])
+                                finger2 = idoms[finger2];
+                        }
+                        newIdom = finger1;
+                    }
+                }
+
+                if(idoms[block.index] != newIdom) {
+                    idoms[block.index] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+
+        return idoms;
+    }
+
+    // Natural loops, one per header, of the back edges of the graph
+    public List<Loop> getLoops() {
+        if(loops == null) {
+            Hashtable<BasicBlock, Set<BasicBlock>> headerToBody = new Hashtable<>();
+
+            for (BasicBlock block : blocks) {
+                for (BasicBlock successor : getSuccessors(block)) {
+                    if(dominates(successor, block)) {
+                        Set<BasicBlock> body = headerToBody.computeIfAbsent(successor, h -> new LinkedHashSet<>(Arrays.asList(h)));
+                        Deque<BasicBlock> worklist = new ArrayDeque<>();
+                        if(body.add(block))
+                            worklist.push(block);
+                        while(!worklist.isEmpty()) {
+                            for (BasicBlock predecessor : getPredecessors(worklist.pop())) {
+                                if(isReachable(predecessor) && body.add(predecessor))
+                                    worklist.push(predecessor);
+                            }
+                        }
+                    }
+                }
+            }
+
+            loops = headerToBody.entrySet().stream()
+                .sorted(Comparator.comparingInt(e -> e.getKey().index))
+                .map(e -> new Loop(e.getKey(), e.getValue()))
+                .collect(Collectors.toList());
+        }
+
+        return loops;
+    }
+
+    public boolean isLoopHeader(BasicBlock block) {
+        return getLoops().stream().anyMatch(x -> x.header == block);
+    }
+}
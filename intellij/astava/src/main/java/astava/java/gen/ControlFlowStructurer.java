@@ -0,0 +1,710 @@
+package astava.java.gen;
+
+import astava.java.CodeDomPrinter;
+import astava.java.DomFactory;
+import astava.tree.CodeDom;
+import astava.tree.ExpressionDom;
+import astava.tree.StatementDom;
+import astava.tree.StatementDomVisitor;
+import astava.tree.Util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Recovers if, if-else and switch regions from the flat statements of ByteCodeToTree. A forward jump is replaced by a
+// structured statement only if the region it skips is single entry, i.e. its first block dominates the rest of it.
+// Loops have no node of their own and remain a header mark with a structured body ending in a jump back to it. Since
+// labels are method wide and regions are never reordered, all remaining jumps stay valid.
+// Exception handlers are always recovered as try-catch statements, since they cannot be expressed otherwise; when that
+// is not possible, UnsupportedOperationException is thrown. Handlers of finally blocks are recognized by rethrowing
+// what they catch, and the copies of the finally block, which precede each exit from the protected ranges, are
+// removed, such that MethodGenerator generates them anew.
+public class ControlFlowStructurer {
+    private static class TryRegion {
+        // Index of the first protected statement
+        private final int start;
+        // Catch handlers in the order of the exception table, or the single finally handler
+        private final ArrayList<ExceptionHandler> handlers = new ArrayList<>();
+        private final boolean isFinally;
+        private boolean isStructured;
+
+        private TryRegion(int start, boolean isFinally) {
+            this.start = start;
+            this.isFinally = isFinally;
+        }
+    }
+
+    private final List<StatementDom> statements;
+    private final ControlFlowGraph cfg;
+    private final Hashtable<Object, Integer> remainingReferences = new Hashtable<>();
+    private final ArrayList<TryRegion> tryRegions = new ArrayList<>();
+    // Copies of finally blocks, declarations hoisted out of try-catch statements and marks already added
+    private final boolean[] isRemoved;
+    // Jumps out of protected ranges redirected to the end of the try block
+    private final StatementDom[] replacements;
+    private boolean structureBranches = true;
+
+    public ControlFlowStructurer(List<StatementDom> statements) {
+        this(statements, Collections.emptyList());
+    }
+
+    public ControlFlowStructurer(List<StatementDom> statements, List<ExceptionHandler> exceptionHandlers) {
+        this.statements = statements;
+        cfg = new ControlFlowGraph(statements, exceptionHandlers);
+        isRemoved = new boolean[statements.size()];
+        replacements = new StatementDom[statements.size()];
+
+        for(int i = 0; i < statements.size(); i++) {
+            Object[] targets = cfg.getTargets(i);
+            if(targets != null) {
+                for (Object label : targets)
+                    remainingReferences.merge(label, 1, Integer::sum);
+            }
+        }
+
+        createTryRegions(exceptionHandlers);
+    }
+
+    public ControlFlowGraph getControlFlowGraph() {
+        return cfg;
+    }
+
+    public StatementDom structure() {
+        return DomFactory.block(structure(0, statements.size()));
+    }
+
+    // Like structure, but only try-catch statements are recovered
+    public StatementDom structureTryCatch() {
+        structureBranches = false;
+        return structure();
+    }
+
+    private List<StatementDom> structure(int from, int to) {
+        ArrayList<StatementDom> result = new ArrayList<>();
+
+        int i = from;
+        while(i < to) {
+            int next = cfg.getKind(i) == ControlFlowGraph.KIND_MARK ? structureTryCatch(i, to, result) : -1;
+
+            if(next != -1) {
+                i = next;
+                continue;
+            }
+
+            if(isRemoved[i]) {
+                i++;
+                continue;
+            }
+
+            if(replacements[i] != null) {
+                result.add(replacements[i]);
+                i++;
+                continue;
+            }
+
+            switch(cfg.getKind(i)) {
+                case ControlFlowGraph.KIND_IF_JUMP:
+                    next = structureBranches ? structureIfElse(i, to, result) : -1;
+                    if(next == -1 && structureBranches)
+                        next = structureIf(i, to, result);
+                    break;
+                case ControlFlowGraph.KIND_SELECT:
+                    next = structureBranches ? structureSwitch(i, to, result) : -1;
+                    break;
+                case ControlFlowGraph.KIND_MARK:
+                    addMark(i, result);
+                    next = i + 1;
+                    break;
+                default:
+                    next = -1;
+            }
+
+            if(next == -1) {
+                result.add(statements.get(i));
+                next = i + 1;
+            }
+
+            i = next;
+        }
+
+        return result;
+    }
+
+    private void addMark(int index, List<StatementDom> result) {
+        // Marks of labels, which are no longer jumped to, are dropped
+        if(!isRemoved[index] && remainingReferences.getOrDefault(getMarkLabel(index), 0) > 0)
+            result.add(statements.get(index));
+        isRemoved[index] = true;
+    }
+
+    private void createTryRegions(List<ExceptionHandler> exceptionHandlers) {
+        LinkedHashMap<Object, List<ExceptionHandler>> handlerToEntries = new LinkedHashMap<>();
+        exceptionHandlers.forEach(x -> handlerToEntries.computeIfAbsent(x.getHandler(), h -> new ArrayList<>()).add(x));
+
+        Hashtable<List<Integer>, TryRegion> rangeToCatchRegion = new Hashtable<>();
+
+        for (List<ExceptionHandler> entries : handlerToEntries.values()) {
+            ExceptionHandler first = entries.get(0);
+            int handlerIndex = cfg.getMarkIndex(first.getHandler());
+
+            if(entries.stream().anyMatch(x -> !Objects.equals(x.getType(), first.getType())))
+                throw new UnsupportedOperationException("exception handler of several types");
+
+            // javac protects the store of the exception of a finally handler by the handler itself
+            List<ExceptionHandler> ranges = entries.stream()
+                .filter(x -> cfg.getMarkIndex(x.getStart()) != handlerIndex || !isStoreOfCaught(handlerIndex, cfg.getMarkIndex(x.getEnd()), first.getVariableName()))
+                .sorted(Comparator.comparingInt(x -> cfg.getMarkIndex(x.getStart())))
+                .collect(Collectors.toList());
+            int start = cfg.getMarkIndex(ranges.get(0).getStart());
+
+            if(first.getType() == null && getFinallyBody(handlerIndex, first.getVariableName()) != null) {
+                TryRegion region = new TryRegion(start, true);
+                region.handlers.addAll(ranges);
+                tryRegions.add(region);
+            } else if(ranges.size() == 1) {
+                List<Integer> range = Arrays.asList(start, cfg.getMarkIndex(first.getEnd()));
+                rangeToCatchRegion.computeIfAbsent(range, r -> {
+                    TryRegion region = new TryRegion(start, false);
+                    tryRegions.add(region);
+                    return region;
+                }).handlers.add(ranges.get(0));
+            } else
+                throw new UnsupportedOperationException("exception handler of several ranges");
+        }
+    }
+
+    private boolean isStoreOfCaught(int from, int to, String caughtVariableName) {
+        List<Integer> indexes = getSignificantIndexes(from + 1, to);
+        return indexes.size() <= 1 && indexes.stream().allMatch(x -> getStoreOfCaught(x, caughtVariableName) != null);
+    }
+
+    // The statement begins the try-catch statement of the outermost remaining region starting at the index
+    private int structureTryCatch(int i, int to, List<StatementDom> result) {
+        TryRegion region = null;
+        int end = -1;
+
+        for (TryRegion candidate : tryRegions) {
+            if(candidate.start == i && !candidate.isStructured) {
+                int candidateEnd = getEnd(candidate);
+                if(candidateEnd > end) {
+                    region = candidate;
+                    end = candidateEnd;
+                }
+            }
+        }
+
+        if(region == null)
+            return -1;
+
+        if(end > to)
+            throw new UnsupportedOperationException("try-catch region overlapping its enclosing statement");
+
+        region.isStructured = true;
+        addMark(i, result);
+
+        // Catch and finally blocks have scopes of their own in MethodGenerator, whereas the variables of the flat
+        // statements are method wide
+        for(int k = i; k < end; k++) {
+            if(!isRemoved[k] && isDeclaration(k)) {
+                result.add(statements.get(k));
+                isRemoved[k] = true;
+            }
+        }
+
+        if(region.isFinally)
+            structureFinally(region, i, end, result);
+        else
+            structureCatch(region, i, end, result);
+
+        return end;
+    }
+
+    private int getEnd(TryRegion region) {
+        int lastHandlerIndex = region.handlers.stream().mapToInt(x -> cfg.getMarkIndex(x.getHandler())).max().getAsInt();
+        return getHandlerEnd(lastHandlerIndex);
+    }
+
+    // The handler extends over the statements it dominates
+    private int getHandlerEnd(int handlerIndex) {
+        ControlFlowGraph.BasicBlock handler = cfg.getBlockAt(handlerIndex);
+
+        int end = handlerIndex + 1;
+        while(end < statements.size()) {
+            ControlFlowGraph.BasicBlock block = cfg.getBlockAt(end);
+            if(cfg.isReachable(block) && !cfg.dominates(handler, block))
+                break;
+            end++;
+        }
+
+        return end;
+    }
+
+    // Handlers must follow the protected range, which may only be left by jumps before them, and be laid out one
+    // after the other
+    private void structureCatch(TryRegion region, int i, int end, List<StatementDom> result) {
+        int protectedEnd = cfg.getMarkIndex(region.handlers.get(0).getEnd());
+        int[] handlerIndexes = region.handlers.stream().mapToInt(x -> cfg.getMarkIndex(x.getHandler())).sorted().distinct().toArray();
+        int tryEnd = handlerIndexes[0];
+
+        if(tryEnd < protectedEnd)
+            throw new UnsupportedOperationException("exception handler within its range");
+
+        for(int k = protectedEnd; k < tryEnd; k++) {
+            if(!isRemoved[k] && replacements[k] == null && cfg.getKind(k) != ControlFlowGraph.KIND_MARK && cfg.getKind(k) != ControlFlowGraph.KIND_GO_TO && !isReturnOfValue(k) && !isLineNumber(k))
+                throw new UnsupportedOperationException("statements between protected range and exception handler");
+        }
+
+        if(!isSingleEntry(i, tryEnd))
+            throw new UnsupportedOperationException("try block entered other than at its start");
+
+        List<StatementDom> tryBlock = removeJumpAtEnd(structure(i, tryEnd), end);
+
+        List<CodeDom> catchBlocks = new ArrayList<>();
+        for (ExceptionHandler handler : region.handlers) {
+            int handlerIndex = cfg.getMarkIndex(handler.getHandler());
+            int handlerPosition = Arrays.binarySearch(handlerIndexes, handlerIndex);
+            int handlerEnd = handlerPosition + 1 < handlerIndexes.length ? handlerIndexes[handlerPosition + 1] : end;
+
+            if(!isSingleEntry(handlerIndex, handlerEnd) || remainingReferences.getOrDefault(handler.getHandler(), 0) > 0)
+                throw new UnsupportedOperationException("exception handler entered other than at its start");
+
+            isRemoved[handlerIndex] = true;
+            // Catching any exception is the same as catching Throwable
+            String type = handler.getType() != null ? handler.getType() : "java/lang/Throwable";
+            catchBlocks.add(DomFactory.catchBlock(type, handler.getVariableName(), DomFactory.block(removeJumpAtEnd(structure(handlerIndex + 1, handlerEnd), end))));
+        }
+
+        result.add(DomFactory.tryCatchStatement(DomFactory.block(tryBlock), catchBlocks));
+    }
+
+    // The finally handler stores the exception, has the finally block and rethrows. Each range is followed by a copy
+    // of the finally block ending in a return or a jump to the statements following the try-catch statement. The jumps
+    // are redirected to the end of the try block, after which MethodGenerator generates the finally block.
+    private void structureFinally(TryRegion region, int i, int end, List<StatementDom> result) {
+        int handlerIndex = cfg.getMarkIndex(region.handlers.get(0).getHandler());
+        int[] body = getFinallyBody(handlerIndex, region.handlers.get(0).getVariableName());
+        List<Integer> finallyIndexes = getSignificantIndexes(body[0] + 1, body[1]);
+
+        Object tryEndLabel = new Object();
+        Object exitLabel = null;
+        int exitCount = 0;
+
+        for(int r = 0; r < region.handlers.size(); r++) {
+            int copyStart = cfg.getMarkIndex(region.handlers.get(r).getEnd());
+            int copyEnd = r + 1 < region.handlers.size() ? cfg.getMarkIndex(region.handlers.get(r + 1).getStart()) : handlerIndex;
+
+            if(copyEnd < copyStart)
+                throw new UnsupportedOperationException("overlapping ranges of finally handler");
+
+            int exit = removeFinallyCopy(finallyIndexes, copyStart, copyEnd);
+
+            if(cfg.getKind(exit) == ControlFlowGraph.KIND_GO_TO) {
+                Object label = cfg.getTargets(exit)[0];
+                if(exitLabel != null && exitLabel != label)
+                    throw new UnsupportedOperationException("finally block left to several places");
+                exitLabel = label;
+                replacements[exit] = DomFactory.goTo(tryEndLabel);
+                consume(label);
+                exitCount++;
+            }
+        }
+
+        if(!isSingleEntry(i, handlerIndex))
+            throw new UnsupportedOperationException("try block entered other than at its start");
+
+        remainingReferences.put(tryEndLabel, exitCount);
+        List<StatementDom> tryBlock = removeJumpAtEnd(structure(i, handlerIndex), tryEndLabel);
+        if(remainingReferences.get(tryEndLabel) > 0)
+            tryBlock.add(DomFactory.mark(tryEndLabel));
+
+        // The line of the finally block is that of the store of the caught exception
+        List<StatementDom> finallyBlock = new ArrayList<>();
+        IntStream.range(handlerIndex + 1, body[0]).filter(this::isLineNumber).forEach(x -> finallyBlock.add(statements.get(x)));
+        finallyBlock.addAll(structure(body[0] + 1, body[1]));
+
+        result.add(DomFactory.tryCatchStatement(DomFactory.block(tryBlock), Arrays.asList(DomFactory.catchBlock(null, null, DomFactory.block(finallyBlock)))));
+
+        if(exitLabel != null && cfg.getMarkIndex(exitLabel) != end) {
+            remainingReferences.merge(exitLabel, 1, Integer::sum);
+            result.add(DomFactory.goTo(exitLabel));
+        }
+    }
+
+    private List<StatementDom> removeJumpAtEnd(List<StatementDom> block, int endIndex) {
+        return endIndex < statements.size() && cfg.getKind(endIndex) == ControlFlowGraph.KIND_MARK ? removeJumpAtEnd(block, getMarkLabel(endIndex)) : block;
+    }
+
+    // A jump to where the block ends anyway
+    private List<StatementDom> removeJumpAtEnd(List<StatementDom> block, Object label) {
+        if(!block.isEmpty()) {
+            boolean isJumpToLabel = Util.returnFrom(false, r -> block.get(block.size() - 1).accept(new StatementDomVisitor.Default() {
+                @Override
+                public void visitGoTo(Object target) {
+                    r.accept(target == label);
+                }
+            }));
+
+            if(isJumpToLabel) {
+                consume(label);
+                return block.subList(0, block.size() - 1);
+            }
+        }
+
+        return block;
+    }
+
+    // The indexes of the store of the caught exception and the rethrow of it, or null if the handler is not shaped
+    // like that of a finally block
+    private int[] getFinallyBody(int handlerIndex, String caughtVariableName) {
+        List<Integer> indexes = getSignificantIndexes(handlerIndex + 1, getHandlerEnd(handlerIndex));
+        if(indexes.size() < 2)
+            return null;
+
+        int store = indexes.get(0);
+        int rethrow = indexes.get(indexes.size() - 1);
+        String stored = getStoreOfCaught(store, caughtVariableName);
+        if(stored == null || !stored.equals(getThrownVariable(rethrow)))
+            return null;
+
+        List<Integer> finallyIndexes = indexes.subList(1, indexes.size() - 1);
+        if(!isSelfContained(finallyIndexes, null))
+            return null;
+
+        for (ExceptionHandler exceptionHandler : cfg.getExceptionHandlers()) {
+            int start = cfg.getMarkIndex(exceptionHandler.getStart());
+            int handler = cfg.getMarkIndex(exceptionHandler.getHandler());
+            if(start > store && start < rethrow || handler > store && handler < rethrow)
+                return null;
+        }
+
+        return new int[]{store, rethrow};
+    }
+
+    // Removes the copy of the finally block between the indexes and returns the index of the exit following it. Marks
+    // the copy begins with are kept, since they may be jumped to from the protected range. Since javac shortcuts jumps
+    // to the end of the finally block to the exit, those are equivalent.
+    private int removeFinallyCopy(List<Integer> finallyIndexes, int from, int to) {
+        List<Integer> copyIndexes = getSignificantIndexes(from, to);
+
+        for(int skip = 0; skip < copyIndexes.size(); skip++) {
+            List<Integer> copy = copyIndexes.subList(skip, copyIndexes.size() - 1);
+            int exit = copyIndexes.get(copyIndexes.size() - 1);
+            int exitKind = cfg.getKind(exit);
+
+            if(exitKind == ControlFlowGraph.KIND_GO_TO || exitKind == ControlFlowGraph.KIND_EXIT) {
+                boolean isCopy = isSelfContained(copy, null) && print(copy).equals(print(finallyIndexes));
+
+                if(!isCopy && exitKind == ControlFlowGraph.KIND_GO_TO && !finallyIndexes.isEmpty()) {
+                    List<Integer> finallyIndexesWithoutEnd = finallyIndexes.subList(0, finallyIndexes.size() - 1);
+                    Object exitLabel = cfg.getTargets(exit)[0];
+                    isCopy = cfg.getKind(finallyIndexes.get(finallyIndexes.size() - 1)) == ControlFlowGraph.KIND_MARK &&
+                        isSelfContained(copy, exitLabel) && print(copy).equals(print(finallyIndexesWithoutEnd));
+                }
+
+                if(isCopy) {
+                    for (int index : copy) {
+                        isRemoved[index] = true;
+                        Object[] targets = cfg.getTargets(index);
+                        if(targets != null)
+                            Arrays.asList(targets).forEach(this::consume);
+                    }
+                    // The line numbers of the copy go with it, whereas those following it are of the exit
+                    if(!copy.isEmpty())
+                        IntStream.range(from, copy.get(copy.size() - 1)).filter(this::isLineNumber).forEach(x -> isRemoved[x] = true);
+                    return exit;
+                }
+            }
+
+            if(cfg.getKind(copyIndexes.get(skip)) != ControlFlowGraph.KIND_MARK)
+                break;
+        }
+
+        throw new UnsupportedOperationException("exit from try block without copy of finally block");
+    }
+
+    // Whether all jumps are to marks among the statements or to the given label
+    private boolean isSelfContained(List<Integer> indexes, Object outerLabel) {
+        HashSet<Object> labels = new HashSet<>();
+        indexes.stream().filter(x -> cfg.getKind(x) == ControlFlowGraph.KIND_MARK).forEach(x -> labels.add(getMarkLabel(x)));
+
+        return indexes.stream()
+            .filter(x -> cfg.getTargets(x) != null)
+            .flatMap(x -> Arrays.stream(cfg.getTargets(x)))
+            .allMatch(x -> labels.contains(x) || x == outerLabel);
+    }
+
+    // Copies of finally blocks are compared as printed, which names labels by their first occurrence
+    private String print(List<Integer> indexes) {
+        StringWriter writer = new StringWriter();
+        try {
+            CodeDomPrinter.print(DomFactory.block(indexes.stream().map(statements::get).collect(Collectors.toList())), writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    // Declarations, line numbers and marks, which are not jumped to, e.g. those of protected ranges, are insignificant
+    // for comparing copies of finally blocks
+    private List<Integer> getSignificantIndexes(int from, int to) {
+        return IntStream.range(from, to)
+            .filter(x -> !isDeclaration(x) && !isLineNumber(x) && (cfg.getKind(x) != ControlFlowGraph.KIND_MARK || !cfg.getReferences(getMarkLabel(x)).isEmpty()))
+            .boxed()
+            .collect(Collectors.toList());
+    }
+
+    // A return which cannot throw, such as that of a value computed within the protected range
+    private boolean isReturnOfValue(int index) {
+        return Util.returnFrom(false, r -> statements.get(index).accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitReturnValue(ExpressionDom expression) {
+                r.accept(SSAOptimizer.getAccessedVariable(expression) != null || SSAOptimizer.getLiteralType(expression) != null);
+            }
+
+            @Override
+            public void visitReturn() {
+                r.accept(true);
+            }
+        }));
+    }
+
+    private boolean isDeclaration(int index) {
+        return Util.returnFrom(false, r -> statements.get(index).accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitVariableDeclaration(String type, String name) {
+                r.accept(true);
+            }
+        }));
+    }
+
+    private boolean isLineNumber(int index) {
+        return Util.returnFrom(false, r -> statements.get(index).accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitLineNumber(int line) {
+                r.accept(true);
+            }
+        }));
+    }
+
+    // The variable the caught exception is assigned to by the statement, or null
+    private String getStoreOfCaught(int index, String caughtVariableName) {
+        return Util.returnFrom(null, r -> statements.get(index).accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitVariableAssignment(String name, ExpressionDom value) {
+                if(caughtVariableName.equals(SSAOptimizer.getAccessedVariable(value)))
+                    r.accept(name);
+            }
+        }));
+    }
+
+    private String getThrownVariable(int index) {
+        return Util.returnFrom(null, r -> statements.get(index).accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitThrow(ExpressionDom expression) {
+                r.accept(SSAOptimizer.getAccessedVariable(expression));
+            }
+        }));
+    }
+
+    // ifJump(c, L); S; mark L => if(c) { S }
+    private int structureIf(int i, int to, List<StatementDom> result) {
+        Object label = cfg.getTargets(i)[0];
+        int j = cfg.getMarkIndex(label);
+
+        if(j <= i || j > to || !isSingleEntry(i + 1, j))
+            return -1;
+
+        consume(label);
+        result.add(DomFactory.ifElse(getCondition(i), DomFactory.block(structure(i + 1, j)), DomFactory.block()));
+
+        return j;
+    }
+
+    // ifJump(c, L1); S1; goTo L2; mark L1; S2; mark L2 => if(c) { S1 } else { S2 }
+    private int structureIfElse(int i, int to, List<StatementDom> result) {
+        Object elseLabel = cfg.getTargets(i)[0];
+        int j = cfg.getMarkIndex(elseLabel);
+
+        if(j <= i + 1 || j >= to || cfg.getKind(j - 1) != ControlFlowGraph.KIND_GO_TO || cfg.getReferences(elseLabel).size() != 1)
+            return -1;
+
+        Object endLabel = cfg.getTargets(j - 1)[0];
+        int k = cfg.getMarkIndex(endLabel);
+
+        if(k <= j || k > to || !isSingleEntry(i + 1, j - 1) || !isSingleEntry(j, k))
+            return -1;
+
+        consume(elseLabel);
+        consume(endLabel);
+        result.add(DomFactory.ifElse(
+            getCondition(i),
+            DomFactory.block(structure(i + 1, j - 1)),
+            DomFactory.block(structure(j + 1, k))));
+
+        return k;
+    }
+
+    // Case regions must be laid out in key order, directly after the select and followed by the default region, which
+    // is the order in which MethodGenerator emits them. Jumps to the end of the switch become breaks.
+    private int structureSwitch(int i, int to, List<StatementDom> result) {
+        ExpressionDom[] expressionHolder = new ExpressionDom[1];
+        Object[] dfltHolder = new Object[1];
+        int[][] keysHolder = new int[1][];
+        Object[][] labelsHolder = new Object[1][];
+        statements.get(i).accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitSwitch(ExpressionDom expression, Object dflt, int[] keys, Object[] labels) {
+                expressionHolder[0] = expression;
+                dfltHolder[0] = dflt;
+                keysHolder[0] = keys;
+                labelsHolder[0] = labels;
+            }
+        });
+        Object dflt = dfltHolder[0];
+        int[] keys = keysHolder[0];
+        Object[] labels = labelsHolder[0];
+
+        // Keys jumping to the default are left to the default
+        List<Integer> caseIndexes = IntStream.range(0, keys.length)
+            .filter(x -> labels[x] != dflt)
+            .boxed()
+            .sorted(Comparator.comparingInt(x -> keys[x]))
+            .collect(Collectors.toList());
+
+        if(caseIndexes.isEmpty())
+            return -1;
+
+        int[] caseMarks = caseIndexes.stream().mapToInt(x -> cfg.getMarkIndex(labels[x])).toArray();
+
+        if(caseMarks[0] != i + 1)
+            return -1;
+
+        for(int c = 1; c < caseMarks.length; c++) {
+            if(caseMarks[c] < caseMarks[c - 1])
+                return -1;
+        }
+
+        int lastCaseMark = caseMarks[caseMarks.length - 1];
+        int d = cfg.getMarkIndex(dflt);
+
+        if(d <= lastCaseMark || d > to)
+            return -1;
+
+        // The end is the nearest target beyond the default of the jumps out of the cases; without such jumps, the
+        // default is considered the end
+        int e = d;
+        for(int s = i + 1; s < d; s++) {
+            if(cfg.getKind(s) == ControlFlowGraph.KIND_GO_TO) {
+                int target = cfg.getMarkIndex(cfg.getTargets(s)[0]);
+                if(target > d && target <= to && (e == d || target < e))
+                    e = target;
+            }
+        }
+
+        if(!isSingleEntry(i, e))
+            return -1;
+
+        for (int caseIndex : caseIndexes) {
+            if(cfg.getReferences(labels[caseIndex]).stream().anyMatch(x -> x != i))
+                return -1;
+        }
+
+        if(e > d && cfg.getReferences(dflt).stream().anyMatch(x -> x != i))
+            return -1;
+
+        Object endLabel = e > d ? getMarkLabel(e) : dflt;
+
+        for (Object label : cfg.getTargets(i))
+            consume(label);
+
+        List<Map.Entry<Integer, StatementDom>> cases = new ArrayList<>();
+        for(int c = 0; c < caseMarks.length; c++) {
+            int key = keys[caseIndexes.get(c)];
+            // Keys sharing a case fall through to the last of them
+            boolean isLastOfCase = c == caseMarks.length - 1 || caseMarks[c + 1] != caseMarks[c];
+            int caseEnd = c == caseMarks.length - 1 ? d : caseMarks[c + 1];
+            List<StatementDom> body = isLastOfCase ? replaceBreaks(structure(caseMarks[c] + 1, caseEnd), endLabel) : Collections.emptyList();
+            cases.add(DomFactory.option(key, DomFactory.block(body)));
+        }
+
+        List<StatementDom> defaultBody = e > d ? replaceBreaks(structure(d + 1, e), endLabel) : Collections.emptyList();
+
+        result.add(DomFactory.select(expressionHolder[0], cases, DomFactory.block(defaultBody)));
+
+        return e;
+    }
+
+    private List<StatementDom> replaceBreaks(List<StatementDom> statements, Object endLabel) {
+        return statements.stream().map(x -> replaceBreaks(x, endLabel)).collect(Collectors.toList());
+    }
+
+    // Nested switches are skipped, since a break in them would end the nested switch
+    private StatementDom replaceBreaks(StatementDom statement, Object endLabel) {
+        return new StatementDomVisitor.Return<StatementDom>() {
+            {
+                setResult(statement);
+            }
+
+            @Override
+            public void visitGoTo(Object label) {
+                if(label == endLabel) {
+                    consume(label);
+                    setResult(DomFactory.breakOption());
+                }
+            }
+
+            @Override
+            public void visitBlock(List<StatementDom> statements) {
+                setResult(DomFactory.block(replaceBreaks(statements, endLabel)));
+            }
+
+            @Override
+            public void visitIfElse(ExpressionDom condition, StatementDom ifTrue, StatementDom ifFalse) {
+                setResult(DomFactory.ifElse(condition, replaceBreaks(ifTrue, endLabel), replaceBreaks(ifFalse, endLabel)));
+            }
+        }.returnFrom(statement);
+    }
+
+    private boolean isSingleEntry(int from, int to) {
+        if(from >= to)
+            return true;
+
+        ControlFlowGraph.BasicBlock entry = cfg.getBlockAt(from);
+        int last = cfg.getBlockAt(to - 1).getIndex();
+
+        for(int b = entry.getIndex() + 1; b <= last; b++) {
+            ControlFlowGraph.BasicBlock block = cfg.getBlocks().get(b);
+            // Unreachable blocks are not considered
+            if(cfg.isReachable(block) && !cfg.dominates(entry, block))
+                return false;
+        }
+
+        return true;
+    }
+
+    private void consume(Object label) {
+        remainingReferences.merge(label, -1, Integer::sum);
+    }
+
+    private ExpressionDom getCondition(int index) {
+        return Util.returnFrom(null, r -> statements.get(index).accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitIfJump(ExpressionDom condition, Object label) {
+                r.accept(condition);
+            }
+        }));
+    }
+
+    private Object getMarkLabel(int index) {
+        return Util.returnFrom(null, r -> statements.get(index).accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitMark(Object label) {
+                r.accept(label);
+            }
+        }));
+    }
+}
@@ -0,0 +1,229 @@
+package astava.java.gen;
+
+import astava.java.DomFactory;
+import astava.tree.StatementDom;
+import astava.tree.StatementDomVisitor;
+import astava.tree.Util;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Caches the decompiled bodies of methods (see ByteCodeToTree.decompile) by a hash of their bytecode, such that
+// methods seen before, e.g. when the same library is loaded by several class loaders or in a later run, are not
+// decompiled again. Bodies are kept in memory, weighted by their number of instructions and evicted least recently used
+// first, and optionally in a directory, one file per method. The default cache, which provides the bodies transformed
+// by agents and regenerated by MethodGenerator, optimizes them with SSAOptimizer.
+public class DecompileCache {
+    // Bump when the output of ByteCodeToTree or the encoding of DomCodec changes
+    private static final int VERSION = 6;
+    private static final int MAGIC = 0xA57AD0C0;
+    private static final int KIND_RAW = 0;
+    private static final int KIND_TREE = 1;
+    private static final String FILE_SUFFIX = ".dom";
+
+    private static volatile DecompileCache defaultCache = new DecompileCache(1 << 20, null, true);
+
+    public static DecompileCache getDefault() {
+        return defaultCache;
+    }
+
+    public static void setDefault(DecompileCache cache) {
+        defaultCache = cache;
+    }
+
+    private static class Entry {
+        // Null if the method is kept as bytecode
+        private final StatementDom body;
+        private final long weight;
+
+        private Entry(StatementDom body, long weight) {
+            this.body = body;
+            this.weight = weight;
+        }
+    }
+
+    private final long maxWeight;
+    private final Path directory;
+    private final boolean optimize;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public DecompileCache(long maxWeight) {
+        this(maxWeight, null);
+    }
+
+    public DecompileCache(long maxWeight, Path directory) {
+        this(maxWeight, directory, false);
+    }
+
+    public DecompileCache(long maxWeight, Path directory, boolean optimize) {
+        this.maxWeight = maxWeight;
+        this.directory = directory;
+        this.optimize = optimize;
+    }
+
+    public StatementDom decompile(MethodNode methodNode) {
+        String key = getKey(methodNode);
+        long entryWeight = Math.max(1, methodNode.instructions.size());
+
+        Entry entry = get(key);
+        if(entry != null) {
+            memoryHits.incrementAndGet();
+            return toBody(entry, methodNode);
+        }
+
+        entry = read(key, entryWeight);
+        if(entry != null) {
+            diskHits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            StatementDom body = ByteCodeToTree.decompile(methodNode, optimize);
+            entry = new Entry(isRaw(body) ? null : body, entryWeight);
+            write(key, entry);
+        }
+
+        put(key, entry);
+
+        return toBody(entry, methodNode);
+    }
+
+    private static StatementDom toBody(Entry entry, MethodNode methodNode) {
+        // Raw bodies refer to the method node, so they are not shared
+        return entry.body != null ? entry.body : DomFactory.asm(methodNode);
+    }
+
+    private static boolean isRaw(StatementDom body) {
+        return Util.returnFrom(false, r -> body.accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitASM(MethodNode methodNode) {
+                r.accept(true);
+            }
+        }));
+    }
+
+    private synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if(previous != null)
+            weight -= previous.weight;
+        weight += entry.weight;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while(weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight;
+            eldest.remove();
+        }
+    }
+
+    private Entry read(String key, long entryWeight) {
+        if(directory == null)
+            return null;
+
+        Path file = directory.resolve(key + FILE_SUFFIX);
+        if(!Files.isRegularFile(file))
+            return null;
+
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(input.readInt() != MAGIC || input.readInt() != VERSION)
+                return null;
+
+            return new Entry(input.readByte() == KIND_TREE ? DomCodec.read(input) : null, entryWeight);
+        } catch (IOException | RuntimeException e) {
+            // A corrupt or partially written file is treated as absent and is overwritten after decompilation
+            return null;
+        }
+    }
+
+    private void write(String key, Entry entry) {
+        if(directory == null)
+            return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeByte(entry.body != null ? KIND_TREE : KIND_RAW);
+            if(entry.body != null)
+                DomCodec.write(entry.body, output);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Bodies which cannot be encoded are only kept in memory
+            return;
+        }
+
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            try {
+                Files.write(temporary, bytes.toByteArray());
+                Files.move(temporary, directory.resolve(key + FILE_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // The disk tier is best effort
+        }
+    }
+
+    // A hash of the method as written to a class file, i.e. of its access, descriptor, instructions, parameters and
+    // local variables, which are all the inputs of decompilation
+    private String getKey(MethodNode methodNode) {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, 0, "x", null, "java/lang/Object", null);
+        methodNode.accept(classWriter);
+        classWriter.visitEnd();
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        digest.update((byte)VERSION);
+        // Optimized and unoptimized bodies may share a directory
+        digest.update((byte)(optimize ? 1 : 0));
+        byte[] hash = digest.digest(classWriter.toByteArray());
+
+        StringBuilder key = new StringBuilder(hash.length * 2);
+        for (byte b : hash)
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return key.toString();
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+}
@@ -0,0 +1,849 @@
+package astava.java.gen;
+
+import astava.java.DomFactory;
+import astava.tree.CodeDom;
+import astava.tree.CodeDomVisitor;
+import astava.tree.ExpressionDom;
+import astava.tree.ExpressionDomVisitor;
+import astava.tree.StatementDom;
+import astava.tree.StatementDomVisitor;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+// Binary encoding of the method bodies produced by ByteCodeToTree, such that they can be kept on disk. Labels are
+// written as indexes and read back as "L<index>". Doms which cannot be encoded, such as the raw bytecode of a method,
+// make write throw UnsupportedOperationException.
+class DomCodec {
+    private static final int S_DECLARE_VAR = 0;
+    private static final int S_ASSIGN_VAR = 1;
+    private static final int S_ASSIGN_FIELD = 2;
+    private static final int S_ASSIGN_STATIC_FIELD = 3;
+    private static final int S_INCREMENT = 4;
+    private static final int S_RETURN_VALUE = 5;
+    private static final int S_BLOCK = 6;
+    private static final int S_IF_ELSE = 7;
+    private static final int S_BREAK_CASE = 8;
+    private static final int S_RETURN = 9;
+    private static final int S_INVOKE = 10;
+    private static final int S_NEW_INSTANCE = 11;
+    private static final int S_SWITCH = 12;
+    private static final int S_THROW = 13;
+    private static final int S_TRY_CATCH = 14;
+    private static final int S_MARK = 15;
+    private static final int S_GO_TO = 16;
+    private static final int S_ARRAY_STORE = 17;
+    private static final int S_SELECT = 18;
+    private static final int S_IF_JUMP = 19;
+    private static final int S_LINE_NUMBER = 20;
+
+    private static final int E_BOOLEAN = 0;
+    private static final int E_BYTE = 1;
+    private static final int E_SHORT = 2;
+    private static final int E_INT = 3;
+    private static final int E_LONG = 4;
+    private static final int E_FLOAT = 5;
+    private static final int E_DOUBLE = 6;
+    private static final int E_CHAR = 7;
+    private static final int E_STRING = 8;
+    private static final int E_ARITHMETIC = 9;
+    private static final int E_SHIFT = 10;
+    private static final int E_BITWISE = 11;
+    private static final int E_COMPARE = 12;
+    private static final int E_LOGICAL = 13;
+    private static final int E_OBJECT_EQUALITY = 14;
+    private static final int E_ACCESS_VAR = 15;
+    private static final int E_ACCESS_FIELD = 16;
+    private static final int E_ACCESS_STATIC_FIELD = 17;
+    private static final int E_NOT = 18;
+    private static final int E_INSTANCE_OF = 19;
+    private static final int E_IF_ELSE = 20;
+    private static final int E_INVOKE = 21;
+    private static final int E_NEW_INSTANCE = 22;
+    private static final int E_THIS = 23;
+    private static final int E_NULL = 24;
+    private static final int E_TYPE_CAST = 25;
+    private static final int E_CLASS_LITERAL = 26;
+    private static final int E_ARRAY_LENGTH = 27;
+    private static final int E_NEG = 28;
+    private static final int E_ARRAY_LOAD = 29;
+    private static final int E_NEW_ARRAY = 30;
+
+    public static void write(StatementDom statement, DataOutput output) throws IOException {
+        try {
+            new Writer(output).writeStatement(statement);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static StatementDom read(DataInput input) throws IOException {
+        return new Reader(input).readStatement();
+    }
+
+    private static class Writer {
+        private final DataOutput output;
+        private final Hashtable<Object, Integer> labels = new Hashtable<>();
+
+        private Writer(DataOutput output) {
+            this.output = output;
+        }
+
+        private void tag(int tag) {
+            try {
+                output.writeByte(tag);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeInt(int value) {
+            try {
+                output.writeInt(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeLong(long value) {
+            try {
+                output.writeLong(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeString(String value) {
+            try {
+                output.writeBoolean(value != null);
+                if(value != null)
+                    output.writeUTF(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeLabel(Object label) {
+            writeInt(labels.computeIfAbsent(label, l -> labels.size()));
+        }
+
+        private void writeStrings(List<String> values) {
+            writeInt(values.size());
+            values.forEach(this::writeString);
+        }
+
+        private void writeExpressions(List<ExpressionDom> expressions) {
+            writeInt(expressions.size());
+            expressions.forEach(this::writeExpression);
+        }
+
+        private void writeStatement(StatementDom statement) {
+            statement.accept(new StatementDomVisitor() {
+                @Override
+                public void visitVariableDeclaration(String type, String name) {
+                    tag(S_DECLARE_VAR);
+                    writeString(type);
+                    writeString(name);
+                }
+
+                @Override
+                public void visitVariableAssignment(String name, ExpressionDom value) {
+                    tag(S_ASSIGN_VAR);
+                    writeString(name);
+                    writeExpression(value);
+                }
+
+                @Override
+                public void visitFieldAssignment(ExpressionDom target, String name, String type, ExpressionDom value) {
+                    tag(S_ASSIGN_FIELD);
+                    writeExpression(target);
+                    writeString(name);
+                    writeString(type);
+                    writeExpression(value);
+                }
+
+                @Override
+                public void visitStaticFieldAssignment(String typeName, String name, String type, ExpressionDom value) {
+                    tag(S_ASSIGN_STATIC_FIELD);
+                    writeString(typeName);
+                    writeString(name);
+                    writeString(type);
+                    writeExpression(value);
+                }
+
+                @Override
+                public void visitIncrement(String name, int amount) {
+                    tag(S_INCREMENT);
+                    writeString(name);
+                    writeInt(amount);
+                }
+
+                @Override
+                public void visitReturnValue(ExpressionDom expression) {
+                    tag(S_RETURN_VALUE);
+                    writeExpression(expression);
+                }
+
+                @Override
+                public void visitBlock(List<StatementDom> statements) {
+                    tag(S_BLOCK);
+                    writeInt(statements.size());
+                    statements.forEach(x -> writeStatement(x));
+                }
+
+                @Override
+                public void visitIfElse(ExpressionDom condition, StatementDom ifTrue, StatementDom ifFalse) {
+                    tag(S_IF_ELSE);
+                    writeExpression(condition);
+                    writeStatement(ifTrue);
+                    writeStatement(ifFalse);
+                }
+
+                @Override
+                public void visitBreakCase() {
+                    tag(S_BREAK_CASE);
+                }
+
+                @Override
+                public void visitReturn() {
+                    tag(S_RETURN);
+                }
+
+                @Override
+                public void visitInvocation(int invocation, ExpressionDom target, String type, String name, String descriptor, List<ExpressionDom> arguments) {
+                    tag(S_INVOKE);
+                    writeInvocation(invocation, target, type, name, descriptor, arguments);
+                }
+
+                @Override
+                public void visitNewInstance(String type, List<String> parameterTypes, List<ExpressionDom> arguments) {
+                    tag(S_NEW_INSTANCE);
+                    writeString(type);
+                    writeStrings(parameterTypes);
+                    writeExpressions(arguments);
+                }
+
+                @Override
+                public void visitLabel(String name) {
+                    throw new UnsupportedOperationException("label");
+                }
+
+                @Override
+                public void visitGoTo(String name) {
+                    throw new UnsupportedOperationException("goTo");
+                }
+
+                @Override
+                public void visitSwitch(ExpressionDom expression, Map<Integer, StatementDom> cases, StatementDom defaultBody) {
+                    tag(S_SWITCH);
+                    writeExpression(expression);
+                    writeInt(cases.size());
+                    cases.forEach((key, body) -> {
+                        writeInt(key);
+                        writeStatement(body);
+                    });
+                    writeStatement(defaultBody);
+                }
+
+                @Override
+                public void visitASM(MethodNode methodNode) {
+                    throw new UnsupportedOperationException("asm");
+                }
+
+                @Override
+                public void visitMethodBody() {
+                    throw new UnsupportedOperationException("methodBody");
+                }
+
+                @Override
+                public void visitThrow(ExpressionDom expression) {
+                    tag(S_THROW);
+                    writeExpression(expression);
+                }
+
+                @Override
+                public void visitTryCatch(StatementDom tryBlock, List<CodeDom> catchBlocks) {
+                    tag(S_TRY_CATCH);
+                    writeStatement(tryBlock);
+                    writeInt(catchBlocks.size());
+                    catchBlocks.forEach(x -> x.accept(new CodeDomVisitor() {
+                        @Override
+                        public void visitStatement(StatementDom statementDom) {
+                            throw new UnsupportedOperationException("statement as catch block");
+                        }
+
+                        @Override
+                        public void visitExpression(ExpressionDom expressionDom) {
+                            throw new UnsupportedOperationException("expression as catch block");
+                        }
+
+                        @Override
+                        public void visitCatch(String type, String name, StatementDom statementDom) {
+                            writeString(type);
+                            writeString(name);
+                            writeStatement(statementDom);
+                        }
+                    }));
+                }
+
+                @Override
+                public void visitMark(Object label) {
+                    tag(S_MARK);
+                    writeLabel(label);
+                }
+
+                @Override
+                public void visitGoTo(Object label) {
+                    tag(S_GO_TO);
+                    writeLabel(label);
+                }
+
+                @Override
+                public void visitArrayStore(ExpressionDom expression, ExpressionDom index, ExpressionDom value) {
+                    tag(S_ARRAY_STORE);
+                    writeExpression(expression);
+                    writeExpression(index);
+                    writeExpression(value);
+                }
+
+                @Override
+                public void visitSwitch(ExpressionDom expression, Object dflt, int[] keys, Object[] labels) {
+                    tag(S_SELECT);
+                    writeExpression(expression);
+                    writeLabel(dflt);
+                    writeInt(keys.length);
+                    for(int i = 0; i < keys.length; i++) {
+                        writeInt(keys[i]);
+                        writeLabel(labels[i]);
+                    }
+                }
+
+                @Override
+                public void visitIfJump(ExpressionDom condition, Object label) {
+                    tag(S_IF_JUMP);
+                    writeExpression(condition);
+                    writeLabel(label);
+                }
+
+                @Override
+                public void visitLineNumber(int line) {
+                    tag(S_LINE_NUMBER);
+                    writeInt(line);
+                }
+            });
+        }
+
+        private void writeInvocation(int invocation, ExpressionDom target, String type, String name, String descriptor, List<ExpressionDom> arguments) {
+            writeInt(invocation);
+            try {
+                output.writeBoolean(target != null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if(target != null)
+                writeExpression(target);
+            writeString(type);
+            writeString(name);
+            writeString(descriptor);
+            writeExpressions(arguments);
+        }
+
+        private void writeBinary(int tag, int operator, ExpressionDom lhs, ExpressionDom rhs) {
+            tag(tag);
+            writeInt(operator);
+            writeExpression(lhs);
+            writeExpression(rhs);
+        }
+
+        private void writeExpression(ExpressionDom expression) {
+            expression.accept(new ExpressionDomVisitor() {
+                @Override
+                public void visitBooleanLiteral(boolean value) {
+                    tag(E_BOOLEAN);
+                    writeInt(value ? 1 : 0);
+                }
+
+                @Override
+                public void visitByteLiteral(byte value) {
+                    tag(E_BYTE);
+                    writeInt(value);
+                }
+
+                @Override
+                public void visitShortLiteral(short value) {
+                    tag(E_SHORT);
+                    writeInt(value);
+                }
+
+                @Override
+                public void visitIntLiteral(int value) {
+                    tag(E_INT);
+                    writeInt(value);
+                }
+
+                @Override
+                public void visitLongLiteral(long value) {
+                    tag(E_LONG);
+                    writeLong(value);
+                }
+
+                @Override
+                public void visitFloatLiteral(float value) {
+                    tag(E_FLOAT);
+                    writeInt(Float.floatToRawIntBits(value));
+                }
+
+                @Override
+                public void visitDoubleLiteral(double value) {
+                    tag(E_DOUBLE);
+                    writeLong(Double.doubleToRawLongBits(value));
+                }
+
+                @Override
+                public void visitCharLiteral(char value) {
+                    tag(E_CHAR);
+                    writeInt(value);
+                }
+
+                @Override
+                public void visitStringLiteral(String value) {
+                    tag(E_STRING);
+                    writeString(value);
+                }
+
+                @Override
+                public void visitArithmetic(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                    writeBinary(E_ARITHMETIC, operator, lhs, rhs);
+                }
+
+                @Override
+                public void visitShift(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                    writeBinary(E_SHIFT, operator, lhs, rhs);
+                }
+
+                @Override
+                public void visitBitwise(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                    writeBinary(E_BITWISE, operator, lhs, rhs);
+                }
+
+                @Override
+                public void visitCompare(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                    writeBinary(E_COMPARE, operator, lhs, rhs);
+                }
+
+                @Override
+                public void visitLogical(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                    writeBinary(E_LOGICAL, operator, lhs, rhs);
+                }
+
+                @Override
+                public void visitObjectEquality(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                    writeBinary(E_OBJECT_EQUALITY, operator, lhs, rhs);
+                }
+
+                @Override
+                public void visitVariableAccess(String name) {
+                    tag(E_ACCESS_VAR);
+                    writeString(name);
+                }
+
+                @Override
+                public void visitFieldAccess(ExpressionDom target, String name, String fieldTypeName) {
+                    tag(E_ACCESS_FIELD);
+                    writeExpression(target);
+                    writeString(name);
+                    writeString(fieldTypeName);
+                }
+
+                @Override
+                public void visitStaticFieldAccess(String typeName, String name, String fieldTypeName) {
+                    tag(E_ACCESS_STATIC_FIELD);
+                    writeString(typeName);
+                    writeString(name);
+                    writeString(fieldTypeName);
+                }
+
+                @Override
+                public void visitNot(ExpressionDom expression) {
+                    tag(E_NOT);
+                    writeExpression(expression);
+                }
+
+                @Override
+                public void visitInstanceOf(ExpressionDom expression, String type) {
+                    tag(E_INSTANCE_OF);
+                    writeExpression(expression);
+                    writeString(type);
+                }
+
+                @Override
+                public void visitBlock(List<CodeDom> codeList) {
+                    throw new UnsupportedOperationException("block expression");
+                }
+
+                @Override
+                public void visitIfElse(ExpressionDom condition, ExpressionDom ifTrue, ExpressionDom ifFalse) {
+                    tag(E_IF_ELSE);
+                    writeExpression(condition);
+                    writeExpression(ifTrue);
+                    writeExpression(ifFalse);
+                }
+
+                @Override
+                public void visitInvocation(int invocation, ExpressionDom target, String type, String name, String descriptor, List<ExpressionDom> arguments) {
+                    tag(E_INVOKE);
+                    writeInvocation(invocation, target, type, name, descriptor, arguments);
+                }
+
+                @Override
+                public void visitNewInstance(String type, List<String> parameterTypes, List<ExpressionDom> arguments) {
+                    tag(E_NEW_INSTANCE);
+                    writeString(type);
+                    writeStrings(parameterTypes);
+                    writeExpressions(arguments);
+                }
+
+                @Override
+                public void visitThis() {
+                    tag(E_THIS);
+                }
+
+                @Override
+                public void visitNull() {
+                    tag(E_NULL);
+                }
+
+                @Override
+                public void visitTop(ExpressionDom expression, BiFunction<ExpressionDom, ExpressionDom, ExpressionDom> usage) {
+                    throw new UnsupportedOperationException("top");
+                }
+
+                @Override
+                public void visitDup(String type) {
+                    throw new UnsupportedOperationException("dup");
+                }
+
+                @Override
+                public void visitLetBe(String type) {
+                    throw new UnsupportedOperationException("letBe");
+                }
+
+                @Override
+                public void visitTypeCast(ExpressionDom expression, String targetType) {
+                    tag(E_TYPE_CAST);
+                    writeExpression(expression);
+                    writeString(targetType);
+                }
+
+                @Override
+                public void visitMethodBody() {
+                    throw new UnsupportedOperationException("methodBody");
+                }
+
+                @Override
+                public void visitClassLiteral(String type) {
+                    tag(E_CLASS_LITERAL);
+                    writeString(type);
+                }
+
+                @Override
+                public void visitArrayLength(ExpressionDom expression) {
+                    tag(E_ARRAY_LENGTH);
+                    writeExpression(expression);
+                }
+
+                @Override
+                public void visitArrayLoad(ExpressionDom expression, ExpressionDom index) {
+                    tag(E_ARRAY_LOAD);
+                    writeExpression(expression);
+                    writeExpression(index);
+                }
+
+                @Override
+                public void visitNewArray(String type, ExpressionDom length) {
+                    tag(E_NEW_ARRAY);
+                    writeString(type);
+                    writeExpression(length);
+                }
+
+                @Override
+                public void visitNeg(ExpressionDom expression) {
+                    tag(E_NEG);
+                    writeExpression(expression);
+                }
+            });
+        }
+    }
+
+    private static class Reader {
+        private final DataInput input;
+        // Labels may be compared by identity, so each index is read back as the same object
+        private final Hashtable<Integer, Object> labels = new Hashtable<>();
+
+        private Reader(DataInput input) {
+            this.input = input;
+        }
+
+        private String readString() throws IOException {
+            return input.readBoolean() ? input.readUTF() : null;
+        }
+
+        private Object readLabel() throws IOException {
+            return labels.computeIfAbsent(input.readInt(), index -> "L" + index);
+        }
+
+        private List<String> readStrings() throws IOException {
+            int size = input.readInt();
+            ArrayList<String> values = new ArrayList<>(size);
+            for(int i = 0; i < size; i++)
+                values.add(readString());
+            return values;
+        }
+
+        private List<ExpressionDom> readExpressions() throws IOException {
+            int size = input.readInt();
+            ArrayList<ExpressionDom> expressions = new ArrayList<>(size);
+            for(int i = 0; i < size; i++)
+                expressions.add(readExpression());
+            return expressions;
+        }
+
+        private StatementDom readStatement() throws IOException {
+            int tag = input.readByte();
+
+            switch (tag) {
+                case S_DECLARE_VAR: {
+                    String type = readString();
+                    return DomFactory.declareVar(type, readString());
+                }
+                case S_ASSIGN_VAR: {
+                    String name = readString();
+                    return DomFactory.assignVar(name, readExpression());
+                }
+                case S_ASSIGN_FIELD: {
+                    ExpressionDom target = readExpression();
+                    String name = readString();
+                    String type = readString();
+                    return DomFactory.assignField(target, name, type, readExpression());
+                }
+                case S_ASSIGN_STATIC_FIELD: {
+                    String typeName = readString();
+                    String name = readString();
+                    String type = readString();
+                    return DomFactory.assignStaticField(typeName, name, type, readExpression());
+                }
+                case S_INCREMENT: {
+                    String name = readString();
+                    return DomFactory.intIncVar(name, input.readInt());
+                }
+                case S_RETURN_VALUE:
+                    return DomFactory.ret(readExpression());
+                case S_BLOCK: {
+                    int size = input.readInt();
+                    ArrayList<StatementDom> statements = new ArrayList<>(size);
+                    for(int i = 0; i < size; i++)
+                        statements.add(readStatement());
+                    return DomFactory.block(statements);
+                }
+                case S_IF_ELSE: {
+                    ExpressionDom condition = readExpression();
+                    StatementDom ifTrue = readStatement();
+                    return DomFactory.ifElse(condition, ifTrue, readStatement());
+                }
+                case S_BREAK_CASE:
+                    return DomFactory.breakOption();
+                case S_RETURN:
+                    return DomFactory.ret();
+                case S_INVOKE: {
+                    int invocation = input.readInt();
+                    ExpressionDom target = input.readBoolean() ? readExpression() : null;
+                    String type = readString();
+                    String name = readString();
+                    String descriptor = readString();
+                    return DomFactory.invoke(invocation, type, name, descriptor, target, readExpressions());
+                }
+                case S_NEW_INSTANCE: {
+                    String type = readString();
+                    List<String> parameterTypes = readStrings();
+                    return DomFactory.newInstance(type, parameterTypes, readExpressions());
+                }
+                case S_SWITCH: {
+                    ExpressionDom expression = readExpression();
+                    int size = input.readInt();
+                    ArrayList<Map.Entry<Integer, StatementDom>> cases = new ArrayList<>(size);
+                    for(int i = 0; i < size; i++) {
+                        int key = input.readInt();
+                        cases.add(new AbstractMap.SimpleImmutableEntry<>(key, readStatement()));
+                    }
+                    return DomFactory.select(expression, cases, readStatement());
+                }
+                case S_THROW:
+                    return DomFactory.throwStatement(readExpression());
+                case S_TRY_CATCH: {
+                    StatementDom tryBlock = readStatement();
+                    int size = input.readInt();
+                    ArrayList<CodeDom> catchBlocks = new ArrayList<>(size);
+                    for(int i = 0; i < size; i++) {
+                        String type = readString();
+                        String name = readString();
+                        catchBlocks.add(DomFactory.catchBlock(type, name, readStatement()));
+                    }
+                    return DomFactory.tryCatchStatement(tryBlock, catchBlocks);
+                }
+                case S_MARK:
+                    return DomFactory.mark(readLabel());
+                case S_GO_TO:
+                    return DomFactory.goTo(readLabel());
+                case S_ARRAY_STORE: {
+                    ExpressionDom expression = readExpression();
+                    ExpressionDom index = readExpression();
+                    return DomFactory.arrayStore(expression, index, readExpression());
+                }
+                case S_SELECT: {
+                    ExpressionDom expression = readExpression();
+                    Object dflt = readLabel();
+                    int size = input.readInt();
+                    int[] keys = new int[size];
+                    Object[] labels = new Object[size];
+                    for(int i = 0; i < size; i++) {
+                        keys[i] = input.readInt();
+                        labels[i] = readLabel();
+                    }
+                    return DomFactory.select(expression, dflt, keys, labels);
+                }
+                case S_IF_JUMP: {
+                    ExpressionDom condition = readExpression();
+                    return DomFactory.ifJump(condition, readLabel());
+                }
+                case S_LINE_NUMBER:
+                    return DomFactory.lineNumber(input.readInt());
+            }
+
+            throw new IOException("Unknown statement tag: " + tag);
+        }
+
+        private ExpressionDom readExpression() throws IOException {
+            int tag = input.readByte();
+
+            switch (tag) {
+                case E_BOOLEAN:
+                    return DomFactory.literal(input.readInt() != 0);
+                case E_BYTE:
+                    return DomFactory.literal((byte)input.readInt());
+                case E_SHORT:
+                    return DomFactory.literal((short)input.readInt());
+                case E_INT:
+                    return DomFactory.literal(input.readInt());
+                case E_LONG:
+                    return DomFactory.literal(input.readLong());
+                case E_FLOAT:
+                    return DomFactory.literal(Float.intBitsToFloat(input.readInt()));
+                case E_DOUBLE:
+                    return DomFactory.literal(Double.longBitsToDouble(input.readLong()));
+                case E_CHAR:
+                    return DomFactory.literal((char)input.readInt());
+                case E_STRING:
+                    return DomFactory.literal(readString());
+                case E_ARITHMETIC: {
+                    int operator = input.readInt();
+                    ExpressionDom lhs = readExpression();
+                    return DomFactory.arithmetic(lhs, readExpression(), operator);
+                }
+                case E_SHIFT: {
+                    int operator = input.readInt();
+                    ExpressionDom lhs = readExpression();
+                    return DomFactory.shift(lhs, readExpression(), operator);
+                }
+                case E_BITWISE: {
+                    int operator = input.readInt();
+                    ExpressionDom lhs = readExpression();
+                    return DomFactory.bitwise(lhs, readExpression(), operator);
+                }
+                case E_COMPARE: {
+                    int operator = input.readInt();
+                    ExpressionDom lhs = readExpression();
+                    return DomFactory.compare(lhs, readExpression(), operator);
+                }
+                case E_LOGICAL: {
+                    int operator = input.readInt();
+                    ExpressionDom lhs = readExpression();
+                    return DomFactory.logical(lhs, readExpression(), operator);
+                }
+                case E_OBJECT_EQUALITY: {
+                    int operator = input.readInt();
+                    ExpressionDom lhs = readExpression();
+                    return DomFactory.objectEquality(lhs, readExpression(), operator);
+                }
+                case E_ACCESS_VAR:
+                    return DomFactory.accessVar(readString());
+                case E_ACCESS_FIELD: {
+                    ExpressionDom target = readExpression();
+                    String name = readString();
+                    return DomFactory.accessField(target, name, readString());
+                }
+                case E_ACCESS_STATIC_FIELD: {
+                    String typeName = readString();
+                    String name = readString();
+                    return DomFactory.accessStaticField(typeName, name, readString());
+                }
+                case E_NOT:
+                    return DomFactory.not(readExpression());
+                case E_INSTANCE_OF: {
+                    ExpressionDom expression = readExpression();
+                    return DomFactory.instanceOf(expression, readString());
+                }
+                case E_IF_ELSE: {
+                    ExpressionDom condition = readExpression();
+                    ExpressionDom ifTrue = readExpression();
+                    return DomFactory.ifElseExpr(condition, ifTrue, readExpression());
+                }
+                case E_INVOKE: {
+                    int invocation = input.readInt();
+                    ExpressionDom target = input.readBoolean() ? readExpression() : null;
+                    String type = readString();
+                    String name = readString();
+                    String descriptor = readString();
+                    return DomFactory.invokeExpr(invocation, type, name, descriptor, target, readExpressions());
+                }
+                case E_NEW_INSTANCE: {
+                    String type = readString();
+                    List<String> parameterTypes = readStrings();
+                    return DomFactory.newInstanceExpr(type, parameterTypes, readExpressions());
+                }
+                case E_THIS:
+                    return DomFactory.self();
+                case E_NULL:
+                    return DomFactory.nil();
+                case E_TYPE_CAST: {
+                    ExpressionDom expression = readExpression();
+                    return DomFactory.typeCast(expression, readString());
+                }
+                case E_CLASS_LITERAL:
+                    return DomFactory.classLiteral(readString());
+                case E_ARRAY_LENGTH:
+                    return DomFactory.arrayLength(readExpression());
+                case E_NEG:
+                    return DomFactory.neg(readExpression());
+                case E_ARRAY_LOAD: {
+                    ExpressionDom expression = readExpression();
+                    return DomFactory.arrayLoad(expression, readExpression());
+                }
+                case E_NEW_ARRAY: {
+                    String type = readString();
+                    return DomFactory.newArray(type, readExpression());
+                }
+            }
+
+            throw new IOException("Unknown expression tag: " + tag);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package astava.java.gen;
+
+// An entry of the exception table of a method as seen by ByteCodeToTree: exceptions of the given type, or of any type
+// if null, thrown between the marks of start and end are caught at the mark of handler, where the caught exception is
+// accessible as the variable of the given name.
+public class ExceptionHandler {
+    private final Object start;
+    private final Object end;
+    private final Object handler;
+    private final String type;
+    private final String variableName;
+
+    public ExceptionHandler(Object start, Object end, Object handler, String type, String variableName) {
+        this.start = start;
+        this.end = end;
+        this.handler = handler;
+        this.type = type;
+        this.variableName = variableName;
+    }
+
+    public Object getStart() {
+        return start;
+    }
+
+    public Object getEnd() {
+        return end;
+    }
+
+    public Object getHandler() {
+        return handler;
+    }
+
+    // Internal name of the caught exception type; null for handlers catching any exception, such as those of finally
+    // blocks
+    public String getType() {
+        return type;
+    }
+
+    public String getVariableName() {
+        return variableName;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + ") -> " + handler + " " + (type != null ? type : "any");
+    }
+}
@@ -1,5 +1,7 @@
 package astava.java.gen;
 
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.GeneratorAdapter;
 
@@ -9,6 +11,8 @@ public class GenerateScope {
     private GenerateScope outerScope;
     private Hashtable<String, Integer> nameToVarIdMap = new Hashtable<>();
     private Hashtable<Integer, String> varIdToTypeMap = new Hashtable<>();
+    // Where each variable was declared, which is where it becomes visible in the local variable table
+    private Hashtable<Integer, Label> varIdToStartMap = new Hashtable<>();
 
     public GenerateScope() { }
 
@@ -20,17 +24,50 @@ public class GenerateScope {
         int id = generator.newLocal(Type.getType(type));
         varIdToTypeMap.put(id, type);
         nameToVarIdMap.put(name, id);
+        varIdToStartMap.put(id, generator.mark());
+    }
+
+    // Adds the variables declared in this scope to the local variable table, ranging from their declaration to the
+    // given end of the scope. Generated names, such as those of caught exceptions, are left out.
+    public void visitLocalVariables(MethodVisitor methodVisitor, Label end) {
+        nameToVarIdMap.forEach((name, id) -> {
+            if(isIdentifier(name))
+                methodVisitor.visitLocalVariable(name, toDescriptor(varIdToTypeMap.get(id)), null, varIdToStartMap.get(id), end, id);
+        });
+    }
+
+    // Object types are given as descriptors or as internal names
+    static String toDescriptor(String type) {
+        return type.length() == 1 || type.startsWith("[") || type.startsWith("L") && type.endsWith(";") ? type : "L" + type + ";";
+    }
+
+    private static boolean isIdentifier(String name) {
+        return !name.isEmpty() && Character.isJavaIdentifierStart(name.charAt(0)) && name.chars().skip(1).allMatch(Character::isJavaIdentifierPart);
     }
 
     public int getVarId(String name) {
         Integer varId = nameToVarIdMap.get(name);
         if(varId != null)
             return varId.intValue();
-        return outerScope != null ? outerScope.getVarId(name) : null;
+        if(outerScope != null)
+            return outerScope.getVarId(name);
+        throw new IllegalArgumentException("Undeclared variable " + name + ".");
+    }
+
+    public boolean isDeclared(String name) {
+        return nameToVarIdMap.containsKey(name) || outerScope != null && outerScope.isDeclared(name);
+    }
+
+    public GenerateScope getOutermostScope() {
+        return outerScope != null ? outerScope.getOutermostScope() : this;
     }
 
     public String getVarType(String name) {
-        int id = nameToVarIdMap.get(name);
-        return varIdToTypeMap.get(id);
+        Integer varId = nameToVarIdMap.get(name);
+        if(varId != null)
+            return varIdToTypeMap.get(varId);
+        if(outerScope != null)
+            return outerScope.getVarType(name);
+        throw new IllegalArgumentException("Undeclared variable " + name + ".");
     }
 }
@@ -0,0 +1,219 @@
+package astava.java.gen;
+
+import astava.tree.StatementDom;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Decompiles all methods of a jar in parallel on a fixed number of worker threads. Results are passed to the consumer
+// on the calling thread through a bounded queue, such that the workers wait whenever the consumer falls behind.
+public class JarDecompiler {
+    public static class Result {
+        private final String className;
+        private final String methodName;
+        private final String methodDescriptor;
+        private final StatementDom body;
+        private final Throwable error;
+
+        public Result(String className, String methodName, String methodDescriptor, StatementDom body, Throwable error) {
+            this.className = className;
+            this.methodName = methodName;
+            this.methodDescriptor = methodDescriptor;
+            this.body = body;
+            this.error = error;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        // Null if the class could not be read
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public String getMethodDescriptor() {
+            return methodDescriptor;
+        }
+
+        // The raw bytecode of the method if decompilation failed; null if the class could not be read
+        public StatementDom getBody() {
+            return body;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+    }
+
+    public static class Statistics {
+        private final int classCount;
+        private final int methodCount;
+        private final int failedMethodCount;
+        private final long elapsedNanos;
+
+        public Statistics(int classCount, int methodCount, int failedMethodCount, long elapsedNanos) {
+            this.classCount = classCount;
+            this.methodCount = methodCount;
+            this.failedMethodCount = failedMethodCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getClassCount() {
+            return classCount;
+        }
+
+        public int getMethodCount() {
+            return methodCount;
+        }
+
+        public int getFailedMethodCount() {
+            return failedMethodCount;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getMethodsPerSecond() {
+            return elapsedNanos > 0 ? methodCount / (elapsedNanos / 1e9) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d classes, %d methods (%d failed) in %.1f ms, %.0f methods/s",
+                classCount, methodCount, failedMethodCount, elapsedNanos / 1e6, getMethodsPerSecond());
+        }
+    }
+
+    public static final String THREAD_NAME_PREFIX = "jar-decompiler-";
+
+    private final Path jarPath;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 1024;
+
+    public JarDecompiler(Path jarPath) {
+        this.jarPath = jarPath;
+    }
+
+    public JarDecompiler withParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public JarDecompiler withQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public Statistics decompile(Consumer<Result> consumer) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+
+        // Entries of a zip file may be read concurrently
+        try (ZipFile jar = new ZipFile(jarPath.toFile())) {
+            List<? extends ZipEntry> entries = Collections.list(jar.entries()).stream()
+                .filter(x -> !x.isDirectory() && x.getName().endsWith(".class"))
+                .collect(Collectors.toList());
+
+            BlockingQueue<Result> results = new ArrayBlockingQueue<>(queueCapacity);
+            CountDownLatch remainingClasses = new CountDownLatch(entries.size());
+            AtomicInteger methodCount = new AtomicInteger();
+            AtomicInteger failedMethodCount = new AtomicInteger();
+            AtomicInteger threadCount = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+                Thread thread = new Thread(r, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            try {
+                for (ZipEntry entry : entries) {
+                    pool.execute(() -> {
+                        try {
+                            decompileClass(jar, entry, result -> {
+                                methodCount.incrementAndGet();
+                                if(result.getError() != null)
+                                    failedMethodCount.incrementAndGet();
+                                put(results, result);
+                            });
+                        } finally {
+                            remainingClasses.countDown();
+                        }
+                    });
+                }
+
+                while(true) {
+                    Result result = results.poll(10, TimeUnit.MILLISECONDS);
+
+                    if(result != null)
+                        consumer.accept(result);
+                    else if(remainingClasses.getCount() == 0 && results.isEmpty())
+                        break;
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+
+            return new Statistics(entries.size(), methodCount.get(), failedMethodCount.get(), System.nanoTime() - start);
+        }
+    }
+
+    private static void put(BlockingQueue<Result> results, Result result) {
+        try {
+            // Workers are a fixed few, so blocking on a full queue holds back decompilation without adding threads
+            results.put(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void decompileClass(ZipFile jar, ZipEntry entry, Consumer<Result> results) {
+        String className = entry.getName().substring(0, entry.getName().length() - ".class".length()).replace('/', '.');
+
+        try {
+            // Methods are decompiled while the class is read, without building a class node
+            ClassDecompiler.decompile(new ClassReader(readEntry(jar, entry)), (c, access, name, descriptor, body, error) -> {
+                if(!Thread.currentThread().isInterrupted())
+                    results.accept(new Result(className, name, descriptor, body, error));
+            });
+        } catch (Exception e) {
+            results.accept(new Result(className, null, null, null, e));
+        }
+    }
+
+    private static byte[] readEntry(ZipFile jar, ZipEntry entry) throws IOException {
+        try (InputStream input = jar.getInputStream(entry)) {
+            // The size is unknown (-1) for some entries
+            byte[] bytes = new byte[entry.getSize() >= 0 ? (int)entry.getSize() : 8192];
+            int size = 0;
+            int read;
+            while((read = input.read(bytes, size, bytes.length - size)) != -1) {
+                size += read;
+                if(size == bytes.length) {
+                    int next = input.read();
+                    if(next == -1)
+                        break;
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    bytes[size++] = (byte)next;
+                }
+            }
+            return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+        }
+    }
+}
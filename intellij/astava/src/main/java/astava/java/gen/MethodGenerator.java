@@ -10,21 +10,41 @@ import org.objectweb.asm.commons.GeneratorAdapter;
 import org.objectweb.asm.commons.InstructionAdapter;
 import org.objectweb.asm.commons.Method;
 import org.objectweb.asm.commons.TableSwitchGenerator;
+import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LocalVariableNode;
 import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
 
 import java.util.*;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
 import static astava.java.DomFactory.*;
 
 public class MethodGenerator {
+    // A return within a try or catch block of a try-catch statement with a finally block, which stores the returned
+    // value and jumps to a copy of the finally block
+    private static class FinallyReturn {
+        private Label label;
+        private int valueId = -1;
+    }
+
     private String thisClassName;
     private StatementDom body;
     //private GenerateScope methodScope;
     private List<ParameterInfo> parameters;
+    private final ArrayDeque<FinallyReturn> finallyReturns = new ArrayDeque<>();
+    // Code without a line number of its own, such as code inserted into a method by a transformation, is attributed
+    // to the first line of the method, if the method has line numbers at all
+    private int syntheticLineNumber = -1;
+    private int currentLineNumber = -1;
+    // Whether the statements being generated are within a block of the source, i.e. one with line numbers
+    private boolean inSource;
 
     public MethodGenerator(ClassGenerator classGenerator, List<ParameterInfo> parameters, StatementDom body) {
         this(classGenerator.getClassName(), parameters, body);
@@ -47,6 +67,11 @@ public class MethodGenerator {
     }
 
     public static void generate(MethodNode methodNode, BiConsumer<MethodNode, GeneratorAdapter> bodyGenerator) {
+        // The local variable table refers to the previous instructions of the method, which only remain valid where
+        // those are kept as they are
+        List<LocalVariableNode> previousLocalVariables = getLocalVariables(methodNode);
+        methodNode.localVariables = new ArrayList<>();
+
         methodNode.visitCode();
 
         Method m = new Method(methodNode.name, methodNode.desc);
@@ -59,17 +84,170 @@ public class MethodGenerator {
 
         bodyGenerator.accept(methodNode, generator);
 
+        HashSet<LabelNode> labels = new HashSet<>();
+        for(AbstractInsnNode insn = methodNode.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if(insn instanceof LabelNode)
+                labels.add((LabelNode)insn);
+        }
+        List<LocalVariableNode> localVariables = getLocalVariables(methodNode);
+        previousLocalVariables.stream()
+            .filter(x -> labels.contains(x.start) && labels.contains(x.end))
+            .forEach(x -> localVariables.add(x));
+        methodNode.localVariables = localVariables;
+
+        // Parameters are named in the tree after their position, unless the method has a MethodParameters attribute,
+        // so they keep their names from the previous table
+        int parametersSize = (Type.getArgumentsAndReturnSizes(methodNode.desc) >> 2) - ((methodNode.access & Opcodes.ACC_STATIC) != 0 ? 1 : 0);
+        for (LocalVariableNode localVariable : localVariables) {
+            if(localVariable.index < parametersSize) {
+                previousLocalVariables.stream().filter(x -> x.index == localVariable.index).findFirst().ifPresent(x -> {
+                    localVariable.name = x.name;
+                    localVariable.signature = x.signature;
+                });
+            }
+        }
+
         methodNode.visitEnd();
         methodNode.visitMaxs(0, 0);
         //labelScope.verify();
     }
 
+    // A copy of the local variable table, which ASM keeps as a raw list
+    private static List<LocalVariableNode> getLocalVariables(MethodNode methodNode) {
+        ArrayList<LocalVariableNode> localVariables = new ArrayList<>();
+        if(methodNode.localVariables != null) {
+            for (Object localVariable : methodNode.localVariables)
+                localVariables.add((LocalVariableNode)localVariable);
+        }
+        return localVariables;
+    }
+
     public void populateMethodBody(MethodNode methodNode, InsnList originalInstructions, GeneratorAdapter generator) {
         LabelScope labelScope = new LabelScope();
-        populateMethodStatement(methodNode, originalInstructions, generator, body, null, labelScope, new GenerateScope(), new Hashtable<>());
+        GenerateScope methodScope = new GenerateScope();
+        syntheticLineNumber = getFirstLineNumber(body, originalInstructions);
+
+        Label start = generator.mark();
+        // The body is generated as a block, such that a body without line numbers of its own is inserted code
+        populateMethodStatement(methodNode, originalInstructions, generator, block(Arrays.asList(body)), null, labelScope, methodScope, new Hashtable<>());
+        Label end = generator.mark();
+
+        visitParameterVariables(methodNode, start, end);
+        methodScope.visitLocalVariables(methodNode, end);
         labelScope.verify();
     }
 
+    // Adds this and the parameters to the local variable table, unless already there, e.g. from raw bytecode
+    private void visitParameterVariables(MethodNode methodNode, Label start, Label end) {
+        HashSet<Integer> indexes = new HashSet<>();
+        getLocalVariables(methodNode).forEach(x -> indexes.add(x.index));
+
+        int index = 0;
+        if((methodNode.access & Opcodes.ACC_STATIC) == 0) {
+            if(indexes.add(index))
+                methodNode.visitLocalVariable("this", Type.getObjectType(thisClassName).getDescriptor(), null, start, end, index);
+            index++;
+        }
+
+        for (ParameterInfo parameter : parameters) {
+            String descriptor = GenerateScope.toDescriptor(parameter.descriptor);
+            if(parameter.name != null && indexes.add(index))
+                methodNode.visitLocalVariable(parameter.name, descriptor, null, start, end, index);
+            index += Type.getType(descriptor).getSize();
+        }
+    }
+
+    private OptionalInt getParameterOrdinal(String name) {
+        return IntStream.range(0, parameters.size()).filter(x -> name.equals(parameters.get(x).name)).findFirst();
+    }
+
+    private int getParameterSlot(MethodNode methodNode, int ordinal) {
+        int slot = (methodNode.access & Opcodes.ACC_STATIC) == 0 ? 1 : 0;
+        for(int i = 0; i < ordinal; i++)
+            slot += Type.getType(GenerateScope.toDescriptor(parameters.get(i).descriptor)).getSize();
+        return slot;
+    }
+
+    private static int getFirstLineNumber(StatementDom body, InsnList originalInstructions) {
+        int first = getFirstLineNumber(body);
+
+        for(AbstractInsnNode insn = originalInstructions != null ? originalInstructions.getFirst() : null; insn != null; insn = insn.getNext()) {
+            if(insn instanceof LineNumberNode && (first == -1 || ((LineNumberNode)insn).line < first))
+                first = ((LineNumberNode)insn).line;
+        }
+
+        return first;
+    }
+
+    // The least line number within the statement, or -1 if there is none
+    private static int getFirstLineNumber(StatementDom statement) {
+        int[] first = new int[]{-1};
+        Consumer<Integer> visitLine = line -> {
+            if(line != -1 && (first[0] == -1 || line < first[0]))
+                first[0] = line;
+        };
+
+        statement.accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitLineNumber(int line) {
+                visitLine.accept(line);
+            }
+
+            @Override
+            public void visitBlock(List<StatementDom> statements) {
+                statements.forEach(x -> visitLine.accept(getFirstLineNumber(x)));
+            }
+
+            @Override
+            public void visitIfElse(ExpressionDom condition, StatementDom ifTrue, StatementDom ifFalse) {
+                visitLine.accept(getFirstLineNumber(ifTrue));
+                visitLine.accept(getFirstLineNumber(ifFalse));
+            }
+
+            @Override
+            public void visitSwitch(ExpressionDom expression, Map<Integer, StatementDom> cases, StatementDom defaultBody) {
+                cases.values().forEach(x -> visitLine.accept(getFirstLineNumber(x)));
+                visitLine.accept(getFirstLineNumber(defaultBody));
+            }
+
+            @Override
+            public void visitTryCatch(StatementDom tryBlock, List<CodeDom> catchBlocks) {
+                visitLine.accept(getFirstLineNumber(tryBlock));
+                catchBlocks.forEach(x -> x.accept(new DefaultCodeDomVisitor() {
+                    @Override
+                    public void visitCatch(String type, String name, StatementDom statementDom) {
+                        visitLine.accept(getFirstLineNumber(statementDom));
+                    }
+                }));
+            }
+        });
+
+        return first[0];
+    }
+
+    private static boolean isLineNumber(StatementDom statement) {
+        return Util.returnFrom(false, r -> statement.accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitLineNumber(int line) {
+                r.accept(true);
+            }
+        }));
+    }
+
+    private static boolean isBlock(StatementDom statement) {
+        return Util.returnFrom(false, r -> statement.accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitBlock(List<StatementDom> statements) {
+                r.accept(true);
+            }
+        }));
+    }
+
+    private void visitLineNumber(GeneratorAdapter generator, int line) {
+        generator.visitLineNumber(line, generator.mark());
+        currentLineNumber = line;
+    }
+
     public String populateMethodStatement(MethodNode methodNode, InsnList originalInstructions, GeneratorAdapter generator, StatementDom statement, Label breakLabel, LabelScope labelScope, GenerateScope scope, Hashtable<Object, Label> astLabelToASMLabelMap) {
         statement.accept(new StatementDomVisitor() {
             @Override
@@ -80,6 +258,15 @@ public class MethodGenerator {
             @Override
             public void visitVariableAssignment(String name, ExpressionDom value) {
                 String valueType = populateMethodExpression(methodNode, originalInstructions, generator, value, null, true, scope, astLabelToASMLabelMap);
+                OptionalInt parameterOrdinal = getParameterOrdinal(name);
+                if(parameterOrdinal.isPresent()) {
+                    generator.storeArg(parameterOrdinal.getAsInt());
+                    return;
+                }
+                // Stack values merged at joins (see ByteCodeToTree) are assigned without being declared; they are
+                // declared method wide, such that each branch assigns the same variable
+                if(!scope.isDeclared(name))
+                    scope.getOutermostScope().declareVar(generator, valueType, name);
                 int id = scope.getVarId(name);
                 generator.storeLocal(id, Type.getType(valueType));
             }
@@ -99,7 +286,8 @@ public class MethodGenerator {
 
             @Override
             public void visitIncrement(String name, int amount) {
-                int id = scope.getVarId(name);
+                OptionalInt parameterOrdinal = getParameterOrdinal(name);
+                int id = parameterOrdinal.isPresent() ? getParameterSlot(methodNode, parameterOrdinal.getAsInt()) : scope.getVarId(name);
                 generator.iinc(id, amount);
             }
 
@@ -110,13 +298,21 @@ public class MethodGenerator {
                 if (resultType.equals(Descriptor.VOID))
                     throw new IllegalArgumentException("Expression of return statement results in void.");
 
-                generator.returnValue();
+                returnValue(generator, methodNode);
             }
 
             @Override
             public void visitBlock(List<StatementDom> statements) {
-                statements.forEach(s ->
-                    populateMethodStatement(methodNode, originalInstructions, generator, s, breakLabel, labelScope, scope, astLabelToASMLabelMap));
+                boolean wasInSource = inSource;
+                inSource |= statements.stream().anyMatch(MethodGenerator::isLineNumber);
+
+                statements.forEach(s -> {
+                    if(!inSource && !isBlock(s) && syntheticLineNumber != -1 && currentLineNumber != syntheticLineNumber)
+                        MethodGenerator.this.visitLineNumber(generator, syntheticLineNumber);
+                    populateMethodStatement(methodNode, originalInstructions, generator, s, breakLabel, labelScope, scope, astLabelToASMLabelMap);
+                });
+
+                inSource = wasInSource;
             }
 
             @Override
@@ -150,7 +346,7 @@ public class MethodGenerator {
 
             @Override
             public void visitReturn() {
-                generator.visitInsn(Opcodes.RETURN);
+                returnValue(generator, methodNode);
             }
 
             @Override
@@ -178,7 +374,7 @@ public class MethodGenerator {
                 populateMethodExpression(methodNode, originalInstructions, generator, expression, null, true, scope, astLabelToASMLabelMap);
 
                 Map<Integer, StatementDom> keyToBodyMap = cases;
-                int[] keys = keyToBodyMap.keySet().stream().mapToInt(x -> (int) x).toArray();
+                int[] keys = keyToBodyMap.keySet().stream().mapToInt(x -> (int) x).sorted().toArray();
 
                 generator.tableSwitch(keys, new TableSwitchGenerator() {
                     Label switchEnd;
@@ -199,8 +395,16 @@ public class MethodGenerator {
             }
 
             @Override
-            public void visitASM(MethodNode methodNode) {
-
+            public void visitASM(MethodNode asmMethodNode) {
+                // The raw bytecode is kept as is, so it should only be used as the whole body of a method with the
+                // same signature
+                RemapLabel remapLabel = new RemapLabel(generator);
+                for (Object tryCatchBlock : asmMethodNode.tryCatchBlocks)
+                    ((TryCatchBlockNode)tryCatchBlock).accept(remapLabel);
+                asmMethodNode.instructions.accept(remapLabel);
+                // Remapped the same way as the instructions
+                getLocalVariables(asmMethodNode).forEach(x -> x.accept(remapLabel));
+                currentLineNumber = -1;
             }
 
             @Override
@@ -211,6 +415,7 @@ public class MethodGenerator {
                 originalInstructions.accept(instructionAdapter);
 
                 instructionAdapter.visitReturn();
+                currentLineNumber = -1;
             }
 
             @Override
@@ -221,46 +426,22 @@ public class MethodGenerator {
 
             @Override
             public void visitTryCatch(StatementDom tryBlock, List<CodeDom> catchBlocks) {
-                Optional<CodeDom> finallyBlock = catchBlocks.stream().filter(cb -> Util.returnFrom(false, r -> cb.accept(new DefaultCodeDomVisitor() {
+                StatementDom finallyBlock = catchBlocks.stream().map(cb -> Util.<StatementDom>returnFrom(null, r -> cb.accept(new DefaultCodeDomVisitor() {
                     @Override
                     public void visitCatch(String type, String name, StatementDom statementDom) {
                         if(type == null)
-                            r.accept(true);
+                            r.accept(statementDom);
                     }
-                }))).findFirst();
+                }))).filter(x -> x != null).findFirst().orElse(null);
 
                 Label tryStart = generator.newLabel();
                 Label tryEnd = generator.newLabel();
                 Label endAll = generator.newLabel();
-                InstructionAdapter instructionAdapter =
-                    finallyBlock.isPresent() ? new ReplaceReturnWithStore(generator)
-                    : new InstructionAdapter(generator);
 
-                Method m = new Method(methodNode.name, methodNode.desc);
-                GeneratorAdapter innerGenerator = new GeneratorAdapter(methodNode.access, m, instructionAdapter);
+                ArrayList<Pair<Label, Label>> attempts = new ArrayList<Pair<Label, Label>>();
 
                 generator.visitLabel(tryStart);
-                populateMethodStatement(methodNode, originalInstructions, innerGenerator, tryBlock, breakLabel, labelScope, scope, astLabelToASMLabelMap);
-                generator.visitLabel(tryEnd);
-
-                if(finallyBlock.isPresent()) {
-                    StatementDom statementDom = Util.returnFrom(null, r -> finallyBlock.get().accept(new DefaultCodeDomVisitor() {
-                        @Override
-                        public void visitCatch(String type, String name, StatementDom statementDom) {
-                            r.accept(statementDom);
-                        }
-                    }));
-
-                    GenerateScope finallyScope = new GenerateScope(scope);
-
-                    ((ReplaceReturnWithStore)instructionAdapter).visitReturn();
-                    populateMethodStatement(methodNode, originalInstructions, generator, statementDom, breakLabel, labelScope, finallyScope, astLabelToASMLabelMap);
-                    ((ReplaceReturnWithStore)instructionAdapter).returnValue();
-                }
-
-                generator.visitJumpInsn(Opcodes.GOTO, endAll);
-
-                ArrayList<Pair<Label, Label>> attempts = new ArrayList<Pair<Label, Label>>();
+                populateBeforeFinally(tryBlock, scope, tryEnd, finallyBlock, endAll);
 
                 attempts.add(new Pair<>(tryStart, tryEnd));
 
@@ -275,55 +456,24 @@ public class MethodGenerator {
 
                                 GenerateScope catchScope = new GenerateScope(scope);
 
-                                catchScope.declareVar(generator, type, name);
-
-                                InstructionAdapter instructionAdapter = finallyBlock.isPresent()
-                                    ? new ReplaceReturnWithStore(generator)
-                                    : new InstructionAdapter(generator);
-
-                                Method m = new Method(methodNode.name, methodNode.desc);
-                                GeneratorAdapter innerGenerator = new GeneratorAdapter(methodNode.access, m, instructionAdapter);
+                                catchScope.declareVar(generator, Type.getObjectType(type).getDescriptor(), name);
 
                                 generator.visitLabel(handlerStart);
                                 generator.storeLocal(catchScope.getVarId(name));
-                                populateMethodStatement(methodNode, originalInstructions, innerGenerator, statementDom, breakLabel, labelScope, catchScope, astLabelToASMLabelMap);
-                                generator.visitLabel(handlerEnd);
+                                populateBeforeFinally(statementDom, catchScope, handlerEnd, finallyBlock, endAll);
+                                catchScope.visitLocalVariables(methodNode, handlerEnd);
 
                                 generator.visitTryCatchBlock(tryStart, tryEnd, handlerStart, type);
 
                                 attempts.add(new Pair<>(handlerStart, handlerEnd));
-
-                                if (finallyBlock.isPresent()) {
-                                    StatementDom finallyStatementDom = Util.returnFrom(null, r -> finallyBlock.get().accept(new DefaultCodeDomVisitor() {
-                                        @Override
-                                        public void visitCatch(String type, String name, StatementDom statementDom) {
-                                            r.accept(statementDom);
-                                        }
-                                    }));
-
-                                    GenerateScope finallyScope = new GenerateScope(scope);
-
-                                    ((ReplaceReturnWithStore)instructionAdapter).visitReturn();
-                                    populateMethodStatement(methodNode, originalInstructions, generator, finallyStatementDom, breakLabel, labelScope, finallyScope, astLabelToASMLabelMap);
-                                    ((ReplaceReturnWithStore)instructionAdapter).returnValue();
-                                }
-
-                                generator.visitJumpInsn(Opcodes.GOTO, endAll);
                             }
                         }
                     });
                 });
 
-                if (finallyBlock.isPresent()) {
+                if (finallyBlock != null) {
                     // Something goes wrong in try block or a catch block
                     attempts.forEach(x -> {
-                        StatementDom finallyStatementDom = Util.returnFrom(null, r -> finallyBlock.get().accept(new DefaultCodeDomVisitor() {
-                            @Override
-                            public void visitCatch(String type, String name, StatementDom statementDom) {
-                                r.accept(statementDom);
-                            }
-                        }));
-
                         Label finallyHandlerStart = generator.newLabel();
 
                         GenerateScope finallyScope = new GenerateScope(scope);
@@ -332,7 +482,7 @@ public class MethodGenerator {
 
                         generator.visitLabel(finallyHandlerStart);
                         generator.storeLocal(finallyExceptionId);
-                        populateMethodStatement(methodNode, originalInstructions, generator, finallyStatementDom, breakLabel, labelScope, finallyScope, astLabelToASMLabelMap);
+                        populateMethodStatement(methodNode, originalInstructions, generator, finallyBlock, breakLabel, labelScope, finallyScope, new Hashtable<>(astLabelToASMLabelMap));
                         generator.loadLocal(finallyExceptionId);
                         generator.throwException();
 
@@ -343,6 +493,38 @@ public class MethodGenerator {
                 generator.visitLabel(endAll);
             }
 
+            // Generates a try or catch block followed by the finally block, if any. Returns within the block are
+            // replaced by jumps to a copy of the finally block, which returns afterwards. Each copy of the finally
+            // block has labels of its own.
+            private void populateBeforeFinally(StatementDom block, GenerateScope blockScope, Label blockEnd, StatementDom finallyBlock, Label endAll) {
+                if(finallyBlock == null) {
+                    populateMethodStatement(methodNode, originalInstructions, generator, block, breakLabel, labelScope, blockScope, astLabelToASMLabelMap);
+                    generator.visitLabel(blockEnd);
+                    generator.goTo(endAll);
+                    return;
+                }
+
+                FinallyReturn finallyReturn = new FinallyReturn();
+                finallyReturns.push(finallyReturn);
+                try {
+                    populateMethodStatement(methodNode, originalInstructions, generator, block, breakLabel, labelScope, blockScope, astLabelToASMLabelMap);
+                } finally {
+                    finallyReturns.pop();
+                }
+                generator.visitLabel(blockEnd);
+
+                populateMethodStatement(methodNode, originalInstructions, generator, finallyBlock, breakLabel, labelScope, new GenerateScope(scope), new Hashtable<>(astLabelToASMLabelMap));
+                generator.goTo(endAll);
+
+                if(finallyReturn.label != null) {
+                    generator.visitLabel(finallyReturn.label);
+                    populateMethodStatement(methodNode, originalInstructions, generator, finallyBlock, breakLabel, labelScope, new GenerateScope(scope), new Hashtable<>(astLabelToASMLabelMap));
+                    if(finallyReturn.valueId != -1)
+                        generator.loadLocal(finallyReturn.valueId);
+                    returnValue(generator, methodNode);
+                }
+            }
+
             @Override
             public void visitMark(Object label) {
                 Label asmLabel = astLabelToASMLabelMap.computeIfAbsent(label, l -> generator.newLabel());
@@ -357,10 +539,11 @@ public class MethodGenerator {
 
             @Override
             public void visitArrayStore(ExpressionDom expression, ExpressionDom index, ExpressionDom value) {
-                populateMethodExpression(methodNode, originalInstructions, generator, expression, null, true, scope, astLabelToASMLabelMap);
+                String arrayType = populateMethodExpression(methodNode, originalInstructions, generator, expression, null, true, scope, astLabelToASMLabelMap);
                 populateMethodExpression(methodNode, originalInstructions, generator, index, null, true, scope, astLabelToASMLabelMap);
                 String valueType = populateMethodExpression(methodNode, originalInstructions, generator, value, null, true, scope, astLabelToASMLabelMap);
-                generator.arrayStore(Type.getType(valueType));
+                // Elements of byte, char and short arrays are stored from int values
+                generator.arrayStore(Type.getType(arrayType.startsWith("[") ? arrayType.substring(1) : valueType));
             }
 
             @Override
@@ -379,13 +562,69 @@ public class MethodGenerator {
 
                 String resultType = populateMethodExpression(methodNode, originalInstructions, generator, condition, ifFalseLabel, false, scope, astLabelToASMLabelMap);
             }
+
+            @Override
+            public void visitLineNumber(int line) {
+                MethodGenerator.this.visitLineNumber(generator, line);
+            }
         });
 
         return Descriptor.VOID;
     }
 
+    // Returns the value on the stack, if any, through the finally blocks of the enclosing try-catch statements
+    private void returnValue(GeneratorAdapter generator, MethodNode methodNode) {
+        FinallyReturn finallyReturn = finallyReturns.peek();
+        if(finallyReturn == null) {
+            generator.returnValue();
+            return;
+        }
+
+        Type returnType = Type.getReturnType(methodNode.desc);
+        if(finallyReturn.label == null) {
+            finallyReturn.label = generator.newLabel();
+            if(!returnType.equals(Type.VOID_TYPE))
+                finallyReturn.valueId = generator.newLocal(returnType);
+        }
+
+        if(finallyReturn.valueId != -1)
+            generator.storeLocal(finallyReturn.valueId);
+        generator.goTo(finallyReturn.label);
+    }
+
+    // Like GeneratorAdapter.ifCmp, except that floating point comparisons jump if an operand is NaN, since the jump is
+    // taken when the negated comparison is false
+    private static void jumpIfFalse(GeneratorAdapter generator, Type type, int mode, Label label) {
+        switch (type.getSort()) {
+            case Type.FLOAT:
+                generator.visitInsn(mode == GeneratorAdapter.GE || mode == GeneratorAdapter.GT ? Opcodes.FCMPG : Opcodes.FCMPL);
+                generator.ifZCmp(mode, label);
+                break;
+            case Type.DOUBLE:
+                generator.visitInsn(mode == GeneratorAdapter.GE || mode == GeneratorAdapter.GT ? Opcodes.DCMPG : Opcodes.DCMPL);
+                generator.ifZCmp(mode, label);
+                break;
+            default:
+                generator.ifCmp(type, mode, label);
+        }
+    }
+
     public String populateMethodExpression(MethodNode methodNode, InsnList originalInstructions, GeneratorAdapter generator, ExpressionDom expression, Label ifFalseLabel, boolean reifyCondition, GenerateScope scope, Hashtable<Object, Label> astLabelToASMLabelMap) {
         return new ExpressionDomVisitor.Return<String>() {
+            // A value used as a condition, such as a boolean variable, jumps if zero
+            private void testValue(String resultType) {
+                if(!reifyCondition && ifFalseLabel != null) {
+                    switch (Descriptor.getFieldDescriptor(resultType)) {
+                        case Descriptor.BOOLEAN:
+                        case Descriptor.BYTE:
+                        case Descriptor.SHORT:
+                        case Descriptor.CHAR:
+                        case Descriptor.INT:
+                            generator.ifZCmp(GeneratorAdapter.EQ, ifFalseLabel);
+                    }
+                }
+            }
+
             @Override
             public void visitBooleanLiteral(boolean value) {
                 if(!value) {
@@ -478,12 +717,14 @@ public class MethodGenerator {
                     default: op = -1;
                 }
 
-                String lhsResultType = populateMethodExpression(methodNode, originalInstructions, generator, lhs, ifFalseLabel, false, scope, astLabelToASMLabelMap);
-                String rhsResultType = populateMethodExpression(methodNode, originalInstructions, generator, rhs, ifFalseLabel, reifyCondition, scope, astLabelToASMLabelMap);
+                // The operands are values even if the result is used as a condition
+                String lhsResultType = populateMethodExpression(methodNode, originalInstructions, generator, lhs, null, true, scope, astLabelToASMLabelMap);
+                String rhsResultType = populateMethodExpression(methodNode, originalInstructions, generator, rhs, null, true, scope, astLabelToASMLabelMap);
 
                 String resultType = arithmeticResultType(lhsResultType, rhsResultType);
                 Type t = Type.getType(resultType);
                 generator.math(op, t);
+                testValue(resultType);
 
                 setResult(resultType);
             }
@@ -499,11 +740,12 @@ public class MethodGenerator {
                     default: op = -1;
                 }
 
-                String lhsResultType = populateMethodExpression(methodNode, originalInstructions, generator, lhs, ifFalseLabel, reifyCondition, scope, astLabelToASMLabelMap);
-                String rhsResultType = populateMethodExpression(methodNode, originalInstructions, generator, rhs, ifFalseLabel, reifyCondition, scope, astLabelToASMLabelMap);
+                String lhsResultType = populateMethodExpression(methodNode, originalInstructions, generator, lhs, null, true, scope, astLabelToASMLabelMap);
+                String rhsResultType = populateMethodExpression(methodNode, originalInstructions, generator, rhs, null, true, scope, astLabelToASMLabelMap);
                 String resultType = shiftResultType(lhsResultType, rhsResultType);
                 Type t = Type.getType(resultType);
                 generator.math(op, t);
+                testValue(resultType);
 
                 setResult(resultType);
             }
@@ -519,11 +761,12 @@ public class MethodGenerator {
                     default: op = -1;
                 }
 
-                String lhsResultType = populateMethodExpression(methodNode, originalInstructions, generator, lhs, ifFalseLabel, reifyCondition, scope, astLabelToASMLabelMap);
-                String rhsResultType = populateMethodExpression(methodNode, originalInstructions, generator, rhs, ifFalseLabel, reifyCondition, scope, astLabelToASMLabelMap);
+                String lhsResultType = populateMethodExpression(methodNode, originalInstructions, generator, lhs, null, true, scope, astLabelToASMLabelMap);
+                String rhsResultType = populateMethodExpression(methodNode, originalInstructions, generator, rhs, null, true, scope, astLabelToASMLabelMap);
                 String resultType = bitwiseResultType(lhsResultType, rhsResultType);
                 Type t = Type.getType(resultType);
                 generator.math(op, t);
+                testValue(resultType);
 
                 setResult(resultType);
             }
@@ -551,14 +794,14 @@ public class MethodGenerator {
                     Label endLabel = generator.newLabel();
                     Label innerIfFalseLabel = generator.newLabel();
 
-                    generator.ifCmp(t, op, innerIfFalseLabel);
+                    jumpIfFalse(generator, t, op, innerIfFalseLabel);
                     generator.push(true);
                     generator.goTo(endLabel);
                     generator.visitLabel(innerIfFalseLabel);
                     generator.push(false);
                     generator.visitLabel(endLabel);
                 } else {
-                    generator.ifCmp(t, op, ifFalseLabel);
+                    jumpIfFalse(generator, t, op, ifFalseLabel);
                 }
 
                 setResult(Descriptor.BOOLEAN);
@@ -571,9 +814,10 @@ public class MethodGenerator {
 
                 int opcode;
 
+                // Jump if false
                 switch (operator) {
-                    case RelationalOperator.EQ: opcode = Opcodes.IF_ACMPEQ; break;
-                    case RelationalOperator.NE: opcode = Opcodes.IF_ACMPNE; break;
+                    case RelationalOperator.EQ: opcode = Opcodes.IF_ACMPNE; break;
+                    case RelationalOperator.NE: opcode = Opcodes.IF_ACMPEQ; break;
                     default: opcode = -1;
                 }
 
@@ -636,17 +880,22 @@ public class MethodGenerator {
 
             @Override
             public void visitVariableAccess(String name) {
-                OptionalInt parameterOrdinal = IntStream.range(0, parameters.size()).filter(x -> parameters.get(x).name.equals(name)).findFirst();
+                OptionalInt parameterOrdinal = getParameterOrdinal(name);
+
+                String resultType;
 
                 if(parameterOrdinal.isPresent()) {
                     generator.loadArg(parameterOrdinal.getAsInt());
-                    setResult(parameters.get(parameterOrdinal.getAsInt()).descriptor);
+                    resultType = parameters.get(parameterOrdinal.getAsInt()).descriptor;
                 } else {
                     int id = scope.getVarId(name);
                     generator.loadLocal(id);
 
-                    setResult(scope.getVarType(name));
+                    resultType = scope.getVarType(name);
                 }
+
+                testValue(resultType);
+                setResult(resultType);
             }
 
             @Override
@@ -654,6 +903,7 @@ public class MethodGenerator {
                 String targetType = populateMethodExpression(methodNode, originalInstructions, generator, target, null, true, scope, astLabelToASMLabelMap);
                 generator.getField(Type.getType(targetType), name, Type.getType(Descriptor.getFieldDescriptor(fieldTypeName)));
 
+                testValue(fieldTypeName);
                 setResult(fieldTypeName);
             }
 
@@ -661,6 +911,7 @@ public class MethodGenerator {
             public void visitStaticFieldAccess(String typeName, String name, String fieldTypeName) {
                 generator.getStatic(Type.getType(typeName), name, Type.getType(Descriptor.getFieldDescriptor(fieldTypeName)));
 
+                testValue(fieldTypeName);
                 setResult(fieldTypeName);
             }
 
@@ -682,6 +933,7 @@ public class MethodGenerator {
                 Type t = Type.getType(type);
 
                 generator.instanceOf(t);
+                testValue(Descriptor.BOOLEAN);
 
                 setResult(Descriptor.BOOLEAN);
             }
@@ -740,10 +992,7 @@ public class MethodGenerator {
             public void visitInvocation(int invocation, ExpressionDom target, String type, String name, String descriptor, List<ExpressionDom> arguments) {
                 String resultType = populateMethodInvocation(methodNode, originalInstructions, generator, scope, invocation, target, type, name, descriptor, arguments, CODE_LEVEL_EXPRESSION, astLabelToASMLabelMap);
 
-                if(!reifyCondition && ifFalseLabel != null && resultType.equals(Descriptor.get(boolean.class))) {
-                    generator.ifZCmp(GeneratorAdapter.EQ, ifFalseLabel);
-                }
-
+                testValue(resultType);
                 setResult(resultType);
             }
 
@@ -783,9 +1032,12 @@ public class MethodGenerator {
             @Override
             public void visitTypeCast(ExpressionDom expression, String targetType) {
                 String resultType = populateMethodExpression(methodNode, originalInstructions, generator, expression, null, true, scope, astLabelToASMLabelMap);
-                // What about type casting primitive values?
-                //generator.cast(Type.getType(resultType), Type.getType(targetType));
-                generator.checkCast(Type.getType(targetType));
+                Type from = Type.getType(resultType);
+                Type to = Type.getType(targetType);
+                if(from.getSort() < Type.ARRAY && to.getSort() < Type.ARRAY)
+                    generator.cast(from, to);
+                else
+                    generator.checkCast(to);
                 setResult(targetType);
             }
 
@@ -801,6 +1053,7 @@ public class MethodGenerator {
 
                 instructionAdapter.visitReturn();
                 instructionAdapter.loadValue();
+                currentLineNumber = -1;
 
                 setResult(Type.getReturnType(methodNode.desc).getDescriptor());
             }
@@ -818,12 +1071,29 @@ public class MethodGenerator {
                 setResult(Descriptor.get(int.class));
             }
 
+            @Override
+            public void visitArrayLoad(ExpressionDom expression, ExpressionDom index) {
+                String arrayType = populateMethodExpression(methodNode, originalInstructions, generator, expression, null, true, scope, astLabelToASMLabelMap);
+                populateMethodExpression(methodNode, originalInstructions, generator, index, null, true, scope, astLabelToASMLabelMap);
+                generator.arrayLoad(Type.getType(arrayType.substring(1)));
+                String resultType = Descriptor.getElementType(arrayType);
+                testValue(resultType);
+                setResult(resultType);
+            }
+
+            @Override
+            public void visitNewArray(String type, ExpressionDom length) {
+                populateMethodExpression(methodNode, originalInstructions, generator, length, null, true, scope, astLabelToASMLabelMap);
+                Type elementType = Type.getType(Descriptor.getTypeDescriptor(type));
+                generator.newArray(elementType);
+                setResult("[" + elementType.getDescriptor());
+            }
+
             @Override
             public void visitNeg(ExpressionDom expression) {
                 String resultType = populateMethodExpression(methodNode, originalInstructions, generator, expression, null, true, scope, astLabelToASMLabelMap);
-                generator.visitInsn(Opcodes.INEG);
+                generator.math(GeneratorAdapter.NEG, Type.getType(resultType));
                 setResult(resultType);
-
             }
         }.returnFrom(expression);
     }
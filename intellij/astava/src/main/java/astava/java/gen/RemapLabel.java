@@ -5,6 +5,7 @@ import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.commons.InstructionAdapter;
 
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Map;
 
@@ -30,4 +31,34 @@ public class RemapLabel extends InstructionAdapter {
         Label newLabel = getNewLabel(label);
         super.visitJumpInsn(i, newLabel);
     }
+
+    // The original frames do not fit the surrounding code, so frames are left to be computed
+    @Override
+    public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        super.visitTableSwitchInsn(min, max, getNewLabel(dflt), Arrays.stream(labels).map(this::getNewLabel).toArray(Label[]::new));
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        super.visitLookupSwitchInsn(getNewLabel(dflt), keys, Arrays.stream(labels).map(this::getNewLabel).toArray(Label[]::new));
+    }
+
+    @Override
+    public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+        super.visitTryCatchBlock(getNewLabel(start), getNewLabel(end), getNewLabel(handler), type);
+    }
+
+    @Override
+    public void visitLineNumber(int line, Label start) {
+        super.visitLineNumber(line, getNewLabel(start));
+    }
+
+    @Override
+    public void visitLocalVariable(String name, String desc, String signature, Label start, Label end, int index) {
+        super.visitLocalVariable(name, desc, signature, getNewLabel(start), getNewLabel(end), index);
+    }
 }
@@ -0,0 +1,340 @@
+package astava.java.gen;
+
+import astava.tree.PersistentMap;
+import astava.tree.ExpressionDom;
+import astava.tree.StatementDom;
+import astava.tree.StatementDomVisitor;
+
+import java.util.*;
+
+// Static single assignment view of the local variables of the flat statements of ByteCodeToTree. Phi nodes are
+// placed at the iterated dominance frontiers of the assignments, and the values reaching each statement are kept as
+// persistent maps, such that the statements need not be renamed; lowering back to statements means rewriting the
+// accesses of the statements with the values to be propagated (see SSAOptimizer).
+public class SSAForm {
+    public static class Value {
+        // The value on entry of the method, i.e. an argument or an unassigned variable
+        public static final int KIND_ENTRY = 0;
+        public static final int KIND_DEFINITION = 1;
+        public static final int KIND_PHI = 2;
+
+        private final int id;
+        private final String name;
+        private final int kind;
+        private final int statementIndex;
+        private final ControlFlowGraph.BasicBlock block;
+        private final ArrayList<Value> operands = new ArrayList<>();
+        private final ArrayList<Integer> useStatements = new ArrayList<>();
+        private final ArrayList<Value> usePhis = new ArrayList<>();
+
+        private Value(int id, String name, int kind, int statementIndex, ControlFlowGraph.BasicBlock block) {
+            this.id = id;
+            this.name = name;
+            this.kind = kind;
+            this.statementIndex = statementIndex;
+            this.block = block;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getKind() {
+            return kind;
+        }
+
+        // The index of the defining statement; -1 for entry values and phis
+        public int getStatementIndex() {
+            return statementIndex;
+        }
+
+        public ControlFlowGraph.BasicBlock getBlock() {
+            return block;
+        }
+
+        // For phis, the values flowing in from the reachable predecessors of the block
+        public List<Value> getOperands() {
+            return operands;
+        }
+
+        // Indexes of the statements using the value
+        public List<Integer> getUseStatements() {
+            return useStatements;
+        }
+
+        public List<Value> getUsePhis() {
+            return usePhis;
+        }
+
+        @Override
+        public String toString() {
+            return name + "_" + id;
+        }
+    }
+
+    private final List<StatementDom> statements;
+    private final ControlFlowGraph cfg;
+    private final ArrayList<Value> values = new ArrayList<>();
+    private final Hashtable<String, String> variableTypes = new Hashtable<>();
+    private final LinkedHashSet<String> variables = new LinkedHashSet<>();
+    // Null where the statement uses variables in a way not understood, such that it is assumed to use all variables
+    private final List<Set<String>> statementUses;
+    private final String[] statementDefinitions;
+    private final Value[] definitions;
+    // Null within unreachable code
+    private final List<PersistentMap<String, Value>> environments;
+    private final Hashtable<ControlFlowGraph.BasicBlock, List<Value>> phis = new Hashtable<>();
+    private boolean hasUnreachableCode;
+
+    public SSAForm(List<StatementDom> statements) {
+        this(new ControlFlowGraph(statements));
+    }
+
+    public SSAForm(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        statements = cfg.getStatements();
+        statementUses = new ArrayList<>(statements.size());
+        statementDefinitions = new String[statements.size()];
+        definitions = new Value[statements.size()];
+        environments = new ArrayList<>(Collections.nCopies(statements.size(), null));
+
+        for(int i = 0; i < statements.size(); i++)
+            collectVariables(i);
+
+        placePhis();
+        rename();
+    }
+
+    private void collectVariables(int index) {
+        StatementDom statement = statements.get(index);
+        HashSet<String> uses = new HashSet<>();
+
+        statement.accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitVariableDeclaration(String type, String name) {
+                variableTypes.put(name, type);
+                variables.add(name);
+            }
+
+            @Override
+            public void visitVariableAssignment(String name, ExpressionDom value) {
+                statementDefinitions[index] = name;
+            }
+
+            @Override
+            public void visitIncrement(String name, int amount) {
+                statementDefinitions[index] = name;
+                uses.add(name);
+            }
+        });
+
+        boolean supported = VariableMapper.map(statement, name -> {
+            uses.add(name);
+            return null;
+        }) != null;
+
+        if(statementDefinitions[index] != null)
+            variables.add(statementDefinitions[index]);
+        variables.addAll(uses);
+        statementUses.add(supported ? uses : null);
+    }
+
+    private void placePhis() {
+        Hashtable<ControlFlowGraph.BasicBlock, Set<ControlFlowGraph.BasicBlock>> frontiers = getDominanceFrontiers();
+        Hashtable<String, Set<ControlFlowGraph.BasicBlock>> definingBlocks = new Hashtable<>();
+
+        for(int i = 0; i < statements.size(); i++) {
+            ControlFlowGraph.BasicBlock block = cfg.getBlockAt(i);
+            if(statementDefinitions[i] != null && cfg.isReachable(block))
+                definingBlocks.computeIfAbsent(statementDefinitions[i], n -> new LinkedHashSet<>()).add(block);
+        }
+
+        for (String variable : variables) {
+            Set<ControlFlowGraph.BasicBlock> blocks = definingBlocks.getOrDefault(variable, Collections.emptySet());
+            HashSet<ControlFlowGraph.BasicBlock> hasPhi = new HashSet<>();
+            ArrayDeque<ControlFlowGraph.BasicBlock> worklist = new ArrayDeque<>(blocks);
+
+            while(!worklist.isEmpty()) {
+                ControlFlowGraph.BasicBlock block = worklist.pop();
+                for (ControlFlowGraph.BasicBlock frontier : frontiers.getOrDefault(block, Collections.emptySet())) {
+                    if(hasPhi.add(frontier)) {
+                        phis.computeIfAbsent(frontier, b -> new ArrayList<>()).add(newValue(variable, Value.KIND_PHI, -1, frontier));
+                        if(!blocks.contains(frontier))
+                            worklist.push(frontier);
+                    }
+                }
+            }
+        }
+    }
+
+    private Hashtable<ControlFlowGraph.BasicBlock, Set<ControlFlowGraph.BasicBlock>> getDominanceFrontiers() {
+        Hashtable<ControlFlowGraph.BasicBlock, Set<ControlFlowGraph.BasicBlock>> frontiers = new Hashtable<>();
+
+        for (ControlFlowGraph.BasicBlock block : cfg.getBlocks()) {
+            if(!cfg.isReachable(block))
+                continue;
+
+            // The entry block is joined with the method entry
+            List<ControlFlowGraph.BasicBlock> predecessors = cfg.getPredecessors(block);
+            if(predecessors.size() + (block == cfg.getEntry() ? 1 : 0) < 2)
+                continue;
+
+            ControlFlowGraph.BasicBlock idom = cfg.getImmediateDominator(block);
+            for (ControlFlowGraph.BasicBlock predecessor : predecessors) {
+                ControlFlowGraph.BasicBlock runner = predecessor;
+                while(runner != null && runner != idom && cfg.isReachable(runner)) {
+                    frontiers.computeIfAbsent(runner, b -> new LinkedHashSet<>()).add(block);
+                    runner = cfg.getImmediateDominator(runner);
+                }
+            }
+        }
+
+        return frontiers;
+    }
+
+    private void rename() {
+        Hashtable<ControlFlowGraph.BasicBlock, List<ControlFlowGraph.BasicBlock>> children = new Hashtable<>();
+        for (ControlFlowGraph.BasicBlock block : cfg.getBlocks()) {
+            ControlFlowGraph.BasicBlock idom = cfg.getImmediateDominator(block);
+            if(idom != null)
+                children.computeIfAbsent(idom, b -> new ArrayList<>()).add(block);
+            else if(block != cfg.getEntry() && !isEmpty(block))
+                hasUnreachableCode = true;
+        }
+
+        PersistentMap<String, Value> entryEnvironment = PersistentMap.empty();
+        for (String variable : variables)
+            entryEnvironment = entryEnvironment.plus(variable, newValue(variable, Value.KIND_ENTRY, -1, cfg.getEntry()));
+
+        // Dominators are visited before the blocks they dominate, so the environment at the end of the immediate
+        // dominator is the one to continue from
+        Hashtable<ControlFlowGraph.BasicBlock, PersistentMap<String, Value>> exitEnvironments = new Hashtable<>();
+        ArrayDeque<ControlFlowGraph.BasicBlock> worklist = new ArrayDeque<>();
+        worklist.push(cfg.getEntry());
+
+        while(!worklist.isEmpty()) {
+            ControlFlowGraph.BasicBlock block = worklist.pop();
+            ControlFlowGraph.BasicBlock idom = cfg.getImmediateDominator(block);
+            PersistentMap<String, Value> environment = idom != null ? exitEnvironments.get(idom) : entryEnvironment;
+
+            for (Value phi : phis.getOrDefault(block, Collections.emptyList()))
+                environment = environment.plus(phi.name, phi);
+
+            for(int i = block.getStart(); i < block.getEnd(); i++) {
+                environments.set(i, environment);
+
+                Collection<String> uses = statementUses.get(i) != null ? statementUses.get(i) : variables;
+                for (String use : uses)
+                    environment.get(use).useStatements.add(i);
+
+                if(statementDefinitions[i] != null) {
+                    Value definition = newValue(statementDefinitions[i], Value.KIND_DEFINITION, i, block);
+                    definitions[i] = definition;
+                    environment = environment.plus(definition.name, definition);
+                }
+            }
+
+            exitEnvironments.put(block, environment);
+            children.getOrDefault(block, Collections.emptyList()).forEach(worklist::push);
+        }
+
+        PersistentMap<String, Value> methodEntryEnvironment = entryEnvironment;
+        phis.forEach((block, blockPhis) -> {
+            // The entry block is also entered from the method entry
+            if(block == cfg.getEntry()) {
+                for (Value phi : blockPhis) {
+                    Value operand = methodEntryEnvironment.get(phi.name);
+                    phi.operands.add(operand);
+                    operand.usePhis.add(phi);
+                }
+            }
+
+            for (ControlFlowGraph.BasicBlock predecessor : cfg.getPredecessors(block)) {
+                PersistentMap<String, Value> environment = exitEnvironments.get(predecessor);
+                if(environment == null)
+                    continue;
+
+                for (Value phi : blockPhis) {
+                    Value operand = environment.get(phi.name);
+                    phi.operands.add(operand);
+                    operand.usePhis.add(phi);
+                }
+            }
+        });
+    }
+
+    private boolean isEmpty(ControlFlowGraph.BasicBlock block) {
+        for(int i = block.getStart(); i < block.getEnd(); i++) {
+            if(cfg.getKind(i) != ControlFlowGraph.KIND_MARK)
+                return false;
+        }
+        return true;
+    }
+
+    private Value newValue(String name, int kind, int statementIndex, ControlFlowGraph.BasicBlock block) {
+        Value value = new Value(values.size(), name, kind, statementIndex, block);
+        values.add(value);
+        return value;
+    }
+
+    public List<StatementDom> getStatements() {
+        return statements;
+    }
+
+    public ControlFlowGraph getControlFlowGraph() {
+        return cfg;
+    }
+
+    public List<Value> getValues() {
+        return values;
+    }
+
+    public List<Value> getPhis(ControlFlowGraph.BasicBlock block) {
+        return phis.getOrDefault(block, Collections.emptyList());
+    }
+
+    // The value assigned by the statement, or null
+    public Value getDefinition(int statementIndex) {
+        return definitions[statementIndex];
+    }
+
+    // The value of the variable just before the statement; null within unreachable code
+    public Value getReachingValue(int statementIndex, String name) {
+        PersistentMap<String, Value> environment = environments.get(statementIndex);
+        return environment != null ? environment.get(name) : null;
+    }
+
+    // The variables read by the statement; null if unknown
+    public Set<String> getUses(int statementIndex) {
+        return statementUses.get(statementIndex);
+    }
+
+    // The declared type of the variable; null for arguments
+    public String getVariableType(String name) {
+        return variableTypes.get(name);
+    }
+
+    // Code without an edge from the entry, such as exception handlers, of which the values are not tracked
+    public boolean hasUnreachableCode() {
+        return hasUnreachableCode;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        for (ControlFlowGraph.BasicBlock block : cfg.getBlocks()) {
+            builder.append(block).append(":\n");
+            for (Value phi : getPhis(block))
+                builder.append("    ").append(phi).append(" = phi").append(phi.operands).append("\n");
+            for(int i = block.getStart(); i < block.getEnd(); i++) {
+                builder.append("    ");
+                if(definitions[i] != null)
+                    builder.append(definitions[i]).append(" <- ");
+                builder.append(statements.get(i)).append("\n");
+            }
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,317 @@
+package astava.java.gen;
+
+import astava.java.ArithmeticOperator;
+import astava.java.Descriptor;
+import astava.tree.DefaultExpressionDomVisitor;
+import astava.tree.ExpressionDom;
+import astava.tree.StatementDom;
+import astava.tree.StatementDomVisitor;
+import astava.tree.Util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+// Constant and copy propagation and dead store elimination over the flat statements of ByteCodeToTree, based on
+// SSAForm. Methods with code unreachable in the control flow graph are left untouched, since the values flowing into
+// it are not known. Exception handlers are reachable through the edges of their protected statements.
+public class SSAOptimizer {
+    private static final int MAX_ROUNDS = 8;
+
+    public static List<StatementDom> optimize(List<StatementDom> statements) {
+        return optimize(statements, Collections.emptyList());
+    }
+
+    public static List<StatementDom> optimize(List<StatementDom> statements, List<ExceptionHandler> exceptionHandlers) {
+        for(int round = 0; round < MAX_ROUNDS; round++) {
+            SSAForm ssa = new SSAForm(new ControlFlowGraph(statements, exceptionHandlers));
+            if(ssa.hasUnreachableCode())
+                return statements;
+
+            List<StatementDom> propagated = propagate(ssa);
+            List<StatementDom> optimized = eliminateDeadStores(propagated != statements ? new SSAForm(new ControlFlowGraph(propagated, exceptionHandlers)) : ssa);
+
+            if(optimized == statements)
+                break;
+
+            statements = optimized;
+        }
+
+        return statements;
+    }
+
+    public static List<StatementDom> propagate(SSAForm ssa) {
+        List<StatementDom> statements = ssa.getStatements();
+        ArrayList<StatementDom> result = new ArrayList<>(statements.size());
+        boolean changed = false;
+
+        for(int i = 0; i < statements.size(); i++) {
+            StatementDom statement = statements.get(i);
+
+            if(ssa.getUses(i) != null && !ssa.getUses(i).isEmpty()) {
+                int index = i;
+                StatementDom newStatement = VariableMapper.map(statement, name -> getPropagatedValue(ssa, ssa.getReachingValue(index, name), index));
+                changed |= newStatement != statement;
+                statement = newStatement;
+            }
+
+            result.add(statement);
+        }
+
+        return changed ? result : statements;
+    }
+
+    // The expression which may replace an access of the value within the statement, or null
+    private static ExpressionDom getPropagatedValue(SSAForm ssa, SSAForm.Value value, int statementIndex) {
+        if(value.getKind() != SSAForm.Value.KIND_DEFINITION)
+            return null;
+
+        ExpressionDom assigned = getAssignedValue(ssa.getStatements().get(value.getStatementIndex()));
+        if(assigned == null)
+            return null;
+
+        String type = ssa.getVariableType(value.getName());
+
+        String literalType = getLiteralType(assigned);
+        if(literalType != null)
+            return literalType.equals(type) ? assigned : null;
+
+        String copied = getAccessedVariable(assigned);
+        if(copied != null && !copied.equals(value.getName()) && type != null && type.equals(ssa.getVariableType(copied))) {
+            // The copy is only valid as long as the copied variable has not been reassigned in between
+            SSAForm.Value copiedValue = ssa.getReachingValue(value.getStatementIndex(), copied);
+            if(copiedValue == ssa.getReachingValue(statementIndex, copied)) {
+                ExpressionDom propagated = getPropagatedValue(ssa, copiedValue, statementIndex);
+                return propagated != null ? propagated : assigned;
+            }
+        }
+
+        return null;
+    }
+
+    public static List<StatementDom> eliminateDeadStores(SSAForm ssa) {
+        HashSet<SSAForm.Value> live = new HashSet<>();
+        ArrayDeque<SSAForm.Value> worklist = new ArrayDeque<>();
+
+        for (SSAForm.Value value : ssa.getValues()) {
+            if(!value.getUseStatements().isEmpty() && live.add(value))
+                worklist.push(value);
+        }
+
+        // Phis are only live if used, transitively, by a statement
+        while(!worklist.isEmpty()) {
+            SSAForm.Value value = worklist.pop();
+            for (SSAForm.Value operand : value.getOperands()) {
+                if(live.add(operand))
+                    worklist.push(operand);
+            }
+        }
+
+        List<StatementDom> statements = ssa.getStatements();
+        ArrayList<StatementDom> result = new ArrayList<>(statements.size());
+        boolean changed = false;
+
+        for(int i = 0; i < statements.size(); i++) {
+            StatementDom statement = statements.get(i);
+            SSAForm.Value definition = ssa.getDefinition(i);
+
+            if(definition != null && !live.contains(definition) && isRemovable(statement)) {
+                changed = true;
+                continue;
+            }
+
+            result.add(statement);
+        }
+
+        return changed ? result : statements;
+    }
+
+    private static boolean isRemovable(StatementDom statement) {
+        return Util.returnFrom(false, r -> statement.accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitVariableAssignment(String name, ExpressionDom value) {
+                r.accept(isFreeOfSideEffects(value));
+            }
+
+            @Override
+            public void visitIncrement(String name, int amount) {
+                r.accept(true);
+            }
+        }));
+    }
+
+    private static boolean isFreeOfSideEffects(ExpressionDom expression) {
+        return Util.returnFrom(false, r -> expression.accept(new DefaultExpressionDomVisitor() {
+            @Override
+            public void visitBooleanLiteral(boolean value) {
+                r.accept(true);
+            }
+
+            @Override
+            public void visitByteLiteral(byte value) {
+                r.accept(true);
+            }
+
+            @Override
+            public void visitShortLiteral(short value) {
+                r.accept(true);
+            }
+
+            @Override
+            public void visitIntLiteral(int value) {
+                r.accept(true);
+            }
+
+            @Override
+            public void visitLongLiteral(long value) {
+                r.accept(true);
+            }
+
+            @Override
+            public void visitFloatLiteral(float value) {
+                r.accept(true);
+            }
+
+            @Override
+            public void visitDoubleLiteral(double value) {
+                r.accept(true);
+            }
+
+            @Override
+            public void visitCharLiteral(char value) {
+                r.accept(true);
+            }
+
+            @Override
+            public void visitStringLiteral(String value) {
+                r.accept(true);
+            }
+
+            @Override
+            public void visitVariableAccess(String name) {
+                r.accept(true);
+            }
+
+            @Override
+            public void visitThis() {
+                r.accept(true);
+            }
+
+            @Override
+            public void visitNull() {
+                r.accept(true);
+            }
+
+            @Override
+            public void visitArithmetic(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                // Division may throw
+                r.accept(operator != ArithmeticOperator.DIV && operator != ArithmeticOperator.REM &&
+                    isFreeOfSideEffects(lhs) && isFreeOfSideEffects(rhs));
+            }
+
+            @Override
+            public void visitShift(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                r.accept(isFreeOfSideEffects(lhs) && isFreeOfSideEffects(rhs));
+            }
+
+            @Override
+            public void visitBitwise(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                r.accept(isFreeOfSideEffects(lhs) && isFreeOfSideEffects(rhs));
+            }
+
+            @Override
+            public void visitCompare(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                r.accept(isFreeOfSideEffects(lhs) && isFreeOfSideEffects(rhs));
+            }
+
+            @Override
+            public void visitLogical(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                r.accept(isFreeOfSideEffects(lhs) && isFreeOfSideEffects(rhs));
+            }
+
+            @Override
+            public void visitObjectEquality(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                r.accept(isFreeOfSideEffects(lhs) && isFreeOfSideEffects(rhs));
+            }
+
+            @Override
+            public void visitNot(ExpressionDom expression) {
+                r.accept(isFreeOfSideEffects(expression));
+            }
+
+            @Override
+            public void visitNeg(ExpressionDom expression) {
+                r.accept(isFreeOfSideEffects(expression));
+            }
+        }));
+    }
+
+    private static ExpressionDom getAssignedValue(StatementDom statement) {
+        return Util.returnFrom(null, r -> statement.accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitVariableAssignment(String name, ExpressionDom value) {
+                r.accept(value);
+            }
+        }));
+    }
+
+    static String getAccessedVariable(ExpressionDom expression) {
+        return Util.returnFrom(null, r -> expression.accept(new DefaultExpressionDomVisitor() {
+            @Override
+            public void visitVariableAccess(String name) {
+                r.accept(name);
+            }
+        }));
+    }
+
+    static String getLiteralType(ExpressionDom expression) {
+        return Util.returnFrom(null, r -> expression.accept(new DefaultExpressionDomVisitor() {
+            @Override
+            public void visitBooleanLiteral(boolean value) {
+                r.accept(Descriptor.BOOLEAN);
+            }
+
+            @Override
+            public void visitByteLiteral(byte value) {
+                r.accept(Descriptor.BYTE);
+            }
+
+            @Override
+            public void visitShortLiteral(short value) {
+                r.accept(Descriptor.SHORT);
+            }
+
+            @Override
+            public void visitIntLiteral(int value) {
+                r.accept(Descriptor.INT);
+            }
+
+            @Override
+            public void visitLongLiteral(long value) {
+                r.accept(Descriptor.LONG);
+            }
+
+            @Override
+            public void visitFloatLiteral(float value) {
+                r.accept(Descriptor.FLOAT);
+            }
+
+            @Override
+            public void visitDoubleLiteral(double value) {
+                r.accept(Descriptor.DOUBLE);
+            }
+
+            @Override
+            public void visitCharLiteral(char value) {
+                r.accept(Descriptor.CHAR);
+            }
+
+            @Override
+            public void visitStringLiteral(String value) {
+                r.accept(Descriptor.STRING);
+            }
+        }));
+    }
+}
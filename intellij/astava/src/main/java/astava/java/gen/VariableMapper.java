@@ -0,0 +1,376 @@
+package astava.java.gen;
+
+import astava.java.DomFactory;
+import astava.tree.CodeDom;
+import astava.tree.ExpressionDom;
+import astava.tree.ExpressionDomVisitor;
+import astava.tree.StatementDom;
+import astava.tree.StatementDomVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// Rewrites the variable accesses within flat method body statements. The mapper returns the replacement of an access
+// or null to keep it. Doms are only recreated where something was replaced, and null is returned for doms containing
+// parts which cannot be rewritten.
+class VariableMapper {
+    private final Function<String, ExpressionDom> mapper;
+    private boolean supported = true;
+
+    private VariableMapper(Function<String, ExpressionDom> mapper) {
+        this.mapper = mapper;
+    }
+
+    public static StatementDom map(StatementDom statement, Function<String, ExpressionDom> mapper) {
+        VariableMapper variableMapper = new VariableMapper(mapper);
+        StatementDom result = variableMapper.mapStatement(statement);
+        return variableMapper.supported ? result : null;
+    }
+
+    public static ExpressionDom mapInExpression(ExpressionDom expression, Function<String, ExpressionDom> mapper) {
+        VariableMapper variableMapper = new VariableMapper(mapper);
+        ExpressionDom result = variableMapper.mapExpression(expression);
+        return variableMapper.supported ? result : null;
+    }
+
+    private StatementDom mapStatement(StatementDom statement) {
+        StatementDom result = new StatementDomVisitor.Return<StatementDom>() {
+            @Override
+            public void visitVariableDeclaration(String type, String name) {
+                setResult(statement);
+            }
+
+            @Override
+            public void visitVariableAssignment(String name, ExpressionDom value) {
+                ExpressionDom newValue = mapExpression(value);
+                setResult(newValue == value ? statement : DomFactory.assignVar(name, newValue));
+            }
+
+            @Override
+            public void visitFieldAssignment(ExpressionDom target, String name, String type, ExpressionDom value) {
+                ExpressionDom newTarget = mapExpression(target);
+                ExpressionDom newValue = mapExpression(value);
+                setResult(newTarget == target && newValue == value ? statement : DomFactory.assignField(newTarget, name, type, newValue));
+            }
+
+            @Override
+            public void visitStaticFieldAssignment(String typeName, String name, String type, ExpressionDom value) {
+                ExpressionDom newValue = mapExpression(value);
+                setResult(newValue == value ? statement : DomFactory.assignStaticField(typeName, name, type, newValue));
+            }
+
+            @Override
+            public void visitIncrement(String name, int amount) {
+                setResult(statement);
+            }
+
+            @Override
+            public void visitReturnValue(ExpressionDom expression) {
+                ExpressionDom newExpression = mapExpression(expression);
+                setResult(newExpression == expression ? statement : DomFactory.ret(newExpression));
+            }
+
+            @Override
+            public void visitReturn() {
+                setResult(statement);
+            }
+
+            @Override
+            public void visitInvocation(int invocation, ExpressionDom target, String type, String name, String descriptor, List<ExpressionDom> arguments) {
+                ExpressionDom newTarget = target != null ? mapExpression(target) : null;
+                List<ExpressionDom> newArguments = mapExpressions(arguments);
+                setResult(newTarget == target && newArguments == arguments ? statement : DomFactory.invoke(invocation, type, name, descriptor, newTarget, newArguments));
+            }
+
+            @Override
+            public void visitNewInstance(String type, List<String> parameterTypes, List<ExpressionDom> arguments) {
+                List<ExpressionDom> newArguments = mapExpressions(arguments);
+                setResult(newArguments == arguments ? statement : DomFactory.newInstance(type, parameterTypes, newArguments));
+            }
+
+            @Override
+            public void visitThrow(ExpressionDom expression) {
+                ExpressionDom newExpression = mapExpression(expression);
+                setResult(newExpression == expression ? statement : DomFactory.throwStatement(newExpression));
+            }
+
+            @Override
+            public void visitMark(Object label) {
+                setResult(statement);
+            }
+
+            @Override
+            public void visitGoTo(Object label) {
+                setResult(statement);
+            }
+
+            @Override
+            public void visitArrayStore(ExpressionDom expression, ExpressionDom index, ExpressionDom value) {
+                ExpressionDom newExpression = mapExpression(expression);
+                ExpressionDom newIndex = mapExpression(index);
+                ExpressionDom newValue = mapExpression(value);
+                setResult(newExpression == expression && newIndex == index && newValue == value ? statement : DomFactory.arrayStore(newExpression, newIndex, newValue));
+            }
+
+            @Override
+            public void visitSwitch(ExpressionDom expression, Object dflt, int[] keys, Object[] labels) {
+                ExpressionDom newExpression = mapExpression(expression);
+                setResult(newExpression == expression ? statement : DomFactory.select(newExpression, dflt, keys, labels));
+            }
+
+            @Override
+            public void visitIfJump(ExpressionDom condition, Object label) {
+                ExpressionDom newCondition = mapExpression(condition);
+                setResult(newCondition == condition ? statement : DomFactory.ifJump(newCondition, label));
+            }
+
+            @Override
+            public void visitLineNumber(int line) {
+                setResult(statement);
+            }
+        }.returnFrom(statement);
+
+        if(result == null)
+            supported = false;
+
+        return result;
+    }
+
+    private List<ExpressionDom> mapExpressions(List<ExpressionDom> expressions) {
+        ArrayList<ExpressionDom> newExpressions = new ArrayList<>(expressions.size());
+        boolean changed = false;
+
+        for (ExpressionDom expression : expressions) {
+            ExpressionDom newExpression = mapExpression(expression);
+            newExpressions.add(newExpression);
+            changed |= newExpression != expression;
+        }
+
+        return changed ? newExpressions : expressions;
+    }
+
+    private ExpressionDom mapExpression(ExpressionDom expression) {
+        return new ExpressionDomVisitor.Return<ExpressionDom>() {
+            private void keep() {
+                setResult(expression);
+            }
+
+            private void unsupported() {
+                supported = false;
+                setResult(expression);
+            }
+
+            @Override
+            public void visitBooleanLiteral(boolean value) {
+                keep();
+            }
+
+            @Override
+            public void visitByteLiteral(byte value) {
+                keep();
+            }
+
+            @Override
+            public void visitShortLiteral(short value) {
+                keep();
+            }
+
+            @Override
+            public void visitIntLiteral(int value) {
+                keep();
+            }
+
+            @Override
+            public void visitLongLiteral(long value) {
+                keep();
+            }
+
+            @Override
+            public void visitFloatLiteral(float value) {
+                keep();
+            }
+
+            @Override
+            public void visitDoubleLiteral(double value) {
+                keep();
+            }
+
+            @Override
+            public void visitCharLiteral(char value) {
+                keep();
+            }
+
+            @Override
+            public void visitStringLiteral(String value) {
+                keep();
+            }
+
+            @Override
+            public void visitArithmetic(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                ExpressionDom newLhs = mapExpression(lhs);
+                ExpressionDom newRhs = mapExpression(rhs);
+                setResult(newLhs == lhs && newRhs == rhs ? expression : DomFactory.arithmetic(newLhs, newRhs, operator));
+            }
+
+            @Override
+            public void visitShift(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                ExpressionDom newLhs = mapExpression(lhs);
+                ExpressionDom newRhs = mapExpression(rhs);
+                setResult(newLhs == lhs && newRhs == rhs ? expression : DomFactory.shift(newLhs, newRhs, operator));
+            }
+
+            @Override
+            public void visitBitwise(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                ExpressionDom newLhs = mapExpression(lhs);
+                ExpressionDom newRhs = mapExpression(rhs);
+                setResult(newLhs == lhs && newRhs == rhs ? expression : DomFactory.bitwise(newLhs, newRhs, operator));
+            }
+
+            @Override
+            public void visitCompare(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                ExpressionDom newLhs = mapExpression(lhs);
+                ExpressionDom newRhs = mapExpression(rhs);
+                setResult(newLhs == lhs && newRhs == rhs ? expression : DomFactory.compare(newLhs, newRhs, operator));
+            }
+
+            @Override
+            public void visitLogical(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                ExpressionDom newLhs = mapExpression(lhs);
+                ExpressionDom newRhs = mapExpression(rhs);
+                setResult(newLhs == lhs && newRhs == rhs ? expression : DomFactory.logical(newLhs, newRhs, operator));
+            }
+
+            @Override
+            public void visitVariableAccess(String name) {
+                ExpressionDom replacement = mapper.apply(name);
+                setResult(replacement != null ? replacement : expression);
+            }
+
+            @Override
+            public void visitFieldAccess(ExpressionDom target, String name, String fieldTypeName) {
+                ExpressionDom newTarget = mapExpression(target);
+                setResult(newTarget == target ? expression : DomFactory.accessField(newTarget, name, fieldTypeName));
+            }
+
+            @Override
+            public void visitStaticFieldAccess(String typeName, String name, String fieldTypeName) {
+                keep();
+            }
+
+            @Override
+            public void visitNot(ExpressionDom operand) {
+                ExpressionDom newExpression = mapExpression(operand);
+                setResult(newExpression == operand ? expression : DomFactory.not(newExpression));
+            }
+
+            @Override
+            public void visitInstanceOf(ExpressionDom operand, String type) {
+                ExpressionDom newExpression = mapExpression(operand);
+                setResult(newExpression == operand ? expression : DomFactory.instanceOf(newExpression, type));
+            }
+
+            @Override
+            public void visitBlock(List<CodeDom> codeList) {
+                unsupported();
+            }
+
+            @Override
+            public void visitIfElse(ExpressionDom condition, ExpressionDom ifTrue, ExpressionDom ifFalse) {
+                ExpressionDom newCondition = mapExpression(condition);
+                ExpressionDom newIfTrue = mapExpression(ifTrue);
+                ExpressionDom newIfFalse = mapExpression(ifFalse);
+                setResult(newCondition == condition && newIfTrue == ifTrue && newIfFalse == ifFalse
+                    ? expression : DomFactory.ifElseExpr(newCondition, newIfTrue, newIfFalse));
+            }
+
+            @Override
+            public void visitInvocation(int invocation, ExpressionDom target, String type, String name, String descriptor, List<ExpressionDom> arguments) {
+                ExpressionDom newTarget = target != null ? mapExpression(target) : null;
+                List<ExpressionDom> newArguments = mapExpressions(arguments);
+                setResult(newTarget == target && newArguments == arguments
+                    ? expression : DomFactory.invokeExpr(invocation, type, name, descriptor, newTarget, newArguments));
+            }
+
+            @Override
+            public void visitNewInstance(String type, List<String> parameterTypes, List<ExpressionDom> arguments) {
+                List<ExpressionDom> newArguments = mapExpressions(arguments);
+                setResult(newArguments == arguments ? expression : DomFactory.newInstanceExpr(type, parameterTypes, newArguments));
+            }
+
+            @Override
+            public void visitThis() {
+                keep();
+            }
+
+            @Override
+            public void visitNull() {
+                keep();
+            }
+
+            @Override
+            public void visitTop(ExpressionDom expression, BiFunction<ExpressionDom, ExpressionDom, ExpressionDom> usage) {
+                unsupported();
+            }
+
+            @Override
+            public void visitDup(String type) {
+                unsupported();
+            }
+
+            @Override
+            public void visitLetBe(String type) {
+                unsupported();
+            }
+
+            @Override
+            public void visitTypeCast(ExpressionDom operand, String targetType) {
+                ExpressionDom newExpression = mapExpression(operand);
+                setResult(newExpression == operand ? expression : DomFactory.typeCast(newExpression, targetType));
+            }
+
+            @Override
+            public void visitMethodBody() {
+                unsupported();
+            }
+
+            @Override
+            public void visitClassLiteral(String type) {
+                keep();
+            }
+
+            @Override
+            public void visitArrayLength(ExpressionDom operand) {
+                ExpressionDom newExpression = mapExpression(operand);
+                setResult(newExpression == operand ? expression : DomFactory.arrayLength(newExpression));
+            }
+
+            @Override
+            public void visitArrayLoad(ExpressionDom operand, ExpressionDom index) {
+                ExpressionDom newExpression = mapExpression(operand);
+                ExpressionDom newIndex = mapExpression(index);
+                setResult(newExpression == operand && newIndex == index ? expression : DomFactory.arrayLoad(newExpression, newIndex));
+            }
+
+            @Override
+            public void visitNewArray(String type, ExpressionDom length) {
+                ExpressionDom newLength = mapExpression(length);
+                setResult(newLength == length ? expression : DomFactory.newArray(type, newLength));
+            }
+
+            @Override
+            public void visitNeg(ExpressionDom operand) {
+                ExpressionDom newExpression = mapExpression(operand);
+                setResult(newExpression == operand ? expression : DomFactory.neg(newExpression));
+            }
+
+            @Override
+            public void visitObjectEquality(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                ExpressionDom newLhs = mapExpression(lhs);
+                ExpressionDom newRhs = mapExpression(rhs);
+                setResult(newLhs == lhs && newRhs == rhs ? expression : DomFactory.objectEquality(newLhs, newRhs, operator));
+            }
+        }.returnFrom(expression);
+    }
+}
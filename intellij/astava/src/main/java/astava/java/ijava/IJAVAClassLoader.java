@@ -16,31 +16,39 @@ import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static astava.java.DomFactory.fieldDeclaration;
-import static astava.java.DomFactory.methodDeclaration;
+import static astava.java.DomFactory.lazyMethodDeclaration;
 
 public class IJAVAClassLoader extends ClassLoader implements ClassResolver, ClassInspector {
     private ClassResolver classResolver;
     //private Map<String, ClassDomBuilder> classBuilders;
-    private Map<String, MutableClassDomBuilder> classBuilders;
+    private final AtomicReference<PersistentMap<String, PersistentClassDomBuilder>> classBuilders = new AtomicReference<>(PersistentMap.empty());
     private Map<String, String> nameToSimpleNameMap;
     private Map<String, ClassDeclaration> classDeclarationCache;
     private Map<String, Class<?>> classCache;
+    private Map<String, ClassDom> generatedClassDoms;
+    private Map<String, ClassNode> generatedClassNodes;
 
     public IJAVAClassLoader(ClassResolver classResolver) {
         this.classResolver = classResolver;
-        classBuilders = new Hashtable<>();
         nameToSimpleNameMap = new Hashtable<>();
         classDeclarationCache = new Hashtable<>();
         classCache = new Hashtable<>();
+        generatedClassDoms = new Hashtable<>();
+        generatedClassNodes = new Hashtable<>();
     }
 
     public IJAVAClassLoader reset() {
         IJAVAClassLoader resetLoader = new IJAVAClassLoader(this.classResolver);
 
-        resetLoader.classBuilders.putAll(this.classBuilders);
+        // Versions of the builders are immutable, so the reset loader may simply share them
+        resetLoader.classBuilders.set(this.classBuilders.get());
+        // Previously generated classes allow methods with unchanged bodies to be reused
+        resetLoader.generatedClassDoms.putAll(this.generatedClassDoms);
+        resetLoader.generatedClassNodes.putAll(this.generatedClassNodes);
 
         return resetLoader;
     }
@@ -48,21 +56,19 @@ public class IJAVAClassLoader extends ClassLoader implements ClassResolver, Clas
     public void putClassBuilder(String name, ClassDomBuilder builder) {
         //builder = extendClass(name, builder);
 
-        MutableClassDomBuilder classBuilder = classBuilders.get(name);
+        // Retried on concurrent puts, such that no version of the builders is lost
+        classBuilders.updateAndGet(builders -> {
+            PersistentClassDomBuilder classBuilder = builders.get(name);
 
-        if(classBuilder == null) {
-            classBuilder = new MutableClassDomBuilder();
-            classBuilder.setName(name);
-            classBuilder.setModifier(Modifier.PUBLIC);
-            classBuilder.setSuperName(builder.getSuperName());
-            classBuilders.put(name, classBuilder);
-        }
-
-        for (FieldDomBuilder f : builder.getFields())
-            classBuilder.addField(f);
+            if(classBuilder == null) {
+                classBuilder = PersistentClassDomBuilder.empty()
+                    .withName(name)
+                    .withModifier(Modifier.PUBLIC)
+                    .withSuperName(builder.getSuperName());
+            }
 
-        for (MethodDomBuilder m : builder.getMethods())
-            classBuilder.addMethod(m);
+            return builders.plus(name, classBuilder.extend(builder));
+        });
 
         //classBuilders.put(name, builder);
         classDeclarationCache.remove(name);
@@ -119,14 +125,17 @@ public class IJAVAClassLoader extends ClassLoader implements ClassResolver, Clas
         if(cachedClass != null)
             return cachedClass;
 
-        ClassDomBuilder classBuilder = classBuilders.get(name);
+        ClassDomBuilder classBuilder = classBuilders.get().get(name);
 
         if(classBuilder != null) {
             ClassDeclaration classDeclaration = getClassDeclaration(name);
 
             ClassDom classDom = classDeclaration.build(this);
             ClassGenerator generator = new ClassGenerator(classDom);
-            byte[] classBytes = generator.toBytes();
+            ClassNode classNode = generator.toClassNode(generatedClassDoms.get(name), generatedClassNodes.get(name));
+            byte[] classBytes = generator.toBytes(classNode);
+            generatedClassDoms.put(name, classDom);
+            generatedClassNodes.put(name, classNode);
             cachedClass = defineClass(name, classBytes, 0, classBytes.length);
 
             classCache.put(name, cachedClass);
@@ -139,7 +148,7 @@ public class IJAVAClassLoader extends ClassLoader implements ClassResolver, Clas
 
     @Override
     public boolean canResolveAmbiguous(String className) {
-        return classBuilders.containsKey(className) || classResolver.canResolveAmbiguous(className);
+        return classBuilders.get().containsKey(className) || classResolver.canResolveAmbiguous(className);
     }
 
     @Override
@@ -152,7 +161,7 @@ public class IJAVAClassLoader extends ClassLoader implements ClassResolver, Clas
     public ClassDeclaration getClassDeclaration(String name) {
         ClassDeclaration classDeclaration;
 
-        ClassDomBuilder classBuilder = classBuilders.get(name);
+        ClassDomBuilder classBuilder = classBuilders.get().get(name);
 
         if(classBuilder != null) {
             classDeclaration = classDeclarationCache.get(name);
@@ -254,10 +263,11 @@ public class IJAVAClassLoader extends ClassLoader implements ClassResolver, Clas
 
                     @Override
                     public MethodDom build(ClassDeclaration classDeclaration, ClassInspector classInspector) {
-                        MethodNode asmMethod = (MethodNode)classNode.methods.stream().filter(x -> ((MethodNode)x).name.equals(getName())).findFirst().get();
-                        StatementDom body = v ->
-                            v.visitASM(asmMethod);
-                        return methodDeclaration(getModifier(), getName(), getParameterTypes(), getReturnTypeName(), body);
+                        return lazyMethodDeclaration(getModifier(), getName(), getParameterTypes(), getReturnTypeName(), () -> {
+                            MethodNode asmMethod = (MethodNode)classNode.methods.stream().filter(x -> ((MethodNode)x).name.equals(getName())).findFirst().get();
+                            return v ->
+                                v.visitASM(asmMethod);
+                        });
                     }
                 }).collect(Collectors.toList());
             }
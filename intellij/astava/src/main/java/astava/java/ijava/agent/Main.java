@@ -18,9 +18,6 @@ import java.lang.reflect.Modifier;
 import java.security.ProtectionDomain;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import static astava.java.DomFactory.fieldDeclaration;
 
 public class Main {
     private static  ClassResolver classResolver;
@@ -50,173 +47,14 @@ public class Main {
 
         ClassLoader classLoader = ClassLoader.getSystemClassLoader();
 
-        classResolver = new ClassResolver() {
-            private Map<String, String> simpleNameToNameMap = Arrays.asList(
-                String.class,
-                Modifier.class,
-                Object.class
-            )
-                .stream().map(x -> new AbstractMap.SimpleImmutableEntry<>(x.getSimpleName(), x.getName()))
-                .collect(Collectors.toMap(x -> x.getKey(), x -> x.getValue()));
-            private Set<String> nameSet = simpleNameToNameMap.values().stream().collect(Collectors.toSet());
-
-            @Override
-            public boolean canResolveAmbiguous(String className) {
-                if(nameSet.contains(className))
-                    return true;
-
-                if(className.endsWith("[]")) {
-                    try {
-                        Class.forName("[L" + className.substring(0, className.length() - 2) + ";");
-                        return true;
-                    } catch (ClassNotFoundException e) {
-                        return false;
-                    }
-                }
-
-                try {
-                    classLoader.loadClass(className);
-                    return true;
-                } catch (ClassNotFoundException e) {
-                    return false;
-                }
-            }
-
-            @Override
-            public String resolveSimpleName(String className) {
-                return simpleNameToNameMap.get(className);
-            }
-        };
+        classResolver = new DefaultClassResolver(classLoader, Arrays.asList(
+            String.class,
+            Modifier.class,
+            Object.class
+        ));
 
-        classInspector = new ClassInspector() {
-            @Override
-            public ClassDeclaration getClassDeclaration(String name) {
-                // Inspect virtual classes in class builders and physical classes in class loader
-                try {
-                    Class<?> physicalClass = classLoader.loadClass(name);
-
-                    //logln("Loaded physical class " + name);
-
-                    return new ClassDeclaration() {
-                        @Override
-                        public List<FieldDeclaration> getFields() {
-                            return Arrays.asList(physicalClass.getDeclaredFields()).stream().map(x -> new FieldDeclaration() {
-                                @Override
-                                public int getModifier() {
-                                    return x.getModifiers();
-                                }
-
-                                @Override
-                                public String getTypeName() {
-                                    return x.getType().getName();
-                                }
-
-                                @Override
-                                public String getName() {
-                                    return x.getName();
-                                }
-
-                                @Override
-                                public FieldDom build(ClassDeclaration classDeclaration) {
-                                    return fieldDeclaration(getModifier(), getName(), getTypeName());
-                                }
-                            }).collect(Collectors.toList());
-                        }
-
-                        @Override
-                        public List<MethodDeclaration> getMethods() {
-                            List<MethodDeclaration> methods = Arrays.asList(physicalClass.getDeclaredMethods()).stream().map(x -> new MethodDeclaration() {
-                                @Override
-                                public int getModifier() {
-                                    return x.getModifiers();
-                                }
-
-                                @Override
-                                public String getName() {
-                                    return x.getName();
-                                }
-
-                                @Override
-                                public List<ParameterInfo> getParameterTypes() {
-                                    return Arrays.asList(x.getParameterTypes()).stream()
-                                        .map(x -> new ParameterInfo(Descriptor.get(x), "<NA>"))
-                                        .collect(Collectors.toList());
-                                }
-
-                                @Override
-                                public String getReturnTypeName() {
-                                    return x.getReturnType().getName();
-                                }
-
-                                @Override
-                                public MethodDom build(ClassDeclaration classDeclaration, ClassInspector classInspector) {
-                                    return null;
-                                }
-                            }).collect(Collectors.toList());
-
-                            List<MethodDeclaration> constructors = Arrays.asList(physicalClass.getConstructors()).stream().map(x -> new MethodDeclaration() {
-                                @Override
-                                public int getModifier() {
-                                    return x.getModifiers();
-                                }
-
-                                @Override
-                                public String getName() {
-                                    return "<init>";
-                                }
-
-                                @Override
-                                public List<ParameterInfo> getParameterTypes() {
-                                    return Arrays.asList(x.getParameterTypes()).stream()
-                                        .map(x -> new ParameterInfo(Descriptor.get(x), "<NA>"))
-                                        .collect(Collectors.toList());
-                                }
-
-                                @Override
-                                public String getReturnTypeName() {
-                                    return "void";
-                                }
-
-                                @Override
-                                public MethodDom build(ClassDeclaration classDeclaration, ClassInspector classInspector) {
-                                    return null;
-                                }
-                            }).collect(Collectors.toList());
-
-                            return Stream.concat(methods.stream(), constructors.stream()).collect(Collectors.toList());
-                        }
-
-                        @Override
-                        public int getModifiers() {
-                            return physicalClass.getModifiers();
-                        }
-
-                        @Override
-                        public String getName() {
-                            return physicalClass.getName();
-                        }
-
-                        @Override
-                        public String getSuperName() {
-                            return physicalClass.getSuperclass().getName();
-                        }
-
-                        @Override
-                        public List<String> getInterfaces() {
-                            return Arrays.asList(physicalClass.getInterfaces()).stream().map(x -> x.getName()).collect(Collectors.toList());
-                        }
-
-                        @Override
-                        public boolean isInterface() {
-                            return physicalClass.isInterface();
-                        }
-                    };
-                } catch (ClassNotFoundException e) {
-                    e.printStackTrace();
-                    return null;
-                }
-            }
-        };
+        // Classes are inspected while they may be transformed, so they must not be loaded for that
+        classInspector = new ClassFileInspector(classLoader);
 
         /*System.setOut(new PrintStream(new OutputStream() {
             @Override
@@ -1,6 +1,8 @@
 package astava.java.parser;
 
 import astava.java.Descriptor;
+import astava.java.DomFactory;
+import astava.java.gen.ByteCodeToTree;
 import astava.tree.FieldDom;
 import astava.tree.MethodDom;
 import astava.tree.ParameterInfo;
@@ -95,7 +97,9 @@ public class ASMClassDeclaration implements ClassDeclaration {
 
             @Override
             public MethodDom build(ClassDeclaration classDeclaration, ClassInspector classInspector) {
-                return null;
+                // Bodies are only decompiled when requested
+                return DomFactory.lazyMethodDeclaration(getModifier(), getName(), getParameterTypes(), Descriptor.get(getReturnTypeName()), () ->
+                    ByteCodeToTree.decompile(methodNode));
             }
         };
     }
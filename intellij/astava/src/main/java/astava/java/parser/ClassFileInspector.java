@@ -0,0 +1,376 @@
+package astava.java.parser;
+
+import astava.java.Descriptor;
+import astava.tree.FieldDom;
+import astava.tree.MethodDom;
+import astava.tree.ParameterInfo;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static astava.java.DomFactory.fieldDeclaration;
+
+// Inspects classes through their class files, read without code, rather than through reflection, so inspected classes
+// are neither loaded nor initialized. This makes it safe to use while classes are being transformed. The declarations
+// are described as by DefaultClassInspector and are cached, including those of missing classes. Class files which ASM
+// cannot read, i.e. those newer than Java 8, are summarized by reading their constant pools, members and inner
+// classes directly, the format of which has not changed since.
+public class ClassFileInspector implements ClassInspector {
+    private static final int CLASS_FILE_HEADER_SIZE = 8;
+
+    private ClassLoader classLoader;
+    private Map<String, Optional<ClassDeclaration>> classDeclarations = new ConcurrentHashMap<>();
+
+    public ClassFileInspector(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public ClassDeclaration getClassDeclaration(String name) {
+        if(Descriptor.isPrimitiveName(name))
+            return new ClassDeclaration.Primitive(name);
+
+        // Array names are as by Class.getName, e.g. [I or [Ljava.lang.String;
+        if(name.startsWith("["))
+            return getArrayDeclaration(name);
+
+        return classDeclarations.computeIfAbsent(name, x -> Optional.ofNullable(readClassDeclaration(x))).orElse(null);
+    }
+
+    private ClassDeclaration getArrayDeclaration(String name) {
+        ClassDeclaration elementDeclaration = getClassDeclaration(getTypeName(Type.getType(name.replace('.', '/')).getElementType()));
+
+        if(elementDeclaration == null)
+            return null;
+
+        // As for Class.getModifiers of arrays
+        int modifiers = (elementDeclaration.getModifiers() & (Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED | Opcodes.ACC_PRIVATE))
+            | Opcodes.ACC_ABSTRACT | Opcodes.ACC_FINAL;
+
+        return new ArrayDeclaration(name, modifiers);
+    }
+
+    private ClassDeclaration readClassDeclaration(String name) {
+        InputStream classInputStream = classLoader.getResourceAsStream(name.replace('.', '/') + ".class");
+
+        if(classInputStream == null)
+            return null;
+
+        byte[] classFile;
+        try(InputStream input = classInputStream) {
+            classFile = readAll(input);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Summary summary = new Summary();
+        if(classFile.length >= CLASS_FILE_HEADER_SIZE && getMajorVersion(classFile) > Opcodes.V1_8)
+            readSummary(name, classFile, summary);
+        else
+            new ClassReader(classFile).accept(summary, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return summary;
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while((length = input.read(buffer)) != -1)
+            output.write(buffer, 0, length);
+        return output.toByteArray();
+    }
+
+    private static int getMajorVersion(byte[] classFile) {
+        return ((classFile[6] & 0xFF) << 8) | (classFile[7] & 0xFF);
+    }
+
+    // Visits a class file as ClassReader does when skipping code, debug information and frames
+    private static void readSummary(String name, byte[] classFile, ClassVisitor visitor) {
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(classFile));
+            input.skipBytes(6);
+            int version = input.readUnsignedShort();
+
+            // Only names are needed from the constant pool, so the rest of its entries are skipped
+            int constantCount = input.readUnsignedShort();
+            String[] utf8s = new String[constantCount];
+            int[] classNames = new int[constantCount];
+            for(int i = 1; i < constantCount; i++) {
+                int tag = input.readUnsignedByte();
+                switch(tag) {
+                    case 1: utf8s[i] = input.readUTF(); break;
+                    case 7: classNames[i] = input.readUnsignedShort(); break;
+                    // String, method type, module and package
+                    case 8: case 16: case 19: case 20: input.skipBytes(2); break;
+                    // Method handle
+                    case 15: input.skipBytes(3); break;
+                    // Integer, float, references, name and type, dynamic and invoke dynamic
+                    case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18: input.skipBytes(4); break;
+                    // Long and double, which take two entries
+                    case 5: case 6: input.skipBytes(8); i++; break;
+                    default: throw new IllegalArgumentException("Unknown constant pool tag " + tag + " in class file of " + name + ".");
+                }
+            }
+
+            int access = input.readUnsignedShort();
+            String internalName = utf8s[classNames[input.readUnsignedShort()]];
+            int superIndex = input.readUnsignedShort();
+            String[] interfaces = new String[input.readUnsignedShort()];
+            for(int i = 0; i < interfaces.length; i++)
+                interfaces[i] = utf8s[classNames[input.readUnsignedShort()]];
+            visitor.visit(version, access, internalName, null, superIndex != 0 ? utf8s[classNames[superIndex]] : null, interfaces);
+
+            int fieldCount = input.readUnsignedShort();
+            for(int i = 0; i < fieldCount; i++) {
+                visitor.visitField(input.readUnsignedShort(), utf8s[input.readUnsignedShort()], utf8s[input.readUnsignedShort()], null, null);
+                skipAttributes(input);
+            }
+
+            int methodCount = input.readUnsignedShort();
+            for(int i = 0; i < methodCount; i++) {
+                visitor.visitMethod(input.readUnsignedShort(), utf8s[input.readUnsignedShort()], utf8s[input.readUnsignedShort()], null, null);
+                skipAttributes(input);
+            }
+
+            int attributeCount = input.readUnsignedShort();
+            for(int i = 0; i < attributeCount; i++) {
+                String attributeName = utf8s[input.readUnsignedShort()];
+                int length = input.readInt();
+                if(!attributeName.equals("InnerClasses")) {
+                    input.skipBytes(length);
+                    continue;
+                }
+
+                int innerClassCount = input.readUnsignedShort();
+                for(int j = 0; j < innerClassCount; j++) {
+                    String innerName = utf8s[classNames[input.readUnsignedShort()]];
+                    int outerIndex = input.readUnsignedShort();
+                    int simpleNameIndex = input.readUnsignedShort();
+                    visitor.visitInnerClass(innerName, outerIndex != 0 ? utf8s[classNames[outerIndex]] : null,
+                        simpleNameIndex != 0 ? utf8s[simpleNameIndex] : null, input.readUnsignedShort());
+                }
+            }
+
+            visitor.visitEnd();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated class file of " + name + ".", e);
+        }
+    }
+
+    private static void skipAttributes(DataInputStream input) throws IOException {
+        int attributeCount = input.readUnsignedShort();
+        for(int i = 0; i < attributeCount; i++) {
+            input.skipBytes(2);
+            input.skipBytes(input.readInt());
+        }
+    }
+
+    // Names of types as given by Class.getName
+    private static String getTypeName(Type type) {
+        return type.getSort() == Type.ARRAY ? type.getDescriptor().replace('/', '.') : type.getClassName();
+    }
+
+    private static ParameterInfo getParameterInfo(Type type) {
+        return new ParameterInfo(Descriptor.get(getTypeName(type)), "<NA>");
+    }
+
+    // Arrays declare no members of their own; clone and length are resolved as by the compiler
+    private static class ArrayDeclaration implements ClassDeclaration {
+        private final String name;
+        private final int modifiers;
+
+        private ArrayDeclaration(String name, int modifiers) {
+            this.name = name;
+            this.modifiers = modifiers;
+        }
+
+        @Override
+        public List<FieldDeclaration> getFields() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<MethodDeclaration> getMethods() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public int getModifiers() {
+            return modifiers;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getSuperName() {
+            return "java.lang.Object";
+        }
+
+        @Override
+        public List<String> getInterfaces() {
+            return Arrays.asList("java.lang.Cloneable", "java.io.Serializable");
+        }
+
+        @Override
+        public boolean isInterface() {
+            return false;
+        }
+    }
+
+    private static class Summary extends ClassVisitor implements ClassDeclaration {
+        private int access;
+        private String name;
+        private String superName;
+        private List<String> interfaces;
+        private final ArrayList<FieldDeclaration> fields = new ArrayList<>();
+        private final ArrayList<MethodDeclaration> methods = new ArrayList<>();
+
+        private Summary() {
+            super(Opcodes.ASM5);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.access = access & ~Opcodes.ACC_SUPER;
+            this.name = Descriptor.getName(name);
+            // As for Class.getSuperclass, interfaces have no super class
+            this.superName = superName != null && (access & Opcodes.ACC_INTERFACE) == 0 ? Descriptor.getName(superName) : null;
+            this.interfaces = interfaces != null
+                ? Collections.unmodifiableList(Arrays.asList(interfaces).stream().map(x -> Descriptor.getName(x)).collect(Collectors.toList()))
+                : Collections.emptyList();
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            // The modifiers of nested classes are those of their declarations
+            if(Descriptor.getName(name).equals(this.name))
+                this.access = access & ~Opcodes.ACC_SUPER;
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            String typeName = getTypeName(Type.getType(desc));
+
+            fields.add(new FieldDeclaration() {
+                @Override
+                public int getModifier() {
+                    return access;
+                }
+
+                @Override
+                public String getTypeName() {
+                    return typeName;
+                }
+
+                @Override
+                public String getName() {
+                    return name;
+                }
+
+                @Override
+                public FieldDom build(ClassDeclaration classDeclaration) {
+                    return fieldDeclaration(getModifier(), getName(), getTypeName());
+                }
+            });
+
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            // As for Class.getDeclaredMethods and Class.getConstructors
+            if(name.equals("<clinit>") || (name.equals("<init>") && (access & Opcodes.ACC_PUBLIC) == 0))
+                return null;
+
+            List<ParameterInfo> parameterTypes = Collections.unmodifiableList(Arrays.asList(Type.getArgumentTypes(desc)).stream()
+                .map(x -> getParameterInfo(x))
+                .collect(Collectors.toList()));
+            String returnTypeName = getTypeName(Type.getReturnType(desc));
+
+            methods.add(new MethodDeclaration() {
+                @Override
+                public int getModifier() {
+                    return access;
+                }
+
+                @Override
+                public String getName() {
+                    return name;
+                }
+
+                @Override
+                public List<ParameterInfo> getParameterTypes() {
+                    return parameterTypes;
+                }
+
+                @Override
+                public String getReturnTypeName() {
+                    return returnTypeName;
+                }
+
+                @Override
+                public MethodDom build(ClassDeclaration classDeclaration, ClassInspector classInspector) {
+                    return null;
+                }
+            });
+
+            return null;
+        }
+
+        @Override
+        public List<FieldDeclaration> getFields() {
+            return Collections.unmodifiableList(fields);
+        }
+
+        @Override
+        public List<MethodDeclaration> getMethods() {
+            return Collections.unmodifiableList(methods);
+        }
+
+        @Override
+        public int getModifiers() {
+            return access;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getSuperName() {
+            return superName;
+        }
+
+        @Override
+        public List<String> getInterfaces() {
+            return interfaces;
+        }
+
+        @Override
+        public boolean isInterface() {
+            return (access & Opcodes.ACC_INTERFACE) != 0;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package astava.java.parser;
+
+import astava.java.gen.ClassGenerator;
+import astava.tree.ClassDom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Compiles many source files into classes in parallel. Compilation proceeds in phases, each of which completes for
+// all classes before the next one starts:
+// 1. The sources are parsed, which yields a builder per class definition.
+// 2. The classes are declared, i.e. the types of their fields and methods are resolved. Since the names of all classes
+//    are known by now, classes may refer to each other regardless of the files they are defined in.
+// 3. The bodies are resolved against the declarations of all classes, and the classes are generated.
+// Errors do not stop compilation, such that the diagnostics of all sources are collected in one run. Syntax errors are
+// recovered from, sources which cannot be read or which contain anything but classes are reported, and each statement
+// and member failing to be resolved is reported while the rest of its class is still built. Classes with errors are
+// declared, without the members failing to be declared, so other classes may still refer to them, but are not
+// generated.
+public class CompilationDriver {
+    public static class Result {
+        private final Map<String, ClassDeclaration> classDeclarations;
+        private final Map<String, ClassDom> classDoms;
+        private final Map<String, byte[]> classBytes;
+        private final List<Diagnostic> diagnostics;
+
+        private Result(Map<String, ClassDeclaration> classDeclarations, Map<String, ClassDom> classDoms, Map<String, byte[]> classBytes, List<Diagnostic> diagnostics) {
+            this.classDeclarations = classDeclarations;
+            this.classDoms = classDoms;
+            this.classBytes = classBytes;
+            this.diagnostics = diagnostics;
+        }
+
+        public Map<String, ClassDeclaration> getClassDeclarations() {
+            return classDeclarations;
+        }
+
+        public Map<String, ClassDom> getClassDoms() {
+            return classDoms;
+        }
+
+        public Map<String, byte[]> getClassBytes() {
+            return classBytes;
+        }
+
+        // Ordered by source, as given, and by position within each source
+        public List<Diagnostic> getDiagnostics() {
+            return diagnostics;
+        }
+
+        public boolean hasErrors() {
+            return !diagnostics.isEmpty();
+        }
+
+        public ClassLoader newClassLoader(ClassLoader parent) {
+            return new ClassLoader(parent) {
+                @Override
+                protected Class<?> findClass(String name) throws ClassNotFoundException {
+                    byte[] bytes = classBytes.get(name);
+                    if(bytes == null)
+                        throw new ClassNotFoundException(name);
+                    return defineClass(name, bytes, 0, bytes.length);
+                }
+            };
+        }
+    }
+
+    private final ClassResolver classResolver;
+    private final ClassInspector classInspector;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public CompilationDriver(ClassResolver classResolver, ClassInspector classInspector) {
+        this.classResolver = classResolver;
+        this.classInspector = classInspector;
+    }
+
+    public CompilationDriver withParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    // Diagnostics name files by their paths
+    public Result compileFiles(List<Path> sourceFiles) {
+        return compile(sourceFiles.stream().map(x -> new Source(x.toString(), () -> {
+            try (InputStream sourceCode = Files.newInputStream(x)) {
+                return new Parser(sourceCode);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        })).collect(Collectors.toList()));
+    }
+
+    // Diagnostics name sources by their indexes, e.g. "source 0"
+    public Result compileSources(List<String> sourceCodes) {
+        return compile(IntStream.range(0, sourceCodes.size()).mapToObj(i -> new Source("source " + i, () -> {
+            try {
+                return new Parser(sourceCodes.get(i));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        })).collect(Collectors.toList()));
+    }
+
+    private static class Source {
+        private final String name;
+        private final Supplier<Parser> parser;
+
+        private Source(String name, Supplier<Parser> parser) {
+            this.name = name;
+            this.parser = parser;
+        }
+    }
+
+    private static class ParsedSource {
+        private final Source source;
+        private final List<ClassDomBuilder> classBuilders;
+        private final List<Diagnostic> diagnostics;
+
+        private ParsedSource(Source source, List<ClassDomBuilder> classBuilders, List<Diagnostic> diagnostics) {
+            this.source = source;
+            this.classBuilders = classBuilders;
+            this.diagnostics = diagnostics;
+        }
+    }
+
+    private Result compile(List<Source> sources) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            SymbolTable symbolTable = new SymbolTable();
+            ConcurrentLinkedQueue<Diagnostic> diagnostics = new ConcurrentLinkedQueue<>();
+
+            // Parsers are reused per thread, so each worker parses with a parser of its own
+            List<ParsedSource> parsedSources = inPool(pool, () -> sources.parallelStream()
+                .map(x -> parse(x, symbolTable))
+                .collect(Collectors.toList()));
+
+            Map<String, Source> classSources = new ConcurrentHashMap<>();
+            parsedSources.forEach(x -> {
+                diagnostics.addAll(x.diagnostics);
+                x.classBuilders.forEach(y -> {
+                    symbolTable.putClassBuilder(y);
+                    classSources.put(y.getName(), x.source);
+                });
+            });
+
+            Set<String> classesWithErrors = ConcurrentHashMap.newKeySet();
+            inPool(pool, () -> parsedSources.parallelStream().flatMap(x -> x.classBuilders.stream()).forEach(x -> {
+                Source source = classSources.get(x.getName());
+                try {
+                    ClassDeclaration classDeclaration = Factory.recordingFailures(e -> {
+                        diagnostics.add(toDiagnostic(source, x.getName(), e));
+                        classesWithErrors.add(x.getName());
+                    }, () -> x.build(symbolTable).withDefaultConstructor());
+                    symbolTable.putClassDeclaration(classDeclaration);
+                } catch (RuntimeException e) {
+                    diagnostics.add(toDiagnostic(source, x.getName(), e));
+                }
+            }));
+
+            List<Source> sourcesWithSyntaxErrors = parsedSources.stream().filter(x -> !x.diagnostics.isEmpty()).map(x -> x.source).collect(Collectors.toList());
+            Map<String, ClassDom> classDoms = new ConcurrentHashMap<>();
+            Map<String, byte[]> classBytes = new ConcurrentHashMap<>();
+            inPool(pool, () -> symbolTable.classDeclarations.values().parallelStream()
+                .filter(x -> !sourcesWithSyntaxErrors.contains(classSources.get(x.getName())))
+                .forEach(x -> {
+                    Source source = classSources.get(x.getName());
+                    List<RuntimeException> failures = new ArrayList<>();
+                    try {
+                        // Bodies are built as the class is generated, and those of classes missing members are still
+                        // built for their diagnostics
+                        Factory.recordingFailures(e -> failures.add(e), () -> {
+                            ClassDom classDom = x.build(symbolTable);
+                            byte[] bytes = new ClassGenerator(classDom).toBytes();
+                            if(failures.isEmpty() && !classesWithErrors.contains(x.getName())) {
+                                classDoms.put(x.getName(), classDom);
+                                classBytes.put(x.getName(), bytes);
+                            }
+                            return null;
+                        });
+                    } catch (RuntimeException e) {
+                        // Failures following from those recorded are not reported
+                        if(failures.isEmpty())
+                            diagnostics.add(toDiagnostic(source, x.getName(), e));
+                    }
+                    failures.forEach(e -> diagnostics.add(toDiagnostic(source, x.getName(), e)));
+                }));
+
+            List<Diagnostic> sortedDiagnostics = new ArrayList<>(diagnostics);
+            List<String> sourceNames = sources.stream().map(x -> x.name).collect(Collectors.toList());
+            sortedDiagnostics.sort(Comparator.<Diagnostic>comparingInt(x -> sourceNames.indexOf(x.getSource()))
+                .thenComparingInt(x -> x.getLine())
+                .thenComparingInt(x -> x.getColumn()));
+
+            return new Result(
+                Collections.unmodifiableMap(symbolTable.classDeclarations),
+                Collections.unmodifiableMap(classDoms),
+                Collections.unmodifiableMap(classBytes),
+                Collections.unmodifiableList(sortedDiagnostics));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Sources which cannot be read yield no classes, and elements other than classes are left out
+    private static ParsedSource parse(Source source, SymbolTable symbolTable) {
+        Parser parser;
+        try {
+            parser = source.parser.get();
+        } catch (UncheckedIOException e) {
+            return new ParsedSource(source, Collections.emptyList(), Collections.singletonList(
+                new Diagnostic(Diagnostic.Kind.INPUT, source.name, 0, 0, "Cannot read source: " + e.getCause().getMessage())));
+        }
+
+        List<DomBuilder> domBuilders = parser.parse(symbolTable);
+        List<ClassDomBuilder> classBuilders = new ArrayList<>();
+        List<Diagnostic> diagnostics = parser.getDiagnostics().stream().map(x -> x.withSource(source.name)).collect(Collectors.toList());
+        for(DomBuilder domBuilder : domBuilders) {
+            if(domBuilder instanceof ClassDomBuilder)
+                classBuilders.add((ClassDomBuilder)domBuilder);
+            else
+                diagnostics.add(new Diagnostic(Diagnostic.Kind.SYNTAX, source.name, 0, 0, "Source files may only contain class definitions."));
+        }
+
+        return new ParsedSource(source, classBuilders, diagnostics);
+    }
+
+    // Failures outside of statements, e.g. of the types of fields and methods, are positioned at the start of the source
+    private static Diagnostic toDiagnostic(Source source, String className, RuntimeException e) {
+        if(e instanceof SourceException)
+            return ((SourceException)e).toDiagnostic().withSource(source.name);
+
+        String message = e.getMessage() != null ? e.getMessage() : e.toString();
+        return new Diagnostic(Diagnostic.Kind.RESOLUTION, source.name, 0, 0, "In class " + className + ": " + message);
+    }
+
+    private static void inPool(ForkJoinPool pool, Runnable phase) {
+        inPool(pool, () -> {
+            phase.run();
+            return null;
+        });
+    }
+
+    // Parallel streams run in the pool they are started from
+    private static <T> T inPool(ForkJoinPool pool, Supplier<T> phase) {
+        Future<T> future = pool.submit(() -> phase.get());
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while compiling.", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // The classes being compiled take precedence over those known to the given resolver and inspector
+    private class SymbolTable implements ClassResolver, ClassInspector {
+        private final Map<String, ClassDomBuilder> classBuilders = new ConcurrentHashMap<>();
+        private final Map<String, ClassDeclaration> classDeclarations = new ConcurrentHashMap<>();
+
+        private void putClassBuilder(ClassDomBuilder classBuilder) {
+            if(classBuilders.putIfAbsent(classBuilder.getName(), classBuilder) != null)
+                throw new IllegalArgumentException("Class " + classBuilder.getName() + " is defined more than once.");
+        }
+
+        private void putClassDeclaration(ClassDeclaration classDeclaration) {
+            classDeclarations.put(classDeclaration.getName(), classDeclaration);
+        }
+
+        @Override
+        public boolean canResolveAmbiguous(String className) {
+            return classBuilders.containsKey(className) || classResolver.canResolveAmbiguous(className);
+        }
+
+        @Override
+        public String resolveSimpleName(String className) {
+            return classBuilders.containsKey(className) ? className : classResolver.resolveSimpleName(className);
+        }
+
+        @Override
+        public ClassDeclaration getClassDeclaration(String name) {
+            ClassDeclaration classDeclaration = classDeclarations.get(name);
+            return classDeclaration != null ? classDeclaration : classInspector.getClassDeclaration(name);
+        }
+    }
+}
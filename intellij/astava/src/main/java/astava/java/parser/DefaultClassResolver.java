@@ -1,12 +1,16 @@
 package astava.java.parser;
 
+import astava.java.Descriptor;
+
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class DefaultClassResolver implements ClassResolver {
     private ClassLoader classLoader;
     private Map<String, String> simpleNameToNameMap;
     private Set<String> nameSet;
+    private Map<String, Boolean> existingClasses = new ConcurrentHashMap<>();
 
     public DefaultClassResolver(ClassLoader classLoader) {
         this(classLoader, Arrays.asList());
@@ -24,26 +28,24 @@ public class DefaultClassResolver implements ClassResolver {
         nameSet = simpleNameToNameMap.values().stream().collect(Collectors.toSet());
     }
 
+    // Whether a class exists is told by whether its class file exists, so classes are neither loaded nor initialized
+    // and misses do not throw. Ambiguous names are probed piece by piece, so both hits and misses are remembered.
     @Override
     public boolean canResolveAmbiguous(String className) {
         if(nameSet.contains(className))
             return true;
 
-        if(className.endsWith("[]")) {
-            try {
-                Class.forName("[L" + className.substring(0, className.length() - 2) + ";");
-                return true;
-            } catch (ClassNotFoundException e) {
-                return false;
-            }
-        }
+        Boolean exists = existingClasses.get(className);
 
-        try {
-            classLoader.loadClass(className);
-            return true;
-        } catch (ClassNotFoundException e) {
-            return false;
+        if(exists == null) {
+            if(className.endsWith("[]"))
+                exists = canResolveAmbiguous(className.substring(0, className.length() - 2));
+            else
+                exists = !Descriptor.isPrimitiveName(className) && classLoader.getResource(className.replace('.', '/') + ".class") != null;
+            existingClasses.put(className, exists);
         }
+
+        return exists;
     }
 
     @Override
@@ -0,0 +1,54 @@
+package astava.java.parser;
+
+// A problem found in source code, positioned by line (from 1) and column (from 0) as by ANTLR. The source is null for
+// diagnostics reported by a Parser, which does not know where its source code comes from.
+public class Diagnostic {
+    public enum Kind {
+        INPUT,
+        SYNTAX,
+        RESOLUTION
+    }
+
+    private final Kind kind;
+    private final String source;
+    private final int line;
+    private final int column;
+    private final String message;
+
+    public Diagnostic(Kind kind, String source, int line, int column, String message) {
+        this.kind = kind;
+        this.source = source;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    public Diagnostic withSource(String source) {
+        return new Diagnostic(kind, source, line, column, message);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return (source != null ? source + ":" : "") + line + ":" + column + ": " + message;
+    }
+}
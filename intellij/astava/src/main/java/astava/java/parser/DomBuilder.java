@@ -14,6 +14,11 @@ public interface DomBuilder extends Serializable {
         return false;
     }
 
+    // The (kind, value) key of the nodes this builder can match when used as a pattern; null if it may match any node
+    default List<Object> getPatternKey() {
+        return null;
+    }
+
     default CodeDom map(List<Object> captures) {
         throw new UnsupportedOperationException("Cannot do map (yet?).");
     }
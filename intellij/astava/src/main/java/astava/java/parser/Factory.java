@@ -1,5 +1,7 @@
 package astava.java.parser;
 
+import astava.java.ArithmeticOperator;
+import astava.java.BitwiseOperator;
 import astava.java.Descriptor;
 import astava.java.DomFactory;
 import astava.java.Invocation;
@@ -7,7 +9,9 @@ import astava.tree.*;
 
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -17,6 +21,31 @@ import java.util.stream.IntStream;
 import static astava.java.DomFactory.accessField;
 
 public class Factory {
+    // Where failures are recorded while building on this thread, if anywhere, such that building continues past them
+    private static final ThreadLocal<Consumer<RuntimeException>> failureRecorders = new ThreadLocal<>();
+
+    // Failures of statements and members within the build are given to the recorder, rather than failing the build.
+    // Their statements are built as empty blocks and their members are left out, so the result is incomplete if any
+    // failures were recorded.
+    public static <T> T recordingFailures(Consumer<RuntimeException> failureRecorder, Supplier<T> build) {
+        Consumer<RuntimeException> outerFailureRecorder = failureRecorders.get();
+        failureRecorders.set(failureRecorder);
+
+        try {
+            return build.get();
+        } finally {
+            failureRecorders.set(outerFailureRecorder);
+        }
+    }
+
+    // Throws the failure unless it can be recorded
+    static void recordFailure(RuntimeException failure) {
+        Consumer<RuntimeException> failureRecorder = failureRecorders.get();
+        if(failureRecorder == null)
+            throw failure;
+        failureRecorder.accept(failure);
+    }
+
     public static StatementDomBuilder block(List<StatementDomBuilder> statementBuilders) {
         return new StatementDomBuilder() {
             @Override
@@ -36,6 +65,12 @@ public class Factory {
                 return false;
             }
 
+            @Override
+            public List<Object> getPatternKey() {
+                // A single statement pattern also matches outside of blocks
+                return statementBuilders.size() != 1 ? CodeDomPatternKey.of(CodeDomPatternKey.BLOCK, statementBuilders.size()) : null;
+            }
+
             @Override
             public boolean test(StatementDom statement, Map<String, Object> captures) {
                 return Util.returnFrom(r -> statement.accept(new DefaultStatementDomVisitor() {
@@ -96,6 +131,48 @@ public class Factory {
         };
     }
 
+    public static ExpressionDomBuilder literal(long value) {
+        return new ExpressionDomBuilder() {
+            @Override
+            public ExpressionDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                return DomFactory.literal(value);
+            }
+
+            @Override
+            public String toString() {
+                return value + "L";
+            }
+        };
+    }
+
+    public static ExpressionDomBuilder literal(float value) {
+        return new ExpressionDomBuilder() {
+            @Override
+            public ExpressionDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                return DomFactory.literal(value);
+            }
+
+            @Override
+            public String toString() {
+                return value + "f";
+            }
+        };
+    }
+
+    public static ExpressionDomBuilder literal(double value) {
+        return new ExpressionDomBuilder() {
+            @Override
+            public ExpressionDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                return DomFactory.literal(value);
+            }
+
+            @Override
+            public String toString() {
+                return "" + value;
+            }
+        };
+    }
+
     public static ExpressionDomBuilder literal(String value) {
         return new ExpressionDomBuilder() {
             public String replaceMatches(Pattern pattern, String string, Function<String, String> callback) {
@@ -203,6 +280,11 @@ public class Factory {
                 return "this";
             }
 
+            @Override
+            public List<Object> getPatternKey() {
+                return CodeDomPatternKey.of(CodeDomPatternKey.THIS, null);
+            }
+
             @Override
             public boolean test(ExpressionDom expression, Map<String, Object> captures) {
                 return Util.returnFrom(false, r -> expression.accept(new DefaultExpressionDomVisitor() {
@@ -256,32 +338,34 @@ public class Factory {
                     @Override
                     public MethodDom build(ClassDeclaration classDeclaration, ClassInspector classInspector) {
                         boolean isConstructor = name.equals("<init>");
-
-                        Hashtable<String, String> locals = new Hashtable<>();
-                        locals.putAll(parameters.stream().collect(Collectors.toMap(x -> x.name, x -> x.descriptor)));
-                        //locals.addAll(parameters.stream().map(x -> x.name).collect(Collectors.toList()));
-                        Hashtable<String, Object> captures = new Hashtable<>();
-                        statementBuilders.forEach(x -> x.appendLocals(locals));
-                        List<StatementDom> statements = statementBuilders.stream().map(x -> x.build(classResolver, classDeclaration, classInspector, locals, this, captures)).collect(Collectors.toList());
-                        StatementDom body = DomFactory.block(statements);
-
                         String returnType = Descriptor.get(getReturnTypeName());
+                        MethodDeclaration methodContext = this;
+
+                        return DomFactory.lazyMethodDeclaration(modifier, name, parameters, returnType, () -> {
+                            Hashtable<String, String> locals = new Hashtable<>();
+                            locals.putAll(parameters.stream().collect(Collectors.toMap(x -> x.name, x -> x.descriptor)));
+                            //locals.addAll(parameters.stream().map(x -> x.name).collect(Collectors.toList()));
+                            Hashtable<String, Object> captures = new Hashtable<>();
+                            statementBuilders.forEach(x -> x.appendLocals(locals));
+                            List<StatementDom> statements = statementBuilders.stream().map(x -> x.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures)).collect(Collectors.toList());
+                            StatementDom body = DomFactory.block(statements);
+
+                            // Ugly hack
+                            // Instead: every leaf statement should either be a ret statement or one is injected
+                            // This logic probably shouldn't be located here?
+                            if(returnType.equals(Descriptor.VOID)) {
+                                statements.add(DomFactory.ret());
+                            }
 
-                        // Ugly hack
-                        // Instead: every leaf statement should either be a ret statement or one is injected
-                        // This logic probably shouldn't be located here?
-                        if(returnType.equals(Descriptor.VOID)) {
-                            statements.add(DomFactory.ret());
-                        }
-
-                        if(isConstructor) {
-                            // Call super constructor
-                            statements.add(0,
-                                DomFactory.invokeSpecial(Descriptor.get(classDeclaration.getSuperName()), "<init>", Descriptor.getMethodDescriptor(Arrays.asList(), Descriptor.VOID), DomFactory.self(), Arrays.asList())
-                            );
-                        }
+                            if(isConstructor) {
+                                // Call super constructor
+                                statements.add(0,
+                                    DomFactory.invokeSpecial(Descriptor.get(classDeclaration.getSuperName()), "<init>", Descriptor.getMethodDescriptor(Arrays.asList(), Descriptor.VOID), DomFactory.self(), Arrays.asList())
+                                );
+                            }
 
-                        return DomFactory.methodDeclaration(modifier, name, parameters, returnType, body);
+                            return body;
+                        });
                     }
                 };
             }
@@ -310,6 +394,11 @@ public class Factory {
                 return targetBuilder + "." + name + " = " + valueBuilder;
             }
 
+            @Override
+            public List<Object> getPatternKey() {
+                return CodeDomPatternKey.of(CodeDomPatternKey.FIELD_ASSIGNMENT, name);
+            }
+
             @Override
             public boolean test(StatementDom statement, Map<String, Object> captures) {
                 return Util.returnFrom(false, r -> statement.accept(new DefaultStatementDomVisitor() {
@@ -463,17 +552,7 @@ public class Factory {
                     return ci.getClassDeclaration(expressionResultTypeName);
                 }).collect(Collectors.toList());
 
-                // Find best matching constructor
-                List<MethodDeclaration> constructors = targetClassDeclaration.getMethods().stream()
-                    .filter(x -> x.getName().equals("<init>"))
-                    .filter(x -> x.getParameterTypes().size() == arguments.size())
-                    .filter(x -> IntStream.range(0, arguments.size()).allMatch(i ->
-                        // Compare full inheritance
-                        Descriptor.getName(x.getParameterTypes().get(0).descriptor).equals(argumentTypes.get(i).getName())))
-                    .collect(Collectors.toList());
-
-                // For now, just pick the first
-                MethodDeclaration constructor = constructors.get(0);
+                MethodDeclaration constructor = MethodResolver.of(ci).resolveConstructor(targetClassDeclaration, argumentTypes, (c, m) -> m);
 
                 return DomFactory.newInstanceExpr(
                     Descriptor.get(targetClassDeclaration.getName()),
@@ -595,6 +674,91 @@ public class Factory {
         };
     }
 
+    // Failures while building the statement are given its position, unless given that of a statement within it, and
+    // are recorded if possible
+    public static StatementDomBuilder located(int line, int column, StatementDomBuilder statementBuilder) {
+        return new StatementDomBuilder() {
+            @Override
+            public void appendLocals(Map<String, String> locals) {
+                statementBuilder.appendLocals(locals);
+            }
+
+            @Override
+            public StatementDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                try {
+                    return statementBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                } catch (SourceException e) {
+                    recordFailure(e);
+                } catch (RuntimeException e) {
+                    recordFailure(new SourceException(line, column, e));
+                }
+
+                return DomFactory.block(Collections.emptyList());
+            }
+
+            @Override
+            public boolean test(CodeDom code, Map<String, Object> captures) {
+                return statementBuilder.test(code, captures);
+            }
+
+            @Override
+            public boolean test(StatementDom statement, Map<String, Object> captures) {
+                return statementBuilder.test(statement, captures);
+            }
+
+            @Override
+            public List<Object> getPatternKey() {
+                return statementBuilder.getPatternKey();
+            }
+
+            @Override
+            public CodeDom map(List<Object> captures) {
+                return statementBuilder.map(captures);
+            }
+
+            @Override
+            public String toString() {
+                return statementBuilder.toString();
+            }
+        };
+    }
+
+    public static StatementDomBuilder whileLoop(ExpressionDomBuilder conditionBuilder, StatementDomBuilder bodyBuilder) {
+        return forLoop(Arrays.asList(), conditionBuilder, Arrays.asList(), bodyBuilder);
+    }
+
+    // Laid out as by javac: the condition is tested before each iteration and the update is followed by a jump back
+    // to the test. Without a condition, the loop is infinite.
+    public static StatementDomBuilder forLoop(List<StatementDomBuilder> initializationBuilders, ExpressionDomBuilder conditionBuilder, List<StatementDomBuilder> updateBuilders, StatementDomBuilder bodyBuilder) {
+        return new StatementDomBuilder() {
+            @Override
+            public StatementDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                // Each loop built gets labels of its own
+                Object testLabel = new Object();
+                Object endLabel = new Object();
+                ArrayList<StatementDom> statements = new ArrayList<>();
+
+                initializationBuilders.forEach(x -> statements.add(x.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures)));
+                statements.add(DomFactory.mark(testLabel));
+                if(conditionBuilder != null)
+                    statements.add(DomFactory.ifJump(conditionBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures), endLabel));
+                statements.add(bodyBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures));
+                updateBuilders.forEach(x -> statements.add(x.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures)));
+                statements.add(DomFactory.goTo(testLabel));
+                statements.add(DomFactory.mark(endLabel));
+
+                return DomFactory.block(statements);
+            }
+
+            @Override
+            public String toString() {
+                return "for(" + initializationBuilders.stream().map(x -> x.toString()).collect(Collectors.joining(", ")) + "; " +
+                    (conditionBuilder != null ? conditionBuilder : "") + "; " +
+                    updateBuilders.stream().map(x -> x.toString()).collect(Collectors.joining(", ")) + ") " + bodyBuilder;
+            }
+        };
+    }
+
     public static ExpressionDomBuilder instanceOf(ExpressionDomBuilder targetBuilder, UnresolvedType type) {
         return new ExpressionDomBuilder() {
             @Override
@@ -629,12 +793,250 @@ public class Factory {
             public ExpressionDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
                 ExpressionDom lhs = lhsBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
                 ExpressionDom rhs = rhsBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                String type = promotedType(typeOf(classInspector, classDeclaration, lhs, locals, methodContext), typeOf(classInspector, classDeclaration, rhs, locals, methodContext));
+
+                return DomFactory.compare(widen(classInspector, classDeclaration, lhs, type, locals, methodContext), widen(classInspector, classDeclaration, rhs, type, locals, methodContext), operator);
+            }
+        };
+    }
+
+    public static ExpressionDomBuilder arithmetic(ExpressionDomBuilder lhsBuilder, ExpressionDomBuilder rhsBuilder, int operator) {
+        return new ExpressionDomBuilder() {
+            @Override
+            public ExpressionDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                ExpressionDom lhs = lhsBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                ExpressionDom rhs = rhsBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                String type = promotedType(typeOf(classInspector, classDeclaration, lhs, locals, methodContext), typeOf(classInspector, classDeclaration, rhs, locals, methodContext));
+
+                return DomFactory.arithmetic(widen(classInspector, classDeclaration, lhs, type, locals, methodContext), widen(classInspector, classDeclaration, rhs, type, locals, methodContext), operator);
+            }
+        };
+    }
+
+    public static ExpressionDomBuilder shift(ExpressionDomBuilder lhsBuilder, ExpressionDomBuilder rhsBuilder, int operator) {
+        return new ExpressionDomBuilder() {
+            @Override
+            public ExpressionDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                ExpressionDom lhs = lhsBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                ExpressionDom rhs = rhsBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+
+                // The operands are promoted separately, and the distance is taken as an int
+                String lhsType = promotedType(typeOf(classInspector, classDeclaration, lhs, locals, methodContext), Descriptor.INT);
+                String rhsType = typeOf(classInspector, classDeclaration, rhs, locals, methodContext);
+                return DomFactory.shift(widen(classInspector, classDeclaration, lhs, lhsType, locals, methodContext),
+                    rhsType.equals(Descriptor.LONG) ? DomFactory.typeCast(rhs, Descriptor.INT) : widen(classInspector, classDeclaration, rhs, Descriptor.INT, locals, methodContext), operator);
+            }
+        };
+    }
+
+    public static ExpressionDomBuilder bitwise(ExpressionDomBuilder lhsBuilder, ExpressionDomBuilder rhsBuilder, int operator) {
+        return new ExpressionDomBuilder() {
+            @Override
+            public ExpressionDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                ExpressionDom lhs = lhsBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                ExpressionDom rhs = rhsBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                String type = promotedType(typeOf(classInspector, classDeclaration, lhs, locals, methodContext), typeOf(classInspector, classDeclaration, rhs, locals, methodContext));
+
+                return DomFactory.bitwise(widen(classInspector, classDeclaration, lhs, type, locals, methodContext), widen(classInspector, classDeclaration, rhs, type, locals, methodContext), operator);
+            }
+        };
+    }
+
+    public static ExpressionDomBuilder not(ExpressionDomBuilder expressionBuilder) {
+        return new ExpressionDomBuilder() {
+            @Override
+            public ExpressionDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                return DomFactory.not(expressionBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures));
+            }
+
+            @Override
+            public String toString() {
+                return "!" + expressionBuilder;
+            }
+        };
+    }
+
+    public static ExpressionDomBuilder neg(ExpressionDomBuilder expressionBuilder) {
+        return new ExpressionDomBuilder() {
+            @Override
+            public ExpressionDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                ExpressionDom expression = expressionBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                String type = promotedType(typeOf(classInspector, classDeclaration, expression, locals, methodContext), Descriptor.INT);
+
+                return DomFactory.neg(widen(classInspector, classDeclaration, expression, type, locals, methodContext));
+            }
+
+            @Override
+            public String toString() {
+                return "-" + expressionBuilder;
+            }
+        };
+    }
+
+    // As by javac, ~x is x ^ -1
+    public static ExpressionDomBuilder complement(ExpressionDomBuilder expressionBuilder) {
+        return bitwise(expressionBuilder, literal(-1), BitwiseOperator.XOR);
+    }
+
+    // The value cast to the type of the variable, as done implicitly by compound assignments, e.g. b += 1 for a byte b
+    public static ExpressionDomBuilder castAs(ExpressionDomBuilder valueBuilder, ExpressionDomBuilder variableBuilder) {
+        return new ExpressionDomBuilder() {
+            @Override
+            public ExpressionDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                ExpressionDom value = valueBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                ExpressionDom variable = variableBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                String valueType = typeOf(classInspector, classDeclaration, value, locals, methodContext);
+                String variableType = typeOf(classInspector, classDeclaration, variable, locals, methodContext);
+
+                return valueType.equals(variableType) || promotedType(valueType, variableType) == null ? value : DomFactory.typeCast(value, variableType);
+            }
+
+            @Override
+            public String toString() {
+                return valueBuilder.toString();
+            }
+        };
+    }
+
+    // Int variables are incremented in place, as for i++ and i += 2; other variables are assigned their sum
+    public static StatementDomBuilder increment(String name, int amount) {
+        return new StatementDomBuilder() {
+            @Override
+            public StatementDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                if(Descriptor.INT.equals(locals.get(name)))
+                    return DomFactory.intIncVar(name, amount);
+
+                ExpressionDomBuilder variableBuilder = ambiguousName(Arrays.asList(name));
+                ExpressionDomBuilder sumBuilder = amount >= 0
+                    ? arithmetic(variableBuilder, literal(amount), ArithmeticOperator.ADD)
+                    : arithmetic(variableBuilder, literal(-amount), ArithmeticOperator.SUB);
+                return assign(name, castAs(sumBuilder, variableBuilder)).build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+            }
 
-                return DomFactory.compare(lhs, rhs, operator);
+            @Override
+            public String toString() {
+                return name + " += " + amount + ";";
             }
         };
     }
 
+    // The statement followed by the value, or, if the value is taken first, the value followed by the statement
+    public static ExpressionDomBuilder sequence(StatementDomBuilder statementBuilder, ExpressionDomBuilder valueBuilder, boolean valueFirst) {
+        return new ExpressionDomBuilder() {
+            @Override
+            public ExpressionDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                StatementDom statement = statementBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                ExpressionDom value = valueBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+
+                return DomFactory.blockExpr(valueFirst ? Arrays.<CodeDom>asList(value, statement) : Arrays.<CodeDom>asList(statement, value));
+            }
+
+            @Override
+            public String toString() {
+                return valueFirst ? valueBuilder + ", " + statementBuilder : statementBuilder + ", " + valueBuilder;
+            }
+        };
+    }
+
+    public static ExpressionDomBuilder arrayAccess(ExpressionDomBuilder arrayBuilder, ExpressionDomBuilder indexBuilder) {
+        return new ExpressionDomBuilder() {
+            @Override
+            public ExpressionDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                ExpressionDom array = arrayBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                ExpressionDom index = indexBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+
+                return DomFactory.arrayLoad(array, index);
+            }
+
+            @Override
+            public String toString() {
+                return arrayBuilder + "[" + indexBuilder + "]";
+            }
+        };
+    }
+
+    public static StatementDomBuilder assignArrayElement(ExpressionDomBuilder arrayBuilder, ExpressionDomBuilder indexBuilder, ExpressionDomBuilder valueBuilder) {
+        return new StatementDomBuilder() {
+            @Override
+            public StatementDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                ExpressionDom array = arrayBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                ExpressionDom index = indexBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+                ExpressionDom value = valueBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+
+                return DomFactory.arrayStore(array, index, value);
+            }
+
+            @Override
+            public String toString() {
+                return arrayBuilder + "[" + indexBuilder + "] = " + valueBuilder + ";";
+            }
+        };
+    }
+
+    public static ExpressionDomBuilder newArray(UnresolvedType elementType, ExpressionDomBuilder lengthBuilder) {
+        return new ExpressionDomBuilder() {
+            @Override
+            public ExpressionDom build(ClassResolver classResolver, ClassDeclaration classDeclaration, ClassInspector classInspector, Map<String, String> locals, MethodDeclaration methodContext, Map<String, Object> captures) {
+                ExpressionDom length = lengthBuilder.build(classResolver, classDeclaration, classInspector, locals, methodContext, captures);
+
+                return DomFactory.newArray(Parser.parseTypeQualifier(classResolver, elementType.toString()), length);
+            }
+
+            @Override
+            public String toString() {
+                return "new " + elementType + "[" + lengthBuilder + "]";
+            }
+        };
+    }
+
+    private static final List<String> NUMERIC_TYPES = Arrays.asList(Descriptor.INT, Descriptor.LONG, Descriptor.FLOAT, Descriptor.DOUBLE);
+
+    // The type of binary numeric promotion; null if either type is not numeric
+    private static String promotedType(String lhsType, String rhsType) {
+        int lhsRank = NUMERIC_TYPES.indexOf(promotedType(lhsType));
+        int rhsRank = NUMERIC_TYPES.indexOf(promotedType(rhsType));
+
+        return lhsRank != -1 && rhsRank != -1 ? NUMERIC_TYPES.get(Math.max(lhsRank, rhsRank)) : null;
+    }
+
+    private static String promotedType(String type) {
+        switch(type) {
+            case Descriptor.BYTE:
+            case Descriptor.SHORT:
+            case Descriptor.CHAR:
+                return Descriptor.INT;
+        }
+
+        return type;
+    }
+
+    // Int literals are widened as constants, as by javac, e.g. 1 to 1L rather than to (long)1
+    private static ExpressionDom widen(ClassInspector ci, ClassDeclaration cd, ExpressionDom expression, String type, Map<String, String> locals, MethodDeclaration methodContext) {
+        if(type == null || type.equals(typeOf(ci, cd, expression, locals, methodContext)))
+            return expression;
+
+        Integer value = Util.returnFrom(null, r -> expression.accept(new DefaultExpressionDomVisitor() {
+            @Override
+            public void visitIntLiteral(int value) {
+                r.accept(value);
+            }
+        }));
+
+        if(value != null) {
+            switch(type) {
+                case Descriptor.LONG: return DomFactory.literal((long)value);
+                case Descriptor.FLOAT: return DomFactory.literal((float)value);
+                case Descriptor.DOUBLE: return DomFactory.literal((double)value);
+            }
+        }
+
+        return DomFactory.typeCast(expression, type);
+    }
+
+    private static String typeOf(ClassInspector ci, ClassDeclaration cd, ExpressionDom expression, Map<String, String> locals, MethodDeclaration methodContext) {
+        return Parser.expressionResultType(ci, cd, expression, locals, Descriptor.get(methodContext.getReturnTypeName()));
+    }
+
     public static ExpressionDomBuilder typeCast(ExpressionDomBuilder expressionBuilder, UnresolvedType targetType) {
         return new ExpressionDomBuilder() {
             @Override
@@ -0,0 +1,281 @@
+package astava.java.parser;
+
+import astava.java.Descriptor;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Selects the method invoked for a name and argument types as the Java compiler does: the applicable methods are
+// sought first without and then with boxing and unboxing, and the most specific of these is selected. Methods taking
+// variable arguments are only applicable by their array parameter. Selections are remembered per inspector by the
+// names of the target class, method and argument types, since inspectors may create new declarations for each lookup.
+// Mutable and modified declarations, which may differ from those of the inspector, are not remembered, nor are
+// subtypes of the class being transformed through a ThisClassInspector, which otherwise shares the selections of its
+// underlying inspector. Remembered selections hold names only, such that they keep neither declarations nor their
+// inspector alive.
+public class MethodResolver {
+    private static final Map<ClassInspector, Map<String, Optional<RememberedSelection>>> selectionsByInspector = new WeakHashMap<>();
+    private static final Hashtable<String, List<String>> primitiveWidenings = new Hashtable<>();
+    private static final Hashtable<String, String> boxes = new Hashtable<>();
+    private static final Hashtable<String, String> unboxes = new Hashtable<>();
+
+    static {
+        primitiveWidenings.put("byte", Arrays.asList("short", "int", "long", "float", "double"));
+        primitiveWidenings.put("short", Arrays.asList("int", "long", "float", "double"));
+        primitiveWidenings.put("char", Arrays.asList("int", "long", "float", "double"));
+        primitiveWidenings.put("int", Arrays.asList("long", "float", "double"));
+        primitiveWidenings.put("long", Arrays.asList("float", "double"));
+        primitiveWidenings.put("float", Arrays.asList("double"));
+
+        boxes.put("boolean", Boolean.class.getName());
+        boxes.put("byte", Byte.class.getName());
+        boxes.put("short", Short.class.getName());
+        boxes.put("char", Character.class.getName());
+        boxes.put("int", Integer.class.getName());
+        boxes.put("long", Long.class.getName());
+        boxes.put("float", Float.class.getName());
+        boxes.put("double", Double.class.getName());
+        boxes.forEach((primitive, box) -> unboxes.put(box, primitive));
+    }
+
+    // A resolver sharing its selections with all other resolvers of the inspector
+    public static MethodResolver of(ClassInspector classInspector) {
+        if(classInspector instanceof ThisClassInspector) {
+            ThisClassInspector thisClassInspector = (ThisClassInspector)classInspector;
+            return new MethodResolver(classInspector, getSelections(thisClassInspector.getClassInspector()), thisClassInspector.getThisClass().getName());
+        }
+
+        return new MethodResolver(classInspector, getSelections(classInspector), null);
+    }
+
+    private static Map<String, Optional<RememberedSelection>> getSelections(ClassInspector classInspector) {
+        synchronized (selectionsByInspector) {
+            return selectionsByInspector.computeIfAbsent(classInspector, x -> new ConcurrentHashMap<>());
+        }
+    }
+
+    private static class Selection {
+        private final ClassDeclaration declaringClass;
+        private final MethodDeclaration method;
+
+        private Selection(ClassDeclaration declaringClass, MethodDeclaration method) {
+            this.declaringClass = declaringClass;
+            this.method = method;
+        }
+    }
+
+    private static class RememberedSelection {
+        private final String declaringClassName;
+        private final String methodName;
+        private final List<String> parameterDescriptors;
+        // Tells bridges apart from the methods they bridge to
+        private final String returnTypeName;
+
+        private RememberedSelection(Selection selection) {
+            this.declaringClassName = selection.declaringClass.getName();
+            this.methodName = selection.method.getName();
+            this.parameterDescriptors = getParameterDescriptors(selection.method);
+            this.returnTypeName = selection.method.getReturnTypeName();
+        }
+
+        // Null if the method is no longer declared
+        private Selection get(ClassDeclaration targetClass, ClassInspector classInspector) {
+            ClassDeclaration declaringClass = declaringClassName.equals(targetClass.getName()) ? targetClass : classInspector.getClassDeclaration(declaringClassName);
+            if(declaringClass == null)
+                return null;
+
+            return declaringClass.getMethods().stream()
+                .filter(x -> x.getName().equals(methodName) && x.getReturnTypeName().equals(returnTypeName) && getParameterDescriptors(x).equals(parameterDescriptors))
+                .findFirst().map(x -> new Selection(declaringClass, x)).orElse(null);
+        }
+    }
+
+    private final ClassInspector classInspector;
+    private final TypeHierarchy typeHierarchy;
+    private final Map<String, Optional<RememberedSelection>> selections;
+    private final String thisClassName;
+
+    public MethodResolver(ClassInspector classInspector) {
+        this(classInspector, new ConcurrentHashMap<>(), null);
+    }
+
+    private MethodResolver(ClassInspector classInspector, Map<String, Optional<RememberedSelection>> selections, String thisClassName) {
+        this.classInspector = classInspector;
+        this.typeHierarchy = TypeHierarchy.of(classInspector);
+        this.selections = selections;
+        this.thisClassName = thisClassName;
+    }
+
+    // The reducer is given the class declaring the selected method; null if no method is applicable
+    public <T> T resolveMethod(ClassDeclaration targetClass, String methodName, List<ClassDeclaration> argumentTypes, BiFunction<ClassDeclaration, MethodDeclaration, T> reducer) {
+        return resolve(targetClass, methodName, argumentTypes, reducer);
+    }
+
+    // Constructors are not inherited, so only those of the target class are considered
+    public <T> T resolveConstructor(ClassDeclaration targetClass, List<ClassDeclaration> argumentTypes, BiFunction<ClassDeclaration, MethodDeclaration, T> reducer) {
+        return resolve(targetClass, "<init>", argumentTypes, reducer);
+    }
+
+    private <T> T resolve(ClassDeclaration targetClass, String methodName, List<ClassDeclaration> argumentTypes, BiFunction<ClassDeclaration, MethodDeclaration, T> reducer) {
+        if(!isRemembered(targetClass) || !argumentTypes.stream().allMatch(x -> isRemembered(x))) {
+            Selection selection = select(targetClass, methodName, argumentTypes);
+            return selection != null ? reducer.apply(selection.declaringClass, selection.method) : null;
+        }
+
+        List<String> argumentTypeNames = argumentTypes.stream().map(x -> x.getName()).collect(Collectors.toList());
+        String key = targetClass.getName() + "." + methodName + argumentTypeNames;
+
+        Optional<RememberedSelection> remembered = selections.get(key);
+        if(remembered != null && !remembered.isPresent())
+            return null;
+
+        Selection selection = remembered != null ? remembered.get().get(targetClass, classInspector) : null;
+        if(selection == null) {
+            selection = select(targetClass, methodName, argumentTypes);
+            selections.put(key, Optional.ofNullable(selection).map(x -> new RememberedSelection(x)));
+            if(selection == null)
+                return null;
+        }
+
+        return reducer.apply(selection.declaringClass, selection.method);
+    }
+
+    private boolean isRemembered(ClassDeclaration classDeclaration) {
+        return !(classDeclaration instanceof MutableClassDeclaration) && !(classDeclaration instanceof ClassDeclaration.Mod) &&
+            (thisClassName == null || !typeHierarchy.isSubtypeOf(classDeclaration.getName(), thisClassName));
+    }
+
+    private Selection select(ClassDeclaration targetClass, String methodName, List<ClassDeclaration> argumentTypes) {
+        List<Selection> candidates = getMembers(targetClass, methodName).stream()
+            .filter(x -> x.method.getParameterTypes().size() == argumentTypes.size())
+            .collect(Collectors.toList());
+
+        // By subtyping and primitive widening only, then with boxing and unboxing
+        for(boolean loose : new boolean[]{false, true}) {
+            List<Selection> applicable = candidates.stream()
+                .filter(x -> IntStream.range(0, argumentTypes.size()).allMatch(i ->
+                    isConvertible(argumentTypes.get(i), getParameterTypeName(x.method, i), loose)))
+                .collect(Collectors.toList());
+
+            if(!applicable.isEmpty())
+                return getMostSpecific(targetClass, methodName, argumentTypes, applicable);
+        }
+
+        return null;
+    }
+
+    private Selection getMostSpecific(ClassDeclaration targetClass, String methodName, List<ClassDeclaration> argumentTypes, List<Selection> applicable) {
+        List<Selection> maximallySpecific = applicable.stream()
+            .filter(x -> applicable.stream().allMatch(y -> isMoreSpecific(x.method, y.method)))
+            .collect(Collectors.toList());
+
+        if(maximallySpecific.isEmpty()) {
+            throw new IllegalArgumentException("Invocation of " + targetClass.getName() + "." + methodName + " with " +
+                argumentTypes.stream().map(x -> x.getName()).collect(Collectors.toList()) + " is ambiguous.");
+        }
+
+        // Methods with the same parameters, e.g. from interfaces, are equally specific; a concrete one is preferred
+        return maximallySpecific.stream().filter(x -> !Modifier.isAbstract(x.method.getModifier())).findFirst().orElse(maximallySpecific.get(0));
+    }
+
+    private boolean isMoreSpecific(MethodDeclaration method, MethodDeclaration other) {
+        return IntStream.range(0, method.getParameterTypes().size()).allMatch(i ->
+            isSubtypeOrWidening(getParameterTypeName(method, i), getParameterTypeName(other, i)));
+    }
+
+    private boolean isConvertible(ClassDeclaration argumentType, String parameterTypeName, boolean loose) {
+        String argumentTypeName = argumentType.getName();
+
+        if(Descriptor.isPrimitiveName(argumentTypeName)) {
+            if(Descriptor.isPrimitiveName(parameterTypeName))
+                return isSubtypeOrWidening(argumentTypeName, parameterTypeName);
+            // Boxing, possibly followed by reference widening
+            return loose && typeHierarchy.isSubtypeOf(boxes.get(argumentTypeName), parameterTypeName);
+        }
+
+        if(Descriptor.isPrimitiveName(parameterTypeName)) {
+            // Unboxing, possibly followed by primitive widening
+            String unboxed = unboxes.get(argumentTypeName);
+            return loose && unboxed != null && isSubtypeOrWidening(unboxed, parameterTypeName);
+        }
+
+        return typeHierarchy.isSubtypeOf(argumentType, parameterTypeName);
+    }
+
+    private boolean isSubtypeOrWidening(String typeName, String otherTypeName) {
+        if(typeName.equals(otherTypeName))
+            return true;
+
+        if(Descriptor.isPrimitiveName(typeName))
+            return primitiveWidenings.getOrDefault(typeName, Arrays.asList()).contains(otherTypeName);
+
+        return !Descriptor.isPrimitiveName(otherTypeName) && typeHierarchy.isSubtypeOf(typeName, otherTypeName);
+    }
+
+    private static List<String> getParameterDescriptors(MethodDeclaration method) {
+        return method.getParameterTypes().stream().map(x -> x.descriptor).collect(Collectors.toList());
+    }
+
+    private static String getParameterTypeName(MethodDeclaration method, int index) {
+        return Descriptor.getName(method.getParameterTypes().get(index).descriptor);
+    }
+
+    // The methods of the class and its supertypes with the name, except those overridden
+    private List<Selection> getMembers(ClassDeclaration targetClass, String methodName) {
+        ArrayList<Selection> members = new ArrayList<>();
+        HashSet<List<String>> signatures = new HashSet<>();
+        LinkedHashSet<String> interfaceNames = new LinkedHashSet<>();
+
+        ClassDeclaration declaringClass = targetClass;
+        while(declaringClass != null) {
+            addMembers(declaringClass, methodName, members, signatures);
+            declaringClass.getInterfaces().forEach(x -> interfaceNames.add(Descriptor.getName(x)));
+
+            if(methodName.equals("<init>"))
+                return members;
+
+            if(declaringClass.getSuperName() != null)
+                declaringClass = classInspector.getClassDeclaration(declaringClass.getSuperName());
+            else if(declaringClass.isInterface() && !declaringClass.getName().equals(Object.class.getName()))
+                // Interfaces have the public methods of Object as members
+                declaringClass = classInspector.getClassDeclaration(Object.class.getName());
+            else
+                declaringClass = null;
+        }
+
+        // Super interfaces of super interfaces are added while iterating
+        ArrayList<String> interfaces = new ArrayList<>(interfaceNames);
+        for(int i = 0; i < interfaces.size(); i++) {
+            ClassDeclaration interfaceDeclaration = classInspector.getClassDeclaration(interfaces.get(i));
+            if(interfaceDeclaration != null) {
+                addMembers(interfaceDeclaration, methodName, members, signatures);
+                interfaceDeclaration.getInterfaces().stream().map(x -> Descriptor.getName(x)).filter(x -> interfaceNames.add(x)).forEach(x -> interfaces.add(x));
+            }
+        }
+
+        return members;
+    }
+
+    private static void addMembers(ClassDeclaration declaringClass, String methodName, List<Selection> members, HashSet<List<String>> signatures) {
+        // Bridges share the parameters of the methods they bridge to, which are preferred for their return types
+        declaringClass.getMethods().stream()
+            .filter(x -> x.getName().equals(methodName))
+            .sorted(Comparator.comparing(x -> (x.getModifier() & (Opcodes.ACC_BRIDGE | Opcodes.ACC_SYNTHETIC)) != 0))
+            .filter(x -> signatures.add(getParameterDescriptors(x)))
+            .forEach(x -> members.add(new Selection(declaringClass, x)));
+    }
+}
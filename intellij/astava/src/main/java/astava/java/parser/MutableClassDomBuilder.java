@@ -3,6 +3,7 @@ package astava.java.parser;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static astava.java.DomFactory.ret;
@@ -61,8 +62,8 @@ public class MutableClassDomBuilder implements ClassDomBuilder {
 
     @Override
     public ClassDeclaration build(ClassResolver classResolver) {
-        List<FieldDeclaration> fieldDeclarations = getFields().stream().map(x -> x.declare(classResolver)).collect(Collectors.toList());
-        List<MethodDeclaration> methodDeclarations = getMethods().stream().map(x -> x.declare(classResolver)).collect(Collectors.toList());
+        List<FieldDeclaration> fieldDeclarations = declareEach(getFields(), x -> x.declare(classResolver));
+        List<MethodDeclaration> methodDeclarations = declareEach(getMethods(), x -> x.declare(classResolver));
 
         /*// Add default constructor if necessary
         boolean hasConstructors = methodDeclarations.stream().anyMatch(x -> x.getName().equals("<init>"));
@@ -166,6 +167,21 @@ public class MutableClassDomBuilder implements ClassDomBuilder {
         };*/
     }
 
+    // Members failing to be declared are left out if their failures can be recorded
+    private static <T, R> List<R> declareEach(List<T> memberBuilders, Function<T, R> declare) {
+        ArrayList<R> declarations = new ArrayList<>();
+
+        for(T memberBuilder : memberBuilders) {
+            try {
+                declarations.add(declare.apply(memberBuilder));
+            } catch (RuntimeException e) {
+                Factory.recordFailure(e);
+            }
+        }
+
+        return declarations;
+    }
+
     @Override
     public String toString() {
         return "fields=" + getFields().stream().map(x -> x.getName()).collect(Collectors.toList());
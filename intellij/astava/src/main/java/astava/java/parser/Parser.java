@@ -1,9 +1,12 @@
 package astava.java.parser;
 
 import astava.debug.Debug;
+import astava.java.ArithmeticOperator;
+import astava.java.BitwiseOperator;
 import astava.java.Descriptor;
 import astava.java.LogicalOperator;
 import astava.java.RelationalOperator;
+import astava.java.ShiftOperator;
 import astava.java.agent.*;
 import astava.java.gen.MethodGenerator;
 import astava.java.parser.antlr4.JavaBaseVisitor;
@@ -11,10 +14,21 @@ import astava.java.parser.antlr4.JavaLexer;
 import astava.java.parser.antlr4.JavaParser;
 import astava.tree.*;
 import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.misc.NotNull;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.RuleNode;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.GeneratorAdapter;
@@ -25,6 +39,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
@@ -34,17 +49,78 @@ import java.util.stream.IntStream;
 import static astava.java.DomFactory.*;
 
 public class Parser {
-    private JavaParser parser;
+    // Lexers and parsers are reused per thread rather than created per snippet. The DFA built by prediction is kept in
+    // static fields of JavaParser, so it is shared by all of them.
+    private static final ThreadLocal<JavaParser> parsers = ThreadLocal.withInitial(() ->
+        new JavaParser(new CommonTokenStream(new JavaLexer(new ANTLRInputStream("")))));
+    private static final AtomicBoolean warmedUp = new AtomicBoolean();
+
+    private CharStream charStream;
+    private List<Diagnostic> diagnostics = new ArrayList<>();
 
     public Parser(String sourceCode) throws IOException {
         this(new ByteArrayInputStream(sourceCode.getBytes()));
     }
 
     public Parser(InputStream sourceCode) throws IOException {
-        CharStream charStream = new ANTLRInputStream(sourceCode);
-        JavaLexer lexer = new JavaLexer(charStream);
-        CommonTokenStream tokenStream = new CommonTokenStream(lexer);
-        parser = new JavaParser(tokenStream);
+        charStream = new ANTLRInputStream(sourceCode);
+    }
+
+    // Parses with the rule of JavaParser, first using SLL prediction, which is much faster and suffices for nearly all
+    // input, and with full LL prediction, reporting errors as before, only if that fails. Errors are recovered from,
+    // such that all of them are collected as diagnostics in one pass.
+    private <T extends ParserRuleContext> T parseRule(Function<JavaParser, T> rule) {
+        JavaParser parser = parsers.get();
+        JavaLexer lexer = (JavaLexer)parser.getTokenStream().getTokenSource();
+        charStream.seek(0);
+        lexer.setInputStream(charStream);
+        parser.setInputStream(new CommonTokenStream(lexer));
+
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        BaseErrorListener diagnosticListener = new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+                diagnostics.add(new Diagnostic(Diagnostic.Kind.SYNTAX, null, line, charPositionInLine, msg));
+            }
+        };
+        this.diagnostics = diagnostics;
+        // Tokens are read once, so errors of the lexer are reported whether or not the parse is retried
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(ConsoleErrorListener.INSTANCE);
+        lexer.addErrorListener(diagnosticListener);
+
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            return rule.apply(parser);
+        } catch (ParseCancellationException e) {
+            parser.reset();
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+            parser.addErrorListener(diagnosticListener);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            return rule.apply(parser);
+        }
+    }
+
+    // Fills the shared DFA with the predictions of typical snippets in the background, such that the parsing at
+    // startup mostly finds them there. Only the first call has an effect.
+    public static void warmUp() {
+        if(!warmedUp.compareAndSet(false, true))
+            return;
+
+        Thread thread = new Thread(() -> {
+            try {
+                new Parser("public class C implements java.io.Serializable { public int f; public int m(int x) { int y = x; if(y == 0) return y; else return f; } }").parseRule(p -> p.script());
+                new Parser("this.f = java.lang.Math.max(f, 1);").parseRule(p -> p.statement());
+                new Parser("f == 1 && (java.lang.Object)x instanceof java.lang.String").parseRule(p -> p.expression());
+            } catch (IOException e) {
+                // Reading from a string does not fail
+            }
+        }, "astava-parser-warm-up");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     public static String expressionResultType(ClassInspector classInspector, ClassDeclaration self, ExpressionDom expr, Map<String, String> locals, String returnType) {
@@ -101,32 +177,36 @@ public class Parser {
 
             @Override
             public void visitArithmetic(int operator, ExpressionDom lhs, ExpressionDom rhs) {
-
+                setResult(arithmeticResultType(resultTypeOf(lhs), resultTypeOf(rhs)));
             }
 
             @Override
             public void visitShift(int operator, ExpressionDom lhs, ExpressionDom rhs) {
-
+                setResult(shiftResultType(resultTypeOf(lhs), resultTypeOf(rhs)));
             }
 
             @Override
             public void visitBitwise(int operator, ExpressionDom lhs, ExpressionDom rhs) {
-
+                setResult(bitwiseResultType(resultTypeOf(lhs), resultTypeOf(rhs)));
             }
 
             @Override
             public void visitCompare(int operator, ExpressionDom lhs, ExpressionDom rhs) {
-
+                setResult(Descriptor.BOOLEAN);
             }
 
             @Override
             public void visitObjectEquality(int operator, ExpressionDom lhs, ExpressionDom rhs) {
-
+                setResult(Descriptor.BOOLEAN);
             }
 
             @Override
             public void visitLogical(int operator, ExpressionDom lhs, ExpressionDom rhs) {
+                setResult(Descriptor.BOOLEAN);
+            }
 
+            private String resultTypeOf(ExpressionDom expression) {
+                return expressionResultType(classInspector, self, expression, locals, returnType);
             }
 
             @Override
@@ -147,12 +227,12 @@ public class Parser {
 
             @Override
             public void visitNot(ExpressionDom expression) {
-
+                setResult(Descriptor.BOOLEAN);
             }
 
             @Override
             public void visitInstanceOf(ExpressionDom expression, String type) {
-
+                setResult(Descriptor.BOOLEAN);
             }
 
             @Override
@@ -163,7 +243,7 @@ public class Parser {
 
             @Override
             public void visitIfElse(ExpressionDom condition, ExpressionDom ifTrue, ExpressionDom ifFalse) {
-
+                setResult(resultTypeOf(ifTrue));
             }
 
             @Override
@@ -229,6 +309,16 @@ public class Parser {
                 setResult(Descriptor.get(int.class));
             }
 
+            @Override
+            public void visitArrayLoad(ExpressionDom expression, ExpressionDom index) {
+                setResult(Descriptor.getElementType(resultTypeOf(expression)));
+            }
+
+            @Override
+            public void visitNewArray(String type, ExpressionDom length) {
+                setResult("[" + Descriptor.getTypeDescriptor(type));
+            }
+
             @Override
             public void visitNeg(ExpressionDom expression) {
                 String resultType = expressionResultType(classInspector, self, expression, locals, returnType);
@@ -324,8 +414,13 @@ public class Parser {
         return returnType != null ? returnType : Descriptor.VOID;
     }
 
+    // The errors of the lexer and parser reported by the latest parse, in the order of the source code
+    public List<Diagnostic> getDiagnostics() {
+        return Collections.unmodifiableList(diagnostics);
+    }
+
     public List<DomBuilder> parse(ClassResolver classResolver) {
-        return parser.script().element().stream().map(x -> x.accept(new JavaBaseVisitor<List<DomBuilder>>() {
+        return parseRule(p -> p.script()).element().stream().map(x -> x.accept(new JavaBaseVisitor<List<DomBuilder>>() {
             @Override
             public List<DomBuilder> visitClassDefinition(@NotNull JavaParser.ClassDefinitionContext ctx) {
                 MutableClassDomBuilder classBuilder = new MutableClassDomBuilder();
@@ -427,10 +522,13 @@ public class Parser {
     }
 
     public static String parseTypeQualifier(ClassResolver classResolver, String typeQualifier) {
+        if(typeQualifier.endsWith("[]"))
+            return "[" + Descriptor.getTypeDescriptor(parseTypeQualifier(classResolver, typeQualifier.substring(0, typeQualifier.length() - 2)));
+
         if(!Descriptor.isPrimitiveName(typeQualifier)) {
             if (!classResolver.canResolveAmbiguous(typeQualifier)) {
                 if(classResolver.resolveSimpleName(typeQualifier) == null)
-                    new String();
+                    throw new IllegalArgumentException("Cannot resolve type " + typeQualifier + ".");
 
                 typeQualifier = classResolver.resolveSimpleName(typeQualifier);
             }
@@ -476,7 +574,7 @@ public class Parser {
 
     public MutableClassDomBuilder parseClass() {
         MutableClassDomBuilder classBuilder = new MutableClassDomBuilder();
-        parseClass(parser.classDefinition(), classBuilder);
+        parseClass(parseRule(p -> p.classDefinition()), classBuilder);
         return classBuilder;
     }
 
@@ -525,7 +623,7 @@ public class Parser {
     }
 
     public FieldDomBuilder parseFieldBuilder() {
-        return parseFieldBuilder(parser.fieldDefinition(), true);
+        return parseFieldBuilder(parseRule(p -> p.fieldDefinition()), true);
     }
 
     public FieldDomBuilder parseFieldBuilder(JavaParser.FieldDefinitionContext ctx, boolean atRoot) {
@@ -545,7 +643,7 @@ public class Parser {
     }
 
     public StatementDomBuilder parseFieldInitializerBuilder() {
-        return parseFieldInitializer(parser.fieldDefinition(), true);
+        return parseFieldInitializer(parseRule(p -> p.fieldDefinition()), true);
     }
 
     public StatementDomBuilder parseFieldInitializer(JavaParser.FieldDefinitionContext ctx, boolean atRoot) {
@@ -555,7 +653,7 @@ public class Parser {
     }
 
     public MethodDomBuilder parseMethodBuilder() {
-        return parseMethodBuilder(parser.methodDefinition());
+        return parseMethodBuilder(parseRule(p -> p.methodDefinition()));
     }
 
     public MethodDomBuilder parseMethodBuilder(JavaParser.MethodDefinitionContext ctx) {
@@ -566,13 +664,13 @@ public class Parser {
             .map(x -> new UnresolvedParameterInfo(x.name.getText(), new UnresolvedType(x.type.getText())))
             .collect(Collectors.toList());
         String returnTypeName = isConstructor ? "void" : ctx.returnType.getText();
-        List<StatementDomBuilder> statementBuilders = ctx.statement().stream().map(x -> parseStatementBuilder(x, false)).collect(Collectors.toList());
+        List<StatementDomBuilder> statementBuilders = ctx.statement().stream().map(x -> located(x, parseStatementBuilder(x, false))).collect(Collectors.toList());
 
         return Factory.method(modifiers, name, tmpParameters, new UnresolvedType(returnTypeName), statementBuilders);
     }
 
     public StatementDomBuilder parseStatementBuilder() {
-        return parseStatementBuilder(parser.statement(), true);
+        return parseStatementBuilder(parseRule(p -> p.statement()), true);
     }
 
     public StatementDomBuilder parseStatementBuilder(JavaParser.StatementContext ctx, boolean atRoot) {
@@ -596,6 +694,31 @@ public class Parser {
                 return Factory.ifElse(conditionBuilder, ifTrueBlockBuilder, ifFalseBlockBuilder);
             }
 
+            @Override
+            public StatementDomBuilder visitWhileStatement(JavaParser.WhileStatementContext ctx) {
+                ExpressionDomBuilder conditionBuilder = parseExpressionBuilder(ctx.condition, atRoot);
+                StatementDomBuilder bodyBuilder = parseBlock(ctx.body.statement());
+
+                return Factory.whileLoop(conditionBuilder, bodyBuilder);
+            }
+
+            @Override
+            public StatementDomBuilder visitForStatement(JavaParser.ForStatementContext ctx) {
+                List<StatementDomBuilder> initializationBuilders = Arrays.asList();
+                if(ctx.forInitialization() != null) {
+                    initializationBuilders = ctx.forInitialization().variableDeclaration() != null
+                        ? Arrays.asList(ctx.forInitialization().variableDeclaration().accept(this))
+                        : ctx.forInitialization().expression().stream().map(x -> parseExpressionAsStatement(x, atRoot)).collect(Collectors.toList());
+                }
+                ExpressionDomBuilder conditionBuilder = ctx.condition != null ? parseExpressionBuilder(ctx.condition, atRoot) : null;
+                List<StatementDomBuilder> updateBuilders = ctx.forUpdate() != null
+                    ? ctx.forUpdate().expression().stream().map(x -> parseExpressionAsStatement(x, atRoot)).collect(Collectors.toList())
+                    : Arrays.asList();
+                StatementDomBuilder bodyBuilder = parseBlock(ctx.body.statement());
+
+                return Factory.forLoop(initializationBuilders, conditionBuilder, updateBuilders, bodyBuilder);
+            }
+
             @Override
             public StatementDomBuilder visitTryCatchStatement(JavaParser.TryCatchStatementContext ctx) {
                 StatementDomBuilder tryBlockBuilder = parseBlock(ctx.tryBlock().statement());
@@ -674,7 +797,7 @@ public class Parser {
 
             @Override
             public StatementDomBuilder visitAssignment(@NotNull JavaParser.AssignmentContext ctx) {
-                return buildAssignment(ctx.name.getText(), ctx.value, atRoot);
+                return buildAssignment(ctx, atRoot);
             }
 
             @Override
@@ -688,18 +811,175 @@ public class Parser {
 
     private StatementDomBuilder parseBlock(List<JavaParser.StatementContext> statementContexts) {
         return Factory.block(
-            statementContexts.stream().map(x -> parseStatementBuilder(x, false)).collect(Collectors.toList())
+            statementContexts.stream().map(x -> located(x, parseStatementBuilder(x, false))).collect(Collectors.toList())
         );
     }
 
-    private StatementDomBuilder buildAssignment(String name, JavaParser.ExpressionContext valueCtx, boolean atRoot) {
-        ExpressionDomBuilder valueBuilder = parseExpressionBuilder(valueCtx, atRoot);
+    private static StatementDomBuilder located(ParserRuleContext ctx, StatementDomBuilder statementBuilder) {
+        return Factory.located(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), statementBuilder);
+    }
+
+    private StatementDomBuilder buildAssignment(JavaParser.AssignmentContext ctx, boolean atRoot) {
+        String name = ctx.name.getText();
+        int operator = ctx.operator.getStart().getType();
+
+        // As by javac, constant additions to and subtractions from int variables are increments in place
+        if((operator == JavaParser.OP_ADD_ASSIGN || operator == JavaParser.OP_SUB_ASSIGN) && ctx.value.getText().matches("[0-9]+")) {
+            long amount = Long.parseLong(ctx.value.getText()) * (operator == JavaParser.OP_ADD_ASSIGN ? 1 : -1);
+            if(amount >= Short.MIN_VALUE && amount <= Short.MAX_VALUE)
+                return Factory.increment(name, (int)amount);
+        }
+
+        ExpressionDomBuilder valueBuilder = parseExpressionBuilder(ctx.value, atRoot);
+
+        return Factory.assign(name, compoundValue(operator, Factory.ambiguousName(Arrays.asList(name)), valueBuilder));
+    }
+
+    // The value assigned by an assignment operator, e.g. the sum of the variable and the value for +=
+    private ExpressionDomBuilder compoundValue(int operator, ExpressionDomBuilder variableBuilder, ExpressionDomBuilder valueBuilder) {
+        if(operator == JavaParser.OP_ASSIGN)
+            return valueBuilder;
+
+        return Factory.castAs(binaryOperation(operator, variableBuilder, valueBuilder), variableBuilder);
+    }
+
+    private ExpressionDomBuilder binaryOperation(int operator, ExpressionDomBuilder lhsBuilder, ExpressionDomBuilder rhsBuilder) {
+        switch(operator) {
+            case JavaParser.OP_OR: return Factory.logicalAnd(lhsBuilder, rhsBuilder, LogicalOperator.OR);
+            case JavaParser.AMPERSAND: return Factory.logicalAnd(lhsBuilder, rhsBuilder, LogicalOperator.AND);
+            case JavaParser.BIT_OR: case JavaParser.OP_OR_ASSIGN: return Factory.bitwise(lhsBuilder, rhsBuilder, BitwiseOperator.OR);
+            case JavaParser.BIT_XOR: case JavaParser.OP_XOR_ASSIGN: return Factory.bitwise(lhsBuilder, rhsBuilder, BitwiseOperator.XOR);
+            case JavaParser.BIT_AND: case JavaParser.OP_AND_ASSIGN: return Factory.bitwise(lhsBuilder, rhsBuilder, BitwiseOperator.AND);
+            case JavaParser.OP_EQUALS: return Factory.compare(lhsBuilder, rhsBuilder, RelationalOperator.EQ);
+            case JavaParser.OP_NOT_EQUALS: return Factory.compare(lhsBuilder, rhsBuilder, RelationalOperator.NE);
+            case JavaParser.OP_LT: return Factory.compare(lhsBuilder, rhsBuilder, RelationalOperator.LT);
+            case JavaParser.OP_LE: return Factory.compare(lhsBuilder, rhsBuilder, RelationalOperator.LE);
+            case JavaParser.OP_GT: return Factory.compare(lhsBuilder, rhsBuilder, RelationalOperator.GT);
+            case JavaParser.OP_GE: return Factory.compare(lhsBuilder, rhsBuilder, RelationalOperator.GE);
+            case JavaParser.OP_SHL: case JavaParser.OP_SHL_ASSIGN: return Factory.shift(lhsBuilder, rhsBuilder, ShiftOperator.SHL);
+            case JavaParser.OP_SHR: case JavaParser.OP_SHR_ASSIGN: return Factory.shift(lhsBuilder, rhsBuilder, ShiftOperator.SHR);
+            case JavaParser.OP_USHR: case JavaParser.OP_USHR_ASSIGN: return Factory.shift(lhsBuilder, rhsBuilder, ShiftOperator.USHR);
+            case JavaParser.OP_ADD: case JavaParser.OP_ADD_ASSIGN: return Factory.arithmetic(lhsBuilder, rhsBuilder, ArithmeticOperator.ADD);
+            case JavaParser.OP_SUB: case JavaParser.OP_SUB_ASSIGN: return Factory.arithmetic(lhsBuilder, rhsBuilder, ArithmeticOperator.SUB);
+            case JavaParser.OP_MUL: case JavaParser.OP_MUL_ASSIGN: return Factory.arithmetic(lhsBuilder, rhsBuilder, ArithmeticOperator.MUL);
+            case JavaParser.OP_DIV: case JavaParser.OP_DIV_ASSIGN: return Factory.arithmetic(lhsBuilder, rhsBuilder, ArithmeticOperator.DIV);
+            case JavaParser.OP_REM: case JavaParser.OP_REM_ASSIGN: return Factory.arithmetic(lhsBuilder, rhsBuilder, ArithmeticOperator.REM);
+        }
+
+        throw new IllegalArgumentException("Unsupported operator: " + JavaParser.VOCABULARY.getDisplayName(operator));
+    }
+
+    private ExpressionDomBuilder parseBinaryExpression(List<? extends ParserRuleContext> operands, List<Token> operators, boolean atRoot) {
+        ExpressionDomBuilder expressionBuilder = parseExpressionBuilder(operands.get(0), atRoot, false);
+
+        for(int i = 0; i < operators.size(); i++)
+            expressionBuilder = binaryOperation(operators.get(i).getType(), expressionBuilder, parseExpressionBuilder(operands.get(i + 1), atRoot, false));
+
+        return expressionBuilder;
+    }
+
+    // The leaf expression followed by the first count elements of its chain
+    private ExpressionDomBuilder parseChain(JavaParser.LeafExpressionContext ctx, int count, boolean atRoot, boolean asStatement) {
+        ExpressionDomBuilder expressionBuilder = parseExpressionBuilder((ParserRuleContext) ctx.getChild(0), atRoot, asStatement);
+
+        for (JavaParser.ChainElementContext chainElement : ctx.chainElement().subList(0, count)) {
+            ExpressionDomBuilder targetBuilder = expressionBuilder;
+            expressionBuilder = chainElement.accept(new JavaBaseVisitor<ExpressionDomBuilder>() {
+                @Override
+                public ExpressionDomBuilder visitFieldAssignment(@NotNull JavaParser.FieldAssignmentContext ctx) {
+                    return fieldAssignmentExpression(ctx, atRoot, asStatement, targetBuilder);
+                }
+
+                @Override
+                public ExpressionDomBuilder visitFieldAccess(@NotNull JavaParser.FieldAccessContext ctx) {
+                    String name = ctx.identifier().ID().getText();
+
+                    return (cr, cd, ci, locals, methodContext, captures) ->
+                        Factory.fieldAccess(cr, cd, ci, targetBuilder.build(cr, cd, ci, locals, methodContext, captures), name, locals, methodContext);
+                }
+
+                @Override
+                public ExpressionDomBuilder visitInvocation(@NotNull JavaParser.InvocationContext ctx) {
+                    return invocationExpression(ctx, atRoot, targetBuilder);
+                }
 
-        return Factory.assign(name, valueBuilder);
+                @Override
+                public ExpressionDomBuilder visitArrayAccess(JavaParser.ArrayAccessContext ctx) {
+                    return Factory.arrayAccess(targetBuilder, parseExpressionBuilder(ctx.index, atRoot, false));
+                }
+
+                @Override
+                public ExpressionDomBuilder visitArrayAssignment(JavaParser.ArrayAssignmentContext ctx) {
+                    // The value of the assignment is read back from the array
+                    ExpressionDomBuilder indexBuilder = parseExpressionBuilder(ctx.index, atRoot, false);
+                    return Factory.sequence(arrayAssignment(ctx, targetBuilder, indexBuilder, atRoot), Factory.arrayAccess(targetBuilder, indexBuilder), false);
+                }
+            });
+        }
+
+        return expressionBuilder;
+    }
+
+    private StatementDomBuilder arrayAssignment(JavaParser.ArrayAssignmentContext ctx, ExpressionDomBuilder arrayBuilder, ExpressionDomBuilder indexBuilder, boolean atRoot) {
+        ExpressionDomBuilder valueBuilder = parseExpressionBuilder(ctx.value, atRoot, false);
+
+        // For compound assignments, the array and index expressions are evaluated twice
+        return Factory.assignArrayElement(arrayBuilder, indexBuilder,
+            compoundValue(ctx.operator.getStart().getType(), Factory.arrayAccess(arrayBuilder, indexBuilder), valueBuilder));
+    }
+
+    // The context which the context consists of alone, e.g. the literal of the expression 1
+    private static ParserRuleContext unwrap(ParserRuleContext ctx) {
+        while(ctx.getChildCount() == 1 && ctx.getChild(0) instanceof ParserRuleContext)
+            ctx = (ParserRuleContext) ctx.getChild(0);
+        return ctx;
+    }
+
+    // Increments and decrements of variables and array elements, as for ++, --, += 1 and -= 1
+    private StatementDomBuilder increment(ParserRuleContext operandCtx, int amount, boolean atRoot) {
+        ParserRuleContext operand = unwrap(operandCtx);
+
+        if(operand instanceof JavaParser.AmbigousNameContext && ((JavaParser.AmbigousNameContext) operand).ID().size() == 1)
+            return Factory.increment(operand.getText(), amount);
+
+        if(operand instanceof JavaParser.LeafExpressionContext) {
+            JavaParser.LeafExpressionContext leaf = (JavaParser.LeafExpressionContext) operand;
+            JavaParser.ChainElementContext last = leaf.chainElement(leaf.chainElement().size() - 1);
+
+            if(last.arrayAccess() != null) {
+                ExpressionDomBuilder arrayBuilder = parseChain(leaf, leaf.chainElement().size() - 1, atRoot, false);
+                ExpressionDomBuilder indexBuilder = parseExpressionBuilder(last.arrayAccess().index, atRoot, false);
+                ExpressionDomBuilder elementBuilder = Factory.arrayAccess(arrayBuilder, indexBuilder);
+
+                return Factory.assignArrayElement(arrayBuilder, indexBuilder,
+                    Factory.castAs(Factory.arithmetic(elementBuilder, Factory.literal(amount), ArithmeticOperator.ADD), elementBuilder));
+            }
+        }
+
+        throw new IllegalArgumentException("Only variables and array elements can be incremented or decremented: " + operandCtx.getText());
+    }
+
+    private ExpressionDomBuilder incrementedValue(ParserRuleContext operandCtx, int amount, boolean prefix, boolean atRoot) {
+        StatementDomBuilder statementBuilder = increment(operandCtx, amount, atRoot);
+
+        return Factory.sequence(statementBuilder, parseExpressionBuilder(operandCtx, atRoot, false), !prefix);
+    }
+
+    private ExpressionDomBuilder parseNumberLiteral(String text) {
+        char suffix = Character.toLowerCase(text.charAt(text.length() - 1));
+        String digits = Character.isDigit(suffix) ? text : text.substring(0, text.length() - 1);
+
+        if(suffix == 'l')
+            return Factory.literal(Long.parseLong(digits));
+        if(suffix == 'f')
+            return Factory.literal(Float.parseFloat(digits));
+        if(suffix == 'd' || digits.contains("."))
+            return Factory.literal(Double.parseDouble(digits));
+        return Factory.literal(Integer.parseInt(digits));
     }
 
     public ExpressionDomBuilder parseExpressionBuilder() {
-        return parseExpressionBuilder(parser.expression(), true);
+        return parseExpressionBuilder(parseRule(p -> p.expression()), true);
     }
 
     public ExpressionDomBuilder parseExpressionBuilder(ParserRuleContext ctx, boolean atRoot) {
@@ -770,36 +1050,18 @@ public class Parser {
 
     public StatementDomBuilder parseExpressionAsStatement(ParserRuleContext ctx, boolean atRoot) {
         return ctx.accept(new JavaBaseVisitor<StatementDomBuilder>() {
+            @Override
+            public StatementDomBuilder visitChildren(RuleNode node) {
+                // Through the levels of precedence of expressions consisting of a single operand
+                return node.getChildCount() == 1 ? node.getChild(0).accept(this) : null;
+            }
+
             @Override
             public StatementDomBuilder visitLeafExpression(@NotNull JavaParser.LeafExpressionContext ctx) {
                 if (ctx.chainElement().size() == 0)
                     return parseExpressionAsStatement((ParserRuleContext) ctx.getChild(0), atRoot);
 
-                ExpressionDomBuilder expressionBuilder = parseExpressionBuilder((ParserRuleContext) ctx.getChild(0), atRoot, false);
-
-                for (int i = 0; i < ctx.chainElement().size() - 1; i++) {
-                    JavaParser.ChainElementContext chainElement = ctx.chainElement(i);
-                    ExpressionDomBuilder targetBuilder = expressionBuilder;
-                    expressionBuilder = chainElement.accept(new JavaBaseVisitor<ExpressionDomBuilder>() {
-                        @Override
-                        public ExpressionDomBuilder visitFieldAssignment(@NotNull JavaParser.FieldAssignmentContext ctx) {
-                            return fieldAssignmentExpression(ctx, atRoot, false, targetBuilder);
-                        }
-
-                        @Override
-                        public ExpressionDomBuilder visitFieldAccess(@NotNull JavaParser.FieldAccessContext ctx) {
-                            String name = ctx.identifier().ID().getText();
-
-                            return (cr, cd, ci, locals, methodContext, captures) ->
-                                Factory.fieldAccess(cr, cd, ci, targetBuilder.build(cr, cd, ci, locals, methodContext, captures), name, locals, methodContext);
-                        }
-
-                        @Override
-                        public ExpressionDomBuilder visitInvocation(@NotNull JavaParser.InvocationContext ctx) {
-                            return invocationExpression(ctx, atRoot, targetBuilder);
-                        }
-                    });
-                }
+                ExpressionDomBuilder expressionBuilder = parseChain(ctx, ctx.chainElement().size() - 1, atRoot, false);
 
                 JavaParser.ChainElementContext chainElement = ctx.chainElement(ctx.chainElement().size() - 1);
                 ExpressionDomBuilder targetBuilder = expressionBuilder;
@@ -818,12 +1080,40 @@ public class Parser {
                     public StatementDomBuilder visitInvocation(@NotNull JavaParser.InvocationContext ctx) {
                         return invocationStatement(ctx, atRoot, targetBuilder);
                     }
+
+                    @Override
+                    public StatementDomBuilder visitArrayAccess(JavaParser.ArrayAccessContext ctx) {
+                        return null;
+                    }
+
+                    @Override
+                    public StatementDomBuilder visitArrayAssignment(JavaParser.ArrayAssignmentContext ctx) {
+                        return arrayAssignment(ctx, targetBuilder, parseExpressionBuilder(ctx.index, atRoot, false), atRoot);
+                    }
                 });
             }
 
             @Override
             public StatementDomBuilder visitAssignment(@NotNull JavaParser.AssignmentContext ctx) {
-                return buildAssignment(ctx.name.getText(), ctx.value, atRoot);
+                return buildAssignment(ctx, atRoot);
+            }
+
+            @Override
+            public StatementDomBuilder visitPrefixExpression(JavaParser.PrefixExpressionContext ctx) {
+                switch(ctx.operator.getType()) {
+                    case JavaParser.OP_INC: return increment(ctx.expression13(), 1, atRoot);
+                    case JavaParser.OP_DEC: return increment(ctx.expression13(), -1, atRoot);
+                }
+
+                return null;
+            }
+
+            @Override
+            public StatementDomBuilder visitExpression15(JavaParser.Expression15Context ctx) {
+                if(ctx.operator == null)
+                    return ctx.leafExpression().accept(this);
+
+                return increment(ctx.leafExpression(), ctx.operator.getType() == JavaParser.OP_INC ? 1 : -1, atRoot);
             }
 
             @Override
@@ -845,27 +1135,62 @@ public class Parser {
 
             @Override
             public ExpressionDomBuilder visitLeafExpression(@NotNull JavaParser.LeafExpressionContext ctx) {
-                ExpressionDomBuilder expressionBuilder = parseExpressionBuilder((ParserRuleContext) ctx.getChild(0), atRoot, asStatement);
+                return parseChain(ctx, ctx.chainElement().size(), atRoot, asStatement);
+            }
 
-                for (JavaParser.ChainElementContext chainElement : ctx.chainElement()) {
-                    ExpressionDomBuilder targetBuilder = expressionBuilder;
-                    expressionBuilder = chainElement.accept(new JavaBaseVisitor<ExpressionDomBuilder>() {
-                        @Override
-                        public ExpressionDomBuilder visitFieldAssignment(@NotNull JavaParser.FieldAssignmentContext ctx) {
-                            return fieldAssignmentExpression(ctx, atRoot, asStatement, targetBuilder);
-                        }
+            @Override
+            public ExpressionDomBuilder visitAssignment(@NotNull JavaParser.AssignmentContext ctx) {
+                String name = ctx.name.getText();
+                ExpressionDomBuilder valueBuilder = parseExpressionBuilder(ctx.value, atRoot, false);
 
-                        @Override
-                        public ExpressionDomBuilder visitFieldAccess(@NotNull JavaParser.FieldAccessContext ctx) {
-                            String name = ctx.identifier().ID().getText();
+                return Factory.assignExpr(name, compoundValue(ctx.operator.getStart().getType(), Factory.ambiguousName(Arrays.asList(name)), valueBuilder));
+            }
+
+            @Override
+            public ExpressionDomBuilder visitExpression3(JavaParser.Expression3Context ctx) {
+                return parseBinaryExpression(ctx.expression4(), ctx.operators, atRoot);
+            }
+
+            @Override
+            public ExpressionDomBuilder visitExpression4(JavaParser.Expression4Context ctx) {
+                return parseBinaryExpression(ctx.expression5(), ctx.operators, atRoot);
+            }
+
+            @Override
+            public ExpressionDomBuilder visitExpression5(JavaParser.Expression5Context ctx) {
+                return parseBinaryExpression(ctx.expression6(), ctx.operators, atRoot);
+            }
+
+            @Override
+            public ExpressionDomBuilder visitExpression6(JavaParser.Expression6Context ctx) {
+                return parseBinaryExpression(ctx.expression7(), ctx.operators, atRoot);
+            }
 
-                            return (cr, cd, ci, locals, methodContext, captures) ->
-                                Factory.fieldAccess(cr, cd, ci, targetBuilder.build(cr, cd, ci, locals, methodContext, captures), name, locals, methodContext);
+            @Override
+            public ExpressionDomBuilder visitExpression7(JavaParser.Expression7Context ctx) {
+                return parseBinaryExpression(ctx.expression8(), ctx.operators, atRoot);
+            }
+
+            @Override
+            public ExpressionDomBuilder visitExpression8(JavaParser.Expression8Context ctx) {
+                return parseBinaryExpression(ctx.expression9(), ctx.operators, atRoot);
+            }
+
+            @Override
+            public ExpressionDomBuilder visitExpression9(JavaParser.Expression9Context ctx) {
+                ExpressionDomBuilder expressionBuilder = parseExpressionBuilder(ctx.first, atRoot, false);
+
+                for (ParseTree operation : ctx.children.subList(1, ctx.getChildCount())) {
+                    ExpressionDomBuilder lhsBuilder = expressionBuilder;
+                    expressionBuilder = operation.accept(new JavaBaseVisitor<ExpressionDomBuilder>() {
+                        @Override
+                        public ExpressionDomBuilder visitComparison(JavaParser.ComparisonContext ctx) {
+                            return binaryOperation(ctx.operator.getType(), lhsBuilder, parseExpressionBuilder(ctx.expression10(), atRoot, false));
                         }
 
                         @Override
-                        public ExpressionDomBuilder visitInvocation(@NotNull JavaParser.InvocationContext ctx) {
-                            return invocationExpression(ctx, atRoot, targetBuilder);
+                        public ExpressionDomBuilder visitInstanceOf(JavaParser.InstanceOfContext ctx) {
+                            return Factory.instanceOf(lhsBuilder, new UnresolvedType(ctx.typeQualifier().getText()));
                         }
                     });
                 }
@@ -874,11 +1199,61 @@ public class Parser {
             }
 
             @Override
-            public ExpressionDomBuilder visitAssignment(@NotNull JavaParser.AssignmentContext ctx) {
-                String name = ctx.ID().getText();
-                ExpressionDomBuilder valueBuilder = parseExpressionBuilder(ctx.value, atRoot, false);
+            public ExpressionDomBuilder visitExpression10(JavaParser.Expression10Context ctx) {
+                return parseBinaryExpression(ctx.expression11(), ctx.operators, atRoot);
+            }
+
+            @Override
+            public ExpressionDomBuilder visitExpression11(JavaParser.Expression11Context ctx) {
+                return parseBinaryExpression(ctx.expression12(), ctx.operators, atRoot);
+            }
+
+            @Override
+            public ExpressionDomBuilder visitExpression12(JavaParser.Expression12Context ctx) {
+                return parseBinaryExpression(ctx.expression13(), ctx.operators, atRoot);
+            }
+
+            @Override
+            public ExpressionDomBuilder visitPrefixExpression(JavaParser.PrefixExpressionContext ctx) {
+                ParserRuleContext operand = unwrap(ctx.expression13());
+
+                switch(ctx.operator.getType()) {
+                    case JavaParser.OP_ADD:
+                        return parseExpressionBuilder(ctx.expression13(), atRoot, false);
+                    case JavaParser.OP_SUB:
+                        // Negated literals are literals, such that e.g. -2147483648 is within range
+                        return operand instanceof JavaParser.IntLiteralContext
+                            ? parseNumberLiteral("-" + operand.getText())
+                            : Factory.neg(parseExpressionBuilder(ctx.expression13(), atRoot, false));
+                    case JavaParser.OP_NOT:
+                        return Factory.not(parseExpressionBuilder(ctx.expression13(), atRoot, false));
+                    case JavaParser.OP_COMPLEMENT:
+                        return Factory.complement(parseExpressionBuilder(ctx.expression13(), atRoot, false));
+                    case JavaParser.OP_INC:
+                        return incrementedValue(ctx.expression13(), 1, true, atRoot);
+                    default:
+                        return incrementedValue(ctx.expression13(), -1, true, atRoot);
+                }
+            }
+
+            @Override
+            public ExpressionDomBuilder visitExpression15(JavaParser.Expression15Context ctx) {
+                if(ctx.operator == null)
+                    return parseExpressionBuilder(ctx.leafExpression(), atRoot, asStatement);
+
+                return incrementedValue(ctx.leafExpression(), ctx.operator.getType() == JavaParser.OP_INC ? 1 : -1, false, atRoot);
+            }
+
+            @Override
+            public ExpressionDomBuilder visitParenthesizedExpression(JavaParser.ParenthesizedExpressionContext ctx) {
+                return parseExpressionBuilder(ctx.expression(), atRoot, false);
+            }
+
+            @Override
+            public ExpressionDomBuilder visitNewArray(JavaParser.NewArrayContext ctx) {
+                ExpressionDomBuilder lengthBuilder = parseExpressionBuilder(ctx.length, atRoot, false);
 
-                return Factory.assignExpr(name, valueBuilder);
+                return Factory.newArray(new UnresolvedType(ctx.elementType.getText()), lengthBuilder);
             }
 
             @Override
@@ -890,9 +1265,7 @@ public class Parser {
 
             @Override
             public ExpressionDomBuilder visitIntLiteral(@NotNull JavaParser.IntLiteralContext ctx) {
-                int value = parseIntValue(ctx);
-
-                return Factory.literal(value);
+                return parseNumberLiteral(ctx.getText());
             }
 
             @Override
@@ -933,44 +1306,10 @@ public class Parser {
                 return Factory.methodBodyExpression();
             }
 
-            @Override
-            public ExpressionDomBuilder visitExpressionLogicalAnd(JavaParser.ExpressionLogicalAndContext ctx) {
-                ExpressionDomBuilder expressionBuilder = parseExpressionBuilder(ctx.first, false);
-
-                for (JavaParser.ExpressionContext rhsCtx : ctx.expression()) {
-                    ExpressionDomBuilder lhsBuilder = expressionBuilder;
-                    ExpressionDomBuilder rhsBuilder = parseExpressionBuilder(rhsCtx, false);
-                    expressionBuilder = Factory.logicalAnd(lhsBuilder, rhsBuilder, LogicalOperator.AND);
-                }
-
-                return expressionBuilder;
-            }
-
-            @Override
-            public ExpressionDomBuilder visitRelationalExpression(JavaParser.RelationalExpressionContext ctx) {
-                ExpressionDomBuilder expressionBuilder = parseExpressionBuilder(ctx.first, false);
-
-                for (JavaParser.ExpressionContext rhsCtx : ctx.expression()) {
-                    ExpressionDomBuilder lhsBuilder = expressionBuilder;
-                    ExpressionDomBuilder rhsBuilder = parseExpressionBuilder(rhsCtx, false);
-                    expressionBuilder = Factory.compare(lhsBuilder, rhsBuilder, RelationalOperator.EQ);
-                }
-
-                return expressionBuilder;
-            }
-
-            @Override
-            public ExpressionDomBuilder visitInstanceOfExpression(JavaParser.InstanceOfExpressionContext ctx) {
-                ExpressionDomBuilder target = parseExpressionBuilder(ctx.expression13(), false);
-                String typeName = ctx.typeQualifier().getText();
-
-                return Factory.instanceOf(target, new UnresolvedType(typeName));
-            }
-
             @Override
             public ExpressionDomBuilder visitTypeCastExpression(JavaParser.TypeCastExpressionContext ctx) {
                 String targetTypeName = ctx.typeQualifier().getText();
-                ExpressionDomBuilder expression = parseExpressionBuilder(ctx.expression(), false);
+                ExpressionDomBuilder expression = parseExpressionBuilder(ctx.expression13(), false);
 
                 return Factory.typeCast(expression, new UnresolvedType(targetTypeName));
             }
@@ -1146,66 +1485,25 @@ public class Parser {
         return Factory.invocation(targetBuilder, methodName, argumentBuilders);
     }
 
-    private static <T> T resolveDeclaredMethod(ClassInspector classInspector, ClassDeclaration targetClass, String methodName, List<ClassDeclaration> argumentTypes, BiFunction<ClassDeclaration, MethodDeclaration, T> reducer) {
-        List<MethodDeclaration> methods = targetClass.getMethods().stream()
-            .filter(x -> x.getName().equals(methodName))
-            .filter(x -> x.getParameterTypes().size() == argumentTypes.size())
-            .filter(x -> IntStream.range(0, argumentTypes.size()).allMatch(i ->
-                // Compare full inheritance
-                Descriptor.getName(x.getParameterTypes().get(0).descriptor).equals(argumentTypes.get(i).getName())))
-            .collect(Collectors.toList());
-
-        if(methods.size() > 0) {
-            // For now, just pick the first
-            MethodDeclaration method = methods.get(0);
-            return reducer.apply(targetClass, method);
-        }
-
-        return null;
-    }
-
     public static <T> T resolveMethod(ClassInspector classInspector, ClassDeclaration targetClass, String methodName, List<ClassDeclaration> argumentTypes, BiFunction<ClassDeclaration, MethodDeclaration, T> reducer) {
-        List<MethodDeclaration> methods = targetClass.getMethods().stream()
-            .filter(x -> x.getName().equals(methodName))
-            .filter(x -> x.getParameterTypes().size() == argumentTypes.size())
-            .filter(x -> IntStream.range(0, argumentTypes.size()).allMatch(i ->
-                // Compare full inheritance
-                isCompatible(classInspector, argumentTypes.get(i), x.getParameterTypes().get(0))
-                //Descriptor.getName(x.getParameterTypes().get(0).descriptor).equals(argumentTypes.get(i).getName())
-            ))
-            .collect(Collectors.toList());
-
-        if(methods.size() > 0) {
-            // For now, just pick the first
-            MethodDeclaration method = methods.get(0);
-            return reducer.apply(targetClass, method);
-        }
-
-        if(targetClass.getSuperName() != null) {
-            ClassDeclaration superClass = classInspector.getClassDeclaration(targetClass.getSuperName());
-            return resolveMethod(classInspector, superClass, methodName, argumentTypes, reducer);
-        }
-
-        return null;
+        return MethodResolver.of(classInspector).resolveMethod(targetClass, methodName, argumentTypes, reducer);
     }
 
-    private static boolean isCompatible(ClassInspector classInspector, ClassDeclaration argumentType, ParameterInfo parameterType) {
-        while(true) {
-            if (Descriptor.getName(parameterType.descriptor).equals(argumentType.getName())) {
-                return true;
-            }
+    // Interfaces are implemented directly or through super classes or super interfaces
+    private static boolean implementsInterface(TypeHierarchy typeHierarchy, ClassNode classNode, String interfaceName) {
+        if(classNode.superName != null && typeHierarchy.isSubtypeOf(classNode.superName, interfaceName))
+            return true;
 
-            if (argumentType.getSuperName() != null)
-                argumentType = classInspector.getClassDeclaration(argumentType.getSuperName());
-            else
-                break;
+        for(Object directInterface : classNode.interfaces) {
+            if(typeHierarchy.isSubtypeOf((String)directInterface, interfaceName))
+                return true;
         }
 
         return false;
     }
 
     public List<ClassNodePredicate> parseClassPredicates(ClassInspector classInspector) {
-        JavaParser.ClassPredicateContext ctx = parser.classPredicate();
+        JavaParser.ClassPredicateContext ctx = parseRule(p -> p.classPredicate());
 
         ArrayList<ClassNodePredicate> predicates = new ArrayList<>();
 
@@ -1241,27 +1539,9 @@ public class Parser {
                 @Override
                 public Void visitClassPredicateExtends(JavaParser.ClassPredicateExtendsContext ctx) {
                     String superClassName = Descriptor.get(ctx.superClassName.getText());
-                    // What about indirect inheritance?
-                    predicates.add((classNode, cr) -> {
-                        if(classNode.superName.equals(superClassName))
-                            return true;
-
-                        if(classNode.superName != null) {
-                            ClassDeclaration superClass = classInspector.getClassDeclarationFromDescriptor(classNode.superName);
-
-                            while (true) {
-                                if (superClass.getSuperName() != null && Descriptor.get(superClass.getSuperName()).equals(superClassName))
-                                    return true;
-                                else {
-                                    if (superClass.getSuperName() != null)
-                                        superClass = classInspector.getClassDeclaration(superClass.getSuperName());
-                                    else
-                                        return false;
-                                }
-                            }
-                        } else
-                            return false;
-                    });
+                    TypeHierarchy typeHierarchy = TypeHierarchy.of(classInspector);
+                    predicates.add((classNode, cr) ->
+                        classNode.superName != null && typeHierarchy.isSubtypeOf(classNode.superName, superClassName));
 
                     return null;
                 }
@@ -1270,29 +1550,8 @@ public class Parser {
                 public Void visitClassPredicateImplements(JavaParser.ClassPredicateImplementsContext ctx) {
                     List<String> interfaceNames =
                         ctx.classPredicateInterface().stream().map(x -> Descriptor.get(x.getText())).collect(Collectors.toList());
-                    // What about indirect implementors?
-                    predicates.add((classNode, cr) -> {
-                        if(interfaceNames.stream().allMatch(interfaceName -> classNode.interfaces.contains(interfaceName)))
-                            return true;
-
-                        if(classNode.superName != null) {
-                            ClassDeclaration superClass = classInspector.getClassDeclarationFromDescriptor(classNode.superName);
-
-                            while(true) {
-                                final ClassDeclaration superClassToTest = superClass;
-                                if(interfaceNames.stream().map(x -> Descriptor.getName(x)).allMatch(interfaceName -> superClassToTest.getInterfaces().contains(interfaceName)))
-                                    return true;
-                                else {
-                                    if(superClass.getSuperName() != null)
-                                        superClass = classInspector.getClassDeclaration(superClass.getSuperName());
-                                    else
-                                        return false;
-                                }
-                            }
-
-                        } else
-                            return false;
-                    });
+                    TypeHierarchy typeHierarchy = TypeHierarchy.of(classInspector);
+                    predicates.add((classNode, cr) -> interfaceNames.stream().allMatch(x -> implementsInterface(typeHierarchy, classNode, x)));
 
                     return null;
                 }
@@ -1401,7 +1660,7 @@ public class Parser {
     }
 
     public List<DeclaringClassNodeExtenderElementMethodNodePredicate> parseMethodPredicates() {
-        JavaParser.MethodPredicateContext ctx = parser.methodPredicate();
+        JavaParser.MethodPredicateContext ctx = parseRule(p -> p.methodPredicate());
 
         return ctx.methodPredicateElement().stream()
             .map(x -> x.accept(new JavaBaseVisitor<DeclaringClassNodeExtenderElementMethodNodePredicate>() {
@@ -1472,7 +1731,7 @@ public class Parser {
     }
 
     public List<DeclaringMethodNodeExtenderElement> parseMethodModifications(ClassResolver classResolver, ClassInspector classInspector) {
-        JavaParser.MethodModificationContext ctx = parser.methodModification();
+        JavaParser.MethodModificationContext ctx = parseRule(p -> p.methodModification());
 
         return ctx.methodModificationElement().stream()
             .map(x -> x.accept(new JavaBaseVisitor<DeclaringMethodNodeExtenderElement>() {
@@ -1568,7 +1827,7 @@ public class Parser {
     }
 
     public DeclaringClassNodeExtenderElementBodyNodePredicate parseBodyPredicates() {
-        JavaParser.StatementsOrExpressionContext body = parser.statementsOrExpression();
+        JavaParser.StatementsOrExpressionContext body = parseRule(p -> p.statementsOrExpression());
 
         DomBuilder bodyBuilder;
 
@@ -1582,6 +1841,11 @@ public class Parser {
             bodyBuilder = null;
 
         return new DeclaringClassNodeExtenderElementBodyNodePredicate() {
+            @Override
+            public List<Object> getKey() {
+                return bodyBuilder != null ? bodyBuilder.getPatternKey() : null;
+            }
+
             @Override
             public boolean test(ClassNode classNode, MutableClassDeclaration thisClass, ClassResolver classResolver, MethodNode methodNode, CodeDom dom, Map<String, Object> captures) {
                 return bodyBuilder.test(dom, captures);
@@ -1612,7 +1876,7 @@ public class Parser {
     }
 
     public DeclaringBodyNodeExtenderElement parseBodyModifications(ClassInspector classInspector, Map<String, Object> captures) {
-        JavaParser.StatementsOrExpressionContext body = parser.statementsOrExpression();
+        JavaParser.StatementsOrExpressionContext body = parseRule(p -> p.statementsOrExpression());
 
         //DomBuilder bodyBuilder;
 
@@ -0,0 +1,100 @@
+package astava.java.parser;
+
+import astava.tree.PersistentMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Immutable counterpart of MutableClassDeclaration; each with* method returns a new version sharing the
+// unchanged fields and methods with this one.
+public class PersistentClassDeclaration implements ClassDeclaration {
+    private static final PersistentClassDeclaration EMPTY = new PersistentClassDeclaration(0, null, null, false, PersistentMap.empty(), PersistentMap.empty(), Collections.emptyList());
+
+    private final int modifier;
+    private final String name;
+    private final String superName;
+    private final boolean isInterface;
+    private final PersistentMap<String, FieldDeclaration> fields;
+    private final PersistentMap<String, MethodDeclaration> methods;
+    private final List<String> interfaces;
+
+    private PersistentClassDeclaration(int modifier, String name, String superName, boolean isInterface, PersistentMap<String, FieldDeclaration> fields, PersistentMap<String, MethodDeclaration> methods, List<String> interfaces) {
+        this.modifier = modifier;
+        this.name = name;
+        this.superName = superName;
+        this.isInterface = isInterface;
+        this.fields = fields;
+        this.methods = methods;
+        this.interfaces = interfaces;
+    }
+
+    public static PersistentClassDeclaration empty() {
+        return EMPTY;
+    }
+
+    public PersistentClassDeclaration withModifier(int modifier) {
+        return new PersistentClassDeclaration(modifier, name, superName, isInterface, fields, methods, interfaces);
+    }
+
+    public PersistentClassDeclaration withName(String name) {
+        return new PersistentClassDeclaration(modifier, name, superName, isInterface, fields, methods, interfaces);
+    }
+
+    public PersistentClassDeclaration withSuperName(String superName) {
+        return new PersistentClassDeclaration(modifier, name, superName, isInterface, fields, methods, interfaces);
+    }
+
+    public PersistentClassDeclaration withIsInterface(boolean isInterface) {
+        return new PersistentClassDeclaration(modifier, name, superName, isInterface, fields, methods, interfaces);
+    }
+
+    public PersistentClassDeclaration withField(FieldDeclaration field) {
+        return new PersistentClassDeclaration(modifier, name, superName, isInterface, fields.plus(field.getName(), field), methods, interfaces);
+    }
+
+    public PersistentClassDeclaration withMethod(MethodDeclaration method) {
+        return new PersistentClassDeclaration(modifier, name, superName, isInterface, fields, methods.plus(method.getName(), method), interfaces);
+    }
+
+    public PersistentClassDeclaration withInterface(String name) {
+        ArrayList<String> newInterfaces = new ArrayList<>(interfaces);
+        newInterfaces.add(name);
+        return new PersistentClassDeclaration(modifier, this.name, superName, isInterface, fields, methods, Collections.unmodifiableList(newInterfaces));
+    }
+
+    @Override
+    public List<FieldDeclaration> getFields() {
+        return fields.values();
+    }
+
+    @Override
+    public List<MethodDeclaration> getMethods() {
+        return methods.values();
+    }
+
+    @Override
+    public int getModifiers() {
+        return modifier;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getSuperName() {
+        return superName;
+    }
+
+    @Override
+    public boolean isInterface() {
+        return isInterface;
+    }
+
+    @Override
+    public List<String> getInterfaces() {
+        return interfaces;
+    }
+}
@@ -0,0 +1,135 @@
+package astava.java.parser;
+
+import astava.tree.PersistentMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Immutable counterpart of MutableClassDomBuilder; each with* method returns a new version sharing the
+// unchanged fields and methods with this one.
+public class PersistentClassDomBuilder implements ClassDomBuilder {
+    private static final long serialVersionUID = 1L;
+
+    private static final PersistentClassDomBuilder EMPTY = new PersistentClassDomBuilder(0, null, null, PersistentMap.empty(), PersistentMap.empty(), Collections.emptyList());
+
+    private final int modifier;
+    private final String name;
+    private final String superName;
+    private final PersistentMap<String, FieldDomBuilder> fieldBuilders;
+    private final PersistentMap<String, MethodDomBuilder> methodBuilders;
+    private final List<String> interfaces;
+
+    private PersistentClassDomBuilder(int modifier, String name, String superName, PersistentMap<String, FieldDomBuilder> fieldBuilders, PersistentMap<String, MethodDomBuilder> methodBuilders, List<String> interfaces) {
+        this.modifier = modifier;
+        this.name = name;
+        this.superName = superName;
+        this.fieldBuilders = fieldBuilders;
+        this.methodBuilders = methodBuilders;
+        this.interfaces = interfaces;
+    }
+
+    public static PersistentClassDomBuilder empty() {
+        return EMPTY;
+    }
+
+    public PersistentClassDomBuilder withModifier(int modifier) {
+        return new PersistentClassDomBuilder(modifier, name, superName, fieldBuilders, methodBuilders, interfaces);
+    }
+
+    public PersistentClassDomBuilder withName(String name) {
+        return new PersistentClassDomBuilder(modifier, name, superName, fieldBuilders, methodBuilders, interfaces);
+    }
+
+    public PersistentClassDomBuilder withSuperName(String superName) {
+        return new PersistentClassDomBuilder(modifier, name, superName, fieldBuilders, methodBuilders, interfaces);
+    }
+
+    public PersistentClassDomBuilder withField(FieldDomBuilder fieldBuilder) {
+        return new PersistentClassDomBuilder(modifier, name, superName, fieldBuilders.plus(fieldBuilder.getName(), fieldBuilder), methodBuilders, interfaces);
+    }
+
+    public PersistentClassDomBuilder withoutField(String name) {
+        return new PersistentClassDomBuilder(modifier, this.name, superName, fieldBuilders.minus(name), methodBuilders, interfaces);
+    }
+
+    public PersistentClassDomBuilder withMethod(MethodDomBuilder methodBuilder) {
+        return new PersistentClassDomBuilder(modifier, name, superName, fieldBuilders, methodBuilders.plus(methodBuilder.getName(), methodBuilder), interfaces);
+    }
+
+    public PersistentClassDomBuilder withoutMethod(String name) {
+        return new PersistentClassDomBuilder(modifier, this.name, superName, fieldBuilders, methodBuilders.minus(name), interfaces);
+    }
+
+    public PersistentClassDomBuilder withInterface(String typeName) {
+        ArrayList<String> newInterfaces = new ArrayList<>(interfaces);
+        newInterfaces.add(typeName);
+        return new PersistentClassDomBuilder(modifier, name, superName, fieldBuilders, methodBuilders, Collections.unmodifiableList(newInterfaces));
+    }
+
+    // Adds the fields and methods of the given builder to a copy of this one
+    public PersistentClassDomBuilder extend(ClassDomBuilder builder) {
+        PersistentMap<String, FieldDomBuilder> newFieldBuilders = fieldBuilders;
+        for (FieldDomBuilder f : builder.getFields())
+            newFieldBuilders = newFieldBuilders.plus(f.getName(), f);
+
+        PersistentMap<String, MethodDomBuilder> newMethodBuilders = methodBuilders;
+        for (MethodDomBuilder m : builder.getMethods())
+            newMethodBuilders = newMethodBuilders.plus(m.getName(), m);
+
+        return new PersistentClassDomBuilder(modifier, name, superName, newFieldBuilders, newMethodBuilders, interfaces);
+    }
+
+    public int getModifier() {
+        return modifier;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getSuperName() {
+        return superName;
+    }
+
+    @Override
+    public List<FieldDomBuilder> getFields() {
+        return fieldBuilders.values();
+    }
+
+    @Override
+    public List<MethodDomBuilder> getMethods() {
+        return methodBuilders.values();
+    }
+
+    public List<String> getInterfaces() {
+        return interfaces;
+    }
+
+    @Override
+    public ClassDeclaration build(ClassResolver classResolver) {
+        PersistentClassDeclaration classDeclaration = PersistentClassDeclaration.empty()
+            .withModifier(modifier)
+            .withName(name)
+            .withSuperName(superName);
+
+        for (FieldDomBuilder f : getFields())
+            classDeclaration = classDeclaration.withField(f.declare(classResolver));
+
+        for (MethodDomBuilder m : getMethods())
+            classDeclaration = classDeclaration.withMethod(m.declare(classResolver));
+
+        for (String i : interfaces)
+            classDeclaration = classDeclaration.withInterface(i);
+
+        return classDeclaration;
+    }
+
+    @Override
+    public String toString() {
+        return "fields=" + getFields().stream().map(x -> x.getName()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,28 @@
+package astava.java.parser;
+
+// A failure while building from source code, e.g. a name which cannot be resolved, with the position of the statement
+// being built
+public class SourceException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+    private final int column;
+
+    public SourceException(int line, int column, RuntimeException cause) {
+        super(cause.getMessage() != null ? cause.getMessage() : cause.toString(), cause);
+        this.line = line;
+        this.column = column;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public Diagnostic toDiagnostic() {
+        return new Diagnostic(Diagnostic.Kind.RESOLUTION, null, line, column, getMessage());
+    }
+}
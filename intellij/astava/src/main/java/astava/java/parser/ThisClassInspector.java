@@ -0,0 +1,28 @@
+package astava.java.parser;
+
+// Inspects classes as the underlying inspector does, except for the class being transformed, which is seen as it is
+// being declared
+public class ThisClassInspector implements ClassInspector {
+    private final MutableClassDeclaration thisClass;
+    private final ClassInspector classInspector;
+
+    public ThisClassInspector(MutableClassDeclaration thisClass, ClassInspector classInspector) {
+        this.thisClass = thisClass;
+        this.classInspector = classInspector;
+    }
+
+    public MutableClassDeclaration getThisClass() {
+        return thisClass;
+    }
+
+    public ClassInspector getClassInspector() {
+        return classInspector;
+    }
+
+    @Override
+    public ClassDeclaration getClassDeclaration(String name) {
+        if(name.equals(thisClass.getName()))
+            return thisClass;
+        return classInspector.getClassDeclaration(name);
+    }
+}
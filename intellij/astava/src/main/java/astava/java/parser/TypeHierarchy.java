@@ -0,0 +1,142 @@
+package astava.java.parser;
+
+import astava.java.Descriptor;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Index of the supertypes of classes. Each type gets a number and each class the set of the numbers of all its
+// supertypes, direct or not, including interfaces and itself, so a subtype test is a single lookup once the class has
+// been seen. Classes are added as they are asked about; the supertypes of a class are taken as fixed once seen, and
+// classes with missing supertypes are looked up again until these are found. Names may be given with either '.' or
+// '/' as separator. The class being transformed through a ThisClassInspector may change as it is declared, so it and
+// its subtypes are looked up anew while the rest of the index is shared with the underlying inspector.
+public class TypeHierarchy {
+    private static final String OBJECT = "java.lang.Object";
+    // The indexes hold names only, so an inspector is not kept alive by its index
+    private static final Map<ClassInspector, Index> indexes = new WeakHashMap<>();
+
+    private static class Index {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final Map<String, BitSet> supertypes = new ConcurrentHashMap<>();
+    }
+
+    // A hierarchy sharing its index with all other hierarchies of the inspector
+    public static TypeHierarchy of(ClassInspector classInspector) {
+        if(classInspector instanceof ThisClassInspector) {
+            ThisClassInspector thisClassInspector = (ThisClassInspector)classInspector;
+            return new TypeHierarchy(classInspector, getIndex(thisClassInspector.getClassInspector()), normalize(thisClassInspector.getThisClass().getName()));
+        }
+
+        return new TypeHierarchy(classInspector, getIndex(classInspector), null);
+    }
+
+    private static Index getIndex(ClassInspector classInspector) {
+        synchronized (indexes) {
+            return indexes.computeIfAbsent(classInspector, x -> new Index());
+        }
+    }
+
+    private final ClassInspector classInspector;
+    private final Index index;
+    // Neither it nor its subtypes are read from or added to the index
+    private final String unindexedName;
+
+    public TypeHierarchy(ClassInspector classInspector) {
+        this(classInspector, new Index(), null);
+    }
+
+    private TypeHierarchy(ClassInspector classInspector, Index index, String unindexedName) {
+        this.classInspector = classInspector;
+        this.index = index;
+        this.unindexedName = unindexedName;
+    }
+
+    public boolean isSubtypeOf(String name, String superName) {
+        name = normalize(name);
+        superName = normalize(superName);
+
+        if(name.equals(superName) || superName.equals(OBJECT) && isReference(name))
+            return true;
+
+        BitSet closure = getSupertypes(name);
+        Integer superId = index.ids.get(superName);
+        return superId != null && closure.get(superId);
+    }
+
+    // For classes which may not be known to the inspector, such as those being transformed
+    public boolean isSubtypeOf(ClassDeclaration classDeclaration, String superName) {
+        return normalize(classDeclaration.getName()).equals(normalize(superName)) || isStrictSubtypeOf(classDeclaration, superName);
+    }
+
+    public boolean isStrictSubtypeOf(ClassDeclaration classDeclaration, String superName) {
+        return getDirectSupertypes(classDeclaration).anyMatch(x -> isSubtypeOf(x, superName));
+    }
+
+    private BitSet getSupertypes(String name) {
+        BitSet closure = getIndexedSupertypes(name);
+        return closure != null ? closure : computeSupertypes(name);
+    }
+
+    private BitSet computeSupertypes(String name) {
+        synchronized (index) {
+            BitSet closure = getIndexedSupertypes(name);
+            if(closure != null)
+                return closure;
+
+            closure = new BitSet();
+            closure.set(getId(name));
+
+            ClassDeclaration classDeclaration = classInspector.getClassDeclaration(name);
+            boolean isComplete = (classDeclaration != null || !isReference(name)) && !name.equals(unindexedName);
+            if(classDeclaration != null) {
+                for(String directSupertype : getDirectSupertypes(classDeclaration).collect(Collectors.toList())) {
+                    closure.or(getSupertypes(directSupertype));
+                    isComplete &= !directSupertype.equals(unindexedName) && getIndexedSupertypes(directSupertype) != null;
+                }
+            }
+
+            if(isComplete)
+                index.supertypes.put(name, closure);
+
+            return closure;
+        }
+    }
+
+    // Null for the unindexed class and for classes indexed as its subtypes
+    private BitSet getIndexedSupertypes(String name) {
+        BitSet closure = index.supertypes.get(name);
+        if(closure != null && unindexedName != null) {
+            Integer unindexedId = index.ids.get(unindexedName);
+            if(unindexedId != null && closure.get(unindexedId))
+                return null;
+        }
+        return closure;
+    }
+
+    private int getId(String name) {
+        Integer id = index.ids.get(name);
+        if(id == null) {
+            id = index.ids.size();
+            index.ids.put(name, id);
+        }
+        return id;
+    }
+
+    private static Stream<String> getDirectSupertypes(ClassDeclaration classDeclaration) {
+        Stream<String> superName = classDeclaration.getSuperName() != null ? Stream.of(classDeclaration.getSuperName()) : Stream.empty();
+        return Stream.concat(superName, classDeclaration.getInterfaces().stream()).map(x -> normalize(x));
+    }
+
+    private static String normalize(String name) {
+        return name.replace('/', '.');
+    }
+
+    private static boolean isReference(String name) {
+        return !Descriptor.isPrimitiveName(name);
+    }
+}
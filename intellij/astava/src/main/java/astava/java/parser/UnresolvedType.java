@@ -8,6 +8,10 @@ public class UnresolvedType {
     }
 
     public String resolveName(ClassResolver classResolver) {
+        // Arrays are resolved by their element types
+        if(name.endsWith("[]"))
+            return new UnresolvedType(name.substring(0, name.length() - 2)).resolveName(classResolver) + "[]";
+
         String resolvedName = classResolver.resolveSimpleName(name);
         return resolvedName != null ? resolvedName : name;
     }
@@ -1,5 +1,31 @@
 grammar Java;
 
+@parser::members {
+    // As in Java, an operand starting with + or - is only cast to a primitive type; for other types, such as in
+    // (x) - 1, the parentheses rather enclose the left operand of a binary operator
+    private boolean isCastAhead() {
+        int k = 2;
+        while(true) {
+            int type = _input.LT(k).getType();
+            if(type == CLOSE_PAR)
+                break;
+            if(type != ID && type != DOT && type != OPEN_SQUARE && type != CLOSE_SQUARE && type != QUESTION_MARK)
+                return true;
+            k++;
+        }
+
+        switch(_input.LT(k + 1).getType()) {
+            case OP_ADD:
+            case OP_SUB:
+            case OP_INC:
+            case OP_DEC:
+                return k == 3 && _input.LT(2).getType() == ID && astava.java.Descriptor.isPrimitiveName(_input.LT(2).getText());
+            default:
+                return true;
+        }
+    }
+}
+
 classFile: classDefinition;
 script: element*;
 element: classDefinition | implementsInterface | fieldDefinition | methodDefinition | statement | expression | annotation;
@@ -12,16 +38,24 @@ methodDefinition:
     (SEMI_COLON | OPEN_BRA statement* CLOSE_BRA);
 parameters: OPEN_PAR (parameter (COMMA parameter)*)? CLOSE_PAR;
 parameter: type=typeQualifier name=ID;
-typeQualifier: ID (DOT ID)* | capture;
+typeQualifier: ID (DOT ID)* (OPEN_SQUARE CLOSE_SQUARE)* | capture;
 modifiers: accessModifier? KW_ABSTRACT? KW_STATIC?;
 accessModifier: KW_PUBLIC | KW_PRIVATE | KW_PROTECTED;
 statement: nonDelimitedStatement | (anyStatement=capture | delimitedStatement SEMI_COLON);
 
-nonDelimitedStatement: ifElseStatement | tryCatchStatement | methodBodyStatement;
+nonDelimitedStatement: ifElseStatement | whileStatement | forStatement | tryCatchStatement | methodBodyStatement;
 ifElseStatement: 
     KW_IF OPEN_PAR condition=expression CLOSE_PAR 
     ifTrueBlock=singleOrMultiStatement
     (KW_ELSE ifFalseBlock=singleOrMultiStatement)?;
+whileStatement:
+    KW_WHILE OPEN_PAR condition=expression CLOSE_PAR
+    body=singleOrMultiStatement;
+forStatement:
+    KW_FOR OPEN_PAR forInitialization? SEMI_COLON condition=expression? SEMI_COLON forUpdate? CLOSE_PAR
+    body=singleOrMultiStatement;
+forInitialization: variableDeclaration | expression (COMMA expression)*;
+forUpdate: expression (COMMA expression)*;
 tryCatchStatement:
     tryBlock catchBlock* finallyBlock?;
 tryBlock: KW_TRY OPEN_BRA statement* CLOSE_BRA;
@@ -37,30 +71,45 @@ returnStatement: KW_RETURN expression?;
 variableDeclaration: type=typeQualifier name=ID (OP_ASSIGN value=expression)?;
 
 // Expression precedence following http://www.cs.bilkent.edu.tr/~guvenir/courses/CS101/op_precedence.html
-expression: assignment | expression4 | anyExpression=capture;
-assignment: name=ID OP_ASSIGN value=expression;
+expression: assignment | expression3 | anyExpression=capture;
+assignment: name=ID operator=assignmentOperator value=expression;
+assignmentOperator:
+    OP_ASSIGN | OP_ADD_ASSIGN | OP_SUB_ASSIGN | OP_MUL_ASSIGN | OP_DIV_ASSIGN | OP_REM_ASSIGN |
+    OP_SHL_ASSIGN | OP_SHR_ASSIGN | OP_USHR_ASSIGN | OP_AND_ASSIGN | OP_OR_ASSIGN | OP_XOR_ASSIGN;
 
-expression4: expressionLogicalAnd | expression8;
-expressionLogicalAnd: first=expression8 (AMPERSAND expression)*;
+// Binary operators are left associative
+expression3: first=expression4 (operators+=OP_OR expression4)*;
+expression4: first=expression5 (operators+=AMPERSAND expression5)*;
+expression5: first=expression6 (operators+=BIT_OR expression6)*;
+expression6: first=expression7 (operators+=BIT_XOR expression7)*;
+expression7: first=expression8 (operators+=BIT_AND expression8)*;
+expression8: first=expression9 (operators+=(OP_EQUALS | OP_NOT_EQUALS) expression9)*;
+expression9: first=expression10 (comparison | instanceOf)*;
+comparison: operator=(OP_LT | OP_LE | OP_GT | OP_GE) expression10;
+instanceOf: KW_INSTANCE_OF typeQualifier;
+expression10: first=expression11 (operators+=(OP_SHL | OP_SHR | OP_USHR) expression11)*;
+expression11: first=expression12 (operators+=(OP_ADD | OP_SUB) expression12)*;
+expression12: first=expression13 (operators+=(OP_MUL | OP_DIV | OP_REM) expression13)*;
 
-expression8: relationalExpression | expression9;
-relationalExpression: first=expression9 (OP_EQUALS expression)*;
+expression13: typeCastExpression | expression14;
+typeCastExpression: {isCastAhead()}? OPEN_PAR typeQualifier CLOSE_PAR expression13;
 
-expression9: instanceOfExpression | expression13;
-instanceOfExpression: expression13 KW_INSTANCE_OF typeQualifier;
+expression14: prefixExpression | expression15;
+prefixExpression: operator=(OP_ADD | OP_SUB | OP_NOT | OP_COMPLEMENT | OP_INC | OP_DEC) expression13;
 
-expression13: typeCastExpression | leafExpression;
-typeCastExpression: OPEN_PAR typeQualifier CLOSE_PAR expression;
+expression15: leafExpression operator=(OP_INC | OP_DEC)?;
 
 // TODO: Add support for boolean literals true and false
 leafExpression: 
     (
         invocation | classLiteral | ambigousName | intLiteral | stringLiteral | nullLiteral | thisLiteral |
-        trueLiteral | falseLiteral | newInstance | methodBodyExpression
+        trueLiteral | falseLiteral | newInstance | newArray | parenthesizedExpression | methodBodyExpression
     )
     chainElement*;
 invocation: identifier arguments;
-chainElement: DOT (fieldAssignment | fieldAccess | invocation);
+chainElement: DOT (fieldAssignment | fieldAccess | invocation) | arrayAssignment | arrayAccess;
+arrayAssignment: OPEN_SQUARE index=expression CLOSE_SQUARE operator=assignmentOperator value=expression;
+arrayAccess: OPEN_SQUARE index=expression CLOSE_SQUARE;
 fieldAssignment: identifier OP_ASSIGN value=expression;
 fieldAccess: identifier;
 identifier: ID | capture;
@@ -73,6 +122,8 @@ thisLiteral: KW_THIS;
 trueLiteral: KW_TRUE;
 falseLiteral: KW_FALSE;
 newInstance: KW_NEW name=typeQualifier arguments;
+newArray: KW_NEW elementType=typeQualifier OPEN_SQUARE length=expression CLOSE_SQUARE;
+parenthesizedExpression: OPEN_PAR expression CLOSE_PAR;
 arguments: OPEN_PAR (expression (COMMA expression)*)? CLOSE_PAR;
 methodBodyExpression: ELLIPSIS;
 throwStatement: KW_THROW expression;
@@ -142,9 +193,41 @@ statementsOrExpression: statement* | expression;
 
 QUESTION_MARK: '?';
 AMPERSAND: '&&';
+OP_OR: '||';
 AT: '@';
 OP_ASSIGN: '=';
+OP_ADD_ASSIGN: '+=';
+OP_SUB_ASSIGN: '-=';
+OP_MUL_ASSIGN: '*=';
+OP_DIV_ASSIGN: '/=';
+OP_REM_ASSIGN: '%=';
+OP_SHL_ASSIGN: '<<=';
+OP_SHR_ASSIGN: '>>=';
+OP_USHR_ASSIGN: '>>>=';
+OP_AND_ASSIGN: '&=';
+OP_OR_ASSIGN: '|=';
+OP_XOR_ASSIGN: '^=';
 OP_EQUALS: '==';
+OP_NOT_EQUALS: '!=';
+OP_LT: '<';
+OP_LE: '<=';
+OP_GT: '>';
+OP_GE: '>=';
+OP_SHL: '<<';
+OP_SHR: '>>';
+OP_USHR: '>>>';
+OP_ADD: '+';
+OP_SUB: '-';
+OP_MUL: '*';
+OP_DIV: '/';
+OP_REM: '%';
+OP_INC: '++';
+OP_DEC: '--';
+OP_NOT: '!';
+OP_COMPLEMENT: '~';
+BIT_AND: '&';
+BIT_OR: '|';
+BIT_XOR: '^';
 SEMI_COLON: ';';
 DOT: '.';
 ELLIPSIS: '...';
@@ -153,6 +236,8 @@ OPEN_PAR: '(';
 CLOSE_PAR: ')';
 OPEN_BRA: '{';
 CLOSE_BRA: '}';
+OPEN_SQUARE: '[';
+CLOSE_SQUARE: ']';
 KW_NEW: 'new';
 KW_RETURN: 'return';
 KW_PUBLIC: 'public';
@@ -167,6 +252,8 @@ KW_IMPLEMENTS: 'implements';
 KW_INSTANCE_OF: 'instanceof';
 KW_IF: 'if';
 KW_ELSE: 'else';
+KW_WHILE: 'while';
+KW_FOR: 'for';
 KW_THIS: 'this';
 KW_TRUE: 'true';
 KW_FALSE: 'false';
@@ -178,7 +265,7 @@ fragment DIGIT: [0-9];
 fragment LETTER: [A-Z]|[a-z];
 ID: (LETTER | '_') (LETTER | '_' | DIGIT)*;
 
-INT: DIGIT+ (DOT DIGIT+)?;
+INT: DIGIT+ (DOT DIGIT+)? [lLfFdD]?;
 STRING: '"' (EscapeSequence | ~[\\"])* '"';
 fragment HexDigit: [0-9a-fA-F];
 fragment EscapeSequence: '\\' [btnfr"'\\] | UnicodeEscape | OctalEscape;
@@ -0,0 +1,237 @@
+package astava.tree;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Structural diff between two dom trees in the manner of GumTree: subtrees are compared by structural hashes,
+// isomorphic subtrees are matched, and the remaining child lists are aligned by their longest common subsequence.
+public class CodeDomDiff {
+    public enum Kind {
+        INSERT,
+        DELETE,
+        REPLACE
+    }
+
+    public static class Edit {
+        private final Kind kind;
+        // For INSERT and DELETE the path of the parent; for REPLACE the path of the replaced node
+        private final List<Integer> path;
+        private final int index;
+        private final Dom dom;
+
+        public Edit(Kind kind, List<Integer> path, int index, Dom dom) {
+            this.kind = kind;
+            this.path = path;
+            this.index = index;
+            this.dom = dom;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public List<Integer> getPath() {
+            return path;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Dom getDom() {
+            return dom;
+        }
+
+        @Override
+        public String toString() {
+            switch(kind) {
+                case INSERT:
+                    return "insert " + path + "[" + index + "] " + dom;
+                case DELETE:
+                    return "delete " + path + "[" + index + "]";
+                default:
+                    return "replace " + path + " " + dom;
+            }
+        }
+    }
+
+    private final Map<Dom, Integer> hashes = new IdentityHashMap<>();
+
+    private CodeDomDiff() { }
+
+    public static List<Edit> diff(Dom from, Dom to) {
+        ArrayList<Edit> edits = new ArrayList<>();
+        new CodeDomDiff().diff(from, to, Collections.emptyList(), edits);
+        return edits;
+    }
+
+    public static Dom patch(Dom dom, List<Edit> edits) {
+        Hashtable<List<Integer>, List<Edit>> editsByPath = new Hashtable<>();
+        Set<List<Integer>> editedPaths = new HashSet<>();
+
+        edits.forEach(e -> {
+            editsByPath.computeIfAbsent(e.getPath(), p -> new ArrayList<>()).add(e);
+            for(int i = 0; i <= e.getPath().size(); i++)
+                editedPaths.add(e.getPath().subList(0, i));
+        });
+
+        return patch(dom, new ArrayList<>(), editsByPath, editedPaths);
+    }
+
+    public static boolean isomorphic(Dom x, Dom y) {
+        return new CodeDomDiff().isIsomorphic(x, y);
+    }
+
+    public static int hash(Dom dom) {
+        return new CodeDomDiff().hashOf(dom);
+    }
+
+    // The methods of the second class that must be regenerated because they are new or their bodies changed
+    public static List<MethodDom> changedMethods(ClassDom from, ClassDom to) {
+        CodeDomDiff diff = new CodeDomDiff();
+
+        return to.getMethods().stream()
+            .filter(m -> {
+                MethodDom previous = from.getMethods().stream()
+                    .filter(x -> hasSameSignature(x, m))
+                    .findFirst().orElse(null);
+
+                return previous == null ||
+                    previous.getModifier() != m.getModifier() ||
+                    !diff.isIsomorphic(previous.getBody(), m.getBody());
+            })
+            .collect(Collectors.toList());
+    }
+
+    public static boolean hasSameSignature(MethodDom x, MethodDom y) {
+        return x.getName().equals(y.getName()) &&
+            x.getReturnTypeName().equals(y.getReturnTypeName()) &&
+            x.getParameterTypes().size() == y.getParameterTypes().size() &&
+            IntStream.range(0, x.getParameterTypes().size()).allMatch(i ->
+                x.getParameterTypes().get(i).descriptor.equals(y.getParameterTypes().get(i).descriptor));
+    }
+
+    private int hashOf(Dom dom) {
+        Integer hash = hashes.get(dom);
+
+        if(hash == null) {
+            List<? extends Dom> children = dom.getChildren();
+
+            if(children.isEmpty()) {
+                hash = Objects.hashCode(dom.toString());
+            } else {
+                hash = dom.getClass().getName().hashCode();
+                for (Dom child : children)
+                    hash = 31 * hash + hashOf(child);
+            }
+
+            hashes.put(dom, hash);
+        }
+
+        return hash;
+    }
+
+    private boolean isIsomorphic(Dom x, Dom y) {
+        return x == y || (x != null && y != null && hashOf(x) == hashOf(y) && x.equals(y));
+    }
+
+    private void diff(Dom from, Dom to, List<Integer> path, List<Edit> edits) {
+        if(isIsomorphic(from, to))
+            return;
+
+        List<? extends Dom> fromChildren = from.getChildren();
+        List<? extends Dom> toChildren = to.getChildren();
+
+        // Only descend when the nodes differ in their children alone
+        if(from.getClass() == to.getClass() && !fromChildren.isEmpty() && !toChildren.isEmpty() &&
+            isIsomorphic(from.setChildren(toChildren), to))
+            diffChildren(fromChildren, toChildren, path, edits);
+        else
+            edits.add(new Edit(Kind.REPLACE, path, -1, to));
+    }
+
+    private void diffChildren(List<? extends Dom> from, List<? extends Dom> to, List<Integer> path, List<Edit> edits) {
+        int n = from.size();
+        int m = to.size();
+        int[][] lcs = new int[n + 1][m + 1];
+
+        for(int i = n - 1; i >= 0; i--) {
+            for(int j = m - 1; j >= 0; j--) {
+                lcs[i][j] = isIsomorphic(from.get(i), to.get(j))
+                    ? lcs[i + 1][j + 1] + 1
+                    : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+            }
+        }
+
+        int i = 0;
+        int j = 0;
+        int gapStartI = 0;
+        int gapStartJ = 0;
+
+        while(i < n && j < m) {
+            if(isIsomorphic(from.get(i), to.get(j)) && lcs[i][j] == lcs[i + 1][j + 1] + 1) {
+                diffGap(from, to, gapStartI, i, gapStartJ, j, path, edits);
+                i++;
+                j++;
+                gapStartI = i;
+                gapStartJ = j;
+            } else if(lcs[i + 1][j] >= lcs[i][j + 1]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+
+        diffGap(from, to, gapStartI, n, gapStartJ, m, path, edits);
+    }
+
+    private void diffGap(List<? extends Dom> from, List<? extends Dom> to, int fromStart, int fromEnd, int toStart, int toEnd, List<Integer> path, List<Edit> edits) {
+        int paired = Math.min(fromEnd - fromStart, toEnd - toStart);
+
+        for(int k = 0; k < paired; k++)
+            diff(from.get(fromStart + k), to.get(toStart + k), append(path, fromStart + k), edits);
+
+        for(int k = fromStart + paired; k < fromEnd; k++)
+            edits.add(new Edit(Kind.DELETE, path, k, null));
+
+        for(int k = toStart + paired; k < toEnd; k++)
+            edits.add(new Edit(Kind.INSERT, path, k, to.get(k)));
+    }
+
+    private static Dom patch(Dom dom, List<Integer> path, Map<List<Integer>, List<Edit>> editsByPath, Set<List<Integer>> editedPaths) {
+        if(!editedPaths.contains(path))
+            return dom;
+
+        List<Edit> edits = editsByPath.getOrDefault(path, Collections.emptyList());
+
+        Optional<Edit> replacement = edits.stream().filter(e -> e.getKind() == Kind.REPLACE).findFirst();
+        if(replacement.isPresent())
+            return replacement.get().getDom();
+
+        List<? extends Dom> children = dom.getChildren();
+        Set<Integer> deleted = edits.stream()
+            .filter(e -> e.getKind() == Kind.DELETE)
+            .map(e -> e.getIndex())
+            .collect(Collectors.toSet());
+
+        ArrayList<Dom> newChildren = new ArrayList<>();
+        for(int i = 0; i < children.size(); i++) {
+            if(!deleted.contains(i))
+                newChildren.add(patch(children.get(i), append(path, i), editsByPath, editedPaths));
+        }
+
+        edits.stream()
+            .filter(e -> e.getKind() == Kind.INSERT)
+            .sorted(Comparator.comparingInt(e -> e.getIndex()))
+            .forEach(e -> newChildren.add(e.getIndex(), e.getDom()));
+
+        return dom.setChildren(newChildren);
+    }
+
+    private static List<Integer> append(List<Integer> path, int index) {
+        ArrayList<Integer> newPath = new ArrayList<>(path);
+        newPath.add(index);
+        return newPath;
+    }
+}
@@ -0,0 +1,74 @@
+package astava.tree;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Keys of the form (kind, value) used to index patterns by the kind of node they can match. A value of null
+// within a pattern key matches any value of the kind. Nodes of kinds not distinguished here have no key.
+public class CodeDomPatternKey {
+    public static final String BLOCK = "Block";
+    public static final String FIELD_ASSIGNMENT = "FieldAssignment";
+    public static final String VARIABLE_ASSIGNMENT = "VariableAssignment";
+    public static final String INVOCATION = "Invocation";
+    public static final String THIS = "This";
+    public static final String INT_LITERAL = "IntLiteral";
+    public static final String STRING_LITERAL = "StringLiteral";
+
+    public static List<Object> of(String kind, Object value) {
+        return Arrays.asList(kind, value);
+    }
+
+    public static List<Object> of(CodeDom dom) {
+        return Util.returnFrom(null, r -> dom.accept(new DefaultCodeDomVisitor() {
+            @Override
+            public void visitStatement(StatementDom statementDom) {
+                statementDom.accept(new StatementDomVisitor.Default() {
+                    @Override
+                    public void visitBlock(List<StatementDom> statements) {
+                        r.accept(of(BLOCK, statements.size()));
+                    }
+
+                    @Override
+                    public void visitFieldAssignment(ExpressionDom target, String name, String type, ExpressionDom value) {
+                        r.accept(of(FIELD_ASSIGNMENT, name));
+                    }
+
+                    @Override
+                    public void visitVariableAssignment(String name, ExpressionDom value) {
+                        r.accept(of(VARIABLE_ASSIGNMENT, name));
+                    }
+
+                    @Override
+                    public void visitInvocation(int invocation, ExpressionDom target, String type, String name, String descriptor, List<ExpressionDom> arguments) {
+                        r.accept(of(INVOCATION, name));
+                    }
+                });
+            }
+
+            @Override
+            public void visitExpression(ExpressionDom expressionDom) {
+                expressionDom.accept(new DefaultExpressionDomVisitor() {
+                    @Override
+                    public void visitThis() {
+                        r.accept(of(THIS, null));
+                    }
+
+                    @Override
+                    public void visitIntLiteral(int value) {
+                        r.accept(of(INT_LITERAL, value));
+                    }
+
+                    @Override
+                    public void visitStringLiteral(String value) {
+                        r.accept(of(STRING_LITERAL, value));
+                    }
+
+                    @Override
+                    public void visitInvocation(int invocation, ExpressionDom target, String type, String name, String descriptor, List<ExpressionDom> arguments) {
+                        r.accept(of(INVOCATION, name));
+                    }
+                });
+            }
+        }));
+    }
+}
@@ -165,6 +165,16 @@ public abstract class DefaultExpressionDomVisitor implements ExpressionDomVisito
 
     }
 
+    @Override
+    public void visitArrayLoad(ExpressionDom expression, ExpressionDom index) {
+
+    }
+
+    @Override
+    public void visitNewArray(String type, ExpressionDom length) {
+
+    }
+
     @Override
     public void visitNeg(ExpressionDom expression) {
 
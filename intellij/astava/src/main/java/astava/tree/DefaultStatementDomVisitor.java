@@ -125,4 +125,9 @@ public abstract class DefaultStatementDomVisitor implements StatementDomVisitor
     public void visitIfJump(ExpressionDom condition, Object label) {
 
     }
+
+    @Override
+    public void visitLineNumber(int line) {
+
+    }
 }
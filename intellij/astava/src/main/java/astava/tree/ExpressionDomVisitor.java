@@ -68,6 +68,10 @@ public interface ExpressionDomVisitor {
 
     void visitArrayLength(ExpressionDom expression);
 
+    void visitArrayLoad(ExpressionDom expression, ExpressionDom index);
+
+    void visitNewArray(String type, ExpressionDom length);
+
     void visitNeg(ExpressionDom expression);
 
     void visitObjectEquality(int operator, ExpressionDom lhs, ExpressionDom rhs);
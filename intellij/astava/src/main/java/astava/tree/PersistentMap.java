@@ -0,0 +1,349 @@
+package astava.tree;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+// Immutable hash array mapped trie; updates copy only the path to the changed entry, such that versions share
+// all other structure and may be read concurrently without locks. Null keys and values are not supported.
+public final class PersistentMap<K, V> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Node<K, V> root;
+    private final int size;
+
+    private PersistentMap(Node<K, V> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static <K, V> PersistentMap<K, V> empty() {
+        return new PersistentMap<>(null, 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(K key) {
+        return root != null ? root.get(0, hash(key), key) : null;
+    }
+
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    public PersistentMap<K, V> plus(K key, V value) {
+        if(value == null)
+            throw new IllegalArgumentException("Null values are not supported.");
+
+        int hash = hash(key);
+
+        if(root == null)
+            return new PersistentMap<>(new Leaf<>(hash, key, value), 1);
+
+        boolean[] added = new boolean[1];
+        Node<K, V> newRoot = root.put(0, hash, key, value, added);
+
+        return newRoot == root ? this : new PersistentMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    public PersistentMap<K, V> minus(K key) {
+        if(root == null)
+            return this;
+
+        Node<K, V> newRoot = root.remove(0, hash(key), key);
+
+        return newRoot == root ? this : new PersistentMap<>(newRoot, size - 1);
+    }
+
+    public void forEach(BiConsumer<K, V> consumer) {
+        if(root != null)
+            root.forEach(consumer);
+    }
+
+    public List<K> keys() {
+        ArrayList<K> keys = new ArrayList<>(size);
+        forEach((k, v) -> keys.add(k));
+        return keys;
+    }
+
+    public List<V> values() {
+        ArrayList<V> values = new ArrayList<>(size);
+        forEach((k, v) -> values.add(v));
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        forEach((k, v) -> {
+            if(builder.length() > 1)
+                builder.append(", ");
+            builder.append(k).append("=").append(v);
+        });
+        return builder.append("}").toString();
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int shift, int hash) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    // Generic arrays cannot be created directly; nodes only ever hold nodes of the same map, so the cast is safe
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V>[] newNodes(int length) {
+        return (Node<K, V>[])new Node<?, ?>[length];
+    }
+
+    private static <K, V> Node<K, V>[] inserted(Node<K, V>[] nodes, int i, Node<K, V> node) {
+        Node<K, V>[] newNodes = newNodes(nodes.length + 1);
+        System.arraycopy(nodes, 0, newNodes, 0, i);
+        newNodes[i] = node;
+        System.arraycopy(nodes, i, newNodes, i + 1, nodes.length - i);
+        return newNodes;
+    }
+
+    private static <K, V> Node<K, V>[] replaced(Node<K, V>[] nodes, int i, Node<K, V> node) {
+        Node<K, V>[] newNodes = nodes.clone();
+        newNodes[i] = node;
+        return newNodes;
+    }
+
+    private static <K, V> Node<K, V>[] removed(Node<K, V>[] nodes, int i) {
+        Node<K, V>[] newNodes = newNodes(nodes.length - 1);
+        System.arraycopy(nodes, 0, newNodes, 0, i);
+        System.arraycopy(nodes, i + 1, newNodes, i, newNodes.length - i);
+        return newNodes;
+    }
+
+    // Combines two leaves with different keys into the smallest node distinguishing them from the given level on
+    private static <K, V> Node<K, V> merge(int shift, Leaf<K, V> leaf1, Leaf<K, V> leaf2) {
+        if(leaf1.hash == leaf2.hash) {
+            Node<K, V>[] leaves = newNodes(2);
+            leaves[0] = leaf1;
+            leaves[1] = leaf2;
+            return new CollisionNode<>(leaf1.hash, leaves);
+        }
+
+        int bit1 = bit(shift, leaf1.hash);
+        int bit2 = bit(shift, leaf2.hash);
+
+        if(bit1 == bit2) {
+            Node<K, V>[] nodes = newNodes(1);
+            nodes[0] = merge(shift + 5, leaf1, leaf2);
+            return new BitmapNode<>(bit1, nodes);
+        }
+
+        Node<K, V>[] nodes = newNodes(2);
+        boolean leaf1First = ((leaf1.hash >>> shift) & 31) < ((leaf2.hash >>> shift) & 31);
+        nodes[leaf1First ? 0 : 1] = leaf1;
+        nodes[leaf1First ? 1 : 0] = leaf2;
+        return new BitmapNode<>(bit1 | bit2, nodes);
+    }
+
+    private interface Node<K, V> extends Serializable {
+        V get(int shift, int hash, K key);
+        Node<K, V> put(int shift, int hash, K key, V value, boolean[] added);
+        // Returns null when the node becomes empty
+        Node<K, V> remove(int shift, int hash, K key);
+        void forEach(BiConsumer<K, V> consumer);
+    }
+
+    private static final class Leaf<K, V> implements Node<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int hash;
+        private final K key;
+        private final V value;
+
+        private Leaf(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        private boolean matches(int hash, K key) {
+            return hash == this.hash && key.equals(this.key);
+        }
+
+        @Override
+        public V get(int shift, int hash, K key) {
+            return matches(hash, key) ? value : null;
+        }
+
+        @Override
+        public Node<K, V> put(int shift, int hash, K key, V value, boolean[] added) {
+            if(matches(hash, key))
+                return value == this.value ? this : new Leaf<>(hash, key, value);
+
+            added[0] = true;
+
+            return merge(shift, this, new Leaf<>(hash, key, value));
+        }
+
+        @Override
+        public Node<K, V> remove(int shift, int hash, K key) {
+            return matches(hash, key) ? null : this;
+        }
+
+        @Override
+        public void forEach(BiConsumer<K, V> consumer) {
+            consumer.accept(key, value);
+        }
+    }
+
+    private static final class BitmapNode<K, V> implements Node<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int bitmap;
+        // Ordered by the bit of their hash at this level
+        private final Node<K, V>[] nodes;
+
+        private BitmapNode(int bitmap, Node<K, V>[] nodes) {
+            this.bitmap = bitmap;
+            this.nodes = nodes;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        public V get(int shift, int hash, K key) {
+            int bit = bit(shift, hash);
+
+            if((bitmap & bit) == 0)
+                return null;
+
+            return nodes[index(bit)].get(shift + 5, hash, key);
+        }
+
+        @Override
+        public Node<K, V> put(int shift, int hash, K key, V value, boolean[] added) {
+            int bit = bit(shift, hash);
+            int i = index(bit);
+
+            if((bitmap & bit) == 0) {
+                added[0] = true;
+
+                return new BitmapNode<>(bitmap | bit, inserted(nodes, i, new Leaf<>(hash, key, value)));
+            }
+
+            Node<K, V> node = nodes[i];
+            Node<K, V> newNode = node.put(shift + 5, hash, key, value, added);
+
+            return newNode == node ? this : new BitmapNode<>(bitmap, replaced(nodes, i, newNode));
+        }
+
+        @Override
+        public Node<K, V> remove(int shift, int hash, K key) {
+            int bit = bit(shift, hash);
+
+            if((bitmap & bit) == 0)
+                return this;
+
+            int i = index(bit);
+            Node<K, V> node = nodes[i];
+            Node<K, V> newNode = node.remove(shift + 5, hash, key);
+
+            if(newNode == node)
+                return this;
+            if(newNode != null)
+                return new BitmapNode<>(bitmap, replaced(nodes, i, newNode));
+            if(bitmap == bit)
+                return null;
+
+            return new BitmapNode<>(bitmap & ~bit, removed(nodes, i));
+        }
+
+        @Override
+        public void forEach(BiConsumer<K, V> consumer) {
+            for(Node<K, V> node : nodes)
+                node.forEach(consumer);
+        }
+    }
+
+    // Leaves of distinct keys with the same hash
+    private static final class CollisionNode<K, V> implements Node<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int hash;
+        private final Node<K, V>[] leaves;
+
+        private CollisionNode(int hash, Node<K, V>[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        private int indexOf(K key) {
+            for(int i = 0; i < leaves.length; i++) {
+                if(((Leaf<K, V>)leaves[i]).matches(hash, key))
+                    return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public V get(int shift, int hash, K key) {
+            if(hash != this.hash)
+                return null;
+
+            int i = indexOf(key);
+            return i != -1 ? leaves[i].get(shift, hash, key) : null;
+        }
+
+        @Override
+        public Node<K, V> put(int shift, int hash, K key, V value, boolean[] added) {
+            if(hash != this.hash) {
+                // Nest this node in a bitmap node which distinguishes the two hashes
+                Node<K, V>[] nodes = newNodes(1);
+                nodes[0] = this;
+                return new BitmapNode<>(bit(shift, this.hash), nodes).put(shift, hash, key, value, added);
+            }
+
+            int i = indexOf(key);
+
+            if(i != -1) {
+                Node<K, V> leaf = leaves[i];
+                Node<K, V> newLeaf = leaf.put(shift, hash, key, value, added);
+                return newLeaf == leaf ? this : new CollisionNode<>(hash, replaced(leaves, i, newLeaf));
+            }
+
+            added[0] = true;
+
+            return new CollisionNode<>(hash, inserted(leaves, leaves.length, new Leaf<>(hash, key, value)));
+        }
+
+        @Override
+        public Node<K, V> remove(int shift, int hash, K key) {
+            if(hash != this.hash)
+                return this;
+
+            int i = indexOf(key);
+
+            if(i == -1)
+                return this;
+            // The remaining leaf needs no collision node of its own
+            if(leaves.length == 2)
+                return leaves[1 - i];
+
+            return new CollisionNode<>(hash, removed(leaves, i));
+        }
+
+        @Override
+        public void forEach(BiConsumer<K, V> consumer) {
+            for(Node<K, V> leaf : leaves)
+                leaf.forEach(consumer);
+        }
+    }
+}
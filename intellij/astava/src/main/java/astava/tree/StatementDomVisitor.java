@@ -54,6 +54,8 @@ public interface StatementDomVisitor {
 
     void visitIfJump(ExpressionDom condition, Object label);
 
+    void visitLineNumber(int line);
+
     class Default implements StatementDomVisitor {
         @Override
         public void visitVariableDeclaration(String type, String name) {
@@ -174,6 +176,11 @@ public interface StatementDomVisitor {
         public void visitIfJump(ExpressionDom condition, Object label) {
 
         }
+
+        @Override
+        public void visitLineNumber(int line) {
+
+        }
     }
 
     public static abstract class Return<T> extends Default {
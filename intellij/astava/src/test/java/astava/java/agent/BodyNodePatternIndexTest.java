@@ -0,0 +1,132 @@
+package astava.java.agent;
+
+import astava.java.CodeDomPrinter;
+import astava.java.parser.ClassResolver;
+import astava.java.parser.MutableClassDeclaration;
+import astava.tree.CodeDom;
+import astava.tree.CodeDomPatternKey;
+import astava.tree.DefaultCodeDomVisitor;
+import astava.tree.DefaultExpressionDomVisitor;
+import astava.tree.ExpressionDom;
+import astava.tree.Util;
+import org.junit.Test;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static astava.java.DomFactory.*;
+import static org.junit.Assert.*;
+
+public class BodyNodePatternIndexTest {
+    // Matches the int literal and captures its value
+    private static DeclaringClassNodeExtenderElementBodyNodePredicate literalPattern(int value, AtomicInteger tests) {
+        return new DeclaringClassNodeExtenderElementBodyNodePredicate() {
+            @Override
+            public List<Object> getKey() {
+                return CodeDomPatternKey.of(CodeDomPatternKey.INT_LITERAL, value);
+            }
+
+            @Override
+            public boolean test(ClassNode classNode, MutableClassDeclaration thisClass, ClassResolver classResolver, MethodNode methodNode, CodeDom dom, Map<String, Object> captures) {
+                tests.incrementAndGet();
+                Integer literal = Util.returnFrom(null, r -> dom.accept(new DefaultCodeDomVisitor() {
+                    @Override
+                    public void visitExpression(ExpressionDom expressionDom) {
+                        expressionDom.accept(new DefaultExpressionDomVisitor() {
+                            @Override
+                            public void visitIntLiteral(int v) {
+                                r.accept(v);
+                            }
+                        });
+                    }
+                }));
+                if(literal == null || literal != value)
+                    return false;
+                captures.put("value", literal);
+                return true;
+            }
+        };
+    }
+
+    // Replaces the match by the captured value times the factor
+    private static DeclaringBodyNodeExtenderElement scaleBy(int factor, List<Map<String, Object>> seenCaptures) {
+        return (classNode, thisClass, classResolver, methodNode, dom, captures) -> {
+            synchronized (seenCaptures) {
+                seenCaptures.add(captures);
+            }
+            return literal((Integer)captures.get("value") * factor);
+        };
+    }
+
+    private static String print(CodeDom dom) {
+        StringBuilder out = new StringBuilder();
+        try {
+            CodeDomPrinter.print(dom, out);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return out.toString();
+    }
+
+    // Body traversal descends through blocks and branches, so the literals are put in conditions
+    private static CodeDom body(int first, int second) {
+        return block(Arrays.asList(
+            ifElse(literal(first), ret(), ret()),
+            ifElse(literal(second), ret(), ret())
+        ));
+    }
+
+    @Test
+    public void testChainedBodyPatternsShareOneIndex() {
+        AtomicInteger tests = new AtomicInteger();
+        List<Map<String, Object>> seenCaptures = new ArrayList<>();
+
+        DeclaringMethodNodeExtenderElement element = literalPattern(1, tests).then(scaleBy(10, seenCaptures))
+            .andThen(literalPattern(2, tests).then(scaleBy(100, seenCaptures)));
+
+        assertTrue(element instanceof BodyNodePatternIndex);
+        CodeDom mapped = ((BodyNodePatternIndex)element).map(null, null, null, null, body(1, 2));
+
+        assertEquals(print(body(10, 200)), print(mapped));
+        // Each literal is only tested by the pattern keyed by its value
+        assertEquals(2, tests.get());
+    }
+
+    @Test
+    public void testCapturesAreFreshPerMatch() throws Exception {
+        List<Map<String, Object>> seenCaptures = new ArrayList<>();
+        BodyNodePatternIndex index = new BodyNodePatternIndex()
+            .add(literalPattern(1, new AtomicInteger()), scaleBy(10, seenCaptures))
+            .add(literalPattern(2, new AtomicInteger()), scaleBy(100, seenCaptures));
+
+        index.map(null, null, null, null, body(1, 2));
+        assertEquals(2, seenCaptures.size());
+        assertNotSame(seenCaptures.get(0), seenCaptures.get(1));
+
+        // The same index mapping bodies on several threads at once
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for(int i = 0; i < 200; i++) {
+                int lhs = i % 2 == 0 ? 1 : 2;
+                results.add(executor.submit(() -> print(index.map(null, null, null, null, body(lhs, lhs)))));
+            }
+            for(int i = 0; i < results.size(); i++) {
+                int expected = i % 2 == 0 ? 10 : 200;
+                assertEquals(print(body(expected, expected)), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+}
@@ -0,0 +1,172 @@
+package astava.java.agent;
+
+import astava.java.Descriptor;
+import astava.java.Invocation;
+import astava.java.gen.SampleMethods.Sample;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static astava.java.DomFactory.*;
+import static astava.java.gen.SampleMethods.*;
+import static org.junit.Assert.*;
+
+public class InstructionSplicerTest {
+    public static int entries;
+    public static int exits;
+    public static int calls;
+
+    public static void enter() {
+        entries++;
+    }
+
+    public static void exit() {
+        exits++;
+    }
+
+    public static void call() {
+        calls++;
+    }
+
+    private static ClassNode readSampleNode() throws IOException {
+        // Like ClassLoaderExtender
+        return readClass(readSample(), ClassReader.EXPAND_FRAMES);
+    }
+
+    private static MethodNode getWork(ClassNode classNode) {
+        return getMethod(classNode, "work");
+    }
+
+    private static InsnList call(String name) {
+        InsnList instructions = new InsnList();
+        instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, Type.getInternalName(InstructionSplicerTest.class), name, "()V", false));
+        return instructions;
+    }
+
+    // Neither frames nor maxs are computed, so the spliced method must be valid as it is
+    private static int invokeWork(ClassNode classNode, int n) throws ReflectiveOperationException {
+        ClassWriter classWriter = new ClassWriter(0);
+        classNode.accept(classWriter);
+        byte[] bytes = classWriter.toByteArray();
+
+        Class<?> c = new ClassLoader(InstructionSplicerTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if(name.equals(Sample.class.getName()))
+                    return defineClass(name, bytes, 0, bytes.length);
+                return super.loadClass(name, resolve);
+            }
+        }.loadClass(Sample.class.getName());
+
+        Method work = c.getMethod("work", int.class);
+        return (int)work.invoke(null, n);
+    }
+
+    private static List<AbstractInsnNode> getInstructions(MethodNode methodNode) {
+        return new ArrayList<>(Arrays.asList(methodNode.instructions.toArray()));
+    }
+
+    @Test
+    public void testSplicedAtEntryAndBeforeReturns() throws IOException, ReflectiveOperationException {
+        ClassNode classNode = readSampleNode();
+        MethodNode work = getWork(classNode);
+        List<AbstractInsnNode> original = getInstructions(work);
+
+        InstructionSplicer.atEntry((cn, mn) -> call("enter")).transform(classNode, null, null, null, work);
+        InstructionSplicer.beforeReturns((cn, mn) -> call("exit")).transform(classNode, null, null, null, work);
+
+        List<AbstractInsnNode> spliced = getInstructions(work);
+        assertEquals(original.size() + 3, spliced.size());
+        // The original instructions, including the frames, are kept as they are
+        assertTrue(spliced.containsAll(original));
+
+        entries = 0;
+        exits = 0;
+        assertEquals(Sample.work(10), invokeWork(classNode, 10));
+        assertEquals(Sample.work(100), invokeWork(classNode, 100));
+        assertEquals(2, entries);
+        assertEquals(2, exits);
+    }
+
+    @Test
+    public void testSplicedAroundCalls() throws IOException, ReflectiveOperationException {
+        ClassNode classNode = readSampleNode();
+        MethodNode work = getWork(classNode);
+
+        InstructionSplicer.aroundCalls(x -> x.owner.equals("java/lang/Math") && x.name.equals("abs"), (cn, mn) -> call("call"), (cn, mn) -> call("call"))
+            .transform(classNode, null, null, null, work);
+
+        calls = 0;
+        assertEquals(Sample.work(10), invokeWork(classNode, 10));
+        assertEquals(20, calls);
+    }
+
+    @Test
+    public void testGeneratedStatementWithLocalsIsSpliced() throws IOException, ReflectiveOperationException {
+        ClassNode classNode = readSampleNode();
+        MethodNode work = getWork(classNode);
+
+        MethodNodeExtenderFactory.spliceAtEntry(block(Arrays.asList(
+            declareVar(Descriptor.INT, "x"),
+            assignVar("x", accessVar("arg0")),
+            invoke(Invocation.STATIC, Type.getInternalName(InstructionSplicerTest.class), "enter", "()V", null, Collections.emptyList())
+        ))).transform(classNode, null, null, null, work);
+
+        entries = 0;
+        assertEquals(Sample.work(10), invokeWork(classNode, 10));
+        assertEquals(1, entries);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBranchingSnippetIsRejected() throws IOException {
+        ClassNode classNode = readSampleNode();
+        MethodNode work = getWork(classNode);
+
+        InstructionSplicer.atEntry((cn, mn) -> {
+            InsnList instructions = new InsnList();
+            LabelNode label = new LabelNode();
+            instructions.add(new JumpInsnNode(Opcodes.GOTO, label));
+            instructions.add(label);
+            return instructions;
+        }).transform(classNode, null, null, null, work);
+    }
+
+    @Test
+    public void testCallsWithinSnippetsAreNotSplicedAround() throws IOException, ReflectiveOperationException {
+        ClassNode classNode = readSampleNode();
+        MethodNode work = getWork(classNode);
+
+        InstructionSplicer.aroundCalls(x -> x.owner.equals("java/lang/Math") && x.name.equals("abs"), (cn, mn) -> call("call"), null)
+            .transform(classNode, null, null, null, work);
+        // The snippet calls the very method around which it is spliced
+        InstructionSplicer.aroundCalls(x -> x.name.equals("call"), null, (cn, mn) -> call("call"))
+            .transform(classNode, null, null, null, work);
+
+        calls = 0;
+        assertEquals(Sample.work(10), invokeWork(classNode, 10));
+        assertEquals(20, calls);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSnippetLeavingValueOnStackIsRejected() throws IOException {
+        ClassNode classNode = readSampleNode();
+        MethodNode work = getWork(classNode);
+
+        InstructionSplicer.atEntry((cn, mn) -> {
+            InsnList instructions = new InsnList();
+            instructions.add(new InsnNode(Opcodes.ICONST_0));
+            return instructions;
+        }).transform(classNode, null, null, null, work);
+    }
+}
@@ -0,0 +1,18 @@
+package astava.java.agent.Parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ParserFactoryTest {
+    @Test
+    public void testSameSourceIsParsedOnce() throws IOException {
+        ParserFactory factory = new ParserFactory(null, null);
+
+        assertSame(factory.whenBody("x = 1;"), factory.whenBody("x = 1;"));
+        assertNotSame(factory.whenBody("x = 1;"), factory.whenBody("x = 2;"));
+        assertNotSame(factory.whenBody("x = 1;"), new ParserFactory(null, null).whenBody("x = 1;"));
+    }
+}
@@ -0,0 +1,44 @@
+package astava.java.gen;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static astava.java.gen.SampleMethods.*;
+import static org.junit.Assert.*;
+
+public class ByteCodeToTreeFallbackTest {
+    @Test
+    public void testUnsupportedMethodFallsBackToBytecode() throws IOException {
+        MethodNode methodNode = getMethod("withMonitor");
+
+        ByteCodeToTree byteCodeToTree = new ByteCodeToTree(methodNode);
+        methodNode.accept(byteCodeToTree);
+
+        assertFalse(byteCodeToTree.isSupported());
+        assertSame(methodNode, getRawMethod(ByteCodeToTree.decompile(methodNode)));
+    }
+
+    @Test
+    public void testClassDecompilerReportsFallback() throws IOException {
+        ArrayList<String> decompiled = new ArrayList<>();
+        ArrayList<String> fallenBack = new ArrayList<>();
+
+        ClassDecompiler.decompile(new ClassReader(readSample()), (className, access, name, descriptor, body, error) -> {
+            if(error != null) {
+                assertEquals(name, getRawMethod(body).name);
+                fallenBack.add(name);
+            } else {
+                assertNull(getRawMethod(body));
+                decompiled.add(name);
+            }
+        });
+
+        assertEquals(1, fallenBack.size());
+        assertEquals("withMonitor", fallenBack.get(0));
+        assertTrue(decompiled.contains("plain"));
+    }
+}
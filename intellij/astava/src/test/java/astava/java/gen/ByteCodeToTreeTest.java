@@ -2,13 +2,16 @@ package astava.java.gen;
 
 import astava.java.Descriptor;
 import astava.java.DomFactory;
+import astava.java.RelationalOperator;
 import astava.tree.StatementDom;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.LineNumberNode;
 import org.objectweb.asm.tree.MethodNode;
 
 import java.io.IOException;
@@ -48,6 +51,11 @@ public class ByteCodeToTreeTest {
             String preparedExpectedMethodName = "unpreparedExpectedTree";
 
             MethodNode methodNode = ((List<MethodNode>)classNode.methods).stream().filter(y -> y.name.equals(byteCodeMethodName)).findFirst().get();
+            // The expected trees are independent of where the test cases are in this file
+            for(AbstractInsnNode insn : methodNode.instructions.toArray()) {
+                if(insn instanceof LineNumberNode)
+                    methodNode.instructions.remove(insn);
+            }
 
             StatementDom unpreparedExpectedStatement = null;
             try {
@@ -719,6 +727,71 @@ public class ByteCodeToTreeTest {
                         DomFactory.ret()
                     );
                 }
+            },
+            new Object() {
+                public int byteCode(long l, long m) {
+                    if(l > m)
+                        return 1;
+                    return 0;
+                }
+
+                public StatementDom expectedTree() {
+                    return DomFactory.block(
+                        DomFactory.ifJump(DomFactory.gt(DomFactory.accessVar("l"), DomFactory.accessVar("m")), "L0"),
+                        DomFactory.ret(DomFactory.literal(1)),
+                        DomFactory.mark("L0"),
+                        DomFactory.ret(DomFactory.literal(0))
+                    );
+                }
+            },
+            new Object() {
+                public int byteCode(Object o) {
+                    if(o == null)
+                        return 1;
+                    return 0;
+                }
+
+                public StatementDom expectedTree() {
+                    return DomFactory.block(
+                        DomFactory.ifJump(DomFactory.objectEquality(DomFactory.accessVar("o"), DomFactory.nil(), RelationalOperator.EQ), "L0"),
+                        DomFactory.ret(DomFactory.literal(1)),
+                        DomFactory.mark("L0"),
+                        DomFactory.ret(DomFactory.literal(0))
+                    );
+                }
+            },
+            new Object() {
+                public int byteCode(int[] values, int i) {
+                    return values[i];
+                }
+
+                public StatementDom expectedTree() {
+                    return DomFactory.block(
+                        DomFactory.ret(DomFactory.arrayLoad(DomFactory.accessVar("values"), DomFactory.accessVar("i")))
+                    );
+                }
+            },
+            new Object() {
+                public int[] byteCode(int n) {
+                    return new int[n];
+                }
+
+                public StatementDom expectedTree() {
+                    return DomFactory.block(
+                        DomFactory.ret(DomFactory.newArray(Descriptor.INT, DomFactory.accessVar("n")))
+                    );
+                }
+            },
+            new Object() {
+                public String[][] byteCode() {
+                    return new String[2][];
+                }
+
+                public StatementDom expectedTree() {
+                    return DomFactory.block(
+                        DomFactory.ret(DomFactory.newArray(Descriptor.get(String[].class), DomFactory.literal(2)))
+                    );
+                }
             }
         ).stream().map(x -> load(x)).collect(Collectors.toList());
     }
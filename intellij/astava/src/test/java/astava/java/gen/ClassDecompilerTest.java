@@ -0,0 +1,59 @@
+package astava.java.gen;
+
+import astava.java.CodeDomPrinter;
+import astava.tree.StatementDom;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static astava.java.gen.SampleMethods.*;
+import static org.junit.Assert.*;
+
+public class ClassDecompilerTest {
+    private static String print(StatementDom body) throws IOException {
+        StringWriter writer = new StringWriter();
+        CodeDomPrinter.print(body, writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void testBodiesAreAsDecompiledFromMethodNodes() throws IOException {
+        byte[] bytes = readSample();
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<String> errors = new ArrayList<>();
+
+        ClassDecompiler.decompile(new ClassReader(bytes), (className, access, name, descriptor, body, error) -> {
+            assertEquals(Sample.class.getName(), className);
+
+            MethodNode methodNode = getMethod(bytes, name);
+            assertEquals(methodNode.desc, descriptor);
+            assertEquals(methodNode.access, access);
+
+            StatementDom expected = ByteCodeToTree.decompile(methodNode);
+            if(error != null) {
+                // Raw bodies are read anew, so they are compared by their instructions
+                errors.add(name);
+                assertEquals(getRawMethod(expected).instructions.size(), getRawMethod(body).instructions.size());
+            } else {
+                try {
+                    assertEquals(print(expected), print(body));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            names.add(name);
+        });
+
+        ClassNode classNode = readClass(bytes, ClassReader.SKIP_FRAMES);
+        List<String> expectedNames = ((List<MethodNode>)classNode.methods).stream().map(x -> x.name).collect(Collectors.toList());
+        assertEquals(expectedNames, names);
+        assertTrue(errors.contains("withMonitor"));
+    }
+}
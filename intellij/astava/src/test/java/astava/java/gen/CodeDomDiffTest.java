@@ -0,0 +1,63 @@
+package astava.java.gen;
+
+import astava.tree.CodeDomDiff;
+import astava.tree.MethodDom;
+import astava.tree.StatementDom;
+import org.junit.Test;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static astava.java.DomFactory.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CodeDomDiffTest {
+    @Test
+    public void testIdenticalTreesHaveNoEdits() {
+        StatementDom x = block(assignVar("x", literal(1)), ret(accessVar("x")));
+        StatementDom y = block(assignVar("x", literal(1)), ret(accessVar("x")));
+
+        assertTrue(CodeDomDiff.diff(x, y).isEmpty());
+    }
+
+    @Test
+    public void testInsertAndDelete() {
+        StatementDom x = block(assignVar("x", literal(1)), assignVar("y", literal(2)), ret(accessVar("x")));
+        StatementDom y = block(assignVar("x", literal(1)), ret(accessVar("x")), ret(accessVar("y")));
+
+        List<CodeDomDiff.Edit> edits = CodeDomDiff.diff(x, y);
+
+        assertEquals(2, edits.size());
+        assertEquals(y, CodeDomDiff.patch(x, edits));
+    }
+
+    @Test
+    public void testNestedReplace() {
+        StatementDom x = block(ifElse(literal(true), ret(literal(1)), ret(literal(2))), ret(literal(3)));
+        StatementDom y = block(ifElse(literal(true), ret(literal(1)), ret(literal(4))), ret(literal(3)));
+
+        List<CodeDomDiff.Edit> edits = CodeDomDiff.diff(x, y);
+
+        assertEquals(1, edits.size());
+        assertEquals(CodeDomDiff.Kind.REPLACE, edits.get(0).getKind());
+        assertEquals(Arrays.asList(0, 2), edits.get(0).getPath());
+        assertEquals(y, CodeDomDiff.patch(x, edits));
+    }
+
+    @Test
+    public void testChangedMethods() {
+        MethodDom unchanged = methodDeclaration(Modifier.PUBLIC, "a", Collections.emptyList(), "int", block(ret(literal(1))));
+        MethodDom changed = methodDeclaration(Modifier.PUBLIC, "b", Collections.emptyList(), "int", block(ret(literal(2))));
+
+        List<MethodDom> changedMethods = CodeDomDiff.changedMethods(
+            classDeclaration(Modifier.PUBLIC, "C", "java/lang/Object", Collections.emptyList(), Collections.emptyList(), Arrays.asList(
+                methodDeclaration(Modifier.PUBLIC, "a", Collections.emptyList(), "int", block(ret(literal(1)))),
+                methodDeclaration(Modifier.PUBLIC, "b", Collections.emptyList(), "int", block(ret(literal(1)))))),
+            classDeclaration(Modifier.PUBLIC, "C", "java/lang/Object", Collections.emptyList(), Collections.emptyList(), Arrays.asList(unchanged, changed)));
+
+        assertEquals(Arrays.asList(changed), changedMethods);
+    }
+}
@@ -0,0 +1,49 @@
+package astava.java.gen;
+
+import astava.java.CodeDomPrinter;
+import astava.tree.StatementDom;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static astava.java.DomFactory.*;
+import static org.junit.Assert.assertEquals;
+
+public class CodeDomPrinterTest {
+    @Test
+    public void testPrint() throws IOException {
+        StatementDom statement = block(
+            assignVar("x", add(literal(1), literal(2))),
+            ifElse(lt(accessVar("x"), literal(3)), ret(literal("a\"b")), ret(literal("c")))
+        );
+
+        StringWriter writer = new StringWriter();
+        CodeDomPrinter.print(statement, writer);
+
+        assertEquals(
+            "{\n" +
+            "    x = (1 + 2);\n" +
+            "    if((x < 3)) {\n" +
+            "        return \"a\\\"b\";\n" +
+            "    } else {\n" +
+            "        return \"c\";\n" +
+            "    }\n" +
+            "}\n", writer.toString());
+    }
+
+    @Test
+    public void testDepthTruncation() throws IOException {
+        StatementDom statement = block(
+            assignVar("x", add(literal(1), mul(literal(2), literal(3))))
+        );
+
+        StringWriter writer = new StringWriter();
+        CodeDomPrinter.print(statement, writer, 3);
+
+        assertEquals(
+            "{\n" +
+            "    x = (... + ...);\n" +
+            "}\n", writer.toString());
+    }
+}
@@ -0,0 +1,112 @@
+package astava.java.gen;
+
+import astava.java.CodeDomPrinter;
+import astava.tree.StatementDom;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static astava.java.DomFactory.*;
+import static org.junit.Assert.*;
+
+public class ControlFlowGraphTest {
+    @Test
+    public void testDominatorsAndLoops() {
+        Object head = new Object();
+        Object end = new Object();
+        List<StatementDom> statements = Arrays.asList(
+            assignVar("i", literal(0)),
+            mark(head),
+            ifJump(lt(accessVar("i"), literal(10)), end),
+            intIncVar("i", 1),
+            goTo(head),
+            mark(end),
+            ret()
+        );
+
+        ControlFlowGraph cfg = new ControlFlowGraph(statements);
+
+        assertEquals(4, cfg.getBlocks().size());
+        ControlFlowGraph.BasicBlock headBlock = cfg.getBlockAt(1);
+        ControlFlowGraph.BasicBlock bodyBlock = cfg.getBlockAt(3);
+        ControlFlowGraph.BasicBlock endBlock = cfg.getBlockAt(5);
+        assertSame(headBlock, cfg.getImmediateDominator(bodyBlock));
+        assertSame(headBlock, cfg.getImmediateDominator(endBlock));
+        assertFalse(cfg.dominates(bodyBlock, endBlock));
+
+        assertEquals(1, cfg.getLoops().size());
+        assertSame(headBlock, cfg.getLoops().get(0).getHeader());
+        assertEquals(2, cfg.getLoops().get(0).getBody().size());
+    }
+
+    @Test
+    public void testStructureIfElse() throws IOException {
+        Object ifFalse = new Object();
+        Object end = new Object();
+        List<StatementDom> statements = Arrays.asList(
+            ifJump(accessVar("b"), ifFalse),
+            assignVar("x", literal(1)),
+            goTo(end),
+            mark(ifFalse),
+            assignVar("x", literal(2)),
+            mark(end),
+            ret(accessVar("x"))
+        );
+
+        StringWriter writer = new StringWriter();
+        CodeDomPrinter.print(new ControlFlowStructurer(statements).structure(), writer);
+
+        assertEquals(
+            "{\n" +
+            "    if(b) {\n" +
+            "        x = 1;\n" +
+            "    } else {\n" +
+            "        x = 2;\n" +
+            "    }\n" +
+            "    return x;\n" +
+            "}\n", writer.toString());
+    }
+
+    @Test
+    public void testStructureSwitch() throws IOException {
+        Object case1 = new Object();
+        Object case2 = new Object();
+        Object dflt = new Object();
+        Object end = new Object();
+        List<StatementDom> statements = Arrays.asList(
+            select(accessVar("k"), dflt, new int[]{1, 2}, new Object[]{case1, case2}),
+            mark(case1),
+            assignVar("x", literal(1)),
+            goTo(end),
+            mark(case2),
+            assignVar("x", literal(2)),
+            mark(dflt),
+            assignVar("x", literal(3)),
+            mark(end),
+            ret(accessVar("x"))
+        );
+
+        StringWriter writer = new StringWriter();
+        CodeDomPrinter.print(new ControlFlowStructurer(statements).structure(), writer);
+
+        assertEquals(
+            "{\n" +
+            "    switch(k) {\n" +
+            "        case 1: {\n" +
+            "            x = 1;\n" +
+            "            break;\n" +
+            "        }\n" +
+            "        case 2: {\n" +
+            "            x = 2;\n" +
+            "        }\n" +
+            "        default: {\n" +
+            "            x = 3;\n" +
+            "        }\n" +
+            "    }\n" +
+            "    return x;\n" +
+            "}\n", writer.toString());
+    }
+}
@@ -0,0 +1,102 @@
+package astava.java.gen;
+
+import astava.java.CodeDomPrinter;
+import astava.tree.StatementDom;
+import org.junit.Test;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static astava.java.gen.SampleMethods.*;
+import static org.junit.Assert.*;
+
+public class DecompileCacheTest {
+    private static String print(StatementDom body) throws IOException {
+        StringWriter writer = new StringWriter();
+        CodeDomPrinter.print(body, writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void testMemoryHit() throws IOException {
+        DecompileCache cache = new DecompileCache(1000);
+
+        StatementDom body = cache.decompile(getMethod("loop"));
+        assertSame(body, cache.decompile(getMethod("loop")));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getMemoryHits());
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        MethodNode methodNode = getMethod("loop");
+        DecompileCache cache = new DecompileCache(methodNode.instructions.size() - 1);
+
+        cache.decompile(methodNode);
+        cache.decompile(methodNode);
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testDiskHit() throws IOException {
+        Path directory = Files.createTempDirectory("decompile-cache");
+        try {
+            StatementDom body = new DecompileCache(1000, directory).decompile(getMethod("loop"));
+
+            DecompileCache cache = new DecompileCache(1000, directory);
+            StatementDom reloaded = cache.decompile(getMethod("loop"));
+            assertEquals(1, cache.getDiskHits());
+            assertEquals(0, cache.getMisses());
+            assertEquals(print(body), print(reloaded));
+        } finally {
+            Files.walk(directory).sorted((x, y) -> y.compareTo(x)).forEach(x -> x.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRawBodyIsNotShared() throws IOException {
+        Path directory = Files.createTempDirectory("decompile-cache");
+        try {
+            new DecompileCache(1000, directory).decompile(getMethod("withMonitor"));
+
+            DecompileCache cache = new DecompileCache(1000, directory);
+            MethodNode methodNode = getMethod("withMonitor");
+            assertSame(methodNode, getRawMethod(cache.decompile(methodNode)));
+            assertEquals(1, cache.getDiskHits());
+
+            MethodNode otherMethodNode = getMethod("withMonitor");
+            assertSame(otherMethodNode, getRawMethod(cache.decompile(otherMethodNode)));
+            assertEquals(1, cache.getMemoryHits());
+        } finally {
+            Files.walk(directory).sorted((x, y) -> y.compareTo(x)).forEach(x -> x.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testOptimizedBodies() throws IOException {
+        MethodNode methodNode = getMethod("constants");
+        ByteCodeToTree byteCodeToTree = new ByteCodeToTree(methodNode);
+        methodNode.accept(byteCodeToTree);
+        String optimized = print(byteCodeToTree.getOptimizedBlock());
+        assertNotEquals(print(byteCodeToTree.getStructuredBlock()), optimized);
+
+        // Agents transform the bodies of the default cache
+        assertEquals(optimized, print(DecompileCache.getDefault().decompile(getMethod("constants"))));
+
+        Path directory = Files.createTempDirectory("decompile-cache");
+        try {
+            new DecompileCache(1000, directory).decompile(getMethod("constants"));
+
+            DecompileCache cache = new DecompileCache(1000, directory, true);
+            assertEquals(optimized, print(cache.decompile(getMethod("constants"))));
+            assertEquals(0, cache.getDiskHits());
+            assertEquals(1, cache.getMisses());
+        } finally {
+            Files.walk(directory).sorted((x, y) -> y.compareTo(x)).forEach(x -> x.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package astava.java.gen;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static astava.java.gen.SampleMethods.*;
+import static org.junit.Assert.*;
+
+public class JarDecompilerTest {
+    private Path jarPath;
+
+    @Before
+    public void createJarPath() throws IOException {
+        jarPath = Files.createTempFile("jar-decompiler", ".jar");
+    }
+
+    @After
+    public void deleteJar() throws IOException {
+        Files.delete(jarPath);
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, byte[] bytes, boolean stored) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if(stored) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    // The sample class stored and deflated, and as many resources as given
+    private void writeJar(int resourceCount) throws IOException {
+        byte[] sample = readSample();
+        try(OutputStream file = Files.newOutputStream(jarPath); ZipOutputStream out = new ZipOutputStream(file)) {
+            putEntry(out, "stored/Sample.class", sample, true);
+            putEntry(out, "deflated/Sample.class", sample, false);
+            putEntry(out, "broken/Broken.class", new byte[]{1, 2, 3}, false);
+            for(int i = 0; i < resourceCount; i++)
+                putEntry(out, "resources/" + i + ".txt", new byte[0], true);
+        }
+    }
+
+    private static List<String> getSampleMethodNames() throws IOException {
+        return ((List<MethodNode>)readClass(readSample(), ClassReader.SKIP_FRAMES).methods).stream()
+            .map(x -> x.name).sorted().collect(Collectors.toList());
+    }
+
+    private static List<String> getMethodNames(List<JarDecompiler.Result> results, String className) {
+        return results.stream().filter(x -> x.getClassName().equals(className))
+            .map(x -> x.getMethodName()).sorted().collect(Collectors.toList());
+    }
+
+    private static long countWorkerThreads() {
+        Set<Thread> threads = Thread.getAllStackTraces().keySet();
+        return threads.stream().filter(x -> x.getName().startsWith(JarDecompiler.THREAD_NAME_PREFIX) && x.isAlive()).count();
+    }
+
+    @Test
+    public void testAllMethodsAreDecompiled() throws IOException, InterruptedException {
+        writeJar(0);
+
+        ArrayList<JarDecompiler.Result> results = new ArrayList<>();
+        JarDecompiler.Statistics statistics = new JarDecompiler(jarPath).withParallelism(2).decompile(results::add);
+
+        assertEquals(3, statistics.getClassCount());
+        assertEquals(getSampleMethodNames(), getMethodNames(results, "stored.Sample"));
+        assertEquals(getSampleMethodNames(), getMethodNames(results, "deflated.Sample"));
+
+        List<JarDecompiler.Result> broken = results.stream().filter(x -> x.getClassName().equals("broken.Broken")).collect(Collectors.toList());
+        assertEquals(1, broken.size());
+        assertNull(broken.get(0).getMethodName());
+        assertNotNull(broken.get(0).getError());
+    }
+
+    @Test
+    public void testZip64() throws IOException, InterruptedException {
+        // More entries than a plain end of central directory record can count
+        writeJar(0x10000);
+
+        ArrayList<JarDecompiler.Result> results = new ArrayList<>();
+        JarDecompiler.Statistics statistics = new JarDecompiler(jarPath).decompile(results::add);
+
+        assertEquals(3, statistics.getClassCount());
+        assertEquals(getSampleMethodNames(), getMethodNames(results, "stored.Sample"));
+    }
+
+    @Test
+    public void testSlowConsumerDoesNotAddThreads() throws IOException, InterruptedException {
+        writeJar(0);
+        int parallelism = 2;
+        long[] maxWorkerThreads = new long[1];
+
+        JarDecompiler.Statistics statistics = new JarDecompiler(jarPath).withParallelism(parallelism).withQueueCapacity(1).decompile(result -> {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            maxWorkerThreads[0] = Math.max(maxWorkerThreads[0], countWorkerThreads());
+        });
+
+        // The broken class gives one result as well
+        assertEquals(2 * getSampleMethodNames().size() + 1, statistics.getMethodCount());
+        assertTrue(maxWorkerThreads[0] > 0);
+        assertTrue(maxWorkerThreads[0] <= parallelism);
+    }
+}
@@ -0,0 +1,86 @@
+package astava.java.gen;
+
+import astava.java.Descriptor;
+import astava.tree.StatementDom;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static astava.java.DomFactory.*;
+import static astava.java.gen.SampleMethods.*;
+import static org.junit.Assert.*;
+
+public class LineNumberTest {
+    private static Set<Integer> getLines(MethodNode methodNode) {
+        TreeSet<Integer> lines = new TreeSet<>();
+        for(AbstractInsnNode insn = methodNode.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if(insn instanceof LineNumberNode)
+                lines.add(((LineNumberNode)insn).line);
+        }
+        return lines;
+    }
+
+    private static List<String> getLocalVariables(MethodNode methodNode) {
+        return ((List<LocalVariableNode>)methodNode.localVariables).stream()
+            .map(x -> x.name + " " + x.desc).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testRegeneratedMethodKeepsLinesAndVariables() throws IOException {
+        byte[] original = readSample();
+        MethodNode originalMethod = getMethod(original, "sum");
+        MethodNode regeneratedMethod = getMethod(RoundTripHarness.regenerate(original), "sum");
+
+        assertFalse(getLines(originalMethod).isEmpty());
+        assertEquals(getLines(originalMethod), getLines(regeneratedMethod));
+        assertEquals(getLocalVariables(originalMethod), getLocalVariables(regeneratedMethod));
+    }
+
+    @Test
+    public void testVariablesSharingSlotAreToldApart() throws IOException {
+        byte[] original = readSample();
+
+        RoundTripHarness.Report report = RoundTripHarness.roundTrip(Collections.singletonList(original));
+        assertEquals(Collections.emptyList(), report.getFailures());
+
+        MethodNode regeneratedMethod = getMethod(RoundTripHarness.regenerate(original), "slots");
+        assertEquals(Arrays.asList("i I", "n I", "s Ljava/lang/String;"), getLocalVariables(regeneratedMethod));
+    }
+
+    @Test
+    public void testInsertedCodeIsAttributedToFirstLine() {
+        StatementDom body = block(Arrays.asList(
+            declareVar(Descriptor.INT, "inserted"),
+            assignVar("inserted", literal(1)),
+            block(Arrays.asList(
+                lineNumber(20),
+                declareVar(Descriptor.INT, "a"),
+                assignVar("a", literal(2)),
+                lineNumber(21),
+                ret(add(accessVar("a"), accessVar("inserted")))
+            ))
+        ));
+
+        MethodNode methodNode = new MethodNode(Opcodes.ASM5, Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m", "()I", null, null);
+        new MethodGenerator("Sample", Collections.emptyList(), body).generate(methodNode);
+
+        AbstractInsnNode first = methodNode.instructions.getFirst();
+        while(first.getOpcode() == -1 && !(first instanceof LineNumberNode))
+            first = first.getNext();
+        assertTrue(first instanceof LineNumberNode);
+        assertEquals(20, ((LineNumberNode)first).line);
+        assertEquals(new TreeSet<>(Arrays.asList(20, 21)), getLines(methodNode));
+        assertEquals(Arrays.asList("a I", "inserted I"), getLocalVariables(methodNode));
+    }
+}
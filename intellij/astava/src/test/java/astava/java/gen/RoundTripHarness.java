@@ -0,0 +1,458 @@
+package astava.java.gen;
+
+import astava.tree.ParameterInfo;
+import astava.tree.StatementDom;
+import astava.tree.StatementDomVisitor;
+import astava.tree.Util;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.CodeSizeEvaluator;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.ParameterNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicVerifier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Round-trips methods through ByteCodeToTree and MethodGenerator. Each regenerated method is verified and its code size
+// and max stack are compared to those of the original; kernels, i.e. public static long methods taking an int, can
+// be timed in both forms. Run without arguments to round-trip the java.util classes of the running JDK, or pass jars.
+public class RoundTripHarness {
+    // Results of timed kernels are accumulated here, such that the JIT cannot drop the invocations
+    private static volatile long blackhole;
+
+    public static class MethodResult {
+        private final String className;
+        private final String methodName;
+        private final String methodDescriptor;
+        private final boolean raw;
+        private final int originalSize;
+        private final int regeneratedSize;
+        private final int originalMaxStack;
+        private final int regeneratedMaxStack;
+        private final Throwable error;
+
+        public MethodResult(String className, String methodName, String methodDescriptor, boolean raw, int originalSize, int regeneratedSize, int originalMaxStack, int regeneratedMaxStack, Throwable error) {
+            this.className = className;
+            this.methodName = methodName;
+            this.methodDescriptor = methodDescriptor;
+            this.raw = raw;
+            this.originalSize = originalSize;
+            this.regeneratedSize = regeneratedSize;
+            this.originalMaxStack = originalMaxStack;
+            this.regeneratedMaxStack = regeneratedMaxStack;
+            this.error = error;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public String getMethodDescriptor() {
+            return methodDescriptor;
+        }
+
+        // Whether the method fell back to its raw bytecode, such that it was copied rather than regenerated
+        public boolean isRaw() {
+            return raw;
+        }
+
+        public int getOriginalSize() {
+            return originalSize;
+        }
+
+        public int getRegeneratedSize() {
+            return regeneratedSize;
+        }
+
+        public int getOriginalMaxStack() {
+            return originalMaxStack;
+        }
+
+        public int getRegeneratedMaxStack() {
+            return regeneratedMaxStack;
+        }
+
+        // Why regeneration or verification failed; null if the regenerated method verified
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            String method = className + "." + methodName + methodDescriptor;
+            if(error != null)
+                return method + ": " + error;
+            return String.format("%s: size %d -> %d, max stack %d -> %d%s",
+                method, originalSize, regeneratedSize, originalMaxStack, regeneratedMaxStack, raw ? " (raw)" : "");
+        }
+    }
+
+    public static class Report {
+        private final List<MethodResult> results;
+
+        public Report(List<MethodResult> results) {
+            this.results = results;
+        }
+
+        public List<MethodResult> getResults() {
+            return results;
+        }
+
+        public List<MethodResult> getFailures() {
+            return results.stream().filter(x -> x.getError() != null).collect(Collectors.toList());
+        }
+
+        private Stream<MethodResult> regenerated() {
+            return results.stream().filter(x -> x.getError() == null && !x.isRaw());
+        }
+
+        @Override
+        public String toString() {
+            long regeneratedCount = regenerated().count();
+            long rawCount = results.stream().filter(x -> x.getError() == null && x.isRaw()).count();
+            long originalSize = regenerated().mapToLong(MethodResult::getOriginalSize).sum();
+            long regeneratedSize = regenerated().mapToLong(MethodResult::getRegeneratedSize).sum();
+            long largerStack = regenerated().filter(x -> x.getRegeneratedMaxStack() > x.getOriginalMaxStack()).count();
+
+            return String.format("%d methods: %d regenerated, %d raw, %d failed; code size %d -> %d bytes (%+.1f%%); max stack grew in %d methods",
+                results.size(), regeneratedCount, rawCount, getFailures().size(), originalSize, regeneratedSize,
+                originalSize > 0 ? (regeneratedSize - originalSize) * 100.0 / originalSize : 0, largerStack);
+        }
+    }
+
+    public static class Timing {
+        private final String kernel;
+        private final double originalNanos;
+        private final double regeneratedNanos;
+
+        public Timing(String kernel, double originalNanos, double regeneratedNanos) {
+            this.kernel = kernel;
+            this.originalNanos = originalNanos;
+            this.regeneratedNanos = regeneratedNanos;
+        }
+
+        public String getKernel() {
+            return kernel;
+        }
+
+        // Average time per invocation
+        public double getOriginalNanos() {
+            return originalNanos;
+        }
+
+        public double getRegeneratedNanos() {
+            return regeneratedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.1f ns -> %.1f ns (%.2fx)", kernel, originalNanos, regeneratedNanos, regeneratedNanos / originalNanos);
+        }
+    }
+
+    public static Report roundTrip(Iterable<byte[]> classes) {
+        ArrayList<MethodResult> results = new ArrayList<>();
+
+        for (byte[] bytes : classes) {
+            ClassNode classNode = new ClassNode(Opcodes.ASM5);
+            new ClassReader(asSupportedVersion(bytes)).accept(classNode, ClassReader.SKIP_FRAMES);
+
+            for (Object method : classNode.methods) {
+                MethodNode methodNode = (MethodNode)method;
+                if((methodNode.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0)
+                    results.add(roundTrip(classNode.name, methodNode));
+            }
+        }
+
+        return new Report(results);
+    }
+
+    public static MethodResult roundTrip(String className, MethodNode methodNode) {
+        String name = className.replace('/', '.');
+        int originalSize = getCodeSize(methodNode);
+
+        try {
+            StatementDom body = ByteCodeToTree.decompile(methodNode);
+            MethodNode regenerated = computeMaxs(regenerate(className, methodNode, body));
+            new Analyzer(new BasicVerifier()).analyze(className, regenerated);
+
+            return new MethodResult(name, methodNode.name, methodNode.desc, isRaw(body), originalSize, getCodeSize(regenerated),
+                methodNode.maxStack, regenerated.maxStack, null);
+        } catch (AnalyzerException | RuntimeException e) {
+            return new MethodResult(name, methodNode.name, methodNode.desc, false, originalSize, -1, methodNode.maxStack, -1, e);
+        }
+    }
+
+    // Replaces the bodies of all methods of the class with their round-tripped counterparts
+    public static byte[] regenerate(byte[] bytes) {
+        ClassNode classNode = new ClassNode(Opcodes.ASM5);
+        new ClassReader(asSupportedVersion(bytes)).accept(classNode, ClassReader.SKIP_FRAMES);
+
+        ArrayList<MethodNode> methods = new ArrayList<>();
+        for (Object method : classNode.methods) {
+            MethodNode methodNode = (MethodNode)method;
+            if((methodNode.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0)
+                methods.add(regenerate(classNode.name, methodNode, ByteCodeToTree.decompile(methodNode)));
+            else
+                methods.add(methodNode);
+        }
+        classNode.methods = methods;
+
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        classNode.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+
+    // Times the kernel as compiled and as round-tripped, each loaded in a class loader of its own; both forms must
+    // return the same result
+    public static Timing measure(Class<?> kernelClass, String name, int argument, int warmupIterations, int iterations) throws IOException {
+        byte[] original = readClass(kernelClass);
+        Method originalKernel = getKernel(load(kernelClass.getName(), original), name);
+        Method regeneratedKernel = getKernel(load(kernelClass.getName(), regenerate(original)), name);
+
+        long originalResult = invoke(originalKernel, argument);
+        long regeneratedResult = invoke(regeneratedKernel, argument);
+        if(originalResult != regeneratedResult)
+            throw new IllegalStateException("Kernel " + name + "(" + argument + ") returned " + regeneratedResult + " rather than " + originalResult + " when round-tripped.");
+
+        // Alternate the forms, such that both are compiled by the JIT before being measured
+        for(int i = 0; i < warmupIterations; i++) {
+            invoke(originalKernel, argument);
+            invoke(regeneratedKernel, argument);
+        }
+
+        return new Timing(kernelClass.getSimpleName() + "." + name + "(" + argument + ")",
+            time(originalKernel, argument, iterations), time(regeneratedKernel, argument, iterations));
+    }
+
+    private static double time(Method kernel, int argument, int iterations) {
+        long sink = 0;
+        long start = System.nanoTime();
+        for(int i = 0; i < iterations; i++)
+            sink += invoke(kernel, argument);
+        long elapsed = System.nanoTime() - start;
+        blackhole += sink;
+        return (double)elapsed / iterations;
+    }
+
+    private static long invoke(Method kernel, int argument) {
+        try {
+            return (long)kernel.invoke(null, argument);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static Method getKernel(Class<?> c, String name) {
+        try {
+            Method kernel = c.getMethod(name, int.class);
+            if(kernel.getReturnType() != long.class)
+                throw new IllegalArgumentException("Kernel " + name + " must return long.");
+            return kernel;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No kernel " + name + "(int) in " + c.getName() + ".", e);
+        }
+    }
+
+    private static Class<?> load(String name, byte[] bytes) {
+        return new ClassLoader(RoundTripHarness.class.getClassLoader()) {
+            private Class<?> define() {
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        }.define();
+    }
+
+    private static byte[] readClass(Class<?> c) throws IOException {
+        try(InputStream input = c.getClassLoader().getResourceAsStream(c.getName().replace('.', '/') + ".class")) {
+            return readAll(input);
+        }
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while((read = input.read(buffer)) != -1)
+            bytes.write(buffer, 0, read);
+        return bytes.toByteArray();
+    }
+
+    private static MethodNode regenerate(String className, MethodNode methodNode, StatementDom body) {
+        Type[] argumentTypes = Type.getArgumentTypes(methodNode.desc);
+        List<ParameterInfo> parameters = IntStream.range(0, argumentTypes.length).mapToObj(i -> new ParameterInfo(
+            argumentTypes[i].getDescriptor(),
+            methodNode.parameters != null ? ((ParameterNode)methodNode.parameters.get(i)).name : "arg" + i
+        )).collect(Collectors.toList());
+
+        String[] exceptions = new String[methodNode.exceptions.size()];
+        for(int i = 0; i < exceptions.length; i++)
+            exceptions[i] = (String)methodNode.exceptions.get(i);
+
+        MethodNode regenerated = new MethodNode(Opcodes.ASM5, methodNode.access, methodNode.name, methodNode.desc, methodNode.signature, exceptions);
+        // Like a transformed method, the regenerated one takes the names of the parameters from the previous table
+        ArrayList<Object> localVariables = new ArrayList<>();
+        for (Object localVariable : methodNode.localVariables)
+            localVariables.add(localVariable);
+        regenerated.localVariables = localVariables;
+        new MethodGenerator(className, parameters, body).generate(regenerated);
+        return regenerated;
+    }
+
+    // The method as read back from a class file, with max stack and max locals computed by ASM
+    private static MethodNode computeMaxs(MethodNode methodNode) {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "x", null, "java/lang/Object", null);
+        methodNode.accept(classWriter);
+        classWriter.visitEnd();
+
+        ClassNode classNode = new ClassNode(Opcodes.ASM5);
+        new ClassReader(classWriter.toByteArray()).accept(classNode, ClassReader.SKIP_FRAMES);
+        return (MethodNode)classNode.methods.get(0);
+    }
+
+    private static int getCodeSize(MethodNode methodNode) {
+        CodeSizeEvaluator evaluator = new CodeSizeEvaluator(null);
+        methodNode.accept(evaluator);
+        return evaluator.getMaxSize();
+    }
+
+    private static boolean isRaw(StatementDom body) {
+        return Util.returnFrom(false, r -> body.accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitASM(MethodNode methodNode) {
+                r.accept(true);
+            }
+        }));
+    }
+
+    // ASM 5 refuses class files newer than Java 8, so newer classes are read as if they were Java 8 classes. This
+    // holds as long as they do not use newer constant pool entries, as is the case for java.util and simple kernels
+    private static byte[] asSupportedVersion(byte[] bytes) {
+        int major = ((bytes[6] & 0xFF) << 8) | (bytes[7] & 0xFF);
+        if(major <= Opcodes.V1_8)
+            return bytes;
+
+        byte[] copy = bytes.clone();
+        copy[6] = 0;
+        copy[7] = (byte)Opcodes.V1_8;
+        return copy;
+    }
+
+    private static List<byte[]> readJavaUtil() throws IOException {
+        ArrayList<byte[]> classes = new ArrayList<>();
+        Path rtJar = Paths.get(System.getProperty("java.home"), "lib", "rt.jar");
+
+        if(Files.exists(rtJar)) {
+            try(JarFile jar = new JarFile(rtJar.toFile())) {
+                for (JarEntry entry : java.util.Collections.list(jar.entries())) {
+                    if(entry.getName().matches("java/util/[^/]+\\.class")) {
+                        try(InputStream input = jar.getInputStream(entry)) {
+                            classes.add(readAll(input));
+                        }
+                    }
+                }
+            }
+        } else {
+            Path javaUtil = FileSystems.getFileSystem(URI.create("jrt:/")).getPath("modules", "java.base", "java", "util");
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(javaUtil, "*.class")) {
+                for (Path file : files)
+                    classes.add(Files.readAllBytes(file));
+            }
+        }
+
+        return classes;
+    }
+
+    private static List<byte[]> readJar(String path) throws IOException {
+        ArrayList<byte[]> classes = new ArrayList<>();
+        try(JarFile jar = new JarFile(path)) {
+            for (JarEntry entry : java.util.Collections.list(jar.entries())) {
+                if(entry.getName().endsWith(".class")) {
+                    try(InputStream input = jar.getInputStream(entry)) {
+                        classes.add(readAll(input));
+                    }
+                }
+            }
+        }
+        return classes;
+    }
+
+    public static class Kernels {
+        public static long sumOfSquares(int n) {
+            long sum = 0;
+            for(int i = 0; i < n; i++)
+                sum += (long)i * i;
+            return sum;
+        }
+
+        public static long collatzSteps(int n) {
+            long steps = 0;
+            for(int i = 1; i < n; i++) {
+                long x = i;
+                while(x != 1) {
+                    x = (x & 1) == 0 ? x / 2 : 3 * x + 1;
+                    steps++;
+                }
+            }
+            return steps;
+        }
+
+        public static long dispatch(int n) {
+            long result = 0;
+            for(int i = 0; i < n; i++) {
+                switch (i % 4) {
+                    case 0: result += i; break;
+                    case 1: result -= 3; break;
+                    case 2: result ^= i; break;
+                    default: result = result * 31 + 7;
+                }
+            }
+            return result;
+        }
+
+        public static long format(int n) {
+            long length = 0;
+            for(int i = 0; i < n; i++)
+                length += Integer.toString(i).concat(",").length();
+            return length;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<byte[]> classes = new ArrayList<>();
+        if(args.length == 0)
+            classes.addAll(readJavaUtil());
+        for (String arg : args)
+            classes.addAll(readJar(arg));
+
+        Report report = roundTrip(classes);
+        report.getFailures().stream().limit(20).forEach(System.out::println);
+        System.out.println(report);
+
+        for (String kernel : new String[]{"sumOfSquares", "collatzSteps", "dispatch", "format"})
+            System.out.println(measure(Kernels.class, kernel, 1000, 10000, 10000));
+    }
+}
@@ -0,0 +1,115 @@
+package astava.java.gen;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class RoundTripHarnessTest {
+    public static class Kernels {
+        public static long ternaries(int n) {
+            long sum = 0;
+            for(int i = 0; i < n; i++)
+                sum += (i & 1) == 0 ? i / 2 : 3 * i + 1;
+            return sum;
+        }
+
+        public static long conditions(int n) {
+            long count = 0;
+            for(int i = 0; i < n; i++) {
+                boolean even = i % 2 == 0;
+                if(even && i % 3 != 0)
+                    count++;
+            }
+            return count;
+        }
+
+        private static int checkPositive(int i) {
+            if(i % 5 == 0)
+                throw new IllegalArgumentException();
+            return i;
+        }
+
+        public static long tryCatchFinally(int n) {
+            long sum = 0;
+            long finallies = 0;
+            for(int i = 0; i < n; i++) {
+                try {
+                    sum += checkPositive(i);
+                } catch (IllegalArgumentException e) {
+                    sum -= 1;
+                } finally {
+                    finallies++;
+                }
+            }
+            return sum * 31 + finallies;
+        }
+
+        public static long arrays(int n) {
+            int[] squares = new int[n];
+            for(int i = 0; i < n; i++)
+                squares[i] = i * i;
+            long sum = 0;
+            for(int i = 0; i < squares.length; i++)
+                sum += squares[i];
+            String[] names = new String[2];
+            return names[1] == null ? sum : -1;
+        }
+
+        private static long finallies;
+
+        public static long tryFinallyReturn(int n) {
+            finallies = 0;
+            long sum = 0;
+            for(int i = 0; i < n; i++)
+                sum += returnThroughFinally(i);
+            return sum * 31 + finallies;
+        }
+
+        private static long returnThroughFinally(int i) {
+            try {
+                return checkPositive(i);
+            } catch (RuntimeException e) {
+                return -1;
+            } finally {
+                finallies++;
+            }
+        }
+    }
+
+    private static byte[] readKernels() throws IOException {
+        try(InputStream input = Kernels.class.getClassLoader().getResourceAsStream(Kernels.class.getName().replace('.', '/') + ".class")) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while((read = input.read(buffer)) != -1)
+                bytes.write(buffer, 0, read);
+            return bytes.toByteArray();
+        }
+    }
+
+    @Test
+    public void testRoundTripVerifies() throws IOException {
+        RoundTripHarness.Report report = RoundTripHarness.roundTrip(Collections.singletonList(readKernels()));
+
+        assertEquals(Collections.emptyList(), report.getFailures());
+        assertTrue(report.getResults().stream().anyMatch(x -> x.getMethodName().equals("ternaries") && !x.isRaw()));
+        assertTrue(report.getResults().stream().anyMatch(x -> x.getMethodName().equals("tryCatchFinally") && !x.isRaw()));
+        assertTrue(report.getResults().stream().anyMatch(x -> x.getMethodName().equals("returnThroughFinally") && !x.isRaw()));
+        assertTrue(report.getResults().stream().anyMatch(x -> x.getMethodName().equals("arrays") && !x.isRaw()));
+    }
+
+    @Test
+    public void testRegeneratedKernelsComputeTheSame() throws IOException {
+        // measure fails if the regenerated kernel returns another result than the original
+        RoundTripHarness.measure(Kernels.class, "ternaries", 100, 1, 1);
+        RoundTripHarness.measure(Kernels.class, "conditions", 100, 1, 1);
+        RoundTripHarness.measure(Kernels.class, "tryCatchFinally", 100, 1, 1);
+        RoundTripHarness.measure(Kernels.class, "tryFinallyReturn", 100, 1, 1);
+        RoundTripHarness.measure(Kernels.class, "arrays", 100, 1, 1);
+    }
+}
@@ -0,0 +1,68 @@
+package astava.java.gen;
+
+import astava.java.CodeDomPrinter;
+import astava.java.Descriptor;
+import astava.tree.StatementDom;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static astava.java.DomFactory.*;
+import static org.junit.Assert.assertEquals;
+
+public class SSAOptimizerTest {
+    @Test
+    public void testPhiAtLoopHeader() {
+        Object head = new Object();
+        Object end = new Object();
+        List<StatementDom> statements = Arrays.asList(
+            declareVar(Descriptor.INT, "i"),
+            assignVar("i", literal(0)),
+            mark(head),
+            ifJump(lt(accessVar("i"), literal(10)), end),
+            intIncVar("i", 1),
+            goTo(head),
+            mark(end),
+            ret(accessVar("i"))
+        );
+
+        SSAForm ssa = new SSAForm(statements);
+        ControlFlowGraph.BasicBlock headBlock = ssa.getControlFlowGraph().getBlockAt(2);
+
+        assertEquals(1, ssa.getPhis(headBlock).size());
+        SSAForm.Value phi = ssa.getPhis(headBlock).get(0);
+        assertEquals(Arrays.asList(ssa.getDefinition(1), ssa.getDefinition(4)), phi.getOperands());
+        assertEquals(phi, ssa.getReachingValue(7, "i"));
+        assertEquals(new HashSet<>(Arrays.asList(3, 4, 7)), new HashSet<>(phi.getUseStatements()));
+    }
+
+    @Test
+    public void testPropagationAndDeadStores() throws IOException {
+        List<StatementDom> statements = Arrays.asList(
+            declareVar(Descriptor.INT, "a"),
+            declareVar(Descriptor.INT, "b"),
+            declareVar(Descriptor.INT, "c"),
+            assignVar("a", literal(5)),
+            assignVar("b", accessVar("a")),
+            assignVar("c", add(accessVar("b"), accessVar("n"))),
+            assignVar("a", literal(6)),
+            ret(add(accessVar("c"), accessVar("b")))
+        );
+
+        StringWriter writer = new StringWriter();
+        CodeDomPrinter.print(block(SSAOptimizer.optimize(statements)), writer);
+
+        assertEquals(
+            "{\n" +
+            "    int a;\n" +
+            "    int b;\n" +
+            "    int c;\n" +
+            "    c = (5 + n);\n" +
+            "    return (c + 5);\n" +
+            "}\n", writer.toString());
+    }
+}
@@ -0,0 +1,111 @@
+package astava.java.gen;
+
+import astava.tree.StatementDom;
+import astava.tree.StatementDomVisitor;
+import astava.tree.Util;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.util.List;
+
+// Compiled methods shared by the tests which decompile, regenerate or splice bytecode, and helpers to read them
+public class SampleMethods {
+    public static class Sample {
+        public int loop(int n, String s) {
+            int sum = 0;
+            for(int i = 0; i < n; i++) {
+                switch (i) {
+                    case 0: sum += s.length(); break;
+                    case 3: sum -= 2; break;
+                    default: sum += i;
+                }
+            }
+            return sum > 10 ? sum : -sum;
+        }
+
+        // Monitors are not decompiled, so this method falls back to its raw bytecode
+        public int withMonitor(Object o) {
+            synchronized (o) {
+                return o.hashCode();
+            }
+        }
+
+        public int plain(int i) {
+            return i + 1;
+        }
+
+        public static int sum(int n) {
+            int total = 0;
+            for(int i = 0; i < n; i++) {
+                int square = i * i;
+                total += square;
+            }
+            return total;
+        }
+
+        // Variables of sibling blocks share slots
+        public static int slots(int n) {
+            {
+                int i = n * 2;
+                n += i;
+            }
+            {
+                String s = "x" + n;
+                return s.length();
+            }
+        }
+
+        // Constants and dead stores for SSAOptimizer
+        public static int constants(int n) {
+            int step = 2;
+            int scaled = n * step;
+            int unused = scaled + 1;
+            return scaled;
+        }
+
+        public static int work(int n) {
+            int sum = 0;
+            for(int i = 0; i < n; i++)
+                sum += Math.abs(i - 5);
+            if(sum > 100)
+                return 100;
+            return sum;
+        }
+    }
+
+    public static byte[] readSample() throws IOException {
+        return new ClassReader(Sample.class.getName()).b;
+    }
+
+    public static ClassNode readClass(byte[] bytes, int flags) {
+        ClassNode classNode = new ClassNode(Opcodes.ASM5);
+        new ClassReader(bytes).accept(classNode, flags);
+        return classNode;
+    }
+
+    public static MethodNode getMethod(ClassNode classNode, String name) {
+        return ((List<MethodNode>)classNode.methods).stream().filter(x -> x.name.equals(name)).findFirst().get();
+    }
+
+    public static MethodNode getMethod(byte[] bytes, String name) {
+        return getMethod(readClass(bytes, ClassReader.SKIP_FRAMES), name);
+    }
+
+    // A fresh node of the method of Sample, read without frames
+    public static MethodNode getMethod(String name) throws IOException {
+        return getMethod(readSample(), name);
+    }
+
+    // The method node of a body which fell back to raw bytecode; null if the body was decompiled
+    public static MethodNode getRawMethod(StatementDom body) {
+        return Util.returnFrom(null, r -> body.accept(new StatementDomVisitor.Default() {
+            @Override
+            public void visitASM(MethodNode methodNode) {
+                r.accept(methodNode);
+            }
+        }));
+    }
+}
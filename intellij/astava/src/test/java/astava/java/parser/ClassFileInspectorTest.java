@@ -0,0 +1,187 @@
+package astava.java.parser;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ClassFileInspectorTest {
+    public static boolean initialized;
+
+    public interface Named {
+        String getName();
+    }
+
+    public static abstract class Base implements Named {
+        protected static int instances;
+
+        public boolean isEmpty() {
+            return true;
+        }
+    }
+
+    public static class Sample extends Base implements Named, java.io.Serializable {
+        static {
+            initialized = true;
+        }
+
+        public int count;
+        private String[] names;
+
+        public Sample() { }
+
+        private Sample(int count) { }
+
+        @Override
+        public String getName() {
+            return names[0];
+        }
+
+        public static long[] sum(Object value, List<String> values, char c) {
+            return null;
+        }
+    }
+
+    private static List<String> getMembers(ClassDeclaration classDeclaration) {
+        return java.util.stream.Stream.concat(
+            classDeclaration.getFields().stream().map(x -> x.getModifier() + " " + x.getTypeName() + " " + x.getName()),
+            classDeclaration.getMethods().stream().map(x -> x.getModifier() + " " + x.getReturnTypeName() + " " + x.getName() +
+                x.getParameterTypes().stream().map(p -> p.descriptor).collect(Collectors.toList()))
+        ).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testDeclarationsAreDescribedAsByReflection() {
+        ClassLoader classLoader = ClassFileInspectorTest.class.getClassLoader();
+        ClassFileInspector classFileInspector = new ClassFileInspector(classLoader);
+
+        ClassDeclaration classFileDeclaration = classFileInspector.getClassDeclaration(Sample.class.getName());
+        assertFalse(initialized);
+
+        ClassDeclaration reflectionDeclaration = new DefaultClassInspector(classLoader).getClassDeclaration(Sample.class.getName());
+        assertEquals(reflectionDeclaration.getName(), classFileDeclaration.getName());
+        assertEquals(reflectionDeclaration.getModifiers(), classFileDeclaration.getModifiers());
+        assertEquals(reflectionDeclaration.getSuperName(), classFileDeclaration.getSuperName());
+        assertEquals(reflectionDeclaration.getInterfaces(), classFileDeclaration.getInterfaces());
+        assertEquals(reflectionDeclaration.isInterface(), classFileDeclaration.isInterface());
+        assertEquals(getMembers(reflectionDeclaration), getMembers(classFileDeclaration));
+
+        for(String name : Arrays.asList(Named.class.getName(), Base.class.getName(), "int")) {
+            ClassDeclaration expected = new DefaultClassInspector(classLoader).getClassDeclaration(name);
+            ClassDeclaration actual = classFileInspector.getClassDeclaration(name);
+            assertEquals(expected.getSuperName(), actual.getSuperName());
+            assertEquals(expected.isInterface(), actual.isInterface());
+            assertEquals(getMembers(expected), getMembers(actual));
+        }
+    }
+
+    @Test
+    public void testDeclarationsAreCached() {
+        ClassFileInspector classFileInspector = new ClassFileInspector(ClassFileInspectorTest.class.getClassLoader());
+
+        assertSame(classFileInspector.getClassDeclaration(Base.class.getName()), classFileInspector.getClassDeclaration(Base.class.getName()));
+        assertNull(classFileInspector.getClassDeclaration("a.b.Missing"));
+    }
+
+    @Test
+    public void testMethodsAreResolvedThroughSuperClasses() {
+        ClassFileInspector classFileInspector = new ClassFileInspector(ClassFileInspectorTest.class.getClassLoader());
+        ClassDeclaration sample = classFileInspector.getClassDeclaration(Sample.class.getName());
+
+        String declaringClass = Parser.resolveMethod(classFileInspector, sample, "isEmpty", Arrays.asList(), (c, m) -> c.getName());
+        assertEquals(Base.class.getName(), declaringClass);
+        assertFalse(initialized);
+    }
+
+    @Test
+    public void testArraysAreDescribedAsByReflection() {
+        ClassFileInspector classFileInspector = new ClassFileInspector(ClassFileInspectorTest.class.getClassLoader());
+
+        for(Class<?> arrayClass : Arrays.<Class<?>>asList(int[].class, String[][].class, Sample[].class)) {
+            ClassDeclaration declaration = classFileInspector.getClassDeclaration(arrayClass.getName());
+            assertEquals(arrayClass.getName(), declaration.getName());
+            assertEquals(arrayClass.getModifiers(), declaration.getModifiers());
+            assertEquals(arrayClass.getSuperclass().getName(), declaration.getSuperName());
+            assertEquals(Arrays.asList(arrayClass.getInterfaces()).stream().map(x -> x.getName()).collect(Collectors.toList()), declaration.getInterfaces());
+            assertTrue(declaration.getMethods().isEmpty());
+        }
+
+        assertNull(classFileInspector.getClassDeclaration("[La.b.Missing;"));
+    }
+
+    // Serves the class files of the test classes as of a newer Java version and loads no classes
+    private static class NewerClassFileLoader extends ClassLoader {
+        private final List<String> loadedNames = new ArrayList<>();
+
+        private NewerClassFileLoader() {
+            super(ClassFileInspectorTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            loadedNames.add(name);
+            return super.loadClass(name, resolve);
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            InputStream input = getParent().getResourceAsStream(name);
+            if(input == null || !name.startsWith(ClassFileInspectorTest.class.getName().replace('.', '/')))
+                return input;
+
+            try(InputStream classInput = input) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int length;
+                while((length = classInput.read(buffer)) != -1)
+                    output.write(buffer, 0, length);
+                byte[] classFile = output.toByteArray();
+                // Java 17
+                classFile[6] = 0;
+                classFile[7] = 61;
+                return new ByteArrayInputStream(classFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Test
+    public void testClassFilesNewerThanSupportedAreNotLoaded() {
+        NewerClassFileLoader classLoader = new NewerClassFileLoader();
+        ClassFileInspector classFileInspector = new ClassFileInspector(classLoader);
+        ClassFileInspector supportedInspector = new ClassFileInspector(ClassFileInspectorTest.class.getClassLoader());
+
+        for(String name : Arrays.asList(Sample.class.getName(), Named.class.getName(), Base.class.getName())) {
+            ClassDeclaration expected = supportedInspector.getClassDeclaration(name);
+            ClassDeclaration actual = classFileInspector.getClassDeclaration(name);
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getModifiers(), actual.getModifiers());
+            assertEquals(expected.getSuperName(), actual.getSuperName());
+            assertEquals(expected.getInterfaces(), actual.getInterfaces());
+            assertEquals(getMembers(expected), getMembers(actual));
+        }
+
+        assertEquals(Arrays.asList(), classLoader.loadedNames);
+        assertFalse(initialized);
+    }
+
+    @Test
+    public void testClassFilesNewerThanSupportedAreInspected() {
+        ClassFileInspector classFileInspector = new ClassFileInspector(ClassFileInspectorTest.class.getClassLoader());
+
+        // The class files of the running JDK may be newer than ASM can read
+        ClassDeclaration objectDeclaration = classFileInspector.getClassDeclaration("java.lang.Object");
+        assertNotNull(objectDeclaration);
+        assertTrue(objectDeclaration.getMethods().stream().anyMatch(x -> x.getName().equals("hashCode")));
+    }
+}
@@ -0,0 +1,109 @@
+package astava.java.parser;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class CompilationDriverTest {
+    private static CompilationDriver newDriver() {
+        ClassLoader classLoader = CompilationDriverTest.class.getClassLoader();
+        return new CompilationDriver(new DefaultClassResolver(classLoader, Collections.emptyMap()), new DefaultClassInspector(classLoader));
+    }
+
+    @Test
+    public void testClassesReferToEachOtherAcrossSources() throws ReflectiveOperationException {
+        List<String> sources = Arrays.asList(
+            "public class Tally implements java.io.Serializable { public int next(Weight weight, int count) { return weight.apply(count); } }",
+            "public class Weight implements java.io.Serializable { public int apply(int count) { return 7; } }",
+            "public class Unused implements java.io.Serializable { public Tally tally; }"
+        );
+
+        CompilationDriver.Result result = newDriver().withParallelism(3).compileSources(sources);
+
+        assertEquals(3, result.getClassBytes().size());
+        assertEquals(result.getClassDeclarations().keySet(), result.getClassDoms().keySet());
+
+        ClassLoader classLoader = result.newClassLoader(CompilationDriverTest.class.getClassLoader());
+        Class<?> tallyClass = classLoader.loadClass("Tally");
+        Class<?> weightClass = classLoader.loadClass("Weight");
+        Object tally = tallyClass.newInstance();
+        Object value = tallyClass.getMethod("next", weightClass, int.class).invoke(tally, weightClass.newInstance(), 1);
+        assertEquals(7, value);
+    }
+
+    @Test
+    public void testDiagnosticsOfAllSourcesAreCollected() throws ReflectiveOperationException {
+        List<String> sources = Arrays.asList(
+            "public class Broken implements java.io.Serializable {\n    public int next() { return 1 + ; }\n}",
+            "public class Lost implements java.io.Serializable {\n    public int next() {\n        return 1;\n    }\n    public int other() {\n        Missing missing = null;\n        return 2;\n    }\n}",
+            "public class Fine implements java.io.Serializable { public int next() { return 3; } }"
+        );
+
+        CompilationDriver.Result result = newDriver().withParallelism(3).compileSources(sources);
+
+        assertTrue(result.hasErrors());
+        assertEquals(2, result.getDiagnostics().size());
+
+        Diagnostic syntaxError = result.getDiagnostics().get(0);
+        assertEquals(Diagnostic.Kind.SYNTAX, syntaxError.getKind());
+        assertEquals("source 0", syntaxError.getSource());
+        assertEquals(2, syntaxError.getLine());
+
+        Diagnostic resolutionError = result.getDiagnostics().get(1);
+        assertEquals(Diagnostic.Kind.RESOLUTION, resolutionError.getKind());
+        assertEquals("source 1", resolutionError.getSource());
+        assertEquals(6, resolutionError.getLine());
+        assertEquals(8, resolutionError.getColumn());
+        assertTrue(resolutionError.getMessage().contains("Missing"));
+
+        // Classes with errors are left out, while the others are generated
+        assertEquals(Collections.singleton("Fine"), result.getClassBytes().keySet());
+        Class<?> fineClass = result.newClassLoader(CompilationDriverTest.class.getClassLoader()).loadClass("Fine");
+        assertEquals(3, fineClass.getMethod("next").invoke(fineClass.newInstance()));
+    }
+
+    @Test
+    public void testEachFailingStatementAndMemberIsReported() {
+        List<String> sources = Arrays.asList(
+            "public class Faulty implements java.io.Serializable {\n    public int take(Absent absent) { return 0; }\n    public int next() {\n        Missing first = null;\n        Unknown second = null;\n        return 1;\n    }\n    public int other() {\n        Gone third = null;\n        return 2;\n    }\n}",
+            "public int loose() { return 1; }",
+            "public class Fine implements java.io.Serializable { public int next() { return 3; } }"
+        );
+
+        CompilationDriver.Result result = newDriver().withParallelism(3).compileSources(sources);
+
+        List<Diagnostic> faulty = result.getDiagnostics().stream().filter(x -> x.getSource().equals("source 0")).collect(Collectors.toList());
+        assertEquals(4, faulty.size());
+        assertTrue(faulty.get(0).getMessage().contains("Absent"));
+        assertEquals(Arrays.asList(4, 5, 9), faulty.subList(1, 4).stream().map(x -> x.getLine()).collect(Collectors.toList()));
+
+        assertEquals(1, result.getDiagnostics().stream().filter(x -> x.getSource().equals("source 1")).count());
+        assertEquals(Collections.singleton("Fine"), result.getClassBytes().keySet());
+    }
+
+    @Test
+    public void testUnreadableFilesAreReported() {
+        Path missing = Paths.get("does", "not", "exist.java");
+
+        CompilationDriver.Result result = newDriver().compileFiles(Arrays.asList(missing));
+
+        assertEquals(1, result.getDiagnostics().size());
+        assertEquals(Diagnostic.Kind.INPUT, result.getDiagnostics().get(0).getKind());
+        assertEquals(missing.toString(), result.getDiagnostics().get(0).getSource());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testClassDefinedTwiceIsRejected() {
+        newDriver().compileSources(Arrays.asList(
+            "public class Twice implements java.io.Serializable { }",
+            "public class Twice implements java.io.Serializable { }"
+        ));
+    }
+}
@@ -0,0 +1,66 @@
+package astava.java.parser;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DefaultClassResolverTest {
+    public static boolean initialized;
+
+    public static class Initialized {
+        static {
+            initialized = true;
+        }
+    }
+
+    private static class CountingClassLoader extends ClassLoader {
+        private final AtomicInteger lookups = new AtomicInteger();
+        private final AtomicInteger loads = new AtomicInteger();
+
+        private CountingClassLoader() {
+            super(DefaultClassResolverTest.class.getClassLoader());
+        }
+
+        @Override
+        public URL getResource(String name) {
+            lookups.incrementAndGet();
+            return super.getResource(name);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            loads.incrementAndGet();
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    @Test
+    public void testExistingClassesAreResolvedWithoutLoading() {
+        CountingClassLoader classLoader = new CountingClassLoader();
+        DefaultClassResolver classResolver = new DefaultClassResolver(classLoader, Collections.emptyMap());
+
+        assertTrue(classResolver.canResolveAmbiguous("java.lang.String"));
+        assertTrue(classResolver.canResolveAmbiguous("java.lang.String[]"));
+        assertTrue(classResolver.canResolveAmbiguous(Initialized.class.getName()));
+        assertFalse(classResolver.canResolveAmbiguous("int"));
+        assertFalse(initialized);
+        assertEquals(0, classLoader.loads.get());
+    }
+
+    @Test
+    public void testMissesAreRemembered() {
+        CountingClassLoader classLoader = new CountingClassLoader();
+        DefaultClassResolver classResolver = new DefaultClassResolver(classLoader, Collections.emptyMap());
+
+        assertFalse(classResolver.canResolveAmbiguous("a.b.c"));
+        assertFalse(classResolver.canResolveAmbiguous("a.b.c[]"));
+        int lookups = classLoader.lookups.get();
+        assertFalse(classResolver.canResolveAmbiguous("a.b.c"));
+        assertFalse(classResolver.canResolveAmbiguous("a.b.c[]"));
+        assertEquals(lookups, classLoader.lookups.get());
+    }
+}
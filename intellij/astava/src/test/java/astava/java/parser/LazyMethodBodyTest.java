@@ -0,0 +1,110 @@
+package astava.java.parser;
+
+import astava.tree.ClassDom;
+import astava.tree.MethodDom;
+import astava.tree.StatementDom;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static astava.java.DomFactory.*;
+import static org.junit.Assert.*;
+
+public class LazyMethodBodyTest {
+    private static MethodDom getMethod(ClassDom classDom, String name) {
+        return classDom.getMethods().stream().filter(x -> x.getName().equals(name)).findFirst().get();
+    }
+
+    @Test
+    public void testBodyIsBuiltOnceOnFirstRequest() {
+        AtomicInteger builds = new AtomicInteger();
+        StatementDom body = ret();
+        MethodDom method = lazyMethodDeclaration(0, "m", Collections.emptyList(), "V", () -> {
+            builds.incrementAndGet();
+            return body;
+        });
+
+        assertEquals("m", method.getName());
+        assertEquals(0, builds.get());
+        assertSame(body, method.getBody());
+        assertSame(body, method.getBody());
+        assertEquals(1, builds.get());
+    }
+
+    @Test
+    public void testBodyIsBuiltOnceByConcurrentRequests() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        MethodDom method = lazyMethodDeclaration(0, "m", Collections.emptyList(), "V", () -> {
+            builds.incrementAndGet();
+            return ret();
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<StatementDom>> requests = IntStream.range(0, 16).mapToObj(i -> (Callable<StatementDom>)method::getBody).collect(Collectors.toList());
+            List<Future<StatementDom>> bodies = executor.invokeAll(requests);
+            for(Future<StatementDom> body : bodies)
+                assertSame(bodies.get(0).get(), body.get());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, builds.get());
+    }
+
+    @Test
+    public void testFailedBodyIsBuiltAgainOnNextRequest() {
+        AtomicInteger builds = new AtomicInteger();
+        MethodDom method = lazyMethodDeclaration(0, "m", Collections.emptyList(), "V", () -> {
+            if(builds.incrementAndGet() == 1)
+                throw new IllegalArgumentException("First build fails.");
+            return ret();
+        });
+
+        try {
+            method.getBody();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("First build fails.", e.getMessage());
+        }
+
+        assertNotNull(method.getBody());
+        assertEquals(2, builds.get());
+    }
+
+    @Test
+    public void testResolutionErrorsInParsedBodiesAreThrownByGetBody() throws IOException {
+        ClassLoader classLoader = LazyMethodBodyTest.class.getClassLoader();
+        DefaultClassResolver classResolver = new DefaultClassResolver(classLoader, Collections.emptyMap());
+        ClassDomBuilder classBuilder = (ClassDomBuilder)new Parser(
+            "public class Lazy implements java.io.Serializable {\n" +
+            "    public int fine() { return 1; }\n" +
+            "    public int lost() {\n" +
+            "        Missing missing = null;\n" +
+            "        return 2;\n" +
+            "    }\n" +
+            "}").parse(classResolver).get(0);
+
+        // Declaring the class and building its dom only resolves signatures
+        ClassDom classDom = classBuilder.build(classResolver).build(new DefaultClassInspector(classLoader));
+        assertEquals(2, classDom.getMethods().size());
+        assertNotNull(getMethod(classDom, "fine").getBody());
+
+        try {
+            getMethod(classDom, "lost").getBody();
+            fail();
+        } catch (SourceException e) {
+            assertEquals(4, e.getLine());
+            assertTrue(e.getMessage().contains("Missing"));
+        }
+    }
+}
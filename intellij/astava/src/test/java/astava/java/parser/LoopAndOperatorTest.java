@@ -0,0 +1,133 @@
+package astava.java.parser;
+
+import astava.java.ArithmeticOperator;
+import astava.java.Descriptor;
+import astava.java.gen.ClassGenerator;
+import astava.java.parser.antlr4.JavaLexer;
+import astava.java.parser.antlr4.JavaParser;
+import astava.tree.ClassDom;
+import astava.tree.ParameterInfo;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static astava.java.DomFactory.*;
+import static astava.java.gen.SampleMethods.getMethod;
+import static org.junit.Assert.*;
+
+public class LoopAndOperatorTest {
+    private static final String SOURCE =
+        "public class Looper implements java.io.Serializable {\n" +
+        "    public int sum(int n) { int s = 0; for(int i = 1; i <= n; i++) s += i; return s; }\n" +
+        "    public int halve(int n) { int steps = 0; while(n > 0) { n -= 2; ++steps; } return steps; }\n" +
+        "    public int precedence(int x) { return 1 + x * 2 - 6 / 3 % 2 << 1; }\n" +
+        "    public int bits(int x) { return (x & 6 | 1) ^ ~x >> 1; }\n" +
+        "    public int negate(int x) { return -x + -2147483648; }\n" +
+        "    public long widen(int x) { long total = 0L; total += x; return total * 3 + 1; }\n" +
+        "    public double mix(int i, float f) { return i / 2 + f * 1.5; }\n" +
+        "    public int narrow(byte b) { b += 100; return b; }\n" +
+        "    public int[] squares(int n) { int[] a = new int[n]; for(int i = 0; i < n; i++) a[i] = i * i; a[0] += 10; a[1]++; return a; }\n" +
+        "    public int postfix(int x) { int y = x++; return y * 10 + x; }\n" +
+        "    public int scale(int x) { return x * 2 + 1; }\n" +
+        "    public int parenMinus(int x) { return (x) - 1; }\n" +
+        "    public int parenPlus(int a, int b) { return (a) + b; }\n" +
+        "    public long castNegative(int x) { return (long) -x; }\n" +
+        "    public int castIncrement(int x) { return (int) ++x; }\n" +
+        "    public java.lang.Object castReference(java.lang.Object o) { return (java.lang.String) o; }\n" +
+        "}";
+
+    private static CompilationDriver.Result compile() {
+        ClassLoader classLoader = LoopAndOperatorTest.class.getClassLoader();
+        return new CompilationDriver(new DefaultClassResolver(classLoader, Collections.emptyMap()), new DefaultClassInspector(classLoader))
+            .compileSources(Arrays.asList(SOURCE));
+    }
+
+    private static List<Integer> getOpcodes(MethodNode method) {
+        return Arrays.stream(method.instructions.toArray()).map(x -> x.getOpcode()).filter(x -> x != -1).collect(Collectors.toList());
+    }
+
+    // The parse tree of the expression with the names of its rules
+    private static String parseExpressionText(String text) {
+        JavaParser parser = new JavaParser(new CommonTokenStream(new JavaLexer(new ANTLRInputStream(text))));
+        return parser.expression().toStringTree(parser);
+    }
+
+    @Test
+    public void testSourceIsEvaluatedAsByJava() throws ReflectiveOperationException {
+        Class<?> looperClass = compile().newClassLoader(LoopAndOperatorTest.class.getClassLoader()).loadClass("Looper");
+        Object looper = looperClass.newInstance();
+
+        assertEquals(55, looperClass.getMethod("sum", int.class).invoke(looper, 10));
+        assertEquals(4, looperClass.getMethod("halve", int.class).invoke(looper, 7));
+        assertEquals(1 + 3 * 2 - 6 / 3 % 2 << 1, looperClass.getMethod("precedence", int.class).invoke(looper, 3));
+        assertEquals((13 & 6 | 1) ^ ~13 >> 1, looperClass.getMethod("bits", int.class).invoke(looper, 13));
+        assertEquals(-5 + -2147483648, looperClass.getMethod("negate", int.class).invoke(looper, 5));
+        assertEquals(16L, looperClass.getMethod("widen", int.class).invoke(looper, 5));
+        assertEquals(5 / 2 + 2f * 1.5, looperClass.getMethod("mix", int.class, float.class).invoke(looper, 5, 2f));
+        assertEquals((int)(byte)200, looperClass.getMethod("narrow", byte.class).invoke(looper, (byte)100));
+        assertArrayEquals(new int[]{10, 2, 4, 9}, (int[]) looperClass.getMethod("squares", int.class).invoke(looper, 4));
+        assertEquals(56, looperClass.getMethod("postfix", int.class).invoke(looper, 5));
+        assertEquals(4, looperClass.getMethod("parenMinus", int.class).invoke(looper, 5));
+        assertEquals(7, looperClass.getMethod("parenPlus", int.class, int.class).invoke(looper, 5, 2));
+        assertEquals(-5L, looperClass.getMethod("castNegative", int.class).invoke(looper, 5));
+        assertEquals(6, looperClass.getMethod("castIncrement", int.class).invoke(looper, 5));
+        assertEquals("s", looperClass.getMethod("castReference", Object.class).invoke(looper, "s"));
+    }
+
+    @Test
+    public void testConstantIncrementsOfIntsAreInPlace() {
+        MethodNode halve = getMethod(compile().getClassBytes().get("Looper"), "halve");
+
+        List<Integer> increments = Arrays.stream(halve.instructions.toArray())
+            .filter(x -> x instanceof IincInsnNode).map(x -> ((IincInsnNode) x).incr).collect(Collectors.toList());
+        assertEquals(Arrays.asList(-2, 1), increments);
+    }
+
+    @Test
+    public void testSourceCompilesAsHandBuiltDom() {
+        ParameterInfo x = new ParameterInfo(Descriptor.INT, "x");
+        ClassDom classDom = classDeclaration(Modifier.PUBLIC, "Looper", "java/lang/Object", Arrays.asList(), Arrays.asList(), Arrays.asList(
+            methodDeclaration(Modifier.PUBLIC, "scale", Arrays.asList(x), Descriptor.INT,
+                ret(arithmetic(arithmetic(accessVar("x"), literal(2), ArithmeticOperator.MUL), literal(1), ArithmeticOperator.ADD))),
+            methodDeclaration(Modifier.PUBLIC, "parenMinus", Arrays.asList(x), Descriptor.INT,
+                ret(arithmetic(accessVar("x"), literal(1), ArithmeticOperator.SUB))),
+            methodDeclaration(Modifier.PUBLIC, "parenPlus", Arrays.asList(new ParameterInfo(Descriptor.INT, "a"), new ParameterInfo(Descriptor.INT, "b")), Descriptor.INT,
+                ret(arithmetic(accessVar("a"), accessVar("b"), ArithmeticOperator.ADD))),
+            methodDeclaration(Modifier.PUBLIC, "castNegative", Arrays.asList(x), Descriptor.LONG,
+                ret(typeCast(neg(accessVar("x")), Descriptor.LONG)))
+        ));
+        byte[] expectedBytes = new ClassGenerator(classDom).toBytes();
+        byte[] actualBytes = compile().getClassBytes().get("Looper");
+
+        assertEquals(Arrays.asList(Opcodes.ILOAD, Opcodes.ICONST_2, Opcodes.IMUL, Opcodes.ICONST_1, Opcodes.IADD, Opcodes.IRETURN),
+            getOpcodes(getMethod(expectedBytes, "scale")));
+        // Parenthesized names before + and - are operands rather than casts
+        assertEquals(Arrays.asList(Opcodes.ILOAD, Opcodes.ICONST_1, Opcodes.ISUB, Opcodes.IRETURN),
+            getOpcodes(getMethod(expectedBytes, "parenMinus")));
+        assertEquals(Arrays.asList(Opcodes.ILOAD, Opcodes.INEG, Opcodes.I2L, Opcodes.LRETURN),
+            getOpcodes(getMethod(expectedBytes, "castNegative")));
+
+        for(String name : Arrays.asList("scale", "parenMinus", "parenPlus", "castNegative"))
+            assertEquals(name, getOpcodes(getMethod(expectedBytes, name)), getOpcodes(getMethod(actualBytes, name)));
+    }
+
+    @Test
+    public void testParenthesizedOperandsAreNotCasts() {
+        assertFalse(parseExpressionText("(x) - 1").contains("typeCastExpression"));
+        assertFalse(parseExpressionText("(a) + b").contains("typeCastExpression"));
+        assertFalse(parseExpressionText("(java.lang.Integer) -1").contains("typeCastExpression"));
+        assertTrue(parseExpressionText("(int) -x").contains("typeCastExpression"));
+        assertTrue(parseExpressionText("(double) +x").contains("typeCastExpression"));
+        assertTrue(parseExpressionText("(String) x").contains("typeCastExpression"));
+        assertTrue(parseExpressionText("(String) !x").contains("typeCastExpression"));
+    }
+}
@@ -0,0 +1,209 @@
+package astava.java.parser;
+
+import astava.java.Descriptor;
+import astava.tree.MethodDom;
+import astava.tree.ParameterInfo;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class MethodResolverTest {
+    public static class Overloads {
+        public Overloads(Object value) { }
+        public Overloads(String value) { }
+
+        public void m(Object value) { }
+        public void m(String value) { }
+        public void m(int value) { }
+        public void m(long value) { }
+
+        public void boxed(Object value) { }
+        public void boxed(Long value) { }
+
+        public void pair(String first, int second) { }
+        public void pair(String first, String second) { }
+
+        public void ambiguous(Object first, String second) { }
+        public void ambiguous(String first, Object second) { }
+    }
+
+    public static class Derived extends Overloads implements Comparable<Derived> {
+        public Derived() {
+            super("");
+        }
+
+        public void m(CharSequence value) { }
+
+        @Override
+        public int compareTo(Derived other) {
+            return 0;
+        }
+    }
+
+    private static final ClassInspector classInspector = new DefaultClassInspector(MethodResolverTest.class.getClassLoader());
+
+    private static String resolve(Class<?> target, String methodName, String... argumentTypes) {
+        List<ClassDeclaration> argumentDeclarations = Arrays.asList(argumentTypes).stream().map(x -> classInspector.getClassDeclaration(x)).collect(Collectors.toList());
+        return MethodResolver.of(classInspector).resolveMethod(classInspector.getClassDeclaration(target.getName()), methodName, argumentDeclarations, (c, m) ->
+            c.getName().substring(c.getName().lastIndexOf('$') + 1) + "." + m.getName() +
+                m.getParameterTypes().stream().map(x -> Descriptor.getName(x.descriptor)).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testMostSpecificMethodIsSelected() {
+        assertEquals("Overloads.m[java.lang.String]", resolve(Overloads.class, "m", "java.lang.String"));
+        assertEquals("Overloads.m[int]", resolve(Overloads.class, "m", "short"));
+        assertEquals("Overloads.m[long]", resolve(Overloads.class, "m", "long"));
+        assertEquals("Overloads.m[java.lang.Object]", resolve(Overloads.class, "m", "java.lang.StringBuilder"));
+        // Inherited methods are candidates as well
+        assertEquals("Overloads.m[java.lang.String]", resolve(Derived.class, "m", "java.lang.String"));
+        assertEquals("Derived.m[java.lang.CharSequence]", resolve(Derived.class, "m", "java.lang.StringBuilder"));
+    }
+
+    @Test
+    public void testAllArgumentsAreCompared() {
+        assertEquals("Overloads.pair[java.lang.String, int]", resolve(Overloads.class, "pair", "java.lang.String", "int"));
+        assertEquals("Overloads.pair[java.lang.String, java.lang.String]", resolve(Overloads.class, "pair", "java.lang.String", "java.lang.String"));
+        assertNull(resolve(Overloads.class, "pair", "int", "int"));
+    }
+
+    @Test
+    public void testBoxingIsOnlyUsedIfNecessary() {
+        // Subtyping, and thus no unboxing, is preferred
+        assertEquals("Overloads.m[java.lang.Object]", resolve(Overloads.class, "m", "java.lang.Integer"));
+        // Boxing is followed by widening only for references
+        assertEquals("Overloads.boxed[java.lang.Object]", resolve(Overloads.class, "boxed", "int"));
+        assertEquals("Overloads.boxed[java.lang.Long]", resolve(Overloads.class, "boxed", "long"));
+    }
+
+    @Test
+    public void testMethodsOfSuperInterfacesAreFound() {
+        assertEquals("Derived.compareTo[astava.java.parser.MethodResolverTest$Derived]", resolve(Derived.class, "compareTo", Derived.class.getName()));
+        assertEquals("Object.hashCode[]", resolve(Derived.class, "hashCode").replace("java.lang.", ""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAmbiguousInvocationFails() {
+        resolve(Overloads.class, "ambiguous", "java.lang.String", "java.lang.String");
+    }
+
+    @Test
+    public void testConstructorsAreResolved() {
+        ClassDeclaration overloads = classInspector.getClassDeclaration(Overloads.class.getName());
+        List<ClassDeclaration> argumentTypes = Arrays.asList(classInspector.getClassDeclaration("java.lang.String"));
+
+        MethodDeclaration constructor = MethodResolver.of(classInspector).resolveConstructor(overloads, argumentTypes, (c, m) -> m);
+        assertEquals(Descriptor.get(String.class), constructor.getParameterTypes().get(0).descriptor);
+        assertNull(MethodResolver.of(classInspector).resolveConstructor(classInspector.getClassDeclaration(Derived.class.getName()), argumentTypes, (c, m) -> m));
+    }
+
+    @Test
+    public void testSelectionsAreRemembered() {
+        AtomicInteger lookups = new AtomicInteger();
+        ClassInspector countingInspector = new DefaultClassInspector(MethodResolverTest.class.getClassLoader()) {
+            @Override
+            public ClassDeclaration getClassDeclaration(String name) {
+                lookups.incrementAndGet();
+                return super.getClassDeclaration(name);
+            }
+        };
+
+        MethodResolver methodResolver = MethodResolver.of(countingInspector);
+        String[] argumentTypeNames = {"java.lang.StringBuilder", "java.lang.String"};
+        for(String argumentTypeName: argumentTypeNames)
+            assertNotNull(methodResolver.resolveMethod(countingInspector.getClassDeclaration(Derived.class.getName()), "m", Arrays.asList(countingInspector.getClassDeclaration(argumentTypeName)), (c, m) -> c));
+
+        // The inspector creates new declarations for each lookup
+        ClassDeclaration derived = countingInspector.getClassDeclaration(Derived.class.getName());
+        List<ClassDeclaration> builderArgument = Arrays.asList(countingInspector.getClassDeclaration("java.lang.StringBuilder"));
+        List<ClassDeclaration> stringArgument = Arrays.asList(countingInspector.getClassDeclaration("java.lang.String"));
+        lookups.set(0);
+        assertEquals(Derived.class.getName(), methodResolver.resolveMethod(derived, "m", builderArgument, (c, m) -> c.getName()));
+        assertEquals(0, lookups.get());
+        // Only the class declaring the inherited method is looked up again
+        assertEquals(Overloads.class.getName(), methodResolver.resolveMethod(derived, "m", stringArgument, (c, m) -> c.getName()));
+        assertEquals(1, lookups.get());
+    }
+
+    private static MethodDeclaration newMethod(String name, String parameterType) {
+        return new MethodDeclaration() {
+            @Override
+            public int getModifier() {
+                return Modifier.PUBLIC;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public List<ParameterInfo> getParameterTypes() {
+                return Arrays.asList(new ParameterInfo(Descriptor.get(parameterType), "value"));
+            }
+
+            @Override
+            public String getReturnTypeName() {
+                return "void";
+            }
+
+            @Override
+            public MethodDom build(ClassDeclaration classDeclaration, ClassInspector classInspector) {
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void testMethodsAddedToMutableDeclarationsAreSelected() {
+        MutableClassDeclaration mutable = new MutableClassDeclaration();
+        mutable.setName("Mutable");
+        mutable.setSuperName("java.lang.Object");
+        List<ClassDeclaration> argumentTypes = Arrays.asList(classInspector.getClassDeclaration("java.lang.String"));
+
+        MethodResolver methodResolver = MethodResolver.of(classInspector);
+        assertNull(methodResolver.resolveMethod(mutable, "added", argumentTypes, (c, m) -> m));
+        mutable.addMethod(newMethod("added", "java.lang.String"));
+        assertNotNull(methodResolver.resolveMethod(mutable, "added", argumentTypes, (c, m) -> m));
+    }
+
+    @Test
+    public void testRedefinedClassesGetSelectionsOfTheirOwn() {
+        ClassDeclaration overloads = classInspector.getClassDeclaration(Overloads.class.getName());
+        ClassDeclaration redefined = new ClassDeclaration.Mod(overloads) {
+            @Override
+            protected List<MethodDeclaration> newMethods() {
+                return Arrays.asList(newMethod("added", "java.lang.String"));
+            }
+        };
+        List<ClassDeclaration> argumentTypes = Arrays.asList(classInspector.getClassDeclaration("java.lang.String"));
+
+        MethodResolver methodResolver = MethodResolver.of(classInspector);
+        assertNull(methodResolver.resolveMethod(overloads, "added", argumentTypes, (c, m) -> m));
+        assertNotNull(methodResolver.resolveMethod(redefined, "added", argumentTypes, (c, m) -> m));
+    }
+
+    @Test
+    public void testSharedSelectionsDoNotKeepInspectorAlive() throws InterruptedException {
+        ClassInspector inspector = new DefaultClassInspector(MethodResolverTest.class.getClassLoader());
+        ClassDeclaration derived = inspector.getClassDeclaration(Derived.class.getName());
+        assertNotNull(MethodResolver.of(inspector).resolveMethod(derived, "m", Arrays.asList(inspector.getClassDeclaration("java.lang.String")), (c, m) -> m));
+
+        WeakReference<ClassInspector> reference = new WeakReference<>(inspector);
+        inspector = null;
+        derived = null;
+        for(int i = 0; i < 100 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(reference.get());
+    }
+}
@@ -0,0 +1,43 @@
+package astava.java.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ParserTest {
+    @Test
+    public void testParsersOnSameThreadAreIndependent() throws IOException {
+        Parser classes = new Parser("public class A implements x.Y { public int i; } public class B implements x.Z { }");
+        Parser statement = new Parser("x = 1;");
+
+        assertEquals(1, statement.parse(null).size());
+        assertEquals(2, classes.parse(null).size());
+        // The source is parsed from its start each time
+        assertEquals(2, classes.parse(null).size());
+    }
+
+    @Test
+    public void testInvalidSourceFallsBackToFullPrediction() throws IOException {
+        // Errors are reported and recovered from as before, rather than thrown
+        assertEquals(1, new Parser("public class { ").parse(null).size());
+        assertEquals(1, new Parser("x = 1;").parse(null).size());
+    }
+
+    @Test
+    public void testSyntaxErrorsAreCollectedWithPositions() throws IOException {
+        Parser parser = new Parser("public class A implements x.Y {\n  public int f(int x) { return x + ; }\n  public int g() { return ) ; }\n}");
+        parser.parse(null);
+
+        assertEquals(2, parser.getDiagnostics().size());
+        assertEquals(Diagnostic.Kind.SYNTAX, parser.getDiagnostics().get(0).getKind());
+        assertEquals(2, parser.getDiagnostics().get(0).getLine());
+        assertEquals(3, parser.getDiagnostics().get(1).getLine());
+
+        // Diagnostics are those of the latest parse
+        Parser valid = new Parser("x = 1;");
+        valid.parse(null);
+        assertTrue(valid.getDiagnostics().isEmpty());
+    }
+}
@@ -0,0 +1,113 @@
+package astava.java.parser;
+
+import astava.java.agent.ClassNodePredicate;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TypeHierarchyTest {
+    public interface Shape { }
+    public interface Polygon extends Shape, java.io.Serializable { }
+    public static class Rectangle implements Polygon { }
+    public static class Square extends Rectangle { }
+
+    private static TypeHierarchy newTypeHierarchy() {
+        return new TypeHierarchy(new DefaultClassInspector(TypeHierarchyTest.class.getClassLoader()));
+    }
+
+    private static ClassNode readClass(Class<?> c) throws IOException {
+        ClassNode classNode = new ClassNode(Opcodes.ASM5);
+        new ClassReader(c.getName()).accept(classNode, ClassReader.SKIP_CODE);
+        return classNode;
+    }
+
+    private static boolean testClass(String sourceCode, Class<?> c) throws IOException {
+        ClassInspector classInspector = new DefaultClassInspector(TypeHierarchyTest.class.getClassLoader());
+        List<ClassNodePredicate> predicates = new Parser(sourceCode).parseClassPredicates(classInspector);
+        ClassNode classNode = readClass(c);
+        return predicates.stream().allMatch(x -> x.test(classNode, null));
+    }
+
+    @Test
+    public void testSupertypesAreFollowedTransitively() {
+        TypeHierarchy typeHierarchy = newTypeHierarchy();
+
+        assertTrue(typeHierarchy.isSubtypeOf(Square.class.getName(), Shape.class.getName()));
+        assertTrue(typeHierarchy.isSubtypeOf(Square.class.getName(), Rectangle.class.getName()));
+        assertTrue(typeHierarchy.isSubtypeOf(Square.class.getName().replace('.', '/'), "java/io/Serializable"));
+        assertTrue(typeHierarchy.isSubtypeOf(Polygon.class.getName(), "java.lang.Object"));
+        assertTrue(typeHierarchy.isSubtypeOf(Rectangle.class.getName(), Rectangle.class.getName()));
+        assertFalse(typeHierarchy.isSubtypeOf(Rectangle.class.getName(), Square.class.getName()));
+        assertFalse(typeHierarchy.isSubtypeOf(Shape.class.getName(), Polygon.class.getName()));
+        assertFalse(typeHierarchy.isSubtypeOf("int", "java.lang.Object"));
+        assertTrue(typeHierarchy.isSubtypeOf("int", "int"));
+    }
+
+    @Test
+    public void testUnknownClassesAreTestedThroughTheirSupertypes() throws IOException {
+        TypeHierarchy typeHierarchy = newTypeHierarchy();
+        ClassDeclaration square = new ASMClassDeclaration(readClass(Square.class));
+
+        assertTrue(typeHierarchy.isStrictSubtypeOf(square, Shape.class.getName()));
+        assertFalse(typeHierarchy.isStrictSubtypeOf(square, Square.class.getName()));
+        assertTrue(typeHierarchy.isSubtypeOf(square, Square.class.getName()));
+    }
+
+    @Test
+    public void testClassPredicatesFollowSupertypes() throws IOException {
+        assertTrue(testClass("extends java.lang.Object", Square.class));
+        // Through the super class and its super interface
+        assertTrue(testClass("implements java.io.Serializable", Square.class));
+        assertFalse(testClass("implements java.lang.Runnable", Square.class));
+    }
+
+    @Test
+    public void testClassBeingDeclaredSharesIndexOfUnderlyingInspector() {
+        AtomicInteger lookups = new AtomicInteger();
+        ClassInspector classInspector = new DefaultClassInspector(TypeHierarchyTest.class.getClassLoader()) {
+            @Override
+            public ClassDeclaration getClassDeclaration(String name) {
+                lookups.incrementAndGet();
+                return super.getClassDeclaration(name);
+            }
+        };
+        assertTrue(TypeHierarchy.of(classInspector).isSubtypeOf(Square.class.getName(), Shape.class.getName()));
+
+        MutableClassDeclaration rectangle = new MutableClassDeclaration();
+        rectangle.setName(Rectangle.class.getName());
+        rectangle.setSuperName("java.lang.Object");
+        rectangle.addInterface(Polygon.class.getName());
+        rectangle.addInterface(Runnable.class.getName());
+        TypeHierarchy typeHierarchy = TypeHierarchy.of(new ThisClassInspector(rectangle, classInspector));
+
+        lookups.set(0);
+        assertTrue(typeHierarchy.isSubtypeOf(Polygon.class.getName(), Shape.class.getName()));
+        assertEquals(0, lookups.get());
+        assertTrue(typeHierarchy.isSubtypeOf(Rectangle.class.getName(), Runnable.class.getName()));
+        assertTrue(typeHierarchy.isSubtypeOf(Square.class.getName(), Runnable.class.getName()));
+        assertFalse(TypeHierarchy.of(classInspector).isSubtypeOf(Square.class.getName(), Runnable.class.getName()));
+    }
+
+    @Test
+    public void testSharedIndexDoesNotKeepInspectorAlive() throws InterruptedException {
+        ClassInspector classInspector = new DefaultClassInspector(TypeHierarchyTest.class.getClassLoader());
+        assertTrue(TypeHierarchy.of(classInspector).isSubtypeOf(Square.class.getName(), Shape.class.getName()));
+
+        WeakReference<ClassInspector> reference = new WeakReference<>(classInspector);
+        classInspector = null;
+        for(int i = 0; i < 100 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(reference.get());
+    }
+}
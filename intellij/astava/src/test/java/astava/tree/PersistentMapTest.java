@@ -0,0 +1,169 @@
+package astava.tree;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PersistentMapTest {
+    // Keys with a chosen hash code, such that distinct keys may collide
+    private static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final int hash;
+
+        private Key(String name, int hash) {
+            this.name = name;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key)obj).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static <K, V> void assertSameEntries(Map<K, V> expected, PersistentMap<K, V> actual) {
+        assertEquals(expected.size(), actual.size());
+        HashMap<K, V> entries = new HashMap<>();
+        actual.forEach(entries::put);
+        assertEquals(expected, entries);
+        expected.forEach((k, v) -> assertEquals(v, actual.get(k)));
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty()
+            .plus("a", 1)
+            .plus("b", 2)
+            .plus("a", 3);
+
+        assertEquals(2, map.size());
+        assertEquals((Integer)3, map.get("a"));
+        assertEquals((Integer)2, map.get("b"));
+        assertNull(map.get("c"));
+
+        PersistentMap<String, Integer> removed = map.minus("a");
+        assertEquals(1, removed.size());
+        assertFalse(removed.containsKey("a"));
+        assertSame(removed, removed.minus("a"));
+        assertTrue(removed.minus("b").isEmpty());
+    }
+
+    @Test
+    public void testVersionsAreUnaffectedByUpdates() {
+        PersistentMap<String, Integer> v1 = PersistentMap.<String, Integer>empty().plus("a", 1);
+        PersistentMap<String, Integer> v2 = v1.plus("b", 2);
+        PersistentMap<String, Integer> v3 = v2.minus("a").plus("b", 3);
+
+        assertEquals("{a=1}", v1.toString());
+        assertEquals((Integer)1, v2.get("a"));
+        assertEquals((Integer)2, v2.get("b"));
+        assertNull(v3.get("a"));
+        assertEquals((Integer)3, v3.get("b"));
+    }
+
+    @Test
+    public void testPutOfSameValueReturnsSameVersion() {
+        Integer value = 1;
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("a", value).plus("b", 2);
+
+        assertSame(map, map.plus("a", value));
+    }
+
+    @Test
+    public void testCollisions() {
+        Key a = new Key("a", 42);
+        Key b = new Key("b", 42);
+        Key c = new Key("c", 42);
+        // Shares the lower bits of the hash with the colliding keys
+        Key d = new Key("d", 42 | (1 << 20));
+
+        PersistentMap<Key, String> map = PersistentMap.<Key, String>empty().plus(a, "a").plus(b, "b").plus(c, "c").plus(d, "d");
+        assertEquals(4, map.size());
+        assertEquals("a", map.get(a));
+        assertEquals("b", map.get(b));
+        assertEquals("c", map.get(c));
+        assertEquals("d", map.get(d));
+        assertNull(map.get(new Key("e", 42)));
+
+        PersistentMap<Key, String> replaced = map.plus(b, "B");
+        assertEquals(4, replaced.size());
+        assertEquals("B", replaced.get(b));
+        assertEquals("b", map.get(b));
+
+        PersistentMap<Key, String> removed = map.minus(b);
+        assertEquals(3, removed.size());
+        assertNull(removed.get(b));
+        assertEquals("a", removed.get(a));
+        assertEquals("c", removed.get(c));
+        assertSame(removed, removed.minus(new Key("e", 42)));
+
+        PersistentMap<Key, String> single = removed.minus(a).minus(d);
+        assertEquals(1, single.size());
+        assertEquals("c", single.get(c));
+        assertTrue(single.minus(c).isEmpty());
+    }
+
+    @Test
+    public void testManyEntriesAsHashMap() {
+        Random random = new Random(0);
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+
+        for(int i = 0; i < 20000; i++) {
+            // Few distinct keys, such that keys are both replaced and removed
+            int key = random.nextInt(5000) * 0x10001;
+            if(random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+        }
+
+        assertSameEntries(expected, map);
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        PersistentMap<Key, String> map = PersistentMap.<Key, String>empty()
+            .plus(new Key("a", 1), "a").plus(new Key("b", 1), "b").plus(new Key("c", 2), "c");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(map);
+        }
+        Object read;
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = in.readObject();
+        }
+
+        HashMap<Key, String> expected = new HashMap<>();
+        map.forEach(expected::put);
+        HashMap<Object, Object> actual = new HashMap<>();
+        ((PersistentMap<?, ?>)read).forEach(actual::put);
+        assertEquals(expected, actual);
+    }
+}